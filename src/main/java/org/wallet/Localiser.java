@@ -23,11 +23,14 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.joda.money.BigMoney;
 import org.slf4j.Logger;
@@ -59,8 +62,28 @@ public class Localiser {
 
     public static final String FALLBACK_LANGUAGE_CODE = "en";
 
-    private ResourceBundle resourceBundle;
-    private MessageFormat formatter;
+    private volatile ResourceBundle resourceBundle;
+
+    /**
+     * Locale the cached formatters are created with.
+     */
+    private volatile Locale formatterLocale;
+
+    /**
+     * Precompiled formatters, keyed by resource key. These are only ever cloned, never used to format directly,
+     * so they can be shared by all threads. The whole map is replaced when the locale changes.
+     */
+    private volatile ConcurrentHashMap<String, MessageFormat> compiledFormatters = new ConcurrentHashMap<String, MessageFormat>();
+
+    /**
+     * Per thread copies of the compiled formatters - MessageFormat is not thread safe.
+     */
+    private final ThreadLocal<ThreadFormatters> threadFormatters = new ThreadLocal<ThreadFormatters>() {
+        @Override
+        protected ThreadFormatters initialValue() {
+            return new ThreadFormatters();
+        }
+    };
 
     private Properties versionProperties;
 
@@ -91,8 +114,6 @@ public class Localiser {
      * @param locale
      */
     public Localiser(Locale locale) {
-        formatter = new MessageFormat("");
-
         languageProperties = new Properties();
         try {
             java.net.URL languagePropertiesURL = Localiser.class.getResource(LANGUAGE_PROPERTIES_FILENAME);
@@ -113,7 +134,7 @@ public class Localiser {
         decimalFormatSymbols = new java.text.DecimalFormatSymbols(locale);
     }
 
-    synchronized public String getString(String key) {
+    public String getString(String key) {
         if (key == null) {
             return "";
         }
@@ -141,18 +162,14 @@ public class Localiser {
         }
     }
 
-    synchronized public String getString(String key, Object[] parameters) {
+    public String getString(String key, Object[] parameters) {
         if (key == null) {
             return "";
         }
 
         if (resourceBundle != null) {
             try {
-                String pattern = resourceBundle.getString(key);
-                // Change any apostrophes to  \u2032 as MessageFormatter swallows them
-                pattern = pattern.replaceAll("\u0027", "\u2032");
-                formatter.applyPattern(pattern);
-                return formatter.format(parameters);
+                return getFormatter(key).format(parameters);
             } catch (NullPointerException npe) {
                 return MISSING_RESOURCE_TEXT + key + " (npe)";
             } catch (IllegalArgumentException iae) {
@@ -169,6 +186,45 @@ public class Localiser {
         }
     }
 
+    /**
+     * Get a formatter for the key that only the calling thread uses.
+     * The pattern is compiled once per locale and then cloned once per thread.
+     */
+    private MessageFormat getFormatter(String key) {
+        // Read the cache before the bundle - setLocale publishes them in the opposite order.
+        ConcurrentHashMap<String, MessageFormat> currentCompiledFormatters = compiledFormatters;
+
+        ThreadFormatters formattersForThread = threadFormatters.get();
+        if (formattersForThread.compiledFormatters != currentCompiledFormatters) {
+            // Locale has changed since this thread last formatted anything.
+            formattersForThread.compiledFormatters = currentCompiledFormatters;
+            formattersForThread.formatters.clear();
+        }
+
+        MessageFormat formatter = formattersForThread.formatters.get(key);
+        if (formatter == null) {
+            MessageFormat compiledFormatter = currentCompiledFormatters.get(key);
+            if (compiledFormatter == null) {
+                String pattern = resourceBundle.getString(key);
+                // Change any apostrophes to  \u2032 as MessageFormatter swallows them
+                pattern = pattern.replaceAll("\u0027", "\u2032");
+                compiledFormatter = new MessageFormat(pattern, formatterLocale);
+                MessageFormat existingFormatter = currentCompiledFormatters.putIfAbsent(key, compiledFormatter);
+                if (existingFormatter != null) {
+                    compiledFormatter = existingFormatter;
+                }
+            }
+            formatter = (MessageFormat) compiledFormatter.clone();
+            formattersForThread.formatters.put(key, formatter);
+        }
+        return formatter;
+    }
+
+    private static class ThreadFormatters {
+        ConcurrentHashMap<String, MessageFormat> compiledFormatters;
+        final Map<String, MessageFormat> formatters = new HashMap<String, MessageFormat>();
+    }
+
     public Locale getLocale() {
         return locale;
     }
@@ -191,7 +247,7 @@ public class Localiser {
             this.locale = locale;
         }
 
-        formatter.setLocale(locale);
+        formatterLocale = locale;
 
         numberFormat = NumberFormat.getInstance(locale);
         numberFormat.setMaximumFractionDigits(NUMBER_OF_FRACTION_DIGITS_FOR_WORLDCOIN);
@@ -226,6 +282,9 @@ public class Localiser {
 
             }
         }
+
+        // Patterns compiled for the previous locale are no longer valid.
+        compiledFormatters = new ConcurrentHashMap<String, MessageFormat>();
     }
 
     /**
@@ -25,6 +25,7 @@ import org.wallet.controller.Controller;
 import org.wallet.controller.core.CoreController;
 import org.wallet.controller.exchange.ExchangeController;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.exchange.CurrencyConverter;
 import org.wallet.file.BackupManager;
 import org.wallet.file.FileHandler;
@@ -209,6 +210,16 @@ public final class WorldcoinWallet {
                     // Initialise replay manager.
                     ReplayManager.INSTANCE.initialise(worldcoinController, false);
 
+                    // Keep the wallet AES key between uses if an unlocked session has been configured.
+                    String unlockedSessionTimeoutAsString = userPreferences.getProperty(WorldcoinModel.UNLOCKED_SESSION_TIMEOUT);
+                    if (unlockedSessionTimeoutAsString != null && !"".equals(unlockedSessionTimeoutAsString.trim())) {
+                        try {
+                            SessionKeyCache.INSTANCE.setIdleTimeout(Long.parseLong(unlockedSessionTimeoutAsString.trim()) * 1000);
+                        } catch (NumberFormatException nfe) {
+                            log.error("Cannot parse " + WorldcoinModel.UNLOCKED_SESSION_TIMEOUT + " of '" + unlockedSessionTimeoutAsString + "'");
+                        }
+                    }
+
                     log.debug("Setting look and feel");
                     try {
                         String lookAndFeel = userPreferences.getProperty(CoreModel.LOOK_AND_FEEL);
@@ -446,73 +457,79 @@ public final class WorldcoinWallet {
                                 boolean thereWasAnErrorLoadingTheWallet = false;
 
                                 ((WorldcoinWalletFrame) swingViewSystem).setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-                                for (String actualOrder : actualOrderToLoad) {
-                                    log.debug("Loading wallet from '{}'", actualOrder);
-                                    Message message = new Message(controller.getLocaliser().getString("worldcoinWallet.openingWallet",
-                                            new Object[]{actualOrder}));
-                                    message.setShowInStatusBar(false);
-                                    MessageManager.INSTANCE.addMessage(message);
-                                    try {
-                                        // Check if this is the first time this wallet has been opened post addition of data directories.
-                                        String topLevelWalletDirectory = BackupManager.INSTANCE.calculateTopLevelBackupDirectoryName(new File(actualOrder));
-                                        boolean firstUsageSinceWalletDirectoriesIntroduced = !(new File(topLevelWalletDirectory).exists());
-
-                                        WalletData perWalletModelData = null;
-                                        if (activeWalletFilename != null && activeWalletFilename.equals(actualOrder)) {
-                                            perWalletModelData = worldcoinController.addWalletFromFilename(actualOrder);
-                                            worldcoinController.getModel().setActiveWalletByFilename(actualOrder);
-                                        } else {
-                                            perWalletModelData = worldcoinController.addWalletFromFilename(actualOrder);
-                                        }
-                                        Message message2 = new Message(controller.getLocaliser().getString("worldcoinWallet.openingWalletIsDone",
+                                // Work out the Bloom filter for all the wallets once they are all loaded.
+                                worldcoinController.getWorldcoinWalletService().beginAddingWallets();
+                                try {
+                                    for (String actualOrder : actualOrderToLoad) {
+                                        log.debug("Loading wallet from '{}'", actualOrder);
+                                        Message message = new Message(controller.getLocaliser().getString("worldcoinWallet.openingWallet",
                                                 new Object[]{actualOrder}));
-                                        message2.setShowInStatusBar(false);
-                                        MessageManager.INSTANCE.addMessage(message2);
-
-                                        if (firstUsageSinceWalletDirectoriesIntroduced) {
-                                            if (perWalletModelData != null && perWalletModelData.getWallet() != null) {
-                                                // Backup the wallet and wallet info.
-                                                BackupManager.INSTANCE.backupPerWalletModelData(worldcoinController.getFileHandler(), perWalletModelData);
-
-                                                // Move any timestamped key and wallet files into their appropriate directories
-                                                BackupManager.INSTANCE.moveSiblingTimestampedKeyAndWalletBackups(actualOrder);
+                                        message.setShowInStatusBar(false);
+                                        MessageManager.INSTANCE.addMessage(message);
+                                        try {
+                                            // Check if this is the first time this wallet has been opened post addition of data directories.
+                                            String topLevelWalletDirectory = BackupManager.INSTANCE.calculateTopLevelBackupDirectoryName(new File(actualOrder));
+                                            boolean firstUsageSinceWalletDirectoriesIntroduced = !(new File(topLevelWalletDirectory).exists());
+
+                                            WalletData perWalletModelData = null;
+                                            if (activeWalletFilename != null && activeWalletFilename.equals(actualOrder)) {
+                                                perWalletModelData = worldcoinController.addWalletFromFilename(actualOrder);
+                                                worldcoinController.getModel().setActiveWalletByFilename(actualOrder);
+                                            } else {
+                                                perWalletModelData = worldcoinController.addWalletFromFilename(actualOrder);
                                             }
+                                            Message message2 = new Message(controller.getLocaliser().getString("worldcoinWallet.openingWalletIsDone",
+                                                    new Object[]{actualOrder}));
+                                            message2.setShowInStatusBar(false);
+                                            MessageManager.INSTANCE.addMessage(message2);
+
+                                            if (firstUsageSinceWalletDirectoriesIntroduced) {
+                                                if (perWalletModelData != null && perWalletModelData.getWallet() != null) {
+                                                    // Backup the wallet and wallet info.
+                                                    BackupManager.INSTANCE.backupPerWalletModelData(worldcoinController.getFileHandler(), perWalletModelData);
+
+                                                    // Move any timestamped key and wallet files into their appropriate directories
+                                                    BackupManager.INSTANCE.moveSiblingTimestampedKeyAndWalletBackups(actualOrder);
+                                                }
+                                            }
+                                        } catch (WalletLoadException e) {
+                                            message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
+                                                    new Object[]{actualOrder, e.getMessage()}));
+                                            MessageManager.INSTANCE.addMessage(message);
+                                            log.error(message.getText());
+                                            thereWasAnErrorLoadingTheWallet = true;
+                                        } catch (WalletVersionException e) {
+                                            message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
+                                                    new Object[]{actualOrder, e.getMessage()}));
+                                            MessageManager.INSTANCE.addMessage(message);
+                                            log.error(message.getText());
+                                            thereWasAnErrorLoadingTheWallet = true;
+                                        } catch (IOException e) {
+                                            message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
+                                                    new Object[]{actualOrder, e.getMessage()}));
+                                            MessageManager.INSTANCE.addMessage(message);
+                                            log.error(message.getText());
+                                            thereWasAnErrorLoadingTheWallet = true;
+                                        } catch (Exception e) {
+                                            message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
+                                                    new Object[]{actualOrder, e.getMessage()}));
+                                            MessageManager.INSTANCE.addMessage(message);
+                                            log.error(message.getText());
+                                            thereWasAnErrorLoadingTheWallet = true;
                                         }
-                                    } catch (WalletLoadException e) {
-                                        message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
-                                                new Object[]{actualOrder, e.getMessage()}));
-                                        MessageManager.INSTANCE.addMessage(message);
-                                        log.error(message.getText());
-                                        thereWasAnErrorLoadingTheWallet = true;
-                                    } catch (WalletVersionException e) {
-                                        message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
-                                                new Object[]{actualOrder, e.getMessage()}));
-                                        MessageManager.INSTANCE.addMessage(message);
-                                        log.error(message.getText());
-                                        thereWasAnErrorLoadingTheWallet = true;
-                                    } catch (IOException e) {
-                                        message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
-                                                new Object[]{actualOrder, e.getMessage()}));
-                                        MessageManager.INSTANCE.addMessage(message);
-                                        log.error(message.getText());
-                                        thereWasAnErrorLoadingTheWallet = true;
-                                    } catch (Exception e) {
-                                        message = new Message(controller.getLocaliser().getString("openWalletSubmitAction.walletNotLoaded",
-                                                new Object[]{actualOrder, e.getMessage()}));
-                                        MessageManager.INSTANCE.addMessage(message);
-                                        log.error(message.getText());
-                                        thereWasAnErrorLoadingTheWallet = true;
-                                    }
 
-                                    if (thereWasAnErrorLoadingTheWallet) {
-                                        WalletData loopData = worldcoinController.getModel().getPerWalletModelDataByWalletFilename(actualOrder);
-                                        if (loopData != null) {
-                                            // Clear the backup wallet filename - this prevents it being automatically overwritten.
-                                            if (loopData.getWalletInfo() != null) {
-                                                loopData.getWalletInfo().put(WorldcoinModel.WALLET_BACKUP_FILE, "");
+                                        if (thereWasAnErrorLoadingTheWallet) {
+                                            WalletData loopData = worldcoinController.getModel().getPerWalletModelDataByWalletFilename(actualOrder);
+                                            if (loopData != null) {
+                                                // Clear the backup wallet filename - this prevents it being automatically overwritten.
+                                                if (loopData.getWalletInfo() != null) {
+                                                    loopData.getWalletInfo().put(WorldcoinModel.WALLET_BACKUP_FILE, "");
+                                                }
                                             }
                                         }
                                     }
+                                } finally {
+                                    worldcoinController.getWorldcoinWalletService().endAddingWallets();
                                 }
                             }
                         } catch (NumberFormatException nfe) {
@@ -29,6 +29,7 @@ import org.wallet.Localiser;
 import org.wallet.model.core.StatusEnum;
 import org.wallet.viewsystem.View;
 import org.wallet.viewsystem.ViewSystem;
+import org.wallet.viewsystem.ViewUpdateDispatcher;
 
 /**
  *
@@ -51,6 +52,11 @@ public abstract class AbstractController<C extends BaseController<C>> implements
         return this.baseController.getViewSystem();
     }
 
+    @Override
+    public final ViewUpdateDispatcher getViewUpdateDispatcher() {
+        return this.baseController.getViewUpdateDispatcher();
+    }
+
     @Override
     public final Localiser getLocaliser() {
         return this.baseController.getLocaliser();
@@ -32,6 +32,7 @@ import org.wallet.model.core.StatusEnum;
 import org.wallet.viewsystem.DisplayHint;
 import org.wallet.viewsystem.View;
 import org.wallet.viewsystem.ViewSystem;
+import org.wallet.viewsystem.ViewUpdateDispatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +49,11 @@ public abstract class BaseController<C extends BaseController<C>> implements Con
      */
     private final Collection<ViewSystem> viewSystems;
     
+    /**
+     * The route by which data changes reach the view systems.
+     */
+    private final ViewUpdateDispatcher viewUpdateDispatcher;
+    
     /**
      * The localiser used to localise everything.
      */
@@ -69,6 +75,7 @@ public abstract class BaseController<C extends BaseController<C>> implements Con
         this.applicationDataDirectoryLocator = applicationDataDirectoryLocator;
         
         viewSystems = new CopyOnWriteArrayList<ViewSystem>();
+        viewUpdateDispatcher = new ViewUpdateDispatcher(viewSystems);
         
         // By default localise to English.
         localiser = new Localiser(Locale.ENGLISH);
@@ -80,6 +87,11 @@ public abstract class BaseController<C extends BaseController<C>> implements Con
         return viewSystems;
     }
     
+    @Override
+    public final ViewUpdateDispatcher getViewUpdateDispatcher() {
+        return viewUpdateDispatcher;
+    }
+    
     /**
      * Register a new WorldcoinWalletViewSystem from the list of views that are managed.
      * 
@@ -123,13 +135,12 @@ public abstract class BaseController<C extends BaseController<C>> implements Con
 
     /**
      * Fire that the model data has changed.
+     * The view systems are told straight away as the user is waiting for the change.
      */
     @Override
     public final void fireDataChangedUpdateNow() {
         //log.debug("fireDataChangedUpdateNow called");
-        for (ViewSystem viewSystem : this.getViewSystem()) {
-            viewSystem.fireDataChangedUpdateNow(DisplayHint.COMPLETE_REDRAW);
-        }
+        viewUpdateDispatcher.publishDataChanged(DisplayHint.COMPLETE_REDRAW, true);
     }
     
     /**
@@ -137,9 +148,7 @@ public abstract class BaseController<C extends BaseController<C>> implements Con
      */
     @Override
     public final void fireDataChangedUpdateLater() {
-        for (ViewSystem viewSystem : this.getViewSystem()) {
-            viewSystem.fireDataChangedUpdateLater(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED);
-        }
+        viewUpdateDispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, false);
     }
     
     /**
@@ -30,6 +30,7 @@ import org.wallet.model.Model;
 import org.wallet.model.core.StatusEnum;
 import org.wallet.viewsystem.View;
 import org.wallet.viewsystem.ViewSystem;
+import org.wallet.viewsystem.ViewUpdateDispatcher;
 
 /**
  *
@@ -39,6 +40,8 @@ public interface Controller {
     
     Collection<ViewSystem> getViewSystem();
     
+    ViewUpdateDispatcher getViewUpdateDispatcher();
+    
     Model getModel();
     
     Localiser getLocaliser();
@@ -27,6 +27,7 @@ import org.wallet.message.MessageManager;
 import org.wallet.model.worldcoin.WorldcoinModel;
 import org.wallet.model.worldcoin.WalletBusyListener;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.model.worldcoin.WalletKeyIndex;
 import org.wallet.network.WorldcoinWalletService;
 import org.wallet.viewsystem.View;
 import org.wallet.viewsystem.ViewSystem;
@@ -161,12 +162,11 @@ public class WorldcoinController extends AbstractController<CoreController> impl
 
     /**
      * Method called by downloadListener whenever a block is downloaded.
+     * The view systems are told at most once per update interval.
      */
     public void fireBlockDownloaded() {
         //log.debug("Fire blockdownloaded");
-        for (ViewSystem viewSystem : super.getViewSystem()) {
-            viewSystem.blockDownloaded();
-        }
+        getViewUpdateDispatcher().publishBlockDownloaded();
         
         // Mark all the wallets as dirty as their lastBlockSeenHeight will need changing.
         if (getModel() != null) {
@@ -188,6 +188,7 @@ public class WorldcoinController extends AbstractController<CoreController> impl
     @Override
     public void onCoinsReceived(Wallet wallet, Transaction transaction, BigInteger prevBalance, BigInteger newBalance) {
         //log.debug("onCoinsReceived called");
+        walletTransactionChanged(wallet, transaction);
         for (ViewSystem viewSystem : super.getViewSystem()) {
             viewSystem.onCoinsReceived(wallet, transaction, prevBalance, newBalance);
         }
@@ -196,6 +197,7 @@ public class WorldcoinController extends AbstractController<CoreController> impl
     @Override
     public void onCoinsSent(Wallet wallet, Transaction transaction, BigInteger prevBalance, BigInteger newBalance) {
         //log.debug("onCoinsSent called");
+        walletTransactionChanged(wallet, transaction);
         for (ViewSystem viewSystem : super.getViewSystem()) {
             viewSystem.onCoinsSent(wallet, transaction, prevBalance, newBalance);
         }
@@ -209,9 +211,10 @@ public class WorldcoinController extends AbstractController<CoreController> impl
         // log.debug("onWalletChanged called");
         final int walletIdentityHashCode = System.identityHashCode(wallet);
         for (WalletData loopPerWalletModelData : getModel().getPerWalletModelDataList()) {
-            // Find the wallet object and mark as dirty.
+            // Find the wallet object, mark as dirty and work out its balance again when next asked.
             if (System.identityHashCode(loopPerWalletModelData.getWallet()) == walletIdentityHashCode) {
                 loopPerWalletModelData.setDirty(true);
+                loopPerWalletModelData.invalidateBalance();
                 break;
             }
         }
@@ -222,6 +225,7 @@ public class WorldcoinController extends AbstractController<CoreController> impl
     @Override
     public void onTransactionConfidenceChanged(Wallet wallet, Transaction transaction) {
         //log.debug("onTransactionConfidenceChanged called");
+        walletTransactionChanged(wallet, transaction);
         for (ViewSystem viewSystem : super.getViewSystem()) {
             viewSystem.onTransactionConfidenceChanged(wallet, transaction);
         }
@@ -230,6 +234,7 @@ public class WorldcoinController extends AbstractController<CoreController> impl
     @Override
     public void onKeysAdded(Wallet wallet, List<ECKey> keys) {
         log.debug("Keys added : " + keys.toString());
+        WalletKeyIndex.forWallet(wallet).keysAdded(wallet, keys, getModel().getNetworkParameters());
     }
 
     @Override
@@ -248,6 +253,8 @@ public class WorldcoinController extends AbstractController<CoreController> impl
         for (WalletData loopPerWalletModelData : perWalletModelDataList) {
             if (loopPerWalletModelData.getWallet().equals(wallet)) {
                 loopPerWalletModelData.setDirty(true);
+                loopPerWalletModelData.invalidateBalanceSeries();
+                loopPerWalletModelData.invalidateBalance();
                 log.debug("Marking wallet '" + loopPerWalletModelData.getWalletFilename() + "' as dirty.");
             }
         }
@@ -256,6 +263,20 @@ public class WorldcoinController extends AbstractController<CoreController> impl
         }
     }
 
+    /**
+     * Keep the cached balances and the running balance used by the charts up to date with the wallet.
+     */
+    private void walletTransactionChanged(Wallet wallet, Transaction transaction) {
+        if (getModel() == null) {
+            return;
+        }
+        WalletData perWalletModelData = getModel().getPerWalletModelDataByWallet(wallet);
+        if (perWalletModelData != null) {
+            perWalletModelData.invalidateBalance();
+            perWalletModelData.updateBalanceSeries(transaction);
+        }
+    }
+
     public WorldcoinWalletService getWorldcoinWalletService() {
         return worldcoinWalletService;
     }
@@ -5,6 +5,8 @@ import org.wallet.controller.Controller;
 import org.wallet.model.worldcoin.WalletData;
 import org.wallet.model.core.StatusEnum;
 import org.wallet.network.ReplayManager;
+import org.wallet.network.WorldcoinWalletService;
+import org.wallet.network.WorldcoinWalletPeerGroup;
 import org.wallet.viewsystem.swing.view.panels.SendWorldcoinConfirmPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,14 +81,16 @@ public class WorldcoinPeerEventListener implements PeerEventListener {
     if (transaction != null) {
       try {
         java.util.List<WalletData> perWalletModelDataList = worldcoinController.getModel().getPerWalletModelDataList();
+        boolean relevant = false;
 
         if (perWalletModelDataList != null) {
           for (WalletData perWalletModelData : perWalletModelDataList) {
             Wallet loopWallet = perWalletModelData.getWallet();
             if (loopWallet != null) {
               if (loopWallet.isTransactionRelevant(transaction)) {
+                relevant = true;
                 if (!(transaction.isTimeLocked() && transaction.getConfidence().getSource() != TransactionConfidence.Source.SELF)) {
-                  if (loopWallet.getTransaction(transaction.getHash()) == null) {
+                  if (loopWallet.getTransaction(transaction.getHash()) == null && admitPendingTransaction(transaction)) {
                     log.debug("WorldcoinWallet adding a new pending transaction for the wallet '"
                             + perWalletModelData.getWalletDescription() + "'\n" + transaction.toString());
                     // The perWalletModelData is marked as dirty.
@@ -104,6 +108,14 @@ public class WorldcoinPeerEventListener implements PeerEventListener {
             }
           }
         }
+
+        // Only a peer with the Bloom filter loaded sends just the transactions matching it.
+        if (peer != null && peer.getBloomFilter() != null && worldcoinController.getWorldcoinWalletService() != null) {
+          PeerGroup peerGroup = worldcoinController.getWorldcoinWalletService().getPeerGroup();
+          if (peerGroup instanceof WorldcoinWalletPeerGroup) {
+            ((WorldcoinWalletPeerGroup) peerGroup).getBloomFilterMonitor().transactionReceived(relevant);
+          }
+        }
       } catch (ScriptException e) {
         log.error(e.getMessage(), e);
       } catch (VerificationException e) {
@@ -113,6 +125,11 @@ public class WorldcoinPeerEventListener implements PeerEventListener {
   }
 
 
+  private boolean admitPendingTransaction(Transaction transaction) {
+    WorldcoinWalletService worldcoinWalletService = worldcoinController.getWorldcoinWalletService();
+    return worldcoinWalletService == null || worldcoinWalletService.admitPendingTransaction(transaction);
+  }
+
   @Override
   public List<Message> getData(Peer peer, GetDataMessage m) {
     return null;
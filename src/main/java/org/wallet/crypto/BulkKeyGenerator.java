@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spongycastle.crypto.params.KeyParameter;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.crypto.KeyCrypter;
+import com.google.worldcoin.crypto.KeyCrypterException;
+
+/**
+ * Generates (and optionally encrypts) a batch of new keys using all the processors.
+ *
+ * The batch is split into tasks of KEYS_PER_TASK keys that are run on as many threads as there are processors.
+ * The keys are returned in one list so that they can be added to the wallet in a single addKeys.
+ */
+public class BulkKeyGenerator {
+
+    /**
+     * Number of keys generated by each task. Batches no bigger than this are generated on the calling thread.
+     */
+    public static final int KEYS_PER_TASK = ParallelKeyTasks.KEYS_PER_TASK;
+
+    private final ParallelKeyTasks tasks;
+
+    public BulkKeyGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkKeyGenerator(int numberOfThreads) {
+        this.tasks = new ParallelKeyTasks(numberOfThreads, "BulkKeyGenerator");
+    }
+
+    /**
+     * Generate new keys.
+     *
+     * @param numberOfKeys
+     *            The number of keys to generate
+     * @param keyCrypter
+     *            The KeyCrypter to encrypt the keys with, or null to leave them unencrypted
+     * @param aesKey
+     *            The AES key to encrypt the keys with - derived once by the caller for the whole batch
+     * @return The new keys
+     * @throws KeyCrypterException
+     *             if a key could not be encrypted
+     */
+    public List<ECKey> generateKeys(int numberOfKeys, final KeyCrypter keyCrypter, final KeyParameter aesKey) throws KeyCrypterException {
+        return tasks.run(numberOfKeys, new ParallelKeyTasks.Chunk() {
+            @Override
+            public List<ECKey> run(int start, int end) throws KeyCrypterException {
+                return generateKeysOnThisThread(end - start, keyCrypter, aesKey);
+            }
+        });
+    }
+
+    private List<ECKey> generateKeysOnThisThread(int numberOfKeys, KeyCrypter keyCrypter, KeyParameter aesKey)
+            throws KeyCrypterException {
+        List<ECKey> keys = new ArrayList<ECKey>(numberOfKeys);
+        for (int i = 0; i < numberOfKeys; i++) {
+            ECKey newKey = new ECKey();
+            if (keyCrypter != null) {
+                newKey = newKey.encrypt(keyCrypter, aesKey);
+            }
+            keys.add(newKey);
+        }
+        return keys;
+    }
+}
@@ -15,11 +15,14 @@
  */
 package org.wallet.crypto;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.BufferedBlockCipher;
@@ -27,6 +30,7 @@ import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.PBEParametersGenerator;
 import org.spongycastle.crypto.engines.AESFastEngine;
 import org.spongycastle.crypto.generators.OpenSSLPBEParametersGenerator;
+import org.spongycastle.crypto.io.CipherOutputStream;
 import org.spongycastle.crypto.modes.CBCBlockCipher;
 import org.spongycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.spongycastle.crypto.params.ParametersWithIV;
@@ -200,6 +204,38 @@ public class KeyCrypterOpenSSL {
         }
     }
 
+    /**
+     * Password based encryption using AES - CBC 256 bits, of whatever is written to the returned stream.
+     * 
+     * The cipher text is written to the output stream as it is produced, in the same format as
+     * encrypt(String, CharSequence), so large plain texts do not have to be held in memory.
+     * The returned stream must be closed to write the final block.
+     * 
+     * @param out
+     *            The stream to write the cipher text to
+     * @param password
+     *            The password to use for encryption
+     * @return The stream to write the plain text bytes to
+     * @throws EncrypterDecrypterException
+     */
+    public OutputStream encrypt(OutputStream out, CharSequence password) throws IOException, KeyCrypterException {
+        // Generate salt - each encryption call has a different salt.
+        byte[] salt = new byte[SALT_LENGTH];
+        secureRandom.nextBytes(salt);
+
+        ParametersWithIV key = (ParametersWithIV) getAESPasswordKey(password, salt);
+
+        BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+        cipher.init(true, key);
+
+        // OpenSSL prefixes the salt bytes + encryptedBytes with Salted___ and then base64 encodes it
+        OutputStream base64OutputStream = new Base64OutputStream(out, true);
+        base64OutputStream.write(openSSLSaltedBytes);
+        base64OutputStream.write(salt);
+
+        return new CipherOutputStream(base64OutputStream, cipher);
+    }
+
     /**
      * Decrypt text previously encrypted with this class.
      * 
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spongycastle.crypto.params.KeyParameter;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.crypto.KeyCrypter;
+import com.google.worldcoin.crypto.KeyCrypterException;
+
+/**
+ * Encrypts, decrypts and changes the password of all the keys in a wallet using all the processors.
+ *
+ * Wallet.encrypt and Wallet.decrypt check every key on one thread, which takes minutes for a large wallet.
+ * Here the keys are worked on in parallel chunks, with the AES keys derived once by the caller. The wallet is locked
+ * throughout, and the keychain is only changed once every key has been done, so a failure (for instance a
+ * wrong password) leaves the wallet as it was.
+ *
+ * The keys are then swapped with the wallet's removeKey and addKeys. In between, the wallet's own encrypt or decrypt
+ * is called on the empty keychain to record the change of KeyCrypter.
+ */
+public class KeychainCrypter {
+
+    private final ParallelKeyTasks tasks;
+
+    public KeychainCrypter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public KeychainCrypter(int numberOfThreads) {
+        this.tasks = new ParallelKeyTasks(numberOfThreads, "KeychainCrypter");
+    }
+
+    /**
+     * Encrypt an unencrypted wallet.
+     */
+    public void encrypt(Wallet wallet, final KeyCrypter keyCrypter, final KeyParameter aesKey) throws KeyCrypterException {
+        wallet.getLock().lock();
+        try {
+            final List<ECKey> keys = wallet.getKeys();
+            List<ECKey> encryptedKeys = tasks.run(keys.size(), new ParallelKeyTasks.Chunk() {
+                @Override
+                public List<ECKey> run(int start, int end) throws KeyCrypterException {
+                    List<ECKey> encryptedKeys = new ArrayList<ECKey>(end - start);
+                    for (ECKey key : keys.subList(start, end)) {
+                        encryptedKeys.add(key.isEncrypted() ? key : encryptKey(key, keyCrypter, aesKey));
+                    }
+                    return encryptedKeys;
+                }
+            });
+
+            removeKeys(wallet, keys);
+            // With the keychain empty this only records the KeyCrypter, so that the wallet takes the encrypted keys.
+            wallet.encrypt(keyCrypter, aesKey);
+            wallet.addKeys(encryptedKeys);
+
+            // The encrypted keys are in use so wipe the private keys they came from.
+            for (ECKey key : keys) {
+                if (!key.isEncrypted()) {
+                    key.clearPrivateKey();
+                }
+            }
+        } finally {
+            wallet.getLock().unlock();
+        }
+    }
+
+    /**
+     * Decrypt an encrypted wallet.
+     */
+    public void decrypt(Wallet wallet, final KeyParameter aesKey) throws KeyCrypterException {
+        wallet.getLock().lock();
+        try {
+            final KeyCrypter keyCrypter = wallet.getKeyCrypter();
+            if (keyCrypter == null) {
+                throw new KeyCrypterException("The wallet is not encrypted");
+            }
+            final List<ECKey> keys = wallet.getKeys();
+            List<ECKey> decryptedKeys = tasks.run(keys.size(), new ParallelKeyTasks.Chunk() {
+                @Override
+                public List<ECKey> run(int start, int end) throws KeyCrypterException {
+                    List<ECKey> decryptedKeys = new ArrayList<ECKey>(end - start);
+                    for (ECKey key : keys.subList(start, end)) {
+                        decryptedKeys.add(key.isEncrypted() ? key.decrypt(keyCrypter, aesKey) : key);
+                    }
+                    return decryptedKeys;
+                }
+            });
+
+            removeKeys(wallet, keys);
+            // With the keychain empty this only removes the KeyCrypter, so that the wallet takes the decrypted keys.
+            wallet.decrypt(aesKey);
+            wallet.addKeys(decryptedKeys);
+        } finally {
+            wallet.getLock().unlock();
+        }
+    }
+
+    /**
+     * Change the password of an encrypted wallet. The KeyCrypter is kept.
+     */
+    public void changePassword(Wallet wallet, final KeyParameter currentAesKey, final KeyParameter newAesKey) throws KeyCrypterException {
+        wallet.getLock().lock();
+        try {
+            final KeyCrypter keyCrypter = wallet.getKeyCrypter();
+            if (keyCrypter == null) {
+                throw new KeyCrypterException("The wallet is not encrypted");
+            }
+            final List<ECKey> keys = wallet.getKeys();
+            List<ECKey> reencryptedKeys = tasks.run(keys.size(), new ParallelKeyTasks.Chunk() {
+                @Override
+                public List<ECKey> run(int start, int end) throws KeyCrypterException {
+                    List<ECKey> reencryptedKeys = new ArrayList<ECKey>(end - start);
+                    for (ECKey key : keys.subList(start, end)) {
+                        if (key.isEncrypted()) {
+                            ECKey decryptedKey = key.decrypt(keyCrypter, currentAesKey);
+                            reencryptedKeys.add(encryptKey(decryptedKey, keyCrypter, newAesKey));
+                            decryptedKey.clearPrivateKey();
+                        } else {
+                            reencryptedKeys.add(encryptKey(key, keyCrypter, newAesKey));
+                        }
+                    }
+                    return reencryptedKeys;
+                }
+            });
+
+            removeKeys(wallet, keys);
+            wallet.addKeys(reencryptedKeys);
+        } finally {
+            wallet.getLock().unlock();
+        }
+    }
+
+    private static ECKey encryptKey(ECKey key, KeyCrypter keyCrypter, KeyParameter aesKey) throws KeyCrypterException {
+        ECKey encryptedKey = key.encrypt(keyCrypter, aesKey);
+        if (!ECKey.encryptionIsReversible(key, encryptedKey, keyCrypter, aesKey)) {
+            throw new KeyCrypterException("The key " + key.toString()
+                    + " cannot be successfully decrypted after encryption so aborting wallet encryption.");
+        }
+        return encryptedKey;
+    }
+
+    /**
+     * Take keys out of the wallet's keychain. The wallet must be locked so that no one sees the keychain part done.
+     */
+    private static void removeKeys(Wallet wallet, List<ECKey> keys) {
+        for (ECKey key : keys) {
+            wallet.removeKey(key);
+        }
+    }
+}
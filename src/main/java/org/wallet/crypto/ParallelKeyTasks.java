@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.crypto.KeyCrypterException;
+
+/**
+ * Runs work on a number of keys in chunks, spread over a thread pool, and returns the resulting keys in order.
+ */
+class ParallelKeyTasks {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelKeyTasks.class);
+
+    /**
+     * Number of keys worked on by each task. This many keys or fewer are worked on by the calling thread.
+     */
+    static final int KEYS_PER_TASK = 50;
+
+    interface Chunk {
+        /**
+         * Work on the keys from start (inclusive) to end (exclusive).
+         */
+        List<ECKey> run(int start, int end) throws KeyCrypterException;
+    }
+
+    private final int numberOfThreads;
+    private final String taskName;
+
+    /**
+     * @param numberOfThreads
+     *            Most threads to work at once, the calling thread included
+     * @param taskName
+     *            Name the work is run under on the Scheduler
+     */
+    ParallelKeyTasks(int numberOfThreads, String taskName) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.taskName = taskName;
+    }
+
+    /**
+     * Work on the keys. The chunks are shared out between the calling thread and Scheduler worker threads - if the
+     * Scheduler is busy or has shut down the calling thread does the rest. If a chunk fails no more are started.
+     */
+    List<ECKey> run(final int numberOfKeys, final Chunk chunk) throws KeyCrypterException {
+        if (numberOfKeys <= KEYS_PER_TASK || numberOfThreads == 1) {
+            return chunk.run(0, numberOfKeys);
+        }
+
+        final int numberOfTasks = (numberOfKeys + KEYS_PER_TASK - 1) / KEYS_PER_TASK;
+        final AtomicInteger nextTask = new AtomicInteger(0);
+        final AtomicReferenceArray<List<ECKey>> results = new AtomicReferenceArray<List<ECKey>>(numberOfTasks);
+        Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    for (int task = nextTask.getAndIncrement(); task < numberOfTasks; task = nextTask.getAndIncrement()) {
+                        int start = task * KEYS_PER_TASK;
+                        results.set(task, chunk.run(start, Math.min(start + KEYS_PER_TASK, numberOfKeys)));
+                    }
+                    return null;
+                } catch (Exception e) {
+                    // Stop the other workers taking more chunks.
+                    nextTask.set(numberOfTasks);
+                    throw e;
+                }
+            }
+        };
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            try {
+                for (int i = 1; i < Math.min(numberOfThreads, numberOfTasks); i++) {
+                    futures.add(Scheduler.INSTANCE.submit(taskName, worker));
+                }
+            } catch (RejectedExecutionException ree) {
+                log.debug("The Scheduler is busy or has shut down so the keys are worked on by " + (futures.size() + 1) + " thread(s)");
+            }
+            worker.call();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new KeyCrypterException("Interrupted", ie);
+        } catch (ExecutionException ee) {
+            throw failure(ee.getCause());
+        } catch (Exception e) {
+            throw failure(e);
+        } finally {
+            nextTask.set(numberOfTasks);
+        }
+
+        List<ECKey> keys = new ArrayList<ECKey>(numberOfKeys);
+        for (int task = 0; task < numberOfTasks; task++) {
+            keys.addAll(results.get(task));
+        }
+        return keys;
+    }
+
+    private static KeyCrypterException failure(Throwable cause) {
+        log.error(cause.getClass().getName() + " " + cause.getMessage(), cause);
+        if (cause instanceof KeyCrypterException) {
+            return (KeyCrypterException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new KeyCrypterException(cause.getMessage(), cause);
+    }
+}
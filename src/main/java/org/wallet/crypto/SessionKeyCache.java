@@ -0,0 +1,218 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.spongycastle.crypto.params.KeyParameter;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
+
+import com.google.worldcoin.crypto.KeyCrypter;
+import com.google.worldcoin.crypto.KeyCrypterException;
+
+/**
+ * Keeps the AES key derived from a wallet password for an unlocked session, so that sending, signing, exporting and
+ * importing one after another do not each pay for the (deliberately slow) scrypt key derivation.
+ *
+ * The session is off unless an idle timeout has been set. When it is on, the AES key for each KeyCrypter is kept
+ * together with a salted digest of the password it was derived from. The password still has to be entered - it is
+ * checked against the digest and the kept key is used in place of deriving it again. A key that has not been used for
+ * the idle timeout is wiped, as are all the keys on lock (for instance on exit) and the key of a wallet whose
+ * password has been changed.
+ *
+ * Callers get a copy of the kept key so that wiping it does not affect work in progress.
+ */
+public enum SessionKeyCache {
+    INSTANCE;
+
+    /**
+     * How often idle keys are looked for, in milliseconds.
+     */
+    static final long SWEEP_INTERVAL = 1000;
+
+    private static class Session {
+        final byte[] passwordDigest;
+        final byte[] aesKey;
+        long lastUsed;
+
+        Session(byte[] passwordDigest, byte[] aesKey) {
+            this.passwordDigest = passwordDigest;
+            this.aesKey = aesKey;
+        }
+
+        void wipe() {
+            Arrays.fill(passwordDigest, (byte) 0);
+            Arrays.fill(aesKey, (byte) 0);
+        }
+    }
+
+    private final Map<KeyCrypter, Session> sessions = new HashMap<KeyCrypter, Session>();
+
+    private final byte[] salt = new byte[32];
+
+    private long idleTimeout = 0;
+
+    private ScheduledTask sweep;
+
+    private SessionKeyCache() {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Set how long a derived AES key is kept after it was last used.
+     *
+     * @param idleTimeout
+     *            The idle timeout in milliseconds, or 0 to turn the session off and derive the key every time
+     */
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = Math.max(0, idleTimeout);
+        if (this.idleTimeout == 0) {
+            lock();
+        }
+    }
+
+    public synchronized long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Get the AES key for a password, deriving it if it is not kept for the session.
+     *
+     * @param keyCrypter
+     *            The KeyCrypter of the wallet or key
+     * @param password
+     *            The password entered
+     * @return The AES key. This is the caller's own copy.
+     */
+    public KeyParameter deriveKey(KeyCrypter keyCrypter, CharSequence password) throws KeyCrypterException {
+        byte[] passwordDigest;
+        synchronized (this) {
+            if (idleTimeout == 0) {
+                return keyCrypter.deriveKey(password);
+            }
+            passwordDigest = digest(password);
+            Session session = sessions.get(keyCrypter);
+            if (session != null && MessageDigest.isEqual(passwordDigest, session.passwordDigest)) {
+                session.lastUsed = System.currentTimeMillis();
+                return new KeyParameter(session.aesKey);
+            }
+        }
+
+        // Not kept - derive it without holding up the other users of the cache.
+        KeyParameter aesKey = keyCrypter.deriveKey(password);
+
+        synchronized (this) {
+            if (idleTimeout != 0) {
+                Session session = new Session(passwordDigest, aesKey.getKey().clone());
+                session.lastUsed = System.currentTimeMillis();
+                Session previous = sessions.put(keyCrypter, session);
+                if (previous != null) {
+                    previous.wipe();
+                }
+                startSweep();
+            }
+        }
+        return aesKey;
+    }
+
+    /**
+     * Wipe the kept AES key of a KeyCrypter, for instance when the password of its wallet is changed or the wallet is
+     * closed.
+     */
+    public synchronized void forget(KeyCrypter keyCrypter) {
+        if (keyCrypter == null) {
+            return;
+        }
+        Session session = sessions.remove(keyCrypter);
+        if (session != null) {
+            session.wipe();
+        }
+    }
+
+    /**
+     * Wipe all the kept AES keys.
+     */
+    public synchronized void lock() {
+        for (Session session : sessions.values()) {
+            session.wipe();
+        }
+        sessions.clear();
+        stopSweep();
+    }
+
+    /**
+     * @return true if an AES key is kept for the KeyCrypter
+     */
+    public synchronized boolean isUnlocked(KeyCrypter keyCrypter) {
+        return keyCrypter != null && sessions.containsKey(keyCrypter);
+    }
+
+    synchronized void wipeIdleKeys(long now) {
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (now - session.lastUsed >= idleTimeout) {
+                session.wipe();
+                iterator.remove();
+            }
+        }
+        if (sessions.isEmpty()) {
+            stopSweep();
+        }
+    }
+
+    private void startSweep() {
+        if (sweep != null) {
+            return;
+        }
+        sweep = Scheduler.INSTANCE.scheduleWithFixedDelay("SessionKeyCache", new Runnable() {
+            @Override
+            public void run() {
+                wipeIdleKeys(System.currentTimeMillis());
+            }
+        }, SWEEP_INTERVAL, SWEEP_INTERVAL);
+    }
+
+    private void stopSweep() {
+        if (sweep != null) {
+            sweep.cancel();
+            sweep = null;
+        }
+    }
+
+    private byte[] digest(CharSequence password) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(salt);
+            ByteBuffer passwordBytes = ByteBuffer.allocate(password.length() * 2);
+            passwordBytes.asCharBuffer().put(CharBuffer.wrap(password));
+            messageDigest.update(passwordBytes.array());
+            Arrays.fill(passwordBytes.array(), (byte) 0);
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new KeyCrypterException("Cannot digest password", e);
+        }
+    }
+}
@@ -668,7 +668,7 @@ public enum CurrencyConverter {
     }
     
     private void notifyFoundExchangeRate() {
-        SwingUtilities.invokeLater(new Runnable() {
+        publish("foundExchangeRate", new Runnable() {
             @Override
             public void run() {
                 if (listeners != null) {
@@ -681,7 +681,7 @@ public enum CurrencyConverter {
     }
     
     private void notifyUpdatedExchangeRate() {
-        SwingUtilities.invokeLater(new Runnable() {
+        publish("updatedExchangeRate", new Runnable() {
             @Override
             public void run() {
                 if (listeners != null) {
@@ -693,6 +693,22 @@ public enum CurrencyConverter {
         });
     }
 
+    /**
+     * Tell the listeners on the Swing thread, condensing repeated notifications through the view update dispatcher.
+     */
+    private void publish(String key, final Runnable notification) {
+        if (controller == null) {
+            SwingUtilities.invokeLater(notification);
+            return;
+        }
+        controller.getViewUpdateDispatcher().publish(CurrencyConverter.class.getName() + "." + key, new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(notification);
+            }
+        });
+    }
+
     public Map<String, CurrencyInfo> getCurrencyCodeToInfoMap() {
         return currencyCodeToInfoMap;
     }
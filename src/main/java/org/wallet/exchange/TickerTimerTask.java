@@ -19,7 +19,6 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Collection;
 import java.util.List;
-import java.util.TimerTask;
 
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
@@ -42,9 +41,9 @@ import com.xeiam.xchange.dto.marketdata.Ticker;
 import com.xeiam.xchange.service.polling.PollingMarketDataService;
 
 /**
- * TimerTask to poll currency exchanges for ticker data process
+ * Task to poll currency exchanges for ticker data process, run regularly by the Scheduler
  */
-public class TickerTimerTask extends TimerTask {
+public class TickerTimerTask implements Runnable {
 
     public static final int DEFAULT_REPEAT_RATE = 600000; // milliseconds
 
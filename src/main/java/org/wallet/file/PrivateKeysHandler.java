@@ -15,22 +15,29 @@
  */
 package org.wallet.file;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TimeZone;
@@ -39,6 +46,7 @@ import com.google.worldcoin.crypto.KeyCrypter;
 import com.google.worldcoin.crypto.KeyCrypterException;
 
 import org.wallet.crypto.KeyCrypterOpenSSL;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.utils.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,45 +103,38 @@ public class PrivateKeysHandler {
     public void exportPrivateKeys(File exportFile, Wallet wallet, BlockChain blockChain, boolean performEncryptionOfExportFile, CharSequence exportPassword, CharSequence walletPassword)
             throws IOException, KeyCrypterException {
 
-        // Construct a StringBuffer with the private key export text.
-        StringBuffer outputStringBuffer = new StringBuffer();
-
-        if (!performEncryptionOfExportFile) {
-            outputHeaderComment(outputStringBuffer);
-        }
-        
-        // Get the wallet's private keys and output them.
-        Collection<PrivateKeyAndDate> keyAndDates = createKeyAndDates(wallet, blockChain, walletPassword);
-        outputKeys(outputStringBuffer, keyAndDates);
-        
-        if (!performEncryptionOfExportFile) {
-            outputFooterComment(outputStringBuffer);
+        // Work out the key dates first so that nothing is written if that fails.
+        Collection<ECKey> keychain = wallet.getKeychain();
+        List<ECKey> keys;
+        Map<ECKey, Date> keyDates;
+        synchronized (keychain) {
+            keys = new ArrayList<ECKey>(keychain);
+            keyDates = createKeyDates(wallet, keys, blockChain);
         }
-        
-        String keyOutputText = outputStringBuffer.toString();
 
-        if (performEncryptionOfExportFile) {
-            KeyCrypterOpenSSL keyCrypter = new KeyCrypterOpenSSL();
-            keyOutputText = keyCrypter.encrypt(keyOutputText, exportPassword);
-        }
-        
-        FileWriter fileWriter = null;
-        PrintWriter printWriter = null;
+        // Write the private key export text straight to the file, encrypting it on the way if required.
+        Writer writer = null;
         try {
-            fileWriter = new FileWriter(exportFile);
-            printWriter = new PrintWriter(fileWriter);
-
-            printWriter.write(keyOutputText);
+            if (performEncryptionOfExportFile) {
+                writer = new BufferedWriter(new OutputStreamWriter(keyCrypter.encrypt(new BufferedOutputStream(new FileOutputStream(
+                        exportFile)), exportPassword), KeyCrypterOpenSSL.STRING_ENCODING));
+            } else {
+                writer = new BufferedWriter(new FileWriter(exportFile));
+                outputHeaderComment(writer);
+            }
 
-            // Close the output stream.
-            printWriter.close();
+            // Get the wallet's private keys and output them, decrypting each one as it is written.
+            KeyParameter aesKey = deriveWalletKey(wallet, walletPassword);
+            for (ECKey ecKey : keys) {
+                outputKey(writer, new PrivateKeyAndDate(decryptKey(wallet, ecKey, aesKey), keyDates.get(ecKey)));
+            }
 
-        } finally {
-            if (printWriter != null) {
-                printWriter.close();
+            if (!performEncryptionOfExportFile) {
+                outputFooterComment(writer);
             }
-            if (fileWriter != null) {
-                fileWriter.close();
+        } finally {
+            if (writer != null) {
+                writer.close();
             }
         }
     }
@@ -246,153 +247,163 @@ public class PrivateKeysHandler {
         return parseResults;
     }
 
-    private void outputHeaderComment(StringBuffer out) {
-        out.append("# KEEP YOUR PRIVATE KEYS SAFE !").append("\n");
-        out.append("# Anyone who can read this file can spend your worldcoin.").append("\n");
-        out.append("#").append("\n");
-        out.append("# Format:").append("\n");
-        out.append("#   <Base58 encoded private key>[<whitespace>[<key createdAt>]]").append("\n");
-        out.append("#").append("\n");
-        out.append("#   The Base58 encoded private keys are the same format as").append("\n");
-        out.append("#   produced by the Satoshi client/ sipa dumpprivkey utility.").append("\n");
-        out.append("#").append("\n");
-        out.append("#   Key createdAt is in UTC format as specified by ISO 8601").append("\n");
-        out.append("#   e.g: 2011-12-31T16:42:00Z . The century, 'T' and 'Z' are mandatory").append("\n");
-        out.append("#").append("\n");
+    private void outputHeaderComment(Writer out) throws IOException {
+        out.write("# KEEP YOUR PRIVATE KEYS SAFE !\n");
+        out.write("# Anyone who can read this file can spend your worldcoin.\n");
+        out.write("#\n");
+        out.write("# Format:\n");
+        out.write("#   <Base58 encoded private key>[<whitespace>[<key createdAt>]]\n");
+        out.write("#\n");
+        out.write("#   The Base58 encoded private keys are the same format as\n");
+        out.write("#   produced by the Satoshi client/ sipa dumpprivkey utility.\n");
+        out.write("#\n");
+        out.write("#   Key createdAt is in UTC format as specified by ISO 8601\n");
+        out.write("#   e.g: 2011-12-31T16:42:00Z . The century, 'T' and 'Z' are mandatory\n");
+        out.write("#\n");
     }
 
     private Collection<PrivateKeyAndDate> createKeyAndDates(Wallet wallet, BlockChain blockChain, CharSequence walletPassword) throws KeyCrypterException {
-       // Determine if keys need to be decrypted.
-        boolean decryptionRequired = false;
-
         Collection<ECKey> keychain = wallet.getKeychain();
         Collection<PrivateKeyAndDate> keyAndDates = new ArrayList<PrivateKeyAndDate>();
 
         synchronized (keychain) {
-            if (wallet != null) {
-                // WorldcoinWallet keys need to be decrypted before output.
-                if (wallet.getEncryptionType() != EncryptionType.UNENCRYPTED) {
-                    decryptionRequired = true;
-                }
+            Map<ECKey, Date> keyDates = createKeyDates(wallet, keychain, blockChain);
+
+            KeyParameter aesKey = deriveWalletKey(wallet, walletPassword);
+            for (ECKey ecKey : keychain) {
+                keyAndDates.add(new PrivateKeyAndDate(decryptKey(wallet, ecKey, aesKey), keyDates.get(ecKey)));
             }
+        }
 
-            Set<Transaction> allTransactions = wallet.getTransactions(true);
-            if (keychain != null) {
-                HashMap<ECKey, Date> keyToEarliestUsageDateMap = new HashMap<ECKey, Date>();
-
-                // The date of the last transaction in the wallet - used where
-                // there are no tx for a key.
-                Date overallLastUsageDate = null;
-
-                for (ECKey ecKey : keychain) {
-                    // Find the earliest usage of this key.
-                    Date earliestUsageDate = null;
-                    if (allTransactions != null) {
-                        for (Transaction tx : allTransactions) {
-                            if (transactionUsesKey(tx, ecKey)) {
-                                Date updateTime = tx.getUpdateTime();
-                                if (updateTime != null) {
-                                    if (updateTime != null) {
-                                        if (overallLastUsageDate == null) {
-                                            overallLastUsageDate = updateTime;
-                                        } else {
-                                            overallLastUsageDate = overallLastUsageDate.after(updateTime) ? overallLastUsageDate
-                                                    : updateTime;
-                                        }
-                                    }
-                                    if (earliestUsageDate == null) {
-                                        earliestUsageDate = updateTime;
-                                    } else {
-                                        earliestUsageDate = earliestUsageDate.before(updateTime) ? earliestUsageDate : updateTime;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    if (earliestUsageDate != null) {
-                        keyToEarliestUsageDateMap.put(ecKey, earliestUsageDate);
-                    }
-                }
+        return keyAndDates;
+    }
 
-                // If there are no transactions in the wallet
-                // overallLastUsageDate will be null.
-                // We do not want keys output with a missing date as this forces
-                // a replay from the genesis block
-                // In this case we know there are no transactions up to the date
-                // of the head of the
-                // chain so can set the overallLastUsageDate to then.
-                // On import this will replay from the current chain head to
-                // include any future tx.
-                if (overallLastUsageDate == null) {
-                    if (blockChain != null) {
-                        StoredBlock chainHead = blockChain.getChainHead();
-                        if (chainHead != null) {
-                            Block header = chainHead.getHeader();
-                            if (header != null) {
-                                long timeSeconds = header.getTimeSeconds();
-                                if (timeSeconds != 0) {
-                                    overallLastUsageDate = new Date(timeSeconds * NUMBER_OF_MILLISECONDS_IN_A_SECOND);
-                                }
-                            }
-                        }
-                    }
+    /**
+     * Work out the date to export with each key - the earliest transaction using it.
+     * 
+     * The transactions are gone through once, looking up the keys each one uses by public key hash (outputs) and
+     * public key (inputs). Keys without transactions get the date of the last transaction in the wallet, or the date
+     * of the chain head if there are none.
+     */
+    private Map<ECKey, Date> createKeyDates(Wallet wallet, Collection<ECKey> keychain, BlockChain blockChain) {
+        Map<ByteBuffer, ECKey> keysByPubKeyHash = new HashMap<ByteBuffer, ECKey>();
+        Map<ByteBuffer, ECKey> keysByPubKey = new HashMap<ByteBuffer, ECKey>();
+        for (ECKey ecKey : keychain) {
+            keysByPubKeyHash.put(ByteBuffer.wrap(ecKey.getPubKeyHash()), ecKey);
+            keysByPubKey.put(ByteBuffer.wrap(ecKey.getPubKey()), ecKey);
+        }
+
+        HashMap<ECKey, Date> keyToEarliestUsageDateMap = new HashMap<ECKey, Date>();
+
+        // The date of the last transaction in the wallet - used where
+        // there are no tx for a key.
+        Date overallLastUsageDate = null;
+
+        Set<Transaction> allTransactions = wallet.getTransactions(true);
+        if (allTransactions != null) {
+            for (Transaction tx : allTransactions) {
+                Date updateTime = tx.getUpdateTime();
+                if (updateTime == null) {
+                    continue;
                 }
 
-                KeyCrypter walletKeyCrypter = wallet.getKeyCrypter();
-                KeyParameter aesKey = null;
-                if (decryptionRequired) {
-                    aesKey = walletKeyCrypter.deriveKey(walletPassword);
+                Collection<ECKey> keysUsed = keysUsedByTransaction(tx, keysByPubKeyHash, keysByPubKey);
+                if (keysUsed.isEmpty()) {
+                    continue;
                 }
-                
-                for (ECKey ecKey : keychain) {
+
+                overallLastUsageDate = (overallLastUsageDate != null && overallLastUsageDate.after(updateTime)) ? overallLastUsageDate
+                        : updateTime;
+                for (ECKey ecKey : keysUsed) {
                     Date earliestUsageDate = keyToEarliestUsageDateMap.get(ecKey);
-                    if (earliestUsageDate == null) {
-                        if (overallLastUsageDate != null) {
-                            // Put the last tx date for the whole wallet in for
-                            // this key - there are no tx for this key so this
-                            // will be early enough.
-                            earliestUsageDate = overallLastUsageDate;
-                        }
+                    if (earliestUsageDate == null || updateTime.before(earliestUsageDate)) {
+                        keyToEarliestUsageDateMap.put(ecKey, updateTime);
                     }
-                    if (decryptionRequired) {
-                        // Create a new decrypted key holding the private key.
-                        ECKey decryptedKey = ecKey.decrypt(walletKeyCrypter, aesKey);
-                        keyAndDates.add(new PrivateKeyAndDate(decryptedKey, earliestUsageDate));
-                    } else {
-                        keyAndDates.add(new PrivateKeyAndDate(ecKey, earliestUsageDate));
+                }
+            }
+        }
+
+        // If there are no transactions in the wallet
+        // overallLastUsageDate will be null.
+        // We do not want keys output with a missing date as this forces
+        // a replay from the genesis block
+        // In this case we know there are no transactions up to the date
+        // of the head of the
+        // chain so can set the overallLastUsageDate to then.
+        // On import this will replay from the current chain head to
+        // include any future tx.
+        if (overallLastUsageDate == null) {
+            if (blockChain != null) {
+                StoredBlock chainHead = blockChain.getChainHead();
+                if (chainHead != null) {
+                    Block header = chainHead.getHeader();
+                    if (header != null) {
+                        long timeSeconds = header.getTimeSeconds();
+                        if (timeSeconds != 0) {
+                            overallLastUsageDate = new Date(timeSeconds * NUMBER_OF_MILLISECONDS_IN_A_SECOND);
+                        }
                     }
                 }
             }
         }
 
-        return keyAndDates;
+        if (overallLastUsageDate != null) {
+            for (ECKey ecKey : keychain) {
+                if (!keyToEarliestUsageDateMap.containsKey(ecKey)) {
+                    // Put the last tx date for the whole wallet in for
+                    // this key - there are no tx for this key so this
+                    // will be early enough.
+                    keyToEarliestUsageDateMap.put(ecKey, overallLastUsageDate);
+                }
+            }
+        }
+        return keyToEarliestUsageDateMap;
     }
 
-    private void outputKeys(StringBuffer out, Collection<PrivateKeyAndDate> keyAndDates) {
-        for (PrivateKeyAndDate privateKeyAndDate : keyAndDates) {
-            DumpedPrivateKey dumpedPrivateKey = privateKeyAndDate.getKey().getPrivateKeyEncoded(networkParameters);
-            String keyOutputString = dumpedPrivateKey.toString();
+    /**
+     * Derive the AES key to decrypt the wallet keys with, or null if the wallet is not encrypted.
+     */
+    private KeyParameter deriveWalletKey(Wallet wallet, CharSequence walletPassword) throws KeyCrypterException {
+        // WorldcoinWallet keys need to be decrypted before output.
+        if (wallet.getEncryptionType() == EncryptionType.UNENCRYPTED) {
+            return null;
+        }
+        return SessionKeyCache.INSTANCE.deriveKey(wallet.getKeyCrypter(), walletPassword);
+    }
 
-            if (privateKeyAndDate.getDate() != null) {
-                keyOutputString = keyOutputString + SEPARATOR + formatter.format(privateKeyAndDate.getDate());
-            }
-            out.append(keyOutputString).append("\n");
+    private ECKey decryptKey(Wallet wallet, ECKey ecKey, KeyParameter aesKey) throws KeyCrypterException {
+        if (aesKey == null) {
+            return ecKey;
         }
+        // Create a new decrypted key holding the private key.
+        return ecKey.decrypt(wallet.getKeyCrypter(), aesKey);
     }
 
-    private void outputFooterComment(StringBuffer out) {
-        out.append("# End of private keys").append("\n");
+    private void outputKey(Writer out, PrivateKeyAndDate privateKeyAndDate) throws IOException {
+        DumpedPrivateKey dumpedPrivateKey = privateKeyAndDate.getKey().getPrivateKeyEncoded(networkParameters);
+        String keyOutputString = dumpedPrivateKey.toString();
+
+        if (privateKeyAndDate.getDate() != null) {
+            keyOutputString = keyOutputString + SEPARATOR + formatter.format(privateKeyAndDate.getDate());
+        }
+        out.write(keyOutputString);
+        out.write("\n");
+    }
+
+    private void outputFooterComment(Writer out) throws IOException {
+        out.write("# End of private keys\n");
     }
 
     public Date calculateReplayDate(Collection<PrivateKeyAndDate> privateKeyAndDates, Wallet wallet) {
         boolean thereWereMissingDates = false;
         Date replayDate =  new Date(DateUtils.nowUtc().getMillis());
+        Set<ByteBuffer> walletPublicKeys = wallet == null ? null : getPublicKeys(wallet.getKeychain());
         for (PrivateKeyAndDate loop : privateKeyAndDates) {
             if (loop.getDate() == null) {
                 thereWereMissingDates = true;
             } else {
                 if (loop.getKey() != null) {
-                    if (wallet != null && !keyChainContainsPrivateKey(wallet.getKeychain(), loop.getKey())) {
+                    if (wallet != null && !walletPublicKeys.contains(ByteBuffer.wrap(loop.getKey().getPubKey()))) {
                         replayDate = replayDate.before(loop.getDate()) ? replayDate : loop.getDate();
                     }
                 }
@@ -407,33 +418,36 @@ public class PrivateKeysHandler {
     }
 
     /**
-     * This method is here because there is no equals on ECKey.
+     * The public keys of a keychain, for checking whether a key is in it - there is no equals on ECKey.
+     * The public key is used as the private keys in the keychain may be encrypted.
      */
-    private boolean keyChainContainsPrivateKey(Collection<ECKey> keyChain, ECKey keyToAdd) {
-        if (keyChain == null || keyToAdd == null) {
-            return false;
-        } else {
+    private Set<ByteBuffer> getPublicKeys(Collection<ECKey> keyChain) {
+        Set<ByteBuffer> publicKeys = new HashSet<ByteBuffer>();
+        if (keyChain != null) {
             for (ECKey loopKey : keyChain) {
-                if (Arrays.equals(keyToAdd.getPrivKeyBytes(), loopKey.getPrivKeyBytes())) {
-                    return true;
-                }
+                publicKeys.add(ByteBuffer.wrap(loopKey.getPubKey()));
             }
-            return false;
         }
+        return publicKeys;
     }
 
-    private boolean transactionUsesKey(Transaction transaction, ECKey ecKey) {
+    /**
+     * The keys a transaction pays to (by public key hash) or spends from (by public key).
+     */
+    private Collection<ECKey> keysUsedByTransaction(Transaction transaction, Map<ByteBuffer, ECKey> keysByPubKeyHash,
+            Map<ByteBuffer, ECKey> keysByPubKey) {
+        Collection<ECKey> keysUsed = new ArrayList<ECKey>(1);
         for (TransactionOutput output : transaction.getOutputs()) {
             // This is not thread safe as a key could be removed between the
             // call to isMine and receive.
             try {
-                byte[] pubkeyHash = output.getScriptPubKey().getPubKeyHash();
-                if (Arrays.equals(ecKey.getPubKeyHash(), pubkeyHash)) {
-                    return true;
+                ECKey ecKey = keysByPubKeyHash.get(ByteBuffer.wrap(output.getScriptPubKey().getPubKeyHash()));
+                if (ecKey != null) {
+                    keysUsed.add(ecKey);
                 }
             } catch (ScriptException e) {
                 log.error("Could not parse tx output script: {}", e.toString());
-                return false;
+                return keysUsed;
             }
         }
 
@@ -441,16 +455,16 @@ public class PrivateKeysHandler {
             // This is not thread safe as a key could be removed between the
             // call to isPubKeyMine and receive.
             try {
-                byte[] pubkey = input.getScriptSig().getPubKey();
-                if (Arrays.equals(ecKey.getPubKey(), pubkey)) {
-                    return true;
+                ECKey ecKey = keysByPubKey.get(ByteBuffer.wrap(input.getScriptSig().getPubKey()));
+                if (ecKey != null) {
+                    keysUsed.add(ecKey);
                 }
             } catch (ScriptException e) {
                 log.error("Could not parse tx output script: {}", e.toString());
-                return false;
+                return keysUsed;
             }
         }
-        return false;
+        return keysUsed;
     }
 
     private void processLine(String line, ArrayList<PrivateKeyAndDate> parseResults) {
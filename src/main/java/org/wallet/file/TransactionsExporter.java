@@ -0,0 +1,224 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.model.worldcoin.WalletData;
+import org.wallet.model.worldcoin.WalletTableData;
+import org.wallet.model.worldcoin.WorldcoinModel;
+
+import com.google.worldcoin.core.Transaction;
+import com.googlecode.jcsv.CSVStrategy;
+import com.googlecode.jcsv.writer.CSVWriter;
+import com.googlecode.jcsv.writer.internal.CSVWriterBuilder;
+
+/**
+ * Writes the transactions of a wallet to a CSV file, newest first.
+ *
+ * The transactions are put in date order using their timestamps only, and each row is made and written as it is
+ * reached through a large buffer, so the rows for the whole wallet are never held in memory at once. Progress is
+ * reported to a listener and the export can be cancelled from another thread.
+ */
+public class TransactionsExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionsExporter.class);
+
+    public interface ProgressListener {
+        /**
+         * Called on the exporting thread every PROGRESS_INTERVAL rows and when the last row has been written.
+         */
+        void progress(int rowsWritten, int totalRows);
+    }
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final int PROGRESS_INTERVAL = 500;
+
+    /**
+     * Bits of a sort key used for the position of the transaction. The rest are for the time.
+     */
+    private static final int POSITION_BITS = 20;
+    private static final long LATEST_TIME = (1L << (63 - POSITION_BITS)) - 1;
+
+    private final WorldcoinController worldcoinController;
+
+    private volatile boolean cancelled = false;
+
+    public TransactionsExporter(WorldcoinController worldcoinController) {
+        this.worldcoinController = worldcoinController;
+    }
+
+    /**
+     * Stop the export before the next row is written. A partly written new file is deleted.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Export the transactions of a wallet.
+     *
+     * @param walletData
+     *            The wallet to export
+     * @param exportFile
+     *            The file to write - appended to if it exists
+     * @param progressListener
+     *            The listener to tell of progress, or null
+     * @return true if the export finished, false if it was cancelled
+     */
+    public boolean export(WalletData walletData, File exportFile, ProgressListener progressListener) throws IOException {
+        if (cancelled) {
+            return false;
+        }
+        WorldcoinModel model = worldcoinController.getModel();
+
+        Transaction[] transactions = new Transaction[0];
+        if (walletData != null && walletData.getWallet() != null) {
+            Set<Transaction> walletTransactions = walletData.getWallet().getTransactions(false);
+            if (walletTransactions != null) {
+                transactions = walletTransactions.toArray(new Transaction[walletTransactions.size()]);
+            }
+        }
+
+        // Sort by date descending.
+        long[] times = new long[transactions.length];
+        for (int i = 0; i < transactions.length; i++) {
+            Date date = model.createDate(worldcoinController, transactions[i]);
+            times[i] = date == null ? 0 : date.getTime();
+        }
+        int[] order = sortByDateDescending(times);
+        times = null;
+
+        boolean existedBefore = exportFile.exists();
+        Writer writer = null;
+        boolean finished = false;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(exportFile, true), "UTF-8"), BUFFER_SIZE);
+
+            // Write the header row.
+            WalletTableDataHeaderEntryConverter headerConverter = new WalletTableDataHeaderEntryConverter();
+            headerConverter.setWorldcoinController(worldcoinController);
+            CSVWriter<WalletTableData> csvHeaderWriter = new CSVWriterBuilder<WalletTableData>(writer).strategy(CSVStrategy.UK_DEFAULT)
+                    .entryConverter(headerConverter).build();
+            csvHeaderWriter.write(new WalletTableData(null));
+
+            // Write the body of the CSV file.
+            WalletTableDataEntryConverter converter = new WalletTableDataEntryConverter();
+            converter.setWorldcoinController(worldcoinController);
+            CSVWriter<WalletTableData> csvWriter = new CSVWriterBuilder<WalletTableData>(writer).strategy(CSVStrategy.UK_DEFAULT)
+                    .entryConverter(converter).build();
+
+            for (int i = 0; i < order.length; i++) {
+                if (cancelled) {
+                    return false;
+                }
+                Transaction transaction = transactions[order[i]];
+                // Let the transaction go once it is written.
+                transactions[order[i]] = null;
+                csvWriter.write(model.createWalletTableData(worldcoinController, walletData, transaction));
+
+                if (progressListener != null && ((i + 1) % PROGRESS_INTERVAL == 0)) {
+                    progressListener.progress(i + 1, order.length);
+                }
+            }
+            if (progressListener != null) {
+                progressListener.progress(order.length, order.length);
+            }
+            finished = true;
+            return true;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            if (!finished && !existedBefore && exportFile.exists()) {
+                if (!exportFile.delete()) {
+                    log.error("Could not delete the partly written export file '" + exportFile.getAbsolutePath() + "'");
+                }
+            }
+        }
+    }
+
+    /**
+     * Work out the order of transactions with the given times, newest first. Transactions without a time (0) go first,
+     * as they always have in the export.
+     *
+     * The times and positions are packed into sort keys so that they can be sorted as primitives.
+     *
+     * @return The positions of the transactions in order
+     */
+    static int[] sortByDateDescending(final long[] times) {
+        int numberOfTransactions = times.length;
+        int[] order = new int[numberOfTransactions];
+
+        if (numberOfTransactions <= (1 << POSITION_BITS)) {
+            long[] keys = new long[numberOfTransactions];
+            for (int i = 0; i < numberOfTransactions; i++) {
+                keys[i] = (rank(times[i]) << POSITION_BITS) | i;
+            }
+            Arrays.sort(keys);
+            long positionMask = (1L << POSITION_BITS) - 1;
+            for (int i = 0; i < numberOfTransactions; i++) {
+                order[i] = (int) (keys[i] & positionMask);
+            }
+        } else {
+            // Too many to pack - sort the positions instead.
+            Integer[] positions = new Integer[numberOfTransactions];
+            for (int i = 0; i < numberOfTransactions; i++) {
+                positions[i] = i;
+            }
+            Arrays.sort(positions, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    long rank1 = rank(times[o1]);
+                    long rank2 = rank(times[o2]);
+                    return rank1 < rank2 ? -1 : (rank1 > rank2 ? 1 : o1.compareTo(o2));
+                }
+            });
+            for (int i = 0; i < numberOfTransactions; i++) {
+                order[i] = positions[i];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Sort rank of a time - lower is earlier in the export.
+     */
+    private static long rank(long time) {
+        if (time <= 0) {
+            // Missing date.
+            return 0;
+        }
+        return LATEST_TIME - Math.min(time, LATEST_TIME - 1);
+    }
+}
@@ -38,6 +38,12 @@ public class Message {
      */
     private double percentComplete;
 
+    /**
+     * Where the message comes from, so that the progress messages of different sources are not collapsed together.
+     * null if not known, in which case only progress messages with the same text are.
+     */
+    private String source;
+
     public Message(String text) {
         this(text, true, NOT_RELEVANT_PERCENTAGE_COMPLETE);
     }
@@ -134,4 +140,12 @@ public class Message {
     public void setShowInMessagesTab(boolean showInMessagesTab) {
         this.showInMessagesTab = showInMessagesTab;
     }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
 }
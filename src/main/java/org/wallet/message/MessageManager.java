@@ -15,46 +15,119 @@
  */
 package org.wallet.message;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
 
 /**
  * Enum singleton to manage WorldcoinWallet (and in future system wide) messages.
+ * 
+ * Messages are stored in a fixed size ring buffer and the MessageListeners are told about them, in order, by a single
+ * dispatch task run by the Scheduler so that the thread adding a message (often a Peer thread) never waits on the UI.
+ * Consecutive progress messages are collapsed so that the listeners see the latest progress rather than
+ * every intermediate step.
  * @author jim
  */
 public enum MessageManager {
     INSTANCE;
 
+    private static final Logger log = LoggerFactory.getLogger(MessageManager.class);
+
     public static final int MAXIMUM_NUMBER_OF_MESSAGES_STORED = 512;
     
+    public static final String DISPATCH_TASK_NAME = "MessageManager";
+    
     /**
-     * Queue containing Messages received.
+     * Ring buffer containing the Messages received.
      */
-    private LinkedBlockingQueue<Message> messageQueue;
+    private final Message[] messages;
+    
+    /**
+     * Position of the oldest message in the ring buffer.
+     */
+    private int firstMessage;
+    
+    private int numberOfMessages;
+    
+    /**
+     * Messages waiting to be sent to the message listeners. Guarded by the messages lock, as are the ring buffer and the
+     * dispatch state, so that the listeners get the messages in the order they are stored.
+     */
+    private final ArrayDeque<Message> messagesToDispatch;
+    
+    private boolean dispatchScheduled;
+    
+    private boolean shutdown;
     
     /**
      * Message listeners.
      */
-    private Collection<MessageListener> messageListeners;
+    private final Collection<MessageListener> messageListeners;
     
     MessageManager() {
-        messageQueue = new LinkedBlockingQueue<Message>(MAXIMUM_NUMBER_OF_MESSAGES_STORED);
-        messageListeners = new ArrayList<MessageListener>();
+        messages = new Message[MAXIMUM_NUMBER_OF_MESSAGES_STORED];
+        messagesToDispatch = new ArrayDeque<Message>();
+        messageListeners = new CopyOnWriteArrayList<MessageListener>();
     }
     
-    synchronized public void addMessage(Message message) {
-        if (message != null) {
-            boolean wasAdded = messageQueue.offer(message);
-            if (!wasAdded) {
-                // remove the oldest message
-                messageQueue.poll();
-                
-                // add it again
-                messageQueue.offer(message);
+    /**
+     * Add a message. Returns straight away - the message listeners are told by the dispatch task.
+     */
+    public void addMessage(Message message) {
+        if (message == null) {
+            return;
+        }
+        
+        boolean dispatchHere = false;
+        synchronized (messages) {
+            Message lastMessage = numberOfMessages == 0 ? null : messages[(firstMessage + numberOfMessages - 1) % messages.length];
+            if (canCollapse(lastMessage, message)) {
+                messages[(firstMessage + numberOfMessages - 1) % messages.length] = message;
+            } else if (numberOfMessages < messages.length) {
+                messages[(firstMessage + numberOfMessages) % messages.length] = message;
+                numberOfMessages++;
+            } else {
+                // Overwrite the oldest message.
+                messages[firstMessage] = message;
+                firstMessage = (firstMessage + 1) % messages.length;
+            }
+            
+            if (shutdown) {
+                return;
+            }
+            if (canCollapse(messagesToDispatch.peekLast(), message)) {
+                messagesToDispatch.pollLast();
+            } else if (messagesToDispatch.size() >= MAXIMUM_NUMBER_OF_MESSAGES_STORED) {
+                // The listeners are not keeping up - drop the oldest message.
+                messagesToDispatch.pollFirst();
+            }
+            messagesToDispatch.offerLast(message);
+            
+            if (!dispatchScheduled) {
+                dispatchScheduled = true;
+                try {
+                    Scheduler.INSTANCE.submit(DISPATCH_TASK_NAME, new Runnable() {
+                        @Override
+                        public void run() {
+                            dispatchMessages();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The Scheduler is busy or has shut down on exit - tell the listeners on this thread.
+                    dispatchHere = true;
+                }
             }
-            notifyMessageListeners(message);
+        }
+        if (dispatchHere) {
+            dispatchMessages();
         }
     }
     
@@ -62,15 +135,85 @@ public enum MessageManager {
         messageListeners.add(messageListener);
     }
     
+    public void removeMessageListener(MessageListener messageListener) {
+        messageListeners.remove(messageListener);
+    }
+    
+    /**
+     * Stop dispatching messages. Messages added afterwards are stored but the listeners are not told about them.
+     */
+    public void shutdown() {
+        synchronized (messages) {
+            shutdown = true;
+            messagesToDispatch.clear();
+        }
+    }
+    
+    /**
+     * A progress message replaces the previous progress message from the same source and shown in the same places,
+     * unless that one marked the start or end of the progress.
+     */
+    static boolean canCollapse(Message previousMessage, Message message) {
+        if (previousMessage == null || !isProgressMessage(previousMessage) || !isProgressMessage(message)) {
+            return false;
+        }
+        if (!isSameSource(previousMessage, message) || previousMessage.isShowInStatusBar() != message.isShowInStatusBar()
+                || previousMessage.isShowInMessagesTab() != message.isShowInMessagesTab()) {
+            return false;
+        }
+        return previousMessage.getPercentComplete() > 0 && previousMessage.getPercentComplete() < 100;
+    }
+    
+    private static boolean isSameSource(Message previousMessage, Message message) {
+        if (previousMessage.getSource() != null || message.getSource() != null) {
+            return previousMessage.getSource() != null && previousMessage.getSource().equals(message.getSource());
+        }
+        return previousMessage.getText() == null ? message.getText() == null : previousMessage.getText().equals(message.getText());
+    }
+    
+    private static boolean isProgressMessage(Message message) {
+        return message.getPercentComplete() != Message.NOT_RELEVANT_PERCENTAGE_COMPLETE;
+    }
+    
+    /**
+     * Tell the listeners about the messages waiting, until there are none left.
+     */
+    private void dispatchMessages() {
+        while (true) {
+            Message message;
+            synchronized (messages) {
+                message = messagesToDispatch.pollFirst();
+                if (message == null) {
+                    dispatchScheduled = false;
+                    return;
+                }
+            }
+            notifyMessageListeners(message);
+        }
+    }
+    
     private void notifyMessageListeners(Message message) {
         for (MessageListener listener : messageListeners) {
             if (listener != null) {
-                listener.newMessageReceived(message);
+                try {
+                    listener.newMessageReceived(message);
+                } catch (RuntimeException e) {
+                    log.error(e.getClass().getName() + " " + e.getMessage(), e);
+                }
             }
         }
     }
     
+    /**
+     * @return A copy of the stored messages, oldest first
+     */
     public Collection<Message> getMessages() {
-        return Collections.unmodifiableCollection(messageQueue);
+        synchronized (messages) {
+            List<Message> copy = new ArrayList<Message>(numberOfMessages);
+            for (int i = 0; i < numberOfMessages; i++) {
+                copy.add(messages[(firstMessage + i) % messages.length]);
+            }
+            return Collections.unmodifiableCollection(copy);
+        }
     }   
 }
@@ -0,0 +1,349 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model.worldcoin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The receiving or sending addresses of a wallet, in display order, indexed for fast lookup.
+ *
+ * Lookups by address are hash lookups and the row of an entry is found from an index rather than a scan.
+ * Searching by the start of a label or an address uses a sorted index that is rebuilt the first time it
+ * is needed after the address book has changed.
+ *
+ * All changes to the list keep the indexes up to date. The label of an entry in the address book
+ * should be changed with updateLabel so that the search index sees the change.
+ */
+public class WalletAddressBook extends ArrayList<WalletAddressBookData> {
+
+    private static final long serialVersionUID = 6215403742091830617L;
+
+    /**
+     * First entry for each address.
+     */
+    private final Map<String, WalletAddressBookData> addressIndex = new HashMap<String, WalletAddressBookData>();
+
+    /**
+     * True if an address has been added more than once.
+     */
+    private boolean hasDuplicateAddresses = false;
+
+    /**
+     * Position of each entry - entries are compared by identity as their labels change.
+     */
+    private final Map<WalletAddressBookData, Integer> positionIndex = new IdentityHashMap<WalletAddressBookData, Integer>();
+    private boolean positionIndexValid = true;
+
+    /**
+     * Sorted lower case labels and addresses, and the entry each comes from.
+     */
+    private String[] searchKeys;
+    private WalletAddressBookData[] searchEntries;
+
+    /**
+     * Incremented whenever an entry or a label changes.
+     */
+    private int changeCount = 0;
+
+    public WalletAddressBook() {
+        super();
+    }
+
+    public WalletAddressBook(Collection<? extends WalletAddressBookData> addresses) {
+        super(addresses);
+        rebuildIndexes();
+    }
+
+    /**
+     * @return The first entry for the address, or null if the address is not in the address book
+     */
+    public WalletAddressBookData lookup(String address) {
+        if (address == null) {
+            return null;
+        }
+        return addressIndex.get(address);
+    }
+
+    public boolean containsAddress(String address) {
+        return lookup(address) != null;
+    }
+
+    /**
+     * @return The position of the first entry for the address, or -1 if the address is not in the address book
+     */
+    public int indexOfAddress(String address) {
+        WalletAddressBookData addressBookData = lookup(address);
+        if (addressBookData == null) {
+            return -1;
+        }
+        return positionOf(addressBookData);
+    }
+
+    /**
+     * @return A count that changes whenever the address book changes, so that search results can be reused until then
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Change the label of an entry, keeping the search index up to date.
+     */
+    public void updateLabel(WalletAddressBookData addressBookData, String label) {
+        addressBookData.setLabel(label);
+        changed();
+    }
+
+    /**
+     * Find the entries with a label or an address that starts with the prefix, ignoring case.
+     *
+     * @param prefix
+     *            The start of the label or address. A null or empty prefix matches every entry.
+     * @return The matching entries, in address book order
+     */
+    public List<WalletAddressBookData> search(String prefix) {
+        if (prefix == null || prefix.length() == 0) {
+            return new ArrayList<WalletAddressBookData>(this);
+        }
+        if (searchKeys == null) {
+            rebuildSearchIndex();
+        }
+
+        String lowerCasePrefix = prefix.toLowerCase(Locale.ENGLISH);
+        int start = Arrays.binarySearch(searchKeys, lowerCasePrefix);
+        if (start < 0) {
+            start = -start - 1;
+        }
+
+        // An entry can match on both its label and its address so collect them by identity.
+        Map<WalletAddressBookData, Integer> matches = new IdentityHashMap<WalletAddressBookData, Integer>();
+        for (int i = start; i < searchKeys.length && searchKeys[i].startsWith(lowerCasePrefix); i++) {
+            WalletAddressBookData match = searchEntries[i];
+            if (!matches.containsKey(match)) {
+                matches.put(match, positionOf(match));
+            }
+        }
+
+        final Map<WalletAddressBookData, Integer> matchPositions = matches;
+        List<WalletAddressBookData> toReturn = new ArrayList<WalletAddressBookData>(matches.keySet());
+        Collections.sort(toReturn, new Comparator<WalletAddressBookData>() {
+            @Override
+            public int compare(WalletAddressBookData first, WalletAddressBookData second) {
+                return matchPositions.get(first).compareTo(matchPositions.get(second));
+            }
+        });
+        return toReturn;
+    }
+
+    @Override
+    public boolean add(WalletAddressBookData addressBookData) {
+        super.add(addressBookData);
+        indexAddress(addressBookData);
+        if (positionIndexValid && !positionIndex.containsKey(addressBookData)) {
+            positionIndex.put(addressBookData, size() - 1);
+        }
+        changed();
+        return true;
+    }
+
+    @Override
+    public void add(int index, WalletAddressBookData addressBookData) {
+        super.add(index, addressBookData);
+        indexAddress(addressBookData);
+        invalidatePositions();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends WalletAddressBookData> addresses) {
+        boolean changed = super.addAll(addresses);
+        rebuildIndexes();
+        return changed;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends WalletAddressBookData> addresses) {
+        boolean changed = super.addAll(index, addresses);
+        rebuildIndexes();
+        return changed;
+    }
+
+    @Override
+    public WalletAddressBookData set(int index, WalletAddressBookData addressBookData) {
+        WalletAddressBookData previous = super.set(index, addressBookData);
+        if (previous != null && addressIndex.get(previous.getAddress()) == previous) {
+            // The replaced entry may not be the only one for its address.
+            rebuildIndexes();
+        } else {
+            indexAddress(addressBookData);
+            invalidatePositions();
+        }
+        return previous;
+    }
+
+    @Override
+    public WalletAddressBookData remove(int index) {
+        WalletAddressBookData removed = super.remove(index);
+        unindexAddress(removed);
+        invalidatePositions();
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        boolean changed = super.remove(object);
+        if (changed) {
+            rebuildIndexes();
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> addresses) {
+        boolean changed = super.removeAll(addresses);
+        if (changed) {
+            rebuildIndexes();
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> addresses) {
+        boolean changed = super.retainAll(addresses);
+        if (changed) {
+            rebuildIndexes();
+        }
+        return changed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        rebuildIndexes();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        super.removeRange(fromIndex, toIndex);
+        rebuildIndexes();
+    }
+
+    private void indexAddress(WalletAddressBookData addressBookData) {
+        if (addressBookData == null || addressBookData.getAddress() == null) {
+            return;
+        }
+        if (addressIndex.containsKey(addressBookData.getAddress())) {
+            hasDuplicateAddresses = true;
+        } else {
+            addressIndex.put(addressBookData.getAddress(), addressBookData);
+        }
+    }
+
+    private void unindexAddress(WalletAddressBookData addressBookData) {
+        if (addressBookData == null || addressBookData.getAddress() == null) {
+            return;
+        }
+        if (addressIndex.get(addressBookData.getAddress()) == addressBookData) {
+            if (hasDuplicateAddresses) {
+                // Another entry for the address may now be the first.
+                rebuildIndexes();
+            } else {
+                addressIndex.remove(addressBookData.getAddress());
+            }
+        }
+    }
+
+    private void invalidatePositions() {
+        positionIndexValid = false;
+        positionIndex.clear();
+        changed();
+    }
+
+    private void changed() {
+        searchKeys = null;
+        searchEntries = null;
+        changeCount++;
+    }
+
+    private int positionOf(WalletAddressBookData addressBookData) {
+        if (!positionIndexValid) {
+            // Walk backwards so that the first of any duplicated entries wins.
+            for (int i = size() - 1; i >= 0; i--) {
+                positionIndex.put(get(i), i);
+            }
+            positionIndexValid = true;
+        }
+        Integer position = positionIndex.get(addressBookData);
+        return position == null ? -1 : position;
+    }
+
+    private void rebuildIndexes() {
+        addressIndex.clear();
+        hasDuplicateAddresses = false;
+        for (WalletAddressBookData addressBookData : this) {
+            indexAddress(addressBookData);
+        }
+        invalidatePositions();
+    }
+
+    private void rebuildSearchIndex() {
+        List<SearchKey> keys = new ArrayList<SearchKey>(2 * size());
+        for (WalletAddressBookData addressBookData : this) {
+            if (addressBookData == null) {
+                continue;
+            }
+            if (addressBookData.getLabel() != null && addressBookData.getLabel().length() > 0) {
+                keys.add(new SearchKey(addressBookData.getLabel().toLowerCase(Locale.ENGLISH), addressBookData));
+            }
+            if (addressBookData.getAddress() != null) {
+                keys.add(new SearchKey(addressBookData.getAddress().toLowerCase(Locale.ENGLISH), addressBookData));
+            }
+        }
+        Collections.sort(keys);
+
+        String[] newSearchKeys = new String[keys.size()];
+        WalletAddressBookData[] newSearchEntries = new WalletAddressBookData[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            newSearchKeys[i] = keys.get(i).key;
+            newSearchEntries[i] = keys.get(i).addressBookData;
+        }
+        searchKeys = newSearchKeys;
+        searchEntries = newSearchEntries;
+    }
+
+    private static class SearchKey implements Comparable<SearchKey> {
+        final String key;
+        final WalletAddressBookData addressBookData;
+
+        SearchKey(String key, WalletAddressBookData addressBookData) {
+            this.key = key;
+            this.addressBookData = addressBookData;
+        }
+
+        @Override
+        public int compareTo(SearchKey other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
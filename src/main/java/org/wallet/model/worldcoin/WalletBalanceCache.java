@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model.worldcoin;
+
+import java.math.BigInteger;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.core.Wallet.BalanceType;
+
+/**
+ * Caches the balances of a wallet.
+ *
+ * Working out a balance walks the wallet's unspent transactions, so the balances are only recalculated
+ * after a wallet event has invalidated them (coins received or sent, a reorg or a confidence change).
+ */
+public class WalletBalanceCache {
+
+    private final Map<BalanceType, BigInteger> balances = new EnumMap<BalanceType, BigInteger>(BalanceType.class);
+
+    /**
+     * Incremented on each invalidation so that a balance worked out before an invalidation is not cached after it.
+     */
+    private long generation;
+
+    /**
+     * Get the balance of the wallet, working it out if it is not already cached.
+     */
+    public BigInteger getBalance(Wallet wallet, BalanceType balanceType) {
+        if (wallet == null) {
+            return BigInteger.ZERO;
+        }
+
+        long generationAtStart;
+        synchronized (this) {
+            BigInteger balance = balances.get(balanceType);
+            if (balance != null) {
+                return balance;
+            }
+            generationAtStart = generation;
+        }
+
+        // Worked out outside the lock as the wallet takes its own lock.
+        BigInteger balance = wallet.getBalance(balanceType);
+
+        synchronized (this) {
+            if (generation == generationAtStart) {
+                balances.put(balanceType, balance);
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * The wallet has changed - the balances need working out again.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        balances.clear();
+    }
+}
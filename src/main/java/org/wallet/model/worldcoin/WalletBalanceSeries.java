@@ -0,0 +1,332 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model.worldcoin;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Downsampler;
+
+import com.google.worldcoin.core.ScriptException;
+import com.google.worldcoin.core.Sha256Hash;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.TransactionConfidence.ConfidenceType;
+import com.google.worldcoin.core.Wallet;
+
+/**
+ * The running balance of a wallet over time, kept in transaction update time order.
+ *
+ * The series is built from the wallet once and then updated incrementally as wallet events arrive,
+ * so that the charts do not have to sort and total all the wallet transactions each time they are drawn.
+ *
+ * All the amounts are in satoshi.
+ */
+public class WalletBalanceSeries {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletBalanceSeries.class);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Transactions without an update time are counted in the balance before all the others.
+     */
+    private static final long NO_UPDATE_TIME = Long.MIN_VALUE;
+
+    private Sha256Hash[] transactionHashes = new Sha256Hash[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    /**
+     * balances[i] is the wallet balance after the transaction at position i.
+     */
+    private long[] balances = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * The update time of each transaction in the series, used to find its position.
+     */
+    private final Map<Sha256Hash, Long> transactionTimes = new HashMap<Sha256Hash, Long>();
+
+    /**
+     * The series needs building from the wallet before it can be used.
+     */
+    private boolean stale = true;
+
+    /**
+     * Mark the series as needing a complete rebuild e.g. after a reorg or the wallet transactions being reset.
+     */
+    public synchronized void invalidate() {
+        stale = true;
+    }
+
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Rebuild the series from all the transactions in the wallet.
+     */
+    public synchronized void rebuild(Wallet wallet) {
+        clear();
+        if (wallet != null) {
+            Set<Transaction> transactions = wallet.getTransactions(false);
+            ensureCapacity(transactions.size());
+            for (Transaction transaction : transactions) {
+                try {
+                    insert(transaction.getHash(), transaction.getUpdateTime(), transaction.getValue(wallet));
+                } catch (ScriptException e) {
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }
+        stale = false;
+    }
+
+    /**
+     * Record a transaction that has been added to, or changed in, the wallet.
+     * Dead transactions are removed from the series.
+     */
+    public synchronized void update(Wallet wallet, Transaction transaction) {
+        if (stale || transaction == null) {
+            // Will be picked up by the next rebuild.
+            return;
+        }
+        try {
+            if (transaction.getConfidence() != null && transaction.getConfidence().getConfidenceType() == ConfidenceType.DEAD) {
+                remove(transaction.getHash());
+            } else {
+                put(transaction.getHash(), transaction.getUpdateTime(), transaction.getValue(wallet));
+            }
+        } catch (ScriptException e) {
+            log.error(e.getMessage(), e);
+            stale = true;
+        }
+    }
+
+    /**
+     * Add or replace the entry for a transaction.
+     */
+    public synchronized void put(Sha256Hash transactionHash, Date updateTime, BigInteger value) {
+        Long existingTime = transactionTimes.get(transactionHash);
+        if (existingTime != null) {
+            int position = positionOf(transactionHash, existingTime);
+            if (position >= 0 && existingTime == toTime(updateTime) && values[position] == value.longValue()) {
+                // Nothing has changed.
+                return;
+            }
+            remove(transactionHash);
+        }
+        insert(transactionHash, updateTime, value);
+    }
+
+    /**
+     * Remove the entry for a transaction, if there is one.
+     */
+    public synchronized void remove(Sha256Hash transactionHash) {
+        Long existingTime = transactionTimes.remove(transactionHash);
+        if (existingTime == null) {
+            return;
+        }
+        int position = positionOf(transactionHash, existingTime);
+        if (position < 0) {
+            return;
+        }
+        int numberToMove = size - position - 1;
+        System.arraycopy(transactionHashes, position + 1, transactionHashes, position, numberToMove);
+        System.arraycopy(times, position + 1, times, position, numberToMove);
+        System.arraycopy(values, position + 1, values, position, numberToMove);
+        size--;
+        transactionHashes[size] = null;
+        recalculateBalancesFrom(position);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The balance after all the transactions in the series
+     */
+    public synchronized long getBalance() {
+        return size == 0 ? 0 : balances[size - 1];
+    }
+
+    /**
+     * Get the points to chart the balance between two times as a step function.
+     *
+     * There is a point for the balance at the start of the window, a pair of points (balance before and after) for each
+     * transaction in the window and a point for the balance at the end of the window.
+     */
+    public synchronized Points getPoints(long fromMillis, long toMillis) {
+        return getPoints(fromMillis, toMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the points to chart the balance between two times as a step function of at most maximumNumberOfSteps steps.
+     *
+     * The balances after the transactions are downsampled first and then expanded into the pairs of points, so that both
+     * points of each step are kept and the steps stay vertical.
+     */
+    public synchronized Points getPoints(long fromMillis, long toMillis, int maximumNumberOfSteps) {
+        // First transaction after the start of the window.
+        int first = upperBound(fromMillis);
+        // First transaction after the end of the window.
+        int last = Math.max(upperBound(toMillis), first);
+
+        long balanceAtStart = first == 0 ? 0 : balances[first - 1];
+        long balanceAtEnd = last == 0 ? 0 : balances[last - 1];
+
+        // The balance at the start of the window and after each transaction in it.
+        int numberOfSteps = last - first + 1;
+        long[] stepTimes = new long[numberOfSteps];
+        double[] stepBalances = new double[numberOfSteps];
+        stepTimes[0] = fromMillis;
+        stepBalances[0] = balanceAtStart;
+        for (int i = first; i < last; i++) {
+            stepTimes[i - first + 1] = times[i];
+            stepBalances[i - first + 1] = balances[i];
+        }
+        int[] steps = Downsampler.largestTriangleThreeBuckets(stepTimes, stepBalances, numberOfSteps, maximumNumberOfSteps);
+
+        Points points = new Points(2 * steps.length);
+        points.add(fromMillis, balanceAtStart);
+        long previousBalance = balanceAtStart;
+        // The first step is the start of the window.
+        for (int i = 1; i < steps.length; i++) {
+            long balance = (long) stepBalances[steps[i]];
+            points.add(stepTimes[steps[i]], previousBalance);
+            points.add(stepTimes[steps[i]], balance);
+            previousBalance = balance;
+        }
+        points.add(toMillis, balanceAtEnd);
+        return points;
+    }
+
+    private void clear() {
+        transactionTimes.clear();
+        Arrays.fill(transactionHashes, 0, size, null);
+        size = 0;
+    }
+
+    private void insert(Sha256Hash transactionHash, Date updateTime, BigInteger value) {
+        long time = toTime(updateTime);
+        ensureCapacity(size + 1);
+
+        // Usually transactions arrive in time order so this is an append.
+        int position = upperBound(time);
+        int numberToMove = size - position;
+        if (numberToMove > 0) {
+            System.arraycopy(transactionHashes, position, transactionHashes, position + 1, numberToMove);
+            System.arraycopy(times, position, times, position + 1, numberToMove);
+            System.arraycopy(values, position, values, position + 1, numberToMove);
+        }
+        transactionHashes[position] = transactionHash;
+        times[position] = time;
+        values[position] = value.longValue();
+        size++;
+        transactionTimes.put(transactionHash, time);
+
+        recalculateBalancesFrom(position);
+    }
+
+    private void recalculateBalancesFrom(int position) {
+        long balance = position == 0 ? 0 : balances[position - 1];
+        for (int i = position; i < size; i++) {
+            balance += values[i];
+            balances[i] = balance;
+        }
+    }
+
+    /**
+     * @return The position of the first entry with a time later than the time specified.
+     */
+    private int upperBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int positionOf(Sha256Hash transactionHash, long time) {
+        for (int i = upperBound(time) - 1; i >= 0 && times[i] == time; i--) {
+            if (transactionHash.equals(transactionHashes[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= times.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, times.length * 2);
+        transactionHashes = Arrays.copyOf(transactionHashes, newCapacity);
+        times = Arrays.copyOf(times, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        balances = Arrays.copyOf(balances, newCapacity);
+    }
+
+    private static long toTime(Date updateTime) {
+        return updateTime == null ? NO_UPDATE_TIME : updateTime.getTime();
+    }
+
+    /**
+     * A copy of part of the series, suitable for charting.
+     */
+    public static class Points {
+        private final long[] times;
+        private final double[] balances;
+        private int size;
+
+        Points(int capacity) {
+            times = new long[capacity];
+            balances = new double[capacity];
+        }
+
+        void add(long time, long balance) {
+            times[size] = time;
+            balances[size] = balance;
+            size++;
+        }
+
+        public long[] getTimes() {
+            return times;
+        }
+
+        public double[] getBalances() {
+            return balances;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
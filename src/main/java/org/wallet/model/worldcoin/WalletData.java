@@ -15,12 +15,15 @@
  */
 package org.wallet.model.worldcoin;
 
+import java.math.BigInteger;
 import java.util.List;
 import java.util.UUID;
 
 import org.wallet.viewsystem.swing.view.walletlist.SingleWalletPanelDownloadListener;
 
+import com.google.worldcoin.core.Transaction;
 import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.core.Wallet.BalanceType;
 
 /**
  * This wrapper class wraps all the data pertaining to a single wallet.
@@ -86,6 +89,16 @@ public class WalletData {
      */
     private transient SingleWalletPanelDownloadListener singleWalletDownloadListener;
 
+    /**
+     * The running balance of the wallet over time, used by the charts.
+     */
+    private final transient WalletBalanceSeries balanceSeries = new WalletBalanceSeries();
+
+    /**
+     * The balances of the wallet, recalculated only after wallet events.
+     */
+    private final transient WalletBalanceCache balanceCache = new WalletBalanceCache();
+
     
     public WalletData() {
         isDirty = false;
@@ -97,6 +110,8 @@ public class WalletData {
 
     public void setWallet(Wallet wallet) {
         this.wallet = wallet;
+        balanceSeries.invalidate();
+        balanceCache.invalidate();
     }
 
     public String getWalletFilename() {
@@ -224,4 +239,42 @@ public class WalletData {
     public void setReplayTaskUUID(UUID replayTaskUUID) {
         this.replayTaskUUID = replayTaskUUID;
     }
+
+    /**
+     * Get the running balance of the wallet over time, rebuilding it from the wallet if required.
+     */
+    public WalletBalanceSeries getBalanceSeries() {
+        if (balanceSeries.isStale()) {
+            balanceSeries.rebuild(wallet);
+        }
+        return balanceSeries;
+    }
+
+    /**
+     * Update the running balance with a transaction that has been added to or changed in the wallet.
+     */
+    public void updateBalanceSeries(Transaction transaction) {
+        balanceSeries.update(wallet, transaction);
+    }
+
+    /**
+     * The wallet transactions have changed in a way that cannot be tracked incrementally.
+     */
+    public void invalidateBalanceSeries() {
+        balanceSeries.invalidate();
+    }
+
+    /**
+     * Get the balance of the wallet. This is cached until the next wallet event.
+     */
+    public BigInteger getBalance(BalanceType balanceType) {
+        return balanceCache.getBalance(wallet, balanceType);
+    }
+
+    /**
+     * The wallet balances have changed (coins received or sent, reorg, confidence change).
+     */
+    public void invalidateBalance() {
+        balanceCache.invalidate();
+    }
 }
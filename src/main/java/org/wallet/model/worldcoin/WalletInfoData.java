@@ -16,7 +16,6 @@
 package org.wallet.model.worldcoin;
 
 import com.google.worldcoin.core.Address;
-import com.google.worldcoin.core.ECKey;
 import org.wallet.WorldcoinWallet;
 import org.wallet.file.WalletLoadException;
 import org.wallet.file.WalletSaveException;
@@ -47,8 +46,8 @@ public class WalletInfoData {
      * The actual receiving addresses exposed for this address book (only keys
      * that occur in this wallet).
      */
-    private ArrayList<WalletAddressBookData> receivingAddresses;
-    private ArrayList<WalletAddressBookData> sendingAddresses;
+    private WalletAddressBook receivingAddresses;
+    private WalletAddressBook sendingAddresses;
 
     private static final String INFO_FILE_EXTENSION = "info";
     private static final String RECEIVE_ADDRESS_MARKER = "receive";
@@ -86,8 +85,8 @@ public class WalletInfoData {
         this.walletVersion = walletVersion;
         this.wallet = wallet;
 
-        receivingAddresses = new ArrayList<WalletAddressBookData>();
-        sendingAddresses = new ArrayList<WalletAddressBookData>();
+        receivingAddresses = new WalletAddressBook();
+        sendingAddresses = new WalletAddressBook();
 
         walletPreferences = new Properties();
 
@@ -132,16 +131,20 @@ public class WalletInfoData {
         walletPreferences.remove(key);
     }
 
-    public ArrayList<WalletAddressBookData> getReceivingAddresses() {
+    public WalletAddressBook getReceivingAddresses() {
         return receivingAddresses;
     }
 
-    public ArrayList<WalletAddressBookData> getSendingAddresses() {
+    public WalletAddressBook getSendingAddresses() {
         return sendingAddresses;
     }
 
     public void setReceivingAddresses(ArrayList<WalletAddressBookData> receivingAddresses) {
-        this.receivingAddresses = receivingAddresses;
+        if (receivingAddresses instanceof WalletAddressBook) {
+            this.receivingAddresses = (WalletAddressBook) receivingAddresses;
+        } else {
+            this.receivingAddresses = new WalletAddressBook(receivingAddresses);
+        }
     }
 
     /**
@@ -160,25 +163,18 @@ public class WalletInfoData {
 
         if (checkAlreadyPresent) {
             // Check the address is not already in the set.
-            for (WalletAddressBookData addressBookData : receivingAddresses) {
-                if (addressBookData.getAddress().equals(receivingAddress.getAddress())) {
-                    // Just update label.
-                    addressBookData.setLabel(receivingAddress.getLabel());
-                    justUpdateLabel = true;
-                    break;
-                }
+            WalletAddressBookData addressBookData = receivingAddresses.lookup(receivingAddress.getAddress());
+            if (addressBookData != null) {
+                // Just update label.
+                receivingAddresses.updateLabel(addressBookData, receivingAddress.getLabel());
+                justUpdateLabel = true;
             }
         }
 
         boolean addressMatchesKey = false;
-        if (wallet != null) {
-            for (ECKey key : wallet.getKeys()) {
-                if (receivingAddress.getAddress().equals(
-                        key.toAddress(WorldcoinWallet.getWorldcoinController().getModel().getNetworkParameters()).toString())) {
-                    addressMatchesKey = true;
-                    break;
-                }
-            }
+        if (wallet != null && !justUpdateLabel) {
+            addressMatchesKey = WalletKeyIndex.forWallet(wallet).containsAddress(wallet, receivingAddress.getAddress(),
+                    WorldcoinWallet.getWorldcoinController().getModel().getNetworkParameters());
         }
 
         if (!justUpdateLabel && (wallet == null || addressMatchesKey)) {
@@ -193,18 +189,13 @@ public class WalletInfoData {
     public void checkAllReceivingAddressesAppearInWallet(com.google.worldcoin.core.Wallet wallet) {
         List<WalletAddressBookData> toRemove = new ArrayList<WalletAddressBookData>();
         if (wallet != null) {
+            Set<String> keyAddresses = WalletKeyIndex.forWallet(wallet).getAddresses(wallet,
+                    WorldcoinWallet.getWorldcoinController().getModel().getNetworkParameters());
             Iterator<WalletAddressBookData> iterator = receivingAddresses.iterator();
             while (iterator.hasNext()) {
-                boolean addressMatchesKey = false;
                 WalletAddressBookData walletAddressBookData = iterator.next();
-                for (ECKey key : wallet.getKeys()) {
-                    if (walletAddressBookData.getAddress().equals(
-                            key.toAddress(WorldcoinWallet.getWorldcoinController().getModel().getNetworkParameters()).toString())) {
-                        addressMatchesKey = true;
-                        break;
-                    }
-                }
-                
+                boolean addressMatchesKey = keyAddresses.contains(walletAddressBookData.getAddress());
+
                 if (!addressMatchesKey) {
                     // Remove from receivingAddresses and log.
                     toRemove.add(walletAddressBookData);
@@ -212,7 +203,9 @@ public class WalletInfoData {
                 }
             }
             
-            receivingAddresses.removeAll(toRemove);
+            if (!toRemove.isEmpty()) {
+                receivingAddresses.removeAll(toRemove);
+            }
         }
     }
 
@@ -228,23 +221,22 @@ public class WalletInfoData {
             return;
         }
 
-        if (!containsReceivingAddress(receivingAddress.toString())) {
-            receivingAddresses.add(new WalletAddressBookData("", receivingAddress.toString()));
+        addReceivingAddressOfKey(receivingAddress.toString());
+    }
+
+    public void addReceivingAddressOfKey(String receivingAddress) {
+        if (receivingAddress == null) {
+            return;
+        }
+
+        if (!containsReceivingAddress(receivingAddress)) {
+            receivingAddresses.add(new WalletAddressBookData("", receivingAddress));
         }
     }
 
     public boolean containsReceivingAddress(String receivingAddress) {
-        boolean toReturn = false;
         // see if the receiving address is on the current list
-        for (WalletAddressBookData addressBookData : receivingAddresses) {
-            if (addressBookData.getAddress().equals(receivingAddress.toString())) {
-                // do nothing
-                toReturn = true;
-                break;
-            }
-        }
-
-        return toReturn;
+        return receivingAddresses.containsAddress(receivingAddress);
     }
 
     public void addSendingAddress(WalletAddressBookData sendingAddress) {
@@ -252,37 +244,29 @@ public class WalletInfoData {
             return;
         }
 
-        boolean done = false;
-        // Check the address is not already in the arraylist.
-        for (WalletAddressBookData addressBookData : sendingAddresses) {
-            if (addressBookData.getAddress() != null && addressBookData.getAddress().equals(sendingAddress.getAddress())) {
-                // Just update label.
-                addressBookData.setLabel(sendingAddress.getLabel());
-                done = true;
-                break;
-            }
-        }
-
-        if (!done) {
+        // Check the address is not already in the address book.
+        WalletAddressBookData addressBookData = sendingAddresses.lookup(sendingAddress.getAddress());
+        if (addressBookData != null) {
+            // Just update label.
+            sendingAddresses.updateLabel(addressBookData, sendingAddress.getLabel());
+        } else {
             sendingAddresses.add(sendingAddress);
         }
     }
 
     public String lookupLabelForReceivingAddress(String address) {
-        for (WalletAddressBookData addressBookData : receivingAddresses) {
-            if (addressBookData.getAddress().equals(address)) {
-                return addressBookData.getLabel();
-            }
+        WalletAddressBookData addressBookData = receivingAddresses.lookup(address);
+        if (addressBookData != null) {
+            return addressBookData.getLabel();
         }
 
         return "";
     }
 
     public String lookupLabelForSendingAddress(String address) {
-        for (WalletAddressBookData addressBookData : sendingAddresses) {
-            if (addressBookData.getAddress().equals(address)) {
-                return addressBookData.getLabel();
-            }
+        WalletAddressBookData addressBookData = sendingAddresses.lookup(address);
+        if (addressBookData != null) {
+            return addressBookData.getLabel();
         }
 
         return "";
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model.worldcoin;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import com.google.worldcoin.core.Address;
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Wallet;
+
+/**
+ * Caches the address of each key in a wallet's keychain, and the key for each address.
+ *
+ * Working out an address hashes the public key, so each address is worked out once per public key and kept.
+ * Encrypting or decrypting a wallet replaces its ECKeys but not the public keys, so the addresses are still
+ * used after that - only the address to key lookup is rebuilt. The lookup is rebuilt when the size of the keychain
+ * or the encryption of the wallet has changed, or when invalidateKeys has been called.
+ *
+ * Keys added to the wallet are indexed by keysAdded as the wallet tells the controller about them.
+ */
+public class WalletKeyIndex {
+
+    /**
+     * The index of each wallet. Wallets are compared by identity and are not kept alive by the index.
+     */
+    private static final Map<Wallet, WalletKeyIndex> indexes = new WeakHashMap<Wallet, WalletKeyIndex>();
+
+    /**
+     * Get the key index of a wallet, creating it if required.
+     */
+    public static WalletKeyIndex forWallet(Wallet wallet) {
+        synchronized (indexes) {
+            WalletKeyIndex index = indexes.get(wallet);
+            if (index == null) {
+                index = new WalletKeyIndex();
+                indexes.put(wallet, index);
+            }
+            return index;
+        }
+    }
+
+    private NetworkParameters networkParameters;
+
+    /**
+     * Address of each public key.
+     */
+    private final Map<ByteBuffer, String> addressByPubKey = new HashMap<ByteBuffer, String>();
+
+    /**
+     * Current key for each address.
+     */
+    private final Map<String, ECKey> keyByAddress = new HashMap<String, ECKey>();
+
+    private boolean keysIndexed = false;
+    private int indexedKeychainSize;
+    private boolean indexedEncrypted;
+
+    WalletKeyIndex() {
+    }
+
+    /**
+     * @return The address of the key as a string
+     */
+    public synchronized String getAddress(ECKey key, NetworkParameters networkParameters) {
+        checkNetworkParameters(networkParameters);
+        return addressOf(key);
+    }
+
+    /**
+     * @return The key in the wallet with the address, or null if there is none
+     */
+    public synchronized ECKey getKey(Wallet wallet, String address, NetworkParameters networkParameters) {
+        if (address == null) {
+            return null;
+        }
+        indexKeys(wallet, networkParameters);
+        return keyByAddress.get(address);
+    }
+
+    /**
+     * @return true if a key in the wallet has the address
+     */
+    public synchronized boolean containsAddress(Wallet wallet, String address, NetworkParameters networkParameters) {
+        return getKey(wallet, address, networkParameters) != null;
+    }
+
+    /**
+     * @return The addresses of all the keys in the wallet
+     */
+    public synchronized Set<String> getAddresses(Wallet wallet, NetworkParameters networkParameters) {
+        indexKeys(wallet, networkParameters);
+        return new HashSet<String>(keyByAddress.keySet());
+    }
+
+    /**
+     * Index keys that have just been added to the wallet.
+     */
+    public synchronized void keysAdded(Wallet wallet, List<ECKey> keys, NetworkParameters networkParameters) {
+        checkNetworkParameters(networkParameters);
+        if (keys == null) {
+            return;
+        }
+
+        for (ECKey key : keys) {
+            String address = addressOf(key);
+            if (keysIndexed) {
+                keyByAddress.put(address, key);
+            }
+        }
+
+        if (keysIndexed) {
+            if (wallet.getKeychainSize() == keyByAddress.size() && wallet.isEncrypted() == indexedEncrypted) {
+                indexedKeychainSize = wallet.getKeychainSize();
+            } else {
+                // Changed in some other way as well.
+                keysIndexed = false;
+            }
+        }
+    }
+
+    /**
+     * The keys in the wallet have been replaced, for instance by a change of password. The addresses are kept.
+     */
+    public synchronized void invalidateKeys() {
+        keysIndexed = false;
+        keyByAddress.clear();
+    }
+
+    private void indexKeys(Wallet wallet, NetworkParameters networkParameters) {
+        checkNetworkParameters(networkParameters);
+        if (keysIndexed && indexedKeychainSize == wallet.getKeychainSize() && indexedEncrypted == wallet.isEncrypted()) {
+            return;
+        }
+
+        keyByAddress.clear();
+        List<ECKey> keys = wallet.getKeys();
+        for (ECKey key : keys) {
+            if (key != null) {
+                String address = addressOf(key);
+                if (!keyByAddress.containsKey(address)) {
+                    keyByAddress.put(address, key);
+                }
+            }
+        }
+        keysIndexed = true;
+        indexedKeychainSize = keys.size();
+        indexedEncrypted = wallet.isEncrypted();
+    }
+
+    private String addressOf(ECKey key) {
+        ByteBuffer pubKey = ByteBuffer.wrap(key.getPubKey());
+        String address = addressByPubKey.get(pubKey);
+        if (address == null) {
+            address = new Address(networkParameters, key.getPubKeyHash()).toString();
+            addressByPubKey.put(pubKey, address);
+        }
+        return address;
+    }
+
+    private void checkNetworkParameters(NetworkParameters networkParameters) {
+        if (this.networkParameters != null && !this.networkParameters.equals(networkParameters)) {
+            // Addresses are different on another network.
+            addressByPubKey.clear();
+            invalidateKeys();
+        }
+        this.networkParameters = networkParameters;
+    }
+}
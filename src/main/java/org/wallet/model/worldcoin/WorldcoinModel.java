@@ -129,6 +129,15 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
     public static final String SINGLE_NODE_CONNECTION = "singleNodeConnection";
     public static final String PEERS = "peers";
 
+    // "true" to fetch the blocks of a replay from several peers at once.
+    public static final String PARALLEL_REPLAY = "parallelReplay";
+
+    // Seconds to wait for a sent transaction to propagate before broadcasting it again.
+    public static final String REBROADCAST_INTERVAL = "rebroadcastInterval";
+
+    // Seconds an unlocked session keeps the wallet AES key after it was last used. 0 or missing for no session.
+    public static final String UNLOCKED_SESSION_TIMEOUT = "unlockedSessionTimeout";
+
     
     // Sizes and last modified dates of files.
     public static final String WALLET_FILE_SIZE = "walletFileSize";
@@ -226,11 +235,7 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
      * @return The estimated balance
      */
     public BigInteger getActiveWalletEstimatedBalance() {
-        if (activeWalletModelData.getWallet() == null) {
-            return BigInteger.ZERO;
-        } else {
-            return activeWalletModelData.getWallet().getBalance(BalanceType.ESTIMATED);
-        }
+        return activeWalletModelData.getBalance(BalanceType.ESTIMATED);
     }
 
     /**
@@ -239,11 +244,7 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
      * @return the available balance
      */
     public BigInteger getActiveWalletAvailableBalance() {
-        if (activeWalletModelData.getWallet() == null) {
-            return BigInteger.ZERO;
-        } else {
-            return activeWalletModelData.getWallet().getBalance(BalanceType.AVAILABLE);
-        }
+        return activeWalletModelData.getBalance(BalanceType.AVAILABLE);
     }
 
     /**
@@ -431,46 +432,51 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
 
         if (transactions != null) {
             for (Transaction loopTransaction : transactions) {
-                WalletTableData walletDataRow = new WalletTableData(loopTransaction);
-                walletData.add(walletDataRow);
-                walletDataRow.setCredit(loopTransaction.getValueSentToMe(perWalletModelData.getWallet()));
-                try {
-                    walletDataRow.setDebit(loopTransaction.getValueSentFromMe(perWalletModelData.getWallet()));
-                } catch (ScriptException e) {
-                    log.error(e.getMessage(), e);
-
-                }
-                List<TransactionInput> transactionInputs = loopTransaction.getInputs();
-                List<TransactionOutput> transactionOutputs = loopTransaction.getOutputs();
-                if (transactionInputs != null) {
-                    TransactionInput firstInput = transactionInputs.get(0);
-                    if (firstInput != null) {
-                        walletDataRow.setDescription(createDescription(worldcoinController, perWalletModelData.getWallet(), transactionInputs,
-                                transactionOutputs, walletDataRow.getCredit(), walletDataRow.getDebit()));
-                    }
-                }
-                walletDataRow.setDate(createDate(worldcoinController, loopTransaction));
-                walletDataRow.setHeight(workOutHeight(loopTransaction));
+                walletData.add(createWalletTableData(worldcoinController, perWalletModelData, loopTransaction));
             }
         }
 
-        // Run through all the walletdata to see if both credit and debit are
-        // set (this means change was received).
-        for (WalletTableData walletDataRow : walletData) {
-            if (walletDataRow.getCredit() != null && (walletDataRow.getCredit().compareTo(BigInteger.ZERO) > 0)
-                    && (walletDataRow.getDebit() != null) && walletDataRow.getDebit().compareTo(BigInteger.ZERO) > 0) {
-                BigInteger net = walletDataRow.getCredit().subtract(walletDataRow.getDebit());
-                if (net.compareTo(BigInteger.ZERO) >= 0) {
-                    walletDataRow.setCredit(net);
-                    walletDataRow.setDebit(BigInteger.ZERO);
-                } else {
-                    walletDataRow.setCredit(BigInteger.ZERO);
-                    walletDataRow.setDebit(net.negate());
-                }
+        return walletData;
+    }
+
+    /**
+     * Convert a transaction in a wallet into a walletdata record.
+     */
+    public WalletTableData createWalletTableData(final WorldcoinController worldcoinController, WalletData perWalletModelData,
+            Transaction transaction) {
+        WalletTableData walletDataRow = new WalletTableData(transaction);
+        walletDataRow.setCredit(transaction.getValueSentToMe(perWalletModelData.getWallet()));
+        try {
+            walletDataRow.setDebit(transaction.getValueSentFromMe(perWalletModelData.getWallet()));
+        } catch (ScriptException e) {
+            log.error(e.getMessage(), e);
+
+        }
+        List<TransactionInput> transactionInputs = transaction.getInputs();
+        List<TransactionOutput> transactionOutputs = transaction.getOutputs();
+        if (transactionInputs != null) {
+            TransactionInput firstInput = transactionInputs.get(0);
+            if (firstInput != null) {
+                walletDataRow.setDescription(createDescription(worldcoinController, perWalletModelData.getWallet(), transactionInputs,
+                        transactionOutputs, walletDataRow.getCredit(), walletDataRow.getDebit()));
             }
         }
-
-        return walletData;
+        walletDataRow.setDate(createDate(worldcoinController, transaction));
+        walletDataRow.setHeight(workOutHeight(transaction));
+
+        // See if both credit and debit are set (this means change was received).
+        if (walletDataRow.getCredit() != null && (walletDataRow.getCredit().compareTo(BigInteger.ZERO) > 0)
+                && (walletDataRow.getDebit() != null) && walletDataRow.getDebit().compareTo(BigInteger.ZERO) > 0) {
+            BigInteger net = walletDataRow.getCredit().subtract(walletDataRow.getDebit());
+            if (net.compareTo(BigInteger.ZERO) >= 0) {
+                walletDataRow.setCredit(net);
+                walletDataRow.setDebit(BigInteger.ZERO);
+            } else {
+                walletDataRow.setCredit(BigInteger.ZERO);
+                walletDataRow.setDebit(net.negate());
+            }
+        }
+        return walletDataRow;
     }
 
     /**
@@ -499,23 +505,26 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
                     if (perWalletModelData.getWalletInfo() != null) {
                         // Keep a copy of the existing receiving addresses - labels will be recycled.
                         List<WalletAddressBookData> currentReceivingAddresses = perWalletModelData.getWalletInfo().getReceivingAddresses();
+                        Map<String, String> currentLabels = new HashMap<String, String>();
+                        for (WalletAddressBookData loopAddressBookData : currentReceivingAddresses) {
+                            if (loopAddressBookData.getAddress() != null && !currentLabels.containsKey(loopAddressBookData.getAddress())) {
+                                currentLabels.put(loopAddressBookData.getAddress(), loopAddressBookData.getLabel());
+                            }
+                        }
 
                         // Clear the existing receiving addresses.
                         ArrayList<WalletAddressBookData> newReceivingAddresses = new ArrayList<WalletAddressBookData>();
                         perWalletModelData.getWalletInfo().setReceivingAddresses(newReceivingAddresses);
 
                         // Add the new receiving addresses from the keys, checking if there is an old label.
+                        WalletKeyIndex keyIndex = WalletKeyIndex.forWallet(perWalletModelData.getWallet());
                         for (ECKey key : keyChain) {
-                            Address address = key.toAddress(getNetworkParameters());
-                            String addressString = address.toString();
+                            String addressString = keyIndex.getAddress(key, networkParameters);
                             WalletAddressBookData addressBookData = new WalletAddressBookData(null, addressString);
 
-                            for (WalletAddressBookData loopAddressBookData : currentReceivingAddresses) {
-                                if (loopAddressBookData.getAddress().equals(addressString)) {
-                                    // Recycle label.
-                                    addressBookData.setLabel(loopAddressBookData.getLabel());
-                                    break;
-                                }
+                            if (currentLabels.containsKey(addressString)) {
+                                // Recycle label.
+                                addressBookData.setLabel(currentLabels.get(addressString));
                             }
                             perWalletModelData.getWalletInfo().addReceivingAddress(addressBookData, false);
                         }
@@ -618,12 +627,11 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
     }
 
     /**
-     * Work out the transaction date.
-     *
-     * @param transaction
-     * @return Date date of transaction
+     * The date of a transaction - when it was last updated or else when it appeared in the block chain.
+     * 
+     * @return The date, or null if it is not known
      */
-    private Date createDate(final WorldcoinController worldcoinController, Transaction transaction) {
+    public Date createDate(final WorldcoinController worldcoinController, Transaction transaction) {
         // If transaction has altered date - return that.
         if (transaction.getUpdateTime() != null) {
             return transaction.getUpdateTime();
@@ -688,6 +696,24 @@ public class WorldcoinModel extends AbstractModel<CoreModel> {
         }
         return null;
     }
+
+    /**
+     * Find the wallet data for a wallet object (matched on identity).
+     */
+    public WalletData getPerWalletModelDataByWallet(Wallet wallet) {
+        if (wallet == null) {
+            return null;
+        }
+
+        if (perWalletModelDataList != null) {
+            for (WalletData loopPerWalletModelData : perWalletModelDataList) {
+                if (loopPerWalletModelData.getWallet() == wallet) {
+                    return loopPerWalletModelData;
+                }
+            }
+        }
+        return null;
+    }
     
     public NetworkParameters getNetworkParameters() {
         // If test or production is not specified, default to production.
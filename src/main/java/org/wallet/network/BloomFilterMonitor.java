@@ -0,0 +1,166 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.worldcoin.core.BloomFilter;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerGroup;
+
+/**
+ * Keeps the Bloom filter of all the open wallets within its false positive budget.
+ *
+ * Each transaction the peers send because it matches the filter is counted, along with whether any wallet found it
+ * relevant. Every SAMPLE_SIZE transactions the fraction no wallet wanted (the measured false positive rate) is compared
+ * with the budget. Over MAXIMUM_FALSE_POSITIVE_RATE the filter is made larger, by lowering the false positive rate it
+ * is built for. Under MINIMUM_FALSE_POSITIVE_RATE it is made smaller again, back up to the PeerGroup default.
+ */
+public class BloomFilterMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(BloomFilterMonitor.class);
+
+  public static final int SAMPLE_SIZE = 100;
+
+  /**
+   * The largest fraction of matched transactions that may be of no use to any wallet.
+   */
+  public static final double MAXIMUM_FALSE_POSITIVE_RATE = 0.5;
+
+  /**
+   * Below this the filter is larger than it needs to be.
+   */
+  public static final double MINIMUM_FALSE_POSITIVE_RATE = 0.05;
+
+  /**
+   * The lowest false positive rate the filter is built for.
+   */
+  public static final double LOWEST_FILTER_FALSE_POSITIVE_RATE = 0.000001;
+
+  /**
+   * The size peers accept a Bloom filter up to. A filter this large cannot be made any more accurate.
+   */
+  public static final int MAXIMUM_FILTER_SIZE = 36000; // bytes
+
+  /**
+   * The false positive rate to build the filter for next.
+   *
+   * @param filterFalsePositiveRate
+   *            The rate the filter is built for now
+   * @param measuredFalsePositiveRate
+   *            The fraction of matched transactions no wallet wanted
+   * @param filterSize
+   *            The size of the filter in bytes, or -1 if not known
+   * @return The new rate, or filterFalsePositiveRate if the filter is within budget
+   */
+  static double nextFilterFalsePositiveRate(double filterFalsePositiveRate, double measuredFalsePositiveRate,
+                                            int filterSize) {
+    if (measuredFalsePositiveRate > MAXIMUM_FALSE_POSITIVE_RATE && filterSize < MAXIMUM_FILTER_SIZE) {
+      return Math.max(LOWEST_FILTER_FALSE_POSITIVE_RATE, filterFalsePositiveRate / 4);
+    }
+    if (measuredFalsePositiveRate < MINIMUM_FALSE_POSITIVE_RATE) {
+      return Math.min(PeerGroup.DEFAULT_BLOOM_FILTER_FP_RATE, filterFalsePositiveRate * 2);
+    }
+    return filterFalsePositiveRate;
+  }
+
+  private final WorldcoinWalletPeerGroup peerGroup;
+
+  private double filterFalsePositiveRate = PeerGroup.DEFAULT_BLOOM_FILTER_FP_RATE;
+  private double measuredFalsePositiveRate = -1;
+  private int numberMatched = 0;
+  private int numberOfFalsePositives = 0;
+  private int numberOfAdjustments = 0;
+
+  public BloomFilterMonitor(WorldcoinWalletPeerGroup peerGroup) {
+    this.peerGroup = peerGroup;
+  }
+
+  /**
+   * Count a transaction sent by a peer with the filter loaded.
+   *
+   * @param relevant
+   *            true if any wallet found the transaction relevant
+   */
+  public void transactionReceived(boolean relevant) {
+    double newFilterFalsePositiveRate;
+    synchronized (this) {
+      numberMatched++;
+      if (!relevant) {
+        numberOfFalsePositives++;
+      }
+      if (numberMatched < SAMPLE_SIZE) {
+        return;
+      }
+      measuredFalsePositiveRate = (double) numberOfFalsePositives / numberMatched;
+      numberMatched = 0;
+      numberOfFalsePositives = 0;
+
+      newFilterFalsePositiveRate = nextFilterFalsePositiveRate(filterFalsePositiveRate, measuredFalsePositiveRate,
+              getFilterSize());
+      if (newFilterFalsePositiveRate == filterFalsePositiveRate) {
+        return;
+      }
+      log.debug("Measured false positive rate is " + measuredFalsePositiveRate + " - building the filter for "
+              + newFilterFalsePositiveRate + " rather than " + filterFalsePositiveRate + ". Filter size "
+              + getFilterSize() + " bytes, " + getFilterElementCount() + " elements");
+      filterFalsePositiveRate = newFilterFalsePositiveRate;
+      numberOfAdjustments++;
+    }
+    // Recalculates the filter and sends it to the peers.
+    peerGroup.setBloomFilterFalsePositiveRate(newFilterFalsePositiveRate);
+  }
+
+  /**
+   * @return The false positive rate the filter is built for
+   */
+  public synchronized double getFilterFalsePositiveRate() {
+    return filterFalsePositiveRate;
+  }
+
+  /**
+   * @return The fraction of matched transactions no wallet wanted in the last full sample, or -1 if there has not been
+   *         one yet
+   */
+  public synchronized double getMeasuredFalsePositiveRate() {
+    return measuredFalsePositiveRate;
+  }
+
+  public synchronized int getNumberOfAdjustments() {
+    return numberOfAdjustments;
+  }
+
+  /**
+   * @return The size of the filter sent to the peers in bytes, or -1 if no peer has it
+   */
+  public int getFilterSize() {
+    for (Peer peer : peerGroup.getConnectedPeers()) {
+      BloomFilter filter = peer.getBloomFilter();
+      if (filter != null) {
+        return filter.worldcoinSerialize().length;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The number of keys and scripts put in the filter
+   */
+  public int getFilterElementCount() {
+    return peerGroup.getBloomFilterElementCount();
+  }
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
+
+import com.google.worldcoin.core.AbstractPeerEventListener;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerGroup;
+import com.google.worldcoin.core.Sha256Hash;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.TransactionConfidence;
+import com.google.worldcoin.core.TransactionConfidence.ConfidenceType;
+
+/**
+ * Follows the transactions sent by the wallet until they have propagated through the network.
+ *
+ * For each transaction the times from its broadcast to the first peer announcing it back and to TARGET_NUMBER_OF_PEERS
+ * announcing it are recorded. A transaction still pending that has not reached the target is broadcast again every
+ * rebroadcast interval, and is sent to each peer that connects.
+ */
+public class BroadcastTracker {
+
+  private static final Logger log = LoggerFactory.getLogger(BroadcastTracker.class);
+
+  /**
+   * A transaction announced by this many peers has propagated.
+   */
+  public static final int TARGET_NUMBER_OF_PEERS = 3;
+
+  public static final long DEFAULT_REBROADCAST_INTERVAL = 60000; // milliseconds
+
+  public static final long CHECK_INTERVAL = 10000; // milliseconds
+
+  /**
+   * The most transactions kept, the oldest finished ones being dropped first.
+   */
+  public static final int MAXIMUM_NUMBER_OF_TRANSACTIONS = 100;
+
+  /**
+   * The propagation of one transaction.
+   */
+  public static class Propagation {
+    private final Transaction transaction;
+    private final long broadcastTime;
+    private long lastBroadcastTime;
+    private int numberOfBroadcasts = 1;
+    private int numberOfPeers = 0;
+    private long timeToFirstPeer = -1;
+    private long timeToTargetPeers = -1;
+    private boolean finished = false;
+    private volatile TransactionConfidence.Listener confidenceListener;
+
+    Propagation(Transaction transaction, long now) {
+      this.transaction = transaction;
+      this.broadcastTime = now;
+      this.lastBroadcastTime = now;
+    }
+
+    synchronized void peersChanged(int numberOfPeers, long now) {
+      this.numberOfPeers = Math.max(this.numberOfPeers, numberOfPeers);
+      if (this.numberOfPeers >= 1 && timeToFirstPeer < 0) {
+        timeToFirstPeer = now - broadcastTime;
+      }
+      if (this.numberOfPeers >= TARGET_NUMBER_OF_PEERS && timeToTargetPeers < 0) {
+        timeToTargetPeers = now - broadcastTime;
+      }
+    }
+
+    synchronized void finish() {
+      finished = true;
+    }
+
+    void listenTo(TransactionConfidence.Listener listener) {
+      confidenceListener = listener;
+      transaction.getConfidence().addEventListener(listener);
+    }
+
+    /**
+     * Stop following the confidence of the transaction.
+     */
+    void stopListening() {
+      TransactionConfidence.Listener listener = confidenceListener;
+      confidenceListener = null;
+      if (listener != null) {
+        transaction.getConfidence().removeEventListener(listener);
+      }
+    }
+
+    TransactionConfidence.Listener getConfidenceListener() {
+      return confidenceListener;
+    }
+
+    /**
+     * @return true if the transaction should be broadcast again
+     */
+    synchronized boolean isRebroadcastDue(long rebroadcastInterval, long now) {
+      return !finished && timeToTargetPeers < 0 && now - lastBroadcastTime >= rebroadcastInterval;
+    }
+
+    synchronized void rebroadcast(long now) {
+      lastBroadcastTime = now;
+      numberOfBroadcasts++;
+    }
+
+    synchronized boolean isPropagating() {
+      return !finished && timeToTargetPeers < 0;
+    }
+
+    public Transaction getTransaction() {
+      return transaction;
+    }
+
+    public long getBroadcastTime() {
+      return broadcastTime;
+    }
+
+    public synchronized int getNumberOfBroadcasts() {
+      return numberOfBroadcasts;
+    }
+
+    /**
+     * @return The most peers that have announced the transaction
+     */
+    public synchronized int getNumberOfPeers() {
+      return numberOfPeers;
+    }
+
+    /**
+     * @return Milliseconds from the broadcast to the first peer announcing the transaction, or -1 if none has yet
+     */
+    public synchronized long getTimeToFirstPeer() {
+      return timeToFirstPeer;
+    }
+
+    /**
+     * @return Milliseconds from the broadcast to TARGET_NUMBER_OF_PEERS announcing the transaction, or -1 if they
+     *         have not yet
+     */
+    public synchronized long getTimeToTargetPeers() {
+      return timeToTargetPeers;
+    }
+
+    /**
+     * @return true once the transaction is in a block or has been overridden
+     */
+    public synchronized boolean isFinished() {
+      return finished;
+    }
+  }
+
+  private final PeerGroup peerGroup;
+
+  private final Map<Sha256Hash, Propagation> propagations = new LinkedHashMap<Sha256Hash, Propagation>();
+
+  private volatile long rebroadcastInterval = DEFAULT_REBROADCAST_INTERVAL;
+
+  private ScheduledTask checkTask;
+
+  private final AbstractPeerEventListener peerListener = new AbstractPeerEventListener() {
+    @Override
+    public void onPeerConnected(Peer peer, int peerCount) {
+      for (Propagation propagation : getPropagations()) {
+        if (propagation.isPropagating()) {
+          try {
+            peer.sendMessage(propagation.getTransaction());
+          } catch (RuntimeException e) {
+            log.debug("Could not send transaction to peer '" + peer.getAddress() + "'. Message was " + e.getMessage());
+          }
+        }
+      }
+    }
+  };
+
+  public BroadcastTracker(PeerGroup peerGroup) {
+    this.peerGroup = peerGroup;
+  }
+
+  public synchronized void start() {
+    if (checkTask != null) {
+      return;
+    }
+    peerGroup.addEventListener(peerListener);
+    checkTask = Scheduler.INSTANCE.scheduleWithFixedDelay("BroadcastTracker", new Runnable() {
+      @Override
+      public void run() {
+        rebroadcast(System.currentTimeMillis());
+      }
+    }, CHECK_INTERVAL, CHECK_INTERVAL);
+  }
+
+  public synchronized void stop() {
+    if (checkTask == null) {
+      return;
+    }
+    checkTask.cancel();
+    checkTask = null;
+    peerGroup.removeEventListener(peerListener);
+  }
+
+  /**
+   * Follow a transaction that has just been broadcast.
+   */
+  public void track(Transaction transaction) {
+    track(transaction, System.currentTimeMillis());
+  }
+
+  void track(Transaction transaction, long now) {
+    final Propagation propagation;
+    synchronized (this) {
+      if (propagations.containsKey(transaction.getHash())) {
+        return;
+      }
+      propagation = new Propagation(transaction, now);
+      propagation.peersChanged(transaction.getConfidence().numBroadcastPeers(), now);
+      // Listen before it can be dropped, so that dropping it always stops the listening.
+      propagation.listenTo(new TransactionConfidence.Listener() {
+        @Override
+        public void onConfidenceChanged(Transaction tx, ChangeReason reason) {
+          TransactionConfidence confidence = tx.getConfidence();
+          propagation.peersChanged(confidence.numBroadcastPeers(), System.currentTimeMillis());
+          ConfidenceType type = confidence.getConfidenceType();
+          if (type == ConfidenceType.BUILDING || type == ConfidenceType.DEAD) {
+            propagation.finish();
+            propagation.stopListening();
+          }
+        }
+      });
+      propagations.put(transaction.getHash(), propagation);
+      dropOldest();
+    }
+  }
+
+  /**
+   * Drop the oldest finished propagations, then the oldest of the rest, to keep to MAXIMUM_NUMBER_OF_TRANSACTIONS.
+   * The confidence of a dropped transaction is no longer followed.
+   */
+  private void dropOldest() {
+    Iterator<Propagation> iterator = propagations.values().iterator();
+    while (propagations.size() > MAXIMUM_NUMBER_OF_TRANSACTIONS && iterator.hasNext()) {
+      Propagation propagation = iterator.next();
+      if (propagation.isFinished()) {
+        iterator.remove();
+        propagation.stopListening();
+      }
+    }
+    iterator = propagations.values().iterator();
+    while (propagations.size() > MAXIMUM_NUMBER_OF_TRANSACTIONS && iterator.hasNext()) {
+      Propagation propagation = iterator.next();
+      iterator.remove();
+      propagation.stopListening();
+    }
+  }
+
+  /**
+   * Broadcast again the transactions that have not propagated within the rebroadcast interval.
+   *
+   * @return The transactions broadcast
+   */
+  List<Transaction> rebroadcast(long now) {
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    if (peerGroup.numConnectedPeers() == 0) {
+      // Sent to each peer as it connects.
+      return transactions;
+    }
+    for (Propagation propagation : getPropagations()) {
+      if (propagation.isRebroadcastDue(rebroadcastInterval, now)) {
+        log.debug("Broadcasting transaction " + propagation.getTransaction().getHashAsString() + " again as only "
+                + propagation.getNumberOfPeers() + " peers have announced it");
+        propagation.rebroadcast(now);
+        transactions.add(propagation.getTransaction());
+      }
+    }
+    for (Transaction transaction : transactions) {
+      peerGroup.broadcastTransaction(transaction, 1);
+    }
+    return transactions;
+  }
+
+  /**
+   * @return The propagation of a transaction, or null if it is not being followed
+   */
+  public synchronized Propagation getPropagation(Sha256Hash hash) {
+    return propagations.get(hash);
+  }
+
+  /**
+   * @return The transactions followed, oldest first
+   */
+  public synchronized List<Propagation> getPropagations() {
+    return new ArrayList<Propagation>(propagations.values());
+  }
+
+  public long getRebroadcastInterval() {
+    return rebroadcastInterval;
+  }
+
+  /**
+   * @param rebroadcastInterval
+   *            Milliseconds to wait for a transaction to propagate before broadcasting it again
+   */
+  public void setRebroadcastInterval(long rebroadcastInterval) {
+    this.rebroadcastInterval = rebroadcastInterval;
+  }
+}
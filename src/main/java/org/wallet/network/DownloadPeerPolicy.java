@@ -0,0 +1,279 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
+
+import com.google.worldcoin.core.AbstractPeerEventListener;
+import com.google.worldcoin.core.Block;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerAddress;
+import com.google.worldcoin.core.PeerGroup;
+import com.google.worldcoin.utils.Threading;
+
+/**
+ * Chooses the peer to download the block chain from and changes it when the download becomes slow.
+ *
+ * The blocks per second of each peer downloaded from are measured, and the ping round trip times come from the
+ * PeerHealthMonitor. Peers known to be quick are chosen first, then the untried ones by round trip time, then the ones
+ * known to be slow.
+ *
+ * While a download is in progress the rate is checked every CHECK_INTERVAL. If it has dropped below
+ * MINIMUM_BLOCKS_PER_SECOND and there is another peer to use, the download peer is disconnected. The peer group then
+ * chooses the next download peer (through selectDownloadPeer) and carries on the download from it.
+ */
+public class DownloadPeerPolicy {
+
+  private static final Logger log = LoggerFactory.getLogger(DownloadPeerPolicy.class);
+
+  public static final long CHECK_INTERVAL = 10000; // milliseconds
+
+  /**
+   * A download peer slower than this is changed.
+   */
+  public static final double MINIMUM_BLOCKS_PER_SECOND = 10;
+
+  /**
+   * A new download peer is given this long before its rate is judged.
+   */
+  public static final long GRACE_PERIOD = 20000; // milliseconds
+
+  /**
+   * Near the end of the download blocks only arrive as they are mined, so the rate is not judged.
+   */
+  public static final int MINIMUM_BLOCKS_LEFT = 500;
+
+  /**
+   * How a peer compares as a download peer.
+   */
+  static class Candidate implements Comparable<Candidate> {
+    /**
+     * Blocks per second when last downloaded from, or -1 if never downloaded from.
+     */
+    final double blocksPerSecond;
+
+    /**
+     * Average ping round trip time, or -1 if not known.
+     */
+    final long roundTripTime;
+
+    Candidate(double blocksPerSecond, long roundTripTime) {
+      this.blocksPerSecond = blocksPerSecond;
+      this.roundTripTime = roundTripTime;
+    }
+
+    private int tier() {
+      if (blocksPerSecond < 0) {
+        return 1;
+      }
+      return blocksPerSecond >= MINIMUM_BLOCKS_PER_SECOND ? 0 : 2;
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+      int tier = tier();
+      int otherTier = other.tier();
+      if (tier != otherTier) {
+        return tier < otherTier ? -1 : 1;
+      }
+      if (tier != 1 && blocksPerSecond != other.blocksPerSecond) {
+        return blocksPerSecond > other.blocksPerSecond ? -1 : 1;
+      }
+      long time = roundTripTime < 0 ? Long.MAX_VALUE : roundTripTime;
+      long otherTime = other.roundTripTime < 0 ? Long.MAX_VALUE : other.roundTripTime;
+      return time < otherTime ? -1 : (time > otherTime ? 1 : 0);
+    }
+  }
+
+  /**
+   * The blocks downloaded from the current download peer.
+   */
+  static class DownloadRate {
+    private final long startTime;
+    private long checkTime;
+    private int blocksSinceCheck = 0;
+    private int blocksLeft = -1;
+
+    DownloadRate(long now) {
+      this.startTime = now;
+      this.checkTime = now;
+    }
+
+    synchronized void blockDownloaded(int blocksLeft) {
+      blocksSinceCheck++;
+      this.blocksLeft = blocksLeft;
+    }
+
+    /**
+     * @return The blocks per second since the last check
+     */
+    synchronized double check(long now) {
+      double blocksPerSecond = now > checkTime ? blocksSinceCheck * 1000.0 / (now - checkTime) : 0;
+      blocksSinceCheck = 0;
+      checkTime = now;
+      return blocksPerSecond;
+    }
+
+    /**
+     * @return true once the rate is a fair measure of the peer, after the slow start of a download
+     */
+    synchronized boolean isPastGracePeriod(long now) {
+      return now - startTime >= GRACE_PERIOD;
+    }
+
+    /**
+     * @return true if the download is too slow, judged at a check
+     */
+    synchronized boolean isTooSlow(double blocksPerSecond, long now) {
+      return isPastGracePeriod(now) && blocksLeft > MINIMUM_BLOCKS_LEFT
+              && blocksPerSecond < MINIMUM_BLOCKS_PER_SECOND;
+    }
+  }
+
+  private final PeerGroup peerGroup;
+  private final PeerHealthMonitor peerHealthMonitor;
+
+  /**
+   * Blocks per second of each peer when last downloaded from, measured after the grace period. Kept across
+   * reconnections.
+   */
+  private final Map<PeerAddress, Double> blocksPerSecond = new HashMap<PeerAddress, Double>();
+
+  private Peer downloadPeer;
+  private DownloadRate downloadRate;
+
+  private ScheduledTask checkTask;
+
+  private final AbstractPeerEventListener peerListener = new AbstractPeerEventListener() {
+    @Override
+    public void onBlocksDownloaded(Peer peer, Block block, int blocksLeft) {
+      DownloadRate rate = rateOf(peer);
+      if (rate != null) {
+        rate.blockDownloaded(blocksLeft);
+      }
+    }
+
+    @Override
+    public void onChainDownloadStarted(Peer peer, int blocksLeft) {
+      synchronized (DownloadPeerPolicy.this) {
+        downloadPeer = peer;
+        downloadRate = new DownloadRate(System.currentTimeMillis());
+      }
+    }
+  };
+
+  public DownloadPeerPolicy(PeerGroup peerGroup, PeerHealthMonitor peerHealthMonitor) {
+    this.peerGroup = peerGroup;
+    this.peerHealthMonitor = peerHealthMonitor;
+  }
+
+  public synchronized void start() {
+    if (checkTask != null) {
+      return;
+    }
+    peerGroup.addEventListener(peerListener, Threading.SAME_THREAD);
+    checkTask = Scheduler.INSTANCE.scheduleWithFixedDelay("DownloadPeerPolicy", new Runnable() {
+      @Override
+      public void run() {
+        checkDownloadPeer();
+      }
+    }, CHECK_INTERVAL, CHECK_INTERVAL);
+  }
+
+  public synchronized void stop() {
+    if (checkTask == null) {
+      return;
+    }
+    checkTask.cancel();
+    checkTask = null;
+    peerGroup.removeEventListener(peerListener);
+    downloadPeer = null;
+    downloadRate = null;
+  }
+
+  /**
+   * Choose the best of the candidate download peers.
+   */
+  public Peer select(List<Peer> candidates) {
+    Peer best = null;
+    Candidate bestCandidate = null;
+    for (Peer peer : candidates) {
+      Candidate candidate = candidateOf(peer);
+      if (bestCandidate == null || candidate.compareTo(bestCandidate) < 0) {
+        best = peer;
+        bestCandidate = candidate;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return The blocks per second of a peer when last downloaded from, or -1 if it has not been downloaded from
+   */
+  public synchronized double getBlocksPerSecond(Peer peer) {
+    Double rate = blocksPerSecond.get(peer.getAddress());
+    return rate == null ? -1 : rate;
+  }
+
+  void checkDownloadPeer() {
+    Peer peerToChange = null;
+    double rate;
+    synchronized (this) {
+      if (downloadPeer == null || downloadRate == null || downloadPeer != peerGroup.getDownloadPeer()) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      rate = downloadRate.check(now);
+      if (downloadRate.isPastGracePeriod(now)) {
+        blocksPerSecond.put(downloadPeer.getAddress(), rate);
+      }
+      if (downloadRate.isTooSlow(rate, now) && peerGroup.numConnectedPeers() > 1) {
+        peerToChange = downloadPeer;
+        downloadPeer = null;
+        downloadRate = null;
+      }
+    }
+    if (peerToChange != null) {
+      log.debug("Changing download peer from '" + peerToChange.getAddress() + "' as it is downloading "
+              + String.format("%.1f", rate) + " blocks per second");
+      // The peer group chooses a new download peer and continues the download from it.
+      peerToChange.close();
+    }
+  }
+
+  private synchronized DownloadRate rateOf(Peer peer) {
+    return peer == downloadPeer ? downloadRate : null;
+  }
+
+  private Candidate candidateOf(Peer peer) {
+    long roundTripTime = -1;
+    PeerHealthMonitor.PeerStatistics statistics = peerHealthMonitor.getStatistics(peer);
+    if (statistics != null) {
+      roundTripTime = statistics.getAverageRoundTripTime();
+    }
+    if (roundTripTime < 0 && peer.getPingTime() != Long.MAX_VALUE) {
+      roundTripTime = peer.getPingTime();
+    }
+    return new Candidate(getBlocksPerSecond(peer), roundTripTime);
+  }
+}
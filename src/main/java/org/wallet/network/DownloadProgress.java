@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.Date;
+
+/**
+ * An immutable snapshot of the block chain download progress.
+ */
+public final class DownloadProgress {
+
+    public static final long UNKNOWN_TIME_REMAINING = -1;
+
+    private final double percentComplete;
+    private final int blocksLeft;
+    private final long lastBlockTime;
+    private final double blocksPerSecond;
+    private final long secondsRemaining;
+
+    public DownloadProgress(double percentComplete, int blocksLeft, long lastBlockTime, double blocksPerSecond, long secondsRemaining) {
+        this.percentComplete = percentComplete;
+        this.blocksLeft = blocksLeft;
+        this.lastBlockTime = lastBlockTime;
+        this.blocksPerSecond = blocksPerSecond;
+        this.secondsRemaining = secondsRemaining;
+    }
+
+    /**
+     * @return The percentage of the chain downloaded, estimated
+     */
+    public double getPercentComplete() {
+        return percentComplete;
+    }
+
+    public int getBlocksLeft() {
+        return blocksLeft;
+    }
+
+    /**
+     * @return The date of the last block downloaded
+     */
+    public Date getLastBlockDate() {
+        return new Date(lastBlockTime);
+    }
+
+    public double getBlocksPerSecond() {
+        return blocksPerSecond;
+    }
+
+    /**
+     * @return The estimated number of seconds until the download completes, or UNKNOWN_TIME_REMAINING
+     */
+    public long getSecondsRemaining() {
+        return secondsRemaining;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadProgress [percentComplete=" + percentComplete + ", blocksLeft=" + blocksLeft + ", blocksPerSecond="
+                + blocksPerSecond + ", secondsRemaining=" + secondsRemaining + "]";
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
+
+/**
+ * Samples the block chain download progress at a fixed rate.
+ *
+ * The download thread only records the latest counters (see blockDownloaded). The sampler works out the
+ * download rate and time remaining from them and passes one DownloadProgress snapshot per sample to the
+ * Listener, and only if there has been progress since the last sample.
+ */
+public class DownloadProgressReporter {
+
+    /**
+     * Time between samples - four a second.
+     */
+    public static final int SAMPLE_INTERVAL = 250; // milliseconds
+
+    /**
+     * Weight given to the latest sample in the moving average of the download rate.
+     */
+    private static final double RATE_SMOOTHING = 0.2;
+
+    public interface Listener {
+        /**
+         * Called on the sampling thread with the latest progress.
+         */
+        void progressSampled(DownloadProgress progress);
+    }
+
+    private final Listener listener;
+
+    private final long sampleInterval;
+
+    // Written by the download thread.
+    private final AtomicLong updateCount = new AtomicLong();
+    private volatile double percentComplete;
+    private volatile int blocksLeft;
+    private volatile long lastBlockTime;
+
+    // Used by the sampling thread.
+    private long lastSampledUpdateCount;
+    private int lastSampledBlocksLeft = -1;
+    private long lastSampleTime;
+    private double blocksPerSecond;
+
+    private volatile DownloadProgress latestProgress;
+
+    private ScheduledTask sampler;
+
+    public DownloadProgressReporter(Listener listener) {
+        this(listener, SAMPLE_INTERVAL);
+    }
+
+    public DownloadProgressReporter(Listener listener, long sampleInterval) {
+        this.listener = listener;
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Record download progress. Called on the download thread for each block so this does no more than record the values.
+     *
+     * @param percentComplete
+     *            the percentage of chain downloaded, estimated
+     * @param blocksLeft
+     *            number of blocks left to download
+     * @param lastBlockTime
+     *            the time of the last block downloaded, in milliseconds
+     */
+    public void blockDownloaded(double percentComplete, int blocksLeft, long lastBlockTime) {
+        this.percentComplete = percentComplete;
+        this.blocksLeft = blocksLeft;
+        this.lastBlockTime = lastBlockTime;
+        updateCount.incrementAndGet();
+    }
+
+    /**
+     * Start sampling for a new download.
+     */
+    public synchronized void start() {
+        lastSampledUpdateCount = updateCount.get();
+        lastSampledBlocksLeft = -1;
+        lastSampleTime = 0;
+        blocksPerSecond = 0;
+        latestProgress = null;
+
+        if (sampler != null) {
+            return;
+        }
+        sampler = Scheduler.INSTANCE.scheduleAtFixedRate("DownloadProgressReporter", new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, sampleInterval, sampleInterval);
+    }
+
+    /**
+     * Stop sampling. No progress is passed to the listener after this returns.
+     */
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.cancel();
+            sampler = null;
+        }
+    }
+
+    /**
+     * @return The progress passed to the listener last, or null if there has not been any yet
+     */
+    public DownloadProgress getLatestProgress() {
+        return latestProgress;
+    }
+
+    /**
+     * Take a sample - package level for testing.
+     */
+    synchronized void sample() {
+        if (sampler == null) {
+            // Stopped.
+            return;
+        }
+
+        long currentUpdateCount = updateCount.get();
+        if (currentUpdateCount == lastSampledUpdateCount) {
+            return;
+        }
+        lastSampledUpdateCount = currentUpdateCount;
+
+        int currentBlocksLeft = blocksLeft;
+        long now = System.currentTimeMillis();
+        if (lastSampledBlocksLeft >= 0 && now > lastSampleTime) {
+            double sampleRate = Math.max(0, lastSampledBlocksLeft - currentBlocksLeft) * 1000.0 / (now - lastSampleTime);
+            blocksPerSecond = blocksPerSecond == 0 ? sampleRate : RATE_SMOOTHING * sampleRate + (1 - RATE_SMOOTHING) * blocksPerSecond;
+        }
+        lastSampledBlocksLeft = currentBlocksLeft;
+        lastSampleTime = now;
+
+        long secondsRemaining = blocksPerSecond > 0 ? (long) Math.ceil(currentBlocksLeft / blocksPerSecond) : DownloadProgress.UNKNOWN_TIME_REMAINING;
+
+        DownloadProgress progress = new DownloadProgress(percentComplete, currentBlocksLeft, lastBlockTime, blocksPerSecond, secondsRemaining);
+        latestProgress = progress;
+        listener.progressSampled(progress);
+    }
+}
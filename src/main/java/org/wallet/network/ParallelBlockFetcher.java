@@ -0,0 +1,629 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.worldcoin.core.AbstractBlockChain;
+import com.google.worldcoin.core.AbstractPeerEventListener;
+import com.google.worldcoin.core.Block;
+import com.google.worldcoin.core.FilteredBlock;
+import com.google.worldcoin.core.GetDataMessage;
+import com.google.worldcoin.core.GetHeadersMessage;
+import com.google.worldcoin.core.HeadersMessage;
+import com.google.worldcoin.core.InventoryItem;
+import com.google.worldcoin.core.Message;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerEventListener;
+import com.google.worldcoin.core.PeerGroup;
+import com.google.worldcoin.core.PrunedException;
+import com.google.worldcoin.core.ProtocolException;
+import com.google.worldcoin.core.Sha256Hash;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.VerificationException;
+import com.google.worldcoin.utils.Threading;
+
+/**
+ * Downloads the filtered blocks of a long block chain download from several peers at once.
+ *
+ * The block headers are fetched first from one peer. The filtered blocks for them are then asked for in batches from
+ * all the connected peers that have the Bloom filter, and added to the block chain in order as they arrive. A batch
+ * is known to be finished when the peer answers a ping sent after it - anything it did not send is asked for again,
+ * as is a batch from a peer that disconnects or does not finish it within BATCH_TIMEOUT. Headers not received within
+ * HEADERS_TIMEOUT are asked for from another peer.
+ *
+ * The filtered blocks and their transactions are taken out of the peers' message streams before the peers see them,
+ * so the normal download is not started until the fetch is over. Whatever is left (new blocks, or everything if the
+ * fetch fails or makes no progress for STALL_TIMEOUT) is then downloaded in the normal way. The fetch runs on a
+ * Scheduler worker thread.
+ */
+public class ParallelBlockFetcher {
+
+  private static final Logger log = LoggerFactory.getLogger(ParallelBlockFetcher.class);
+
+  /**
+   * A shorter download is not worth fetching in parallel.
+   */
+  public static final int MINIMUM_NUMBER_OF_BLOCKS = 1000;
+
+  public static final int MINIMUM_NUMBER_OF_PEERS = 2;
+
+  /**
+   * How long to wait for MINIMUM_NUMBER_OF_PEERS to connect.
+   */
+  public static final long PEER_WAIT = 30000; // milliseconds
+
+  public static final int BATCH_SIZE = 100;
+
+  public static final long BATCH_TIMEOUT = 60000; // milliseconds
+
+  public static final long HEADERS_TIMEOUT = 30000; // milliseconds
+
+  /**
+   * The fetch is given up if no block is added to the chain and no headers arrive for this long.
+   */
+  public static final long STALL_TIMEOUT = 2 * BATCH_TIMEOUT; // milliseconds
+
+  private static final String TASK_NAME = "ParallelBlockFetcher";
+
+  /**
+   * Blocks are not asked for further than this ahead of the next block to add to the chain.
+   */
+  public static final int MAXIMUM_BUFFERED_BLOCKS = 2000;
+
+  /**
+   * How long the fetching thread waits for something to happen before looking for timeouts.
+   */
+  private static final long WAIT = 1000; // milliseconds
+
+  /**
+   * The order blocks are to be fetched and added in, and the ones fetched but not added yet.
+   */
+  static class FetchSchedule<T> {
+    private final List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+    private final Map<Sha256Hash, Integer> positions = new HashMap<Sha256Hash, Integer>();
+    private final Map<Sha256Hash, T> fetched = new HashMap<Sha256Hash, T>();
+    private final LinkedList<Sha256Hash> toFetchAgain = new LinkedList<Sha256Hash>();
+    private int nextToFetch = 0;
+    private int nextToAdd = 0;
+
+    void addHashes(List<Sha256Hash> newHashes) {
+      for (Sha256Hash hash : newHashes) {
+        positions.put(hash, hashes.size());
+        hashes.add(hash);
+      }
+    }
+
+    /**
+     * @return The hashes to ask for next - first any to fetch again, then new ones within MAXIMUM_BUFFERED_BLOCKS of
+     *         the next block to add
+     */
+    List<Sha256Hash> nextBatch(int maximumSize) {
+      List<Sha256Hash> batch = new ArrayList<Sha256Hash>();
+      while (batch.size() < maximumSize && !toFetchAgain.isEmpty()) {
+        Sha256Hash hash = toFetchAgain.removeFirst();
+        Integer position = positions.get(hash);
+        if (position != null && position >= nextToAdd && !fetched.containsKey(hash)) {
+          batch.add(hash);
+        }
+      }
+      int limit = Math.min(hashes.size(), nextToAdd + MAXIMUM_BUFFERED_BLOCKS);
+      while (batch.size() < maximumSize && nextToFetch < limit) {
+        batch.add(hashes.get(nextToFetch++));
+      }
+      return batch;
+    }
+
+    /**
+     * @return true if the block is one that is wanted
+     */
+    boolean fetched(Sha256Hash hash, T block) {
+      Integer position = positions.get(hash);
+      if (position == null || position < nextToAdd) {
+        return false;
+      }
+      fetched.put(hash, block);
+      return true;
+    }
+
+    /**
+     * Ask again for the blocks of a batch that did not arrive.
+     */
+    void fetchAgain(Collection<Sha256Hash> batch) {
+      for (Sha256Hash hash : batch) {
+        Integer position = positions.get(hash);
+        if (position != null && position >= nextToAdd && !fetched.containsKey(hash) && !toFetchAgain.contains(hash)) {
+          toFetchAgain.add(hash);
+        }
+      }
+    }
+
+    /**
+     * @return The next block to add to the chain, or null if it has not been fetched yet
+     */
+    T takeNextToAdd() {
+      if (nextToAdd >= hashes.size()) {
+        return null;
+      }
+      T block = fetched.remove(hashes.get(nextToAdd));
+      if (block != null) {
+        positions.remove(hashes.get(nextToAdd));
+        hashes.set(nextToAdd, null);
+        nextToAdd++;
+      }
+      return block;
+    }
+
+    /**
+     * @return The number of blocks known but not yet asked for
+     */
+    int getNumberNotFetched() {
+      return hashes.size() - nextToFetch;
+    }
+
+    boolean isAllAdded() {
+      return nextToAdd >= hashes.size();
+    }
+  }
+
+  /**
+   * The blocks asked for from one peer.
+   */
+  static class Batch {
+    final Set<Sha256Hash> hashes;
+    final long sentTime;
+    FilteredBlock current;
+
+    Batch(Collection<Sha256Hash> hashes, long sentTime) {
+      this.hashes = new HashSet<Sha256Hash>(hashes);
+      this.sentTime = sentTime;
+    }
+  }
+
+  private final PeerGroup peerGroup;
+  private final AbstractBlockChain blockChain;
+  private final NetworkParameters networkParameters;
+  private final PeerEventListener[] progressListeners;
+
+  final FetchSchedule<FilteredBlock> schedule = new FetchSchedule<FilteredBlock>();
+  private final Map<Peer, Batch> batches = new HashMap<Peer, Batch>();
+
+  /**
+   * Blocks a peer sent that were not asked for, kept only until the transactions that come with them are dropped.
+   */
+  private final Map<Peer, FilteredBlock> unrequestedBlocks = new HashMap<Peer, FilteredBlock>();
+
+  private Peer headersPeer;
+  private boolean headersRequested = false;
+  private long headersRequestTime;
+  private int numberOfHeadersRequests = 0;
+  private boolean allHeadersKnown = false;
+  private Sha256Hash lastHeaderHash;
+
+  /**
+   * When a block was last added to the chain or headers last arrived.
+   */
+  private long lastProgressTime;
+
+  private boolean failed = false;
+  private volatile boolean stopped = false;
+
+  private final PeerEventListener messageListener = new AbstractPeerEventListener() {
+    @Override
+    public Message onPreMessageReceived(Peer peer, Message message) {
+      return filterMessage(peer, message);
+    }
+
+    @Override
+    public void onPeerDisconnected(Peer peer, int peerCount) {
+      peerDisconnected(peer);
+    }
+  };
+
+  /**
+   * @param progressListeners
+   *            Listeners to tell of the download starting and of each block added, as if the download were from one
+   *            peer
+   */
+  public ParallelBlockFetcher(PeerGroup peerGroup, AbstractBlockChain blockChain, NetworkParameters networkParameters,
+                              PeerEventListener... progressListeners) {
+    this.peerGroup = peerGroup;
+    this.blockChain = blockChain;
+    this.networkParameters = networkParameters;
+    this.progressListeners = progressListeners;
+  }
+
+  /**
+   * Fetch the blocks on a Scheduler worker thread and then run the normal download.
+   *
+   * @param thenDownload
+   *            Starts the normal download. Run when the fetch is over, whether it worked or not, unless stopped.
+   */
+  public void start(final Runnable thenDownload) {
+    try {
+      Scheduler.INSTANCE.submit(TASK_NAME, new Runnable() {
+        @Override
+        public void run() {
+          try {
+            fetch();
+          } catch (RuntimeException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage(), e);
+          } finally {
+            peerGroup.removeEventListener(messageListener);
+            if (!stopped) {
+              thenDownload.run();
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      log.debug("Not fetching blocks in parallel as the Scheduler is busy or has shut down");
+      if (!stopped) {
+        thenDownload.run();
+      }
+    }
+  }
+
+  public void stop() {
+    stopped = true;
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  private void fetch() {
+    try {
+      peerGroup.waitForPeers(MINIMUM_NUMBER_OF_PEERS).get(PEER_WAIT, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.debug("Not fetching blocks in parallel as fewer than " + MINIMUM_NUMBER_OF_PEERS + " peers connected");
+      return;
+    } catch (Exception e) {
+      log.error(e.getClass().getName() + " " + e.getMessage(), e);
+      return;
+    }
+
+    final int targetHeight = peerGroup.getMostCommonChainHeight();
+    if (targetHeight - blockChain.getBestChainHeight() < MINIMUM_NUMBER_OF_BLOCKS || stopped) {
+      return;
+    }
+    log.debug("Fetching blocks in parallel from height " + blockChain.getBestChainHeight() + " to " + targetHeight);
+
+    synchronized (this) {
+      lastHeaderHash = blockChain.getChainHead().getHeader().getHash();
+      lastProgressTime = System.currentTimeMillis();
+    }
+    peerGroup.addEventListener(messageListener, Threading.SAME_THREAD);
+
+    Peer progressPeer = peerGroup.getDownloadPeer();
+    for (PeerEventListener listener : progressListeners) {
+      listener.onChainDownloadStarted(progressPeer, targetHeight - blockChain.getBestChainHeight());
+    }
+
+    while (!stopped) {
+      FilteredBlock block;
+      synchronized (this) {
+        if (failed || (allHeadersKnown && schedule.isAllAdded())) {
+          break;
+        }
+        block = schedule.takeNextToAdd();
+        if (block == null) {
+          long now = System.currentTimeMillis();
+          if (isStalled(now)) {
+            log.debug("Parallel fetch has made no progress for " + STALL_TIMEOUT + " ms");
+            break;
+          }
+          requestHeadersIfNeeded(now);
+          timeOutBatches(now);
+          requestBlocks(now);
+          try {
+            wait(WAIT);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          continue;
+        }
+      }
+
+      // Add the block to the chain without holding up the network threads.
+      try {
+        if (!blockChain.add(block)) {
+          log.error("Fetched block " + block.getHash() + " does not connect to the chain");
+          break;
+        }
+      } catch (VerificationException e) {
+        log.error(e.getClass().getName() + " " + e.getMessage(), e);
+        break;
+      } catch (PrunedException e) {
+        log.error(e.getClass().getName() + " " + e.getMessage(), e);
+        break;
+      }
+      synchronized (this) {
+        lastProgressTime = System.currentTimeMillis();
+      }
+
+      // Leave the end of the download to be reported by the normal download.
+      int blocksLeft = Math.max(1, targetHeight - blockChain.getBestChainHeight());
+      for (PeerEventListener listener : progressListeners) {
+        listener.onBlocksDownloaded(progressPeer, block.getBlockHeader(), blocksLeft);
+      }
+    }
+    log.debug("Parallel fetch ended at height " + blockChain.getBestChainHeight());
+  }
+
+  /**
+   * @return true if no block has been added to the chain and no headers have arrived for STALL_TIMEOUT - for
+   *         instance as there are no usable peers
+   */
+  synchronized boolean isStalled(long now) {
+    return now - lastProgressTime > STALL_TIMEOUT;
+  }
+
+  /**
+   * Ask one peer for the next headers once the known blocks are running out. Headers not received within
+   * HEADERS_TIMEOUT are asked for from the next peer.
+   */
+  private void requestHeadersIfNeeded(long now) {
+    if (headersRequested && now - headersRequestTime > HEADERS_TIMEOUT) {
+      log.debug("Peer '" + headersPeer.getAddress() + "' did not send the headers in time");
+      headersPeer = null;
+      headersRequested = false;
+    }
+    if (allHeadersKnown || headersRequested || schedule.getNumberNotFetched() > MAXIMUM_BUFFERED_BLOCKS) {
+      return;
+    }
+    List<Peer> peers = usablePeers();
+    if (peers.isEmpty()) {
+      return;
+    }
+    headersPeer = peers.get(numberOfHeadersRequests++ % peers.size());
+    List<Sha256Hash> locator = new ArrayList<Sha256Hash>();
+    locator.add(lastHeaderHash);
+    try {
+      headersPeer.sendMessage(new GetHeadersMessage(networkParameters, locator, Sha256Hash.ZERO_HASH));
+      headersRequested = true;
+      headersRequestTime = now;
+    } catch (RuntimeException e) {
+      log.debug("Could not ask peer '" + headersPeer.getAddress() + "' for headers. Message was " + e.getMessage());
+      headersPeer = null;
+    }
+  }
+
+  /**
+   * Ask again for the blocks of the batches that have taken too long.
+   */
+  synchronized void timeOutBatches(long now) {
+    for (Map.Entry<Peer, Batch> entry : new ArrayList<Map.Entry<Peer, Batch>>(batches.entrySet())) {
+      if (now - entry.getValue().sentTime > BATCH_TIMEOUT) {
+        log.debug("Peer '" + entry.getKey().getAddress() + "' did not finish its batch in time");
+        batches.remove(entry.getKey());
+        schedule.fetchAgain(entry.getValue().hashes);
+      }
+    }
+  }
+
+  /**
+   * Give the next blocks to fetch to a peer.
+   *
+   * @return The batch, or null if there are no blocks to fetch at the moment
+   */
+  synchronized Batch assignBatch(Peer peer, long now) {
+    List<Sha256Hash> hashes = schedule.nextBatch(BATCH_SIZE);
+    if (hashes.isEmpty()) {
+      return null;
+    }
+    Batch batch = new Batch(hashes, now);
+    batches.put(peer, batch);
+    return batch;
+  }
+
+  /**
+   * Give a batch to each usable peer without one.
+   */
+  private void requestBlocks(long now) {
+    for (final Peer peer : usablePeers()) {
+      if (batches.containsKey(peer)) {
+        continue;
+      }
+      final Batch batch = assignBatch(peer, now);
+      if (batch == null) {
+        return;
+      }
+      GetDataMessage getData = new GetDataMessage(networkParameters);
+      for (Sha256Hash hash : batch.hashes) {
+        getData.addItem(new InventoryItem(InventoryItem.Type.FilteredBlock, hash));
+      }
+      try {
+        peer.sendMessage(getData);
+        // The answer to the ping comes after all the blocks and transactions.
+        Futures.addCallback(peer.ping(), new FutureCallback<Long>() {
+          @Override
+          public void onSuccess(Long result) {
+            batchEnded(peer, batch);
+          }
+
+          @Override
+          public void onFailure(Throwable throwable) {
+            batchEnded(peer, batch);
+          }
+        });
+      } catch (ProtocolException e) {
+        batches.remove(peer);
+        schedule.fetchAgain(batch.hashes);
+      } catch (RuntimeException e) {
+        log.debug("Could not ask peer '" + peer.getAddress() + "' for blocks. Message was " + e.getMessage());
+        batches.remove(peer);
+        schedule.fetchAgain(batch.hashes);
+      }
+    }
+  }
+
+  /**
+   * @return The connected peers that can send filtered blocks
+   */
+  private List<Peer> usablePeers() {
+    List<Peer> peers = new ArrayList<Peer>();
+    for (Peer peer : peerGroup.getConnectedPeers()) {
+      if (peer.getBloomFilter() != null && peer.getPeerVersionMessage() != null
+              && peer.getPeerVersionMessage().isBloomFilteringSupported()
+              && peer.getPeerVersionMessage().isPingPongSupported()) {
+        peers.add(peer);
+      }
+    }
+    return peers;
+  }
+
+  synchronized void peerDisconnected(Peer peer) {
+    Batch batch = batches.remove(peer);
+    if (batch != null) {
+      // A block still being received may not have all its transactions, so it is asked for again too.
+      schedule.fetchAgain(batch.hashes);
+    }
+    unrequestedBlocks.remove(peer);
+    if (peer == headersPeer) {
+      headersPeer = null;
+      headersRequested = false;
+    }
+    notifyAll();
+  }
+
+  synchronized void batchEnded(Peer peer, Batch batch) {
+    endCurrentBlock(batch);
+    if (batches.get(peer) == batch) {
+      batches.remove(peer);
+    }
+    // Anything not sent is asked for again.
+    schedule.fetchAgain(batch.hashes);
+    notifyAll();
+  }
+
+  /**
+   * Take the fetched blocks and their transactions out of the messages from a peer.
+   *
+   * @return The message for the peer to process, or null if it has been taken
+   */
+  synchronized Message filterMessage(Peer peer, Message message) {
+    if (stopped) {
+      return message;
+    }
+    Batch batch = batches.get(peer);
+
+    if (message instanceof Transaction) {
+      FilteredBlock current = batch != null && batch.current != null ? batch.current : unrequestedBlocks.get(peer);
+      if (current != null) {
+        try {
+          if (current.provideTransaction((Transaction) message)) {
+            return null;
+          }
+        } catch (VerificationException e) {
+          log.debug("Bad filtered block from peer '" + peer.getAddress() + "'. Message was " + e.getMessage());
+        }
+        return message;
+      }
+    }
+
+    // Any other message ends the block being received.
+    unrequestedBlocks.remove(peer);
+    if (batch != null) {
+      endCurrentBlock(batch);
+    }
+
+    if (message instanceof FilteredBlock) {
+      FilteredBlock block = (FilteredBlock) message;
+      if (batch != null && batch.hashes.contains(block.getHash())) {
+        batch.current = block;
+      } else {
+        // Blocks not asked for are dropped, with their transactions, as the peer would only find them to be
+        // orphans. They are fetched in a later batch or by the normal download after the fetch.
+        unrequestedBlocks.put(peer, block);
+      }
+      return null;
+    }
+
+    if (message instanceof HeadersMessage && peer == headersPeer && headersRequested) {
+      headersReceived((HeadersMessage) message);
+      return null;
+    }
+    return message;
+  }
+
+  private void endCurrentBlock(Batch batch) {
+    FilteredBlock block = batch.current;
+    if (block == null) {
+      return;
+    }
+    batch.current = null;
+    try {
+      // Checks the partial merkle tree against the header.
+      block.getTransactionHashes();
+      if (schedule.fetched(block.getHash(), block)) {
+        batch.hashes.remove(block.getHash());
+        notifyAll();
+      }
+    } catch (VerificationException e) {
+      log.debug("Bad filtered block " + block.getHash() + ". Message was " + e.getMessage());
+    }
+  }
+
+  private void headersReceived(HeadersMessage headersMessage) {
+    headersRequested = false;
+    lastProgressTime = System.currentTimeMillis();
+    List<Block> headers = headersMessage.getBlockHeaders();
+    List<Sha256Hash> hashes = new ArrayList<Sha256Hash>(headers.size());
+    Sha256Hash previousHash = lastHeaderHash;
+    for (Block header : headers) {
+      if (!header.getPrevBlockHash().equals(previousHash)) {
+        log.error("Headers from peer '" + headersPeer.getAddress() + "' do not connect - stopping parallel fetch");
+        failed = true;
+        break;
+      }
+      try {
+        header.verifyHeader();
+      } catch (VerificationException e) {
+        log.error(e.getClass().getName() + " " + e.getMessage(), e);
+        failed = true;
+        break;
+      }
+      previousHash = header.getHash();
+      hashes.add(previousHash);
+    }
+    if (!failed) {
+      schedule.addHashes(hashes);
+      lastHeaderHash = previousHash;
+      if (headers.size() < HeadersMessage.MAX_HEADERS) {
+        allHeadersKnown = true;
+      }
+    }
+    notifyAll();
+  }
+}
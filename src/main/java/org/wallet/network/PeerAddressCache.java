@@ -0,0 +1,242 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The addresses of peers that have been connected to, kept in a file next to the block store so that the next start
+ * (or replay) can connect to known good peers straight away rather than waiting for peer discovery.
+ *
+ * Each line of the file is an IP address, a port, the time of the last successful connection and the average ping
+ * round trip time (-1 if unknown). The addresses are numeric so reading them does not need DNS.
+ */
+public class PeerAddressCache {
+
+  private static final Logger log = LoggerFactory.getLogger(PeerAddressCache.class);
+
+  public static final int MAXIMUM_NUMBER_OF_ADDRESSES = 100;
+
+  /**
+   * Addresses not successfully connected to for this long are dropped.
+   */
+  public static final long MAXIMUM_AGE = 14L * 24 * 60 * 60 * 1000; // milliseconds
+
+  private static final String SEPARATOR = " ";
+  private static final String COMMENT = "#";
+
+  static class Entry {
+    final InetSocketAddress address;
+    long lastSuccess;
+    long latency;
+
+    Entry(InetSocketAddress address, long lastSuccess, long latency) {
+      this.address = address;
+      this.lastSuccess = lastSuccess;
+      this.latency = latency;
+    }
+  }
+
+  private final File file;
+
+  private final Map<InetSocketAddress, Entry> entries = new HashMap<InetSocketAddress, Entry>();
+
+  /**
+   * Whether the addresses have changed since they were read or written.
+   */
+  private boolean changed = false;
+
+  public PeerAddressCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Read the addresses from the file, if there is one. Unreadable lines and old addresses are skipped.
+   */
+  public synchronized void load(long now) {
+    entries.clear();
+    changed = false;
+    if (!file.exists()) {
+      return;
+    }
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith(COMMENT)) {
+          continue;
+        }
+        String[] fields = line.split(SEPARATOR);
+        if (fields.length != 4) {
+          continue;
+        }
+        try {
+          // A numeric address is not looked up.
+          InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(fields[0]), Integer.parseInt(fields[1]));
+          long lastSuccess = Long.parseLong(fields[2]);
+          long latency = Long.parseLong(fields[3]);
+          if (now - lastSuccess <= MAXIMUM_AGE) {
+            entries.put(address, new Entry(address, lastSuccess, latency));
+          }
+        } catch (IOException e) {
+          log.debug("Skipping peer address '" + line + "'. Message was " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+          log.debug("Skipping peer address '" + line + "'. Message was " + e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      log.error(e.getClass().getName() + " " + e.getMessage(), e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          log.error(e.getClass().getName() + " " + e.getMessage(), e);
+        }
+      }
+    }
+    log.debug("Read " + entries.size() + " peer addresses from '" + file.getAbsolutePath() + "'");
+  }
+
+  /**
+   * Write the addresses to the file. The most recently successful are kept if there are too many.
+   */
+  public synchronized void save() throws IOException {
+    List<Entry> toSave = new ArrayList<Entry>(entries.values());
+    Collections.sort(toSave, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry entry1, Entry entry2) {
+        return entry1.lastSuccess > entry2.lastSuccess ? -1 : (entry1.lastSuccess < entry2.lastSuccess ? 1 : 0);
+      }
+    });
+    if (toSave.size() > MAXIMUM_NUMBER_OF_ADDRESSES) {
+      toSave = toSave.subList(0, MAXIMUM_NUMBER_OF_ADDRESSES);
+    }
+
+    // Write a new file and then swap it in so that a failed write does not lose the addresses.
+    File newFile = new File(file.getAbsolutePath() + ".new");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(newFile), "UTF-8"));
+    try {
+      writer.write(COMMENT + " address port lastSuccess latency\n");
+      for (Entry entry : toSave) {
+        writer.write(entry.address.getAddress().getHostAddress() + SEPARATOR + entry.address.getPort() + SEPARATOR
+                + entry.lastSuccess + SEPARATOR + entry.latency + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Could not delete '" + file.getAbsolutePath() + "'");
+    }
+    if (!newFile.renameTo(file)) {
+      throw new IOException("Could not rename '" + newFile.getAbsolutePath() + "' to '" + file.getAbsolutePath() + "'");
+    }
+    changed = false;
+  }
+
+  /**
+   * Write the addresses to the file if they have changed since they were read or written.
+   *
+   * @return true if the file was written
+   */
+  public synchronized boolean saveIfChanged() throws IOException {
+    if (!changed) {
+      return false;
+    }
+    save();
+    return true;
+  }
+
+  /**
+   * @return The addresses, quickest first. Addresses without a known latency come after, most recently successful
+   *         first.
+   */
+  public synchronized List<InetSocketAddress> getAddresses() {
+    List<Entry> sorted = new ArrayList<Entry>(entries.values());
+    Collections.sort(sorted, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry entry1, Entry entry2) {
+        long latency1 = entry1.latency < 0 ? Long.MAX_VALUE : entry1.latency;
+        long latency2 = entry2.latency < 0 ? Long.MAX_VALUE : entry2.latency;
+        if (latency1 != latency2) {
+          return latency1 < latency2 ? -1 : 1;
+        }
+        return entry1.lastSuccess > entry2.lastSuccess ? -1 : (entry1.lastSuccess < entry2.lastSuccess ? 1 : 0);
+      }
+    });
+    List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(sorted.size());
+    for (Entry entry : sorted) {
+      addresses.add(entry.address);
+    }
+    return addresses;
+  }
+
+  public synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * Note that a peer was connected to.
+   */
+  public synchronized void recordSuccess(InetSocketAddress address, long now) {
+    if (address == null || address.getAddress() == null) {
+      return;
+    }
+    Entry entry = entries.get(address);
+    if (entry == null) {
+      entries.put(address, new Entry(address, now, -1));
+    } else {
+      entry.lastSuccess = Math.max(entry.lastSuccess, now);
+    }
+    changed = true;
+  }
+
+  /**
+   * Note the average ping round trip time of a peer that has been connected to.
+   */
+  public synchronized void recordLatency(InetSocketAddress address, long latency) {
+    Entry entry = address == null ? null : entries.get(address);
+    if (entry != null && latency >= 0 && entry.latency != latency) {
+      entry.latency = latency;
+      changed = true;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+}
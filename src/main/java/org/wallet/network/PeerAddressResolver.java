@@ -0,0 +1,215 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+
+/**
+ * Resolves the host names of the peers set in the preferences.
+ *
+ * The names are looked up at the same time on Scheduler worker threads and each is passed to the listener as soon as
+ * it is resolved, so one slow name does not hold up the others. Resolved addresses are kept for TIME_TO_LIVE, so a
+ * replay restart does not look them up again. If a look up fails, or has not finished after RESOLVE_TIMEOUT, the last
+ * address known for the name is used instead, if there is one.
+ */
+public enum PeerAddressResolver {
+  INSTANCE;
+
+  private static final Logger log = LoggerFactory.getLogger(PeerAddressResolver.class);
+
+  public static final long RESOLVE_TIMEOUT = 5000; // milliseconds
+
+  public static final long TIME_TO_LIVE = 10 * 60 * 1000; // milliseconds
+
+  private static final String TASK_NAME = "PeerAddressResolver";
+
+  private static final String LOOK_UP_TASK_NAME = "PeerAddressLookUp";
+
+  public interface Listener {
+    /**
+     * Called once for each host name that could be resolved, on the calling thread if the address is already known
+     * and on a Scheduler worker thread otherwise.
+     */
+    void resolved(String hostname, InetAddress address);
+
+    /**
+     * Called once every host name has been resolved, has failed or has timed out, after the last call to resolved.
+     *
+     * @param numberResolved
+     *            The number of host names passed to resolved
+     */
+    void finished(int numberResolved);
+  }
+
+  interface Lookup {
+    InetAddress lookUp(String hostname) throws UnknownHostException;
+  }
+
+  private static class DnsLookup implements Lookup {
+    @Override
+    public InetAddress lookUp(String hostname) throws UnknownHostException {
+      return InetAddress.getByName(hostname);
+    }
+  }
+
+  private static class Resolution {
+    final InetAddress address;
+    final long expiryTime;
+
+    Resolution(InetAddress address, long expiryTime) {
+      this.address = address;
+      this.expiryTime = expiryTime;
+    }
+  }
+
+  /**
+   * The host names of one call to resolve still to be done.
+   */
+  private static class Progress {
+    final Listener listener;
+    final AtomicInteger remaining;
+    final AtomicInteger numberResolved = new AtomicInteger(0);
+
+    Progress(Listener listener, int numberOfHostnames) {
+      this.listener = listener;
+      this.remaining = new AtomicInteger(numberOfHostnames);
+    }
+
+    void done(String hostname, InetAddress address) {
+      if (address != null) {
+        listener.resolved(hostname, address);
+        numberResolved.incrementAndGet();
+      }
+      if (remaining.decrementAndGet() == 0) {
+        listener.finished(numberResolved.get());
+      }
+    }
+  }
+
+  private final Map<String, Resolution> resolutions = new HashMap<String, Resolution>();
+
+  private volatile Lookup lookup = new DnsLookup();
+
+  private volatile long resolveTimeout = RESOLVE_TIMEOUT;
+
+  /**
+   * Resolve host names without waiting for them.
+   *
+   * @param hostnames
+   *            The host names (or IP addresses) to resolve
+   * @param listener
+   *            The listener to pass each address to
+   */
+  public void resolve(List<String> hostnames, Listener listener) {
+    resolve(hostnames, listener, System.currentTimeMillis());
+  }
+
+  void resolve(List<String> hostnames, Listener listener, long now) {
+    if (hostnames.isEmpty()) {
+      listener.finished(0);
+      return;
+    }
+    final Progress progress = new Progress(listener, hostnames.size());
+    for (final String hostname : hostnames) {
+      final Resolution previous;
+      synchronized (resolutions) {
+        previous = resolutions.get(hostname);
+      }
+      if (previous != null && now < previous.expiryTime) {
+        progress.done(hostname, previous.address);
+        continue;
+      }
+
+      try {
+        Scheduler.INSTANCE.submit(TASK_NAME, new Runnable() {
+          @Override
+          public void run() {
+            InetAddress address = lookUp(hostname);
+            if (address == null && previous != null) {
+              log.debug("Using the last known address " + previous.address + " for '" + hostname + "'");
+              address = previous.address;
+            }
+            progress.done(hostname, address);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        log.debug("Not looking up '" + hostname + "' as the Scheduler is busy or has shut down");
+        progress.done(hostname, previous == null ? null : previous.address);
+      }
+    }
+  }
+
+  /**
+   * Look up a host name, waiting at most the resolve timeout. A look up that times out carries on and the address it
+   * finds is kept for next time.
+   *
+   * @return The address, or null if the look up failed or timed out
+   */
+  private InetAddress lookUp(final String hostname) {
+    try {
+      Future<InetAddress> future = Scheduler.INSTANCE.submit(LOOK_UP_TASK_NAME, new Callable<InetAddress>() {
+        @Override
+        public InetAddress call() throws UnknownHostException {
+          InetAddress address = lookup.lookUp(hostname);
+          synchronized (resolutions) {
+            resolutions.put(hostname, new Resolution(address, System.currentTimeMillis() + TIME_TO_LIVE));
+          }
+          return address;
+        }
+      });
+      return future.get(resolveTimeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.debug("Look up of '" + hostname + "' has taken more than " + resolveTimeout + " ms");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      log.error(cause.getClass().getName() + " " + cause.getMessage(), cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RejectedExecutionException e) {
+      log.debug("Not looking up '" + hostname + "' as the Scheduler is busy or has shut down");
+    }
+    return null;
+  }
+
+  void setLookup(Lookup lookup) {
+    this.lookup = lookup == null ? new DnsLookup() : lookup;
+  }
+
+  void setResolveTimeout(long resolveTimeout) {
+    this.resolveTimeout = resolveTimeout;
+  }
+
+  void clear() {
+    synchronized (resolutions) {
+      resolutions.clear();
+    }
+  }
+}
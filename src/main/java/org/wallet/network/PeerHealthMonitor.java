@@ -0,0 +1,366 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.worldcoin.core.AbstractPeerEventListener;
+import com.google.worldcoin.core.Message;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerGroup;
+import com.google.worldcoin.core.ProtocolException;
+import com.google.worldcoin.utils.Threading;
+
+/**
+ * Keeps track of how well the connected peers are responding.
+ *
+ * The peers are pinged in the background every PING_INTERVAL and the round trip times and the time each peer was last
+ * heard from (any message counts) are kept per peer. Whether the network is healthy can then be asked without any
+ * waiting, for instance just before a send. A peer that misses MAXIMUM_MISSED_PINGS pings in a row is disconnected so
+ * that the peer group replaces it with another.
+ */
+public class PeerHealthMonitor {
+
+  private static final Logger log = LoggerFactory.getLogger(PeerHealthMonitor.class);
+
+  public static final long PING_INTERVAL = 15000; // milliseconds
+
+  private static final String TASK_NAME = "PeerHealthMonitor";
+
+  /**
+   * How long a ping has to be answered in.
+   */
+  public static final long PING_TIMEOUT = 4000; // milliseconds
+
+  public static final int MAXIMUM_MISSED_PINGS = 3;
+
+  /**
+   * A peer that has not been heard from for this long is not healthy.
+   */
+  public static final long STALE_TIME = 2 * PING_INTERVAL + PING_TIMEOUT; // milliseconds
+
+  /**
+   * Weight of the latest round trip time in the average.
+   */
+  private static final double AVERAGE_WEIGHT = 0.3;
+
+  /**
+   * The statistics of one peer.
+   */
+  public static class PeerStatistics {
+    private final long connectedTime;
+    private long lastSeen;
+    private long lastRoundTripTime = -1;
+    private long averageRoundTripTime = -1;
+    private long pingSentTime = 0;
+    private int missedPings = 0;
+    private int pingsSent = 0;
+    private int pingsAnswered = 0;
+    private boolean pingSupported = true;
+
+    PeerStatistics(long connectedTime) {
+      this.connectedTime = connectedTime;
+      this.lastSeen = connectedTime;
+    }
+
+    synchronized void seen(long now) {
+      lastSeen = Math.max(lastSeen, now);
+    }
+
+    synchronized void pingSent(long now) {
+      pingSentTime = now;
+      pingsSent++;
+    }
+
+    synchronized void pingAnswered(long roundTripTime, long now) {
+      pingSentTime = 0;
+      missedPings = 0;
+      pingsAnswered++;
+      lastRoundTripTime = roundTripTime;
+      if (averageRoundTripTime < 0) {
+        averageRoundTripTime = roundTripTime;
+      } else {
+        averageRoundTripTime = Math.round(AVERAGE_WEIGHT * roundTripTime + (1 - AVERAGE_WEIGHT) * averageRoundTripTime);
+      }
+      seen(now);
+    }
+
+    synchronized void pingFailed() {
+      pingSentTime = 0;
+      missedPings++;
+    }
+
+    synchronized void pingNotSupported() {
+      pingSupported = false;
+    }
+
+    /**
+     * Count an unanswered ping as missed once it is older than PING_TIMEOUT.
+     *
+     * @return true if a ping is still waiting for its answer
+     */
+    synchronized boolean isPingOutstanding(long now) {
+      if (pingSentTime == 0) {
+        return false;
+      }
+      if (now - pingSentTime > PING_TIMEOUT) {
+        pingFailed();
+        return false;
+      }
+      return true;
+    }
+
+    synchronized boolean isHealthy(long now) {
+      return missedPings < MAXIMUM_MISSED_PINGS && now - lastSeen <= STALE_TIME;
+    }
+
+    public synchronized long getConnectedTime() {
+      return connectedTime;
+    }
+
+    public synchronized long getLastSeen() {
+      return lastSeen;
+    }
+
+    /**
+     * @return The round trip time of the last ping in milliseconds, or -1 if none has been answered
+     */
+    public synchronized long getLastRoundTripTime() {
+      return lastRoundTripTime;
+    }
+
+    /**
+     * @return The moving average of the round trip times in milliseconds, or -1 if no ping has been answered
+     */
+    public synchronized long getAverageRoundTripTime() {
+      return averageRoundTripTime;
+    }
+
+    public synchronized int getMissedPings() {
+      return missedPings;
+    }
+
+    public synchronized int getPingsSent() {
+      return pingsSent;
+    }
+
+    public synchronized int getPingsAnswered() {
+      return pingsAnswered;
+    }
+
+    public synchronized boolean isPingSupported() {
+      return pingSupported;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "PeerStatistics [lastSeen=" + lastSeen + ", lastRoundTripTime=" + lastRoundTripTime + ", averageRoundTripTime="
+              + averageRoundTripTime + ", missedPings=" + missedPings + ", pingsSent=" + pingsSent + ", pingsAnswered="
+              + pingsAnswered + "]";
+    }
+  }
+
+  private final PeerGroup peerGroup;
+
+  private final Map<Peer, PeerStatistics> statistics = new HashMap<Peer, PeerStatistics>();
+
+  private ScheduledTask pingTask;
+
+  private final Runnable pingPeers = new Runnable() {
+    @Override
+    public void run() {
+      pingPeers();
+    }
+  };
+
+  /**
+   * Keeps the statistics up to date as peers come and go and messages arrive. It is run on the network thread so that
+   * the messages are seen as they arrive, and so must be quick.
+   */
+  private final AbstractPeerEventListener peerListener = new AbstractPeerEventListener() {
+    @Override
+    public void onPeerConnected(Peer peer, int peerCount) {
+      statisticsFor(peer);
+    }
+
+    @Override
+    public void onPeerDisconnected(Peer peer, int peerCount) {
+      synchronized (statistics) {
+        statistics.remove(peer);
+      }
+    }
+
+    @Override
+    public Message onPreMessageReceived(Peer peer, Message message) {
+      PeerStatistics peerStatistics = getStatistics(peer);
+      if (peerStatistics != null) {
+        peerStatistics.seen(System.currentTimeMillis());
+      }
+      return message;
+    }
+  };
+
+  public PeerHealthMonitor(PeerGroup peerGroup) {
+    this.peerGroup = peerGroup;
+  }
+
+  /**
+   * Start pinging the peers in the background.
+   */
+  public synchronized void start() {
+    if (pingTask != null) {
+      return;
+    }
+    peerGroup.addEventListener(peerListener, Threading.SAME_THREAD);
+    for (Peer peer : peerGroup.getConnectedPeers()) {
+      statisticsFor(peer);
+    }
+
+    pingTask = Scheduler.INSTANCE.scheduleWithFixedDelay(TASK_NAME, pingPeers, 0, PING_INTERVAL);
+  }
+
+  public synchronized void stop() {
+    if (pingTask == null) {
+      return;
+    }
+    pingTask.cancel();
+    pingTask = null;
+    peerGroup.removeEventListener(peerListener);
+    synchronized (statistics) {
+      statistics.clear();
+    }
+  }
+
+  /**
+   * Ping the peers now rather than waiting for the next round. This does not wait for the answers.
+   */
+  public synchronized void pingNow() {
+    if (pingTask != null) {
+      // Skipped by the Scheduler if a round is under way.
+      Scheduler.INSTANCE.schedule(TASK_NAME, pingPeers, 0);
+    }
+  }
+
+  /**
+   * @return true if at least one connected peer is healthy. This does not wait for the network.
+   */
+  public boolean isNetworkHealthy() {
+    return getNumberOfHealthyPeers() > 0;
+  }
+
+  public int getNumberOfHealthyPeers() {
+    return getHealthyPeers().size();
+  }
+
+  /**
+   * @return The connected peers that are healthy, quickest first. Peers that have not answered a ping yet are last.
+   */
+  public List<Peer> getHealthyPeers() {
+    long now = System.currentTimeMillis();
+    List<Peer> healthyPeers = new ArrayList<Peer>();
+    final Map<Peer, Long> roundTripTimes = new HashMap<Peer, Long>();
+    for (Peer peer : peerGroup.getConnectedPeers()) {
+      PeerStatistics peerStatistics = getStatistics(peer);
+      if (peerStatistics != null && peerStatistics.isHealthy(now)) {
+        healthyPeers.add(peer);
+        long roundTripTime = peerStatistics.getAverageRoundTripTime();
+        roundTripTimes.put(peer, roundTripTime < 0 ? Long.MAX_VALUE : roundTripTime);
+      }
+    }
+    Collections.sort(healthyPeers, new Comparator<Peer>() {
+      @Override
+      public int compare(Peer peer1, Peer peer2) {
+        return roundTripTimes.get(peer1).compareTo(roundTripTimes.get(peer2));
+      }
+    });
+    return healthyPeers;
+  }
+
+  /**
+   * @return The statistics of a connected peer, or null if the peer is not known
+   */
+  public PeerStatistics getStatistics(Peer peer) {
+    synchronized (statistics) {
+      return statistics.get(peer);
+    }
+  }
+
+  /**
+   * Send a ping to each peer that is not still waiting to answer the last one, and disconnect the peers that keep
+   * missing them.
+   */
+  void pingPeers() {
+    long now = System.currentTimeMillis();
+    List<Peer> connectedPeers = peerGroup.getConnectedPeers();
+    for (final Peer peer : connectedPeers) {
+      final PeerStatistics peerStatistics = statisticsFor(peer);
+      if (!peerStatistics.isPingSupported() || peerStatistics.isPingOutstanding(now)) {
+        continue;
+      }
+
+      if (peerStatistics.getMissedPings() >= MAXIMUM_MISSED_PINGS && connectedPeers.size() > 1) {
+        log.debug("Disconnecting peer '" + peer.getAddress() + "' as it missed " + peerStatistics.getMissedPings() + " pings");
+        peer.close();
+        continue;
+      }
+
+      try {
+        ListenableFuture<Long> result = peer.ping();
+        peerStatistics.pingSent(now);
+        Futures.addCallback(result, new FutureCallback<Long>() {
+          @Override
+          public void onSuccess(Long roundTripTime) {
+            peerStatistics.pingAnswered(roundTripTime, System.currentTimeMillis());
+          }
+
+          @Override
+          public void onFailure(Throwable throwable) {
+            log.debug("Peer '" + peer.getAddress() + "' failed ping test. Message was " + throwable.getMessage());
+            peerStatistics.pingFailed();
+          }
+        });
+      } catch (ProtocolException e) {
+        // The peer is too old to answer pings - it is judged on the messages it sends.
+        log.debug("Peer '" + peer.getAddress() + "' cannot be pinged. Message was " + e.getMessage());
+        peerStatistics.pingNotSupported();
+      }
+    }
+  }
+
+  private PeerStatistics statisticsFor(Peer peer) {
+    synchronized (statistics) {
+      PeerStatistics peerStatistics = statistics.get(peer);
+      if (peerStatistics == null) {
+        peerStatistics = new PeerStatistics(System.currentTimeMillis());
+        statistics.put(peer, peerStatistics);
+      }
+      return peerStatistics;
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.worldcoin.core.ScriptException;
+import com.google.worldcoin.core.Sha256Hash;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.TransactionConfidence;
+import com.google.worldcoin.core.TransactionConfidence.ConfidenceType;
+import com.google.worldcoin.core.TransactionOutput;
+import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.wallet.WalletTransaction;
+
+/**
+ * Keeps the pending (unconfirmed) transactions of the open wallets within a budget.
+ *
+ * Transactions received from the network are only added to the wallets' pending pools while all the pending
+ * transactions come to less than MAXIMUM_NUMBER_OF_TRANSACTIONS and MAXIMUM_SIZE. Incoming transactions still
+ * unconfirmed after MAXIMUM_AGE are removed from the pending pools. A transaction that is later mined is picked up from
+ * its block as usual.
+ *
+ * Confidence listeners added through addListenerUntilBuried are removed once the transaction is BURIED_DEPTH blocks deep
+ * or dead, so that they do not build up over a long run.
+ */
+public class PendingTransactionPool {
+
+  private static final Logger log = LoggerFactory.getLogger(PendingTransactionPool.class);
+
+  public static final int MAXIMUM_NUMBER_OF_TRANSACTIONS = 1000;
+
+  public static final long MAXIMUM_SIZE = 5 * 1024 * 1024; // bytes
+
+  public static final long MAXIMUM_AGE = 3L * 24 * 60 * 60 * 1000; // milliseconds
+
+  public static final int BURIED_DEPTH = 6;
+
+  /**
+   * The number and size of the pending transactions of some wallets.
+   */
+  static class Usage {
+    final int numberOfTransactions;
+    final long size;
+
+    Usage(int numberOfTransactions, long size) {
+      this.numberOfTransactions = numberOfTransactions;
+      this.size = size;
+    }
+
+    boolean fits(Transaction transaction) {
+      return numberOfTransactions + 1 <= MAXIMUM_NUMBER_OF_TRANSACTIONS
+              && size + transaction.getMessageSize() <= MAXIMUM_SIZE;
+    }
+  }
+
+  static Usage usageOf(Collection<Wallet> wallets) {
+    int numberOfTransactions = 0;
+    long size = 0;
+    for (Wallet wallet : wallets) {
+      for (Transaction transaction : wallet.getPendingTransactions()) {
+        numberOfTransactions++;
+        size += transaction.getMessageSize();
+      }
+    }
+    return new Usage(numberOfTransactions, size);
+  }
+
+  /**
+   * @param since
+   *            When the transaction was first seen
+   * @return true if the transaction has been unconfirmed for longer than MAXIMUM_AGE
+   */
+  static boolean isStale(Transaction transaction, long since, long now) {
+    return transaction.getConfidence().getConfidenceType() != ConfidenceType.BUILDING && now - since > MAXIMUM_AGE;
+  }
+
+  /**
+   * @return true if a transaction has no further confidence changes worth listening to
+   */
+  static boolean isBuried(TransactionConfidence confidence) {
+    ConfidenceType type = confidence.getConfidenceType();
+    return type == ConfidenceType.DEAD || (type == ConfidenceType.BUILDING && confidence.getDepthInBlocks() >= BURIED_DEPTH);
+  }
+
+  /**
+   * @return true if the transaction pays the wallet without spending from it and none of its outputs have been spent, so
+   *         that removing it leaves the rest of the wallet as it was
+   */
+  static boolean isRemovable(Wallet wallet, Transaction transaction) throws ScriptException {
+    if (transaction.getValueSentFromMe(wallet).signum() != 0) {
+      return false;
+    }
+    for (TransactionOutput output : transaction.getOutputs()) {
+      if (output.getSpentBy() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Remove transactions from a wallet. Wallet has no public method to remove a transaction, and killing a pending
+   * transaction through its confidence does not move it out of the pending pool, so the wallet's pools are cleared and
+   * every other transaction is added back to the pool it was in. This is all done under the wallet's lock, so an autosave
+   * cannot see the wallet part way through. If adding a transaction back fails, every pool is restored as it was.
+   */
+  static void removeTransactions(Wallet wallet, Set<Sha256Hash> hashes) {
+    wallet.getLock().lock();
+    try {
+      List<WalletTransaction> snapshot = new ArrayList<WalletTransaction>();
+      for (WalletTransaction walletTransaction : wallet.getWalletTransactions()) {
+        snapshot.add(walletTransaction);
+      }
+      wallet.clearTransactions(0);
+      try {
+        for (WalletTransaction walletTransaction : snapshot) {
+          if (!hashes.contains(walletTransaction.getTransaction().getHash())) {
+            wallet.addWalletTransaction(walletTransaction);
+          }
+        }
+      } catch (RuntimeException e) {
+        restore(wallet, snapshot);
+        throw e;
+      }
+    } finally {
+      wallet.getLock().unlock();
+    }
+  }
+
+  private static void restore(Wallet wallet, List<WalletTransaction> snapshot) {
+    wallet.clearTransactions(0);
+    for (WalletTransaction walletTransaction : snapshot) {
+      wallet.addWalletTransaction(walletTransaction);
+    }
+  }
+
+  /**
+   * @return true if the pending pools of the wallets have room for a transaction received from the network
+   */
+  public boolean hasRoomFor(Transaction transaction, Collection<Wallet> wallets) {
+    return usageOf(wallets).fits(transaction);
+  }
+
+  /**
+   * When each pending transaction was first seen. Wallets only keep the update time of some transactions.
+   */
+  private final Map<Sha256Hash, Long> firstSeenTimes = new HashMap<Sha256Hash, Long>();
+
+  /**
+   * Remove the incoming transactions that have been unconfirmed for longer than MAXIMUM_AGE.
+   *
+   * @return The wallets that have been changed
+   */
+  public synchronized List<Wallet> removeStale(Collection<Wallet> wallets, long now) {
+    List<Wallet> changedWallets = new ArrayList<Wallet>();
+    Set<Sha256Hash> pendingHashes = new HashSet<Sha256Hash>();
+    for (Wallet wallet : wallets) {
+      wallet.getLock().lock();
+      try {
+        Set<Sha256Hash> staleHashes = new HashSet<Sha256Hash>();
+        for (Transaction transaction : wallet.getPendingTransactions()) {
+          Sha256Hash hash = transaction.getHash();
+          pendingHashes.add(hash);
+          Long firstSeenTime = firstSeenTimes.get(hash);
+          if (firstSeenTime == null) {
+            long updateTime = transaction.getUpdateTime().getTime();
+            firstSeenTime = updateTime > 0 ? Math.min(updateTime, now) : now;
+            firstSeenTimes.put(hash, firstSeenTime);
+          }
+          try {
+            if (isStale(transaction, firstSeenTime, now) && isRemovable(wallet, transaction)) {
+              log.debug("Removing transaction " + transaction.getHashAsString() + " unconfirmed since "
+                      + new Date(firstSeenTime));
+              staleHashes.add(hash);
+            }
+          } catch (ScriptException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage(), e);
+          }
+        }
+        if (!staleHashes.isEmpty()) {
+          try {
+            removeTransactions(wallet, staleHashes);
+            changedWallets.add(wallet);
+          } catch (RuntimeException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage(), e);
+          }
+        }
+      } finally {
+        wallet.getLock().unlock();
+      }
+    }
+    firstSeenTimes.keySet().retainAll(pendingHashes);
+    return changedWallets;
+  }
+
+  /**
+   * Add a confidence listener to a transaction, to be removed once the transaction is buried or dead.
+   */
+  public void addListenerUntilBuried(Transaction transaction, final TransactionConfidence.Listener listener) {
+    final TransactionConfidence confidence = transaction.getConfidence();
+    confidence.addEventListener(listener);
+    confidence.addEventListener(new TransactionConfidence.Listener() {
+      @Override
+      public void onConfidenceChanged(Transaction tx, ChangeReason reason) {
+        if (isBuried(confidence)) {
+          confidence.removeEventListener(listener);
+          confidence.removeEventListener(this);
+        }
+      }
+    });
+  }
+}
@@ -24,6 +24,9 @@ import org.wallet.controller.worldcoin.WorldcoinController;
 import org.wallet.message.Message;
 import org.wallet.message.MessageManager;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.model.worldcoin.WorldcoinModel;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
 import org.wallet.viewsystem.swing.view.panels.SendWorldcoinPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +37,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.*;
-import java.util.Timer;
 
 
 /**
@@ -50,7 +52,7 @@ public enum ReplayManager {
 
   private static final Logger log = LoggerFactory.getLogger(ReplayManager.class);
   private ReplayManagerTimerTask replayManagerTimerTask;
-  private Timer replayManagerTimer;
+  private ScheduledTask replayManagerTask;
 
   /**
    * The actual chain height prior to any replay
@@ -75,8 +77,11 @@ public enum ReplayManager {
       replayTaskQueue.clear();
     }
     replayManagerTimerTask = new ReplayManagerTimerTask(controller, replayTaskQueue);
-    replayManagerTimer = new Timer();
-    replayManagerTimer.scheduleAtFixedRate(replayManagerTimerTask, REPLAY_MANAGER_DELAY_TIME, REPLAY_MANAGER_REPEAT_TIME);
+    if (replayManagerTask != null) {
+      replayManagerTask.cancel();
+    }
+    replayManagerTask = Scheduler.INSTANCE.scheduleAtFixedRate("ReplayManager", replayManagerTimerTask,
+            REPLAY_MANAGER_DELAY_TIME, REPLAY_MANAGER_REPEAT_TIME);
   }
 
   /**
@@ -156,6 +161,11 @@ public enum ReplayManager {
     peerGroup.start();
     log.debug("Restarted PeerGroup = " + peerGroup.toString());
 
+    if (peerGroup instanceof WorldcoinWalletPeerGroup) {
+      ((WorldcoinWalletPeerGroup) peerGroup).setParallelDownload(Boolean.TRUE.toString().equalsIgnoreCase(
+              controller.getModel().getUserPreference(WorldcoinModel.PARALLEL_REPLAY)));
+    }
+
     log.debug("About to start  blockchain download.");
     controller.getWorldcoinWalletService().getPeerGroup().downloadBlockChain();
     log.debug("Blockchain download started.");
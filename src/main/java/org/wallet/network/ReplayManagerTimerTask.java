@@ -8,15 +8,14 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Queue;
-import java.util.TimerTask;
 
 
 
 /**
- * The timer task used to poll the replay task queue and initiate replays.
+ * The task run by the Scheduler to poll the replay task queue and initiate replays.
  * 
  */
-public class ReplayManagerTimerTask extends TimerTask {
+public class ReplayManagerTimerTask implements Runnable {
     private final Controller controller;
     private final WorldcoinController worldcoinController;
 
@@ -26,9 +26,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.DateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -43,7 +44,7 @@ import java.util.List;
  * implementation does not have to be thread safe.
  * 
  */
-public class WorldcoinWalletDownloadListener extends DownloadListener {
+public class WorldcoinWalletDownloadListener extends DownloadListener implements DownloadProgressReporter.Listener {
     private static final Logger log = LoggerFactory.getLogger(WorldcoinWalletDownloadListener.class);
 
     public static final double DONE_FOR_DOUBLES = 99.99; // not quite 100 per
@@ -51,6 +52,11 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
                                                           // rounding
     private static final int CRITERIA_LARGE_NUMBER_OF_BLOCKS = 1000;
 
+    /**
+     * The source of the download progress messages.
+     */
+    public static final String MESSAGE_SOURCE = WorldcoinWalletDownloadListener.class.getName();
+
     private final Controller controller;
     private final WorldcoinController worldcoinController;
     
@@ -58,12 +64,27 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
 
     private Object lockObject = new Object();
     
-    private int blocksToDownloadAtStart = -1;
+    private volatile int blocksToDownloadAtStart = -1;
+
+    /**
+     * True from the start of a download until it is done, so that a change of download peer part way through carries
+     * on the same download rather than starting a new one.
+     */
+    private volatile boolean downloading = false;
+
+    private final DownloadProgressReporter downloadProgressReporter;
+
+    /**
+     * Only used on the downloadProgressReporter thread.
+     */
+    private DateFormat dateFormat;
+    private Locale dateFormatLocale;
 
     public WorldcoinWalletDownloadListener(WorldcoinController controller) {
         this.worldcoinController = controller;
         this.controller = this.worldcoinController;
-        this.singleWalletPanelDownloadListeners = new ArrayList<SingleWalletPanelDownloadListener>();
+        this.singleWalletPanelDownloadListeners = new CopyOnWriteArrayList<SingleWalletPanelDownloadListener>();
+        this.downloadProgressReporter = new DownloadProgressReporter(this);
     }
 
     public void addSingleWalletPanelDownloadListener(SingleWalletPanelDownloadListener downloadListener) {
@@ -76,6 +97,8 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
     
     /**
      * Called when download progress is made.
+     * This is called on the download thread for each block so the progress is only recorded here
+     * and is reported by the downloadProgressReporter a few times a second.
      * 
      * @param pct
      *            the percentage of chain downloaded, estimated
@@ -90,43 +113,65 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
             // we are done downloading
             doneDownload();
         } else {
-            //log.debug("Download - blocksSoFar = " + blocksSoFar);
-            synchronized (lockObject) {
-                String downloadStatusText = controller.getLocaliser().getString("worldcoinWalletDownloadListener.startDownloadTextShort",
-                        new Object[] {blocksSoFar})
-                        + " "
-                        + controller.getLocaliser().getString(
-                                "worldcoinWalletDownloadListener.blockDateText",
-                                new Object[] { DateFormat.getDateInstance(DateFormat.MEDIUM, controller.getLocaliser().getLocale())
-                                        .format(date) });
-
-                // Work out the percent as the total amount of blocks at beginning of the replay task.
-                // (If a peer dies and a new one starts the download listener percents are based on the
-                // total that peer knows about which is confusing in the UI).
-                ReplayTask currentReplayTask = ReplayManager.INSTANCE.getCurrentReplayTask();
-                if (currentReplayTask != null) {
-                    if (currentReplayTask.getStartHeight() != ReplayTask.UNKNOWN_START_HEIGHT) {
-                        double denominator = Math.max(blocksToDownloadAtStart, ReplayManager.INSTANCE.getActualLastChainHeight() - currentReplayTask.getStartHeight());
-                        pct = (int)(100 * ( 1.0 - (double)blocksSoFar/denominator));
-                    }
-                    //log.debug("blocksSoFar = " + blocksSoFar + ", actualLastChainHeight = " + ReplayManager.INSTANCE.getActualLastChainHeight() +
-                    //        ", startHeight = " + currentReplayTask.getStartHeight() + ", percent = " + pct);
-                }
-                
-                // When busy occasionally the localiser fails to localise.
-                if (!(downloadStatusText.indexOf("worldcoinWalletDownloadListener") > -1)) {
-                    Message message = new Message(downloadStatusText, pct);
-                    MessageManager.INSTANCE.addMessage(message);
-                }
-                
-                for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
-                    singleWalletPanelDownloadListener.progress(pct, blocksSoFar, date);
-                }
-            }
-            this.worldcoinController.fireBlockDownloaded();
+            downloadProgressReporter.blockDownloaded(pct, blocksSoFar, date == null ? 0 : date.getTime());
         }
     }
 
+    /**
+     * Report the download progress.
+     * (Called back from the downloadProgressReporter).
+     */
+    @Override
+    public void progressSampled(DownloadProgress progress) {
+        int blocksSoFar = progress.getBlocksLeft();
+        int pct = (int) progress.getPercentComplete();
+
+        if (dateFormat == null || !controller.getLocaliser().getLocale().equals(dateFormatLocale)) {
+            dateFormatLocale = controller.getLocaliser().getLocale();
+            dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, dateFormatLocale);
+        }
+        String downloadStatusText = controller.getLocaliser().getString("worldcoinWalletDownloadListener.startDownloadTextShort",
+                new Object[] {blocksSoFar})
+                + " "
+                + controller.getLocaliser().getString(
+                        "worldcoinWalletDownloadListener.blockDateText",
+                        new Object[] { dateFormat.format(progress.getLastBlockDate()) });
+        if (progress.getSecondsRemaining() != DownloadProgress.UNKNOWN_TIME_REMAINING && progress.getBlocksPerSecond() > 0) {
+            long minutesRemaining = Math.max(1, (progress.getSecondsRemaining() + 59) / 60);
+            downloadStatusText = downloadStatusText
+                    + " "
+                    + controller.getLocaliser().getString("worldcoinWalletDownloadListener.timeRemainingText",
+                            new Object[] { minutesRemaining, Math.round(progress.getBlocksPerSecond()) });
+        }
+
+        // Work out the percent as the total amount of blocks at beginning of the replay task.
+        // (If a peer dies and a new one starts the download listener percents are based on the
+        // total that peer knows about which is confusing in the UI).
+        ReplayTask currentReplayTask = ReplayManager.INSTANCE.getCurrentReplayTask();
+        if (currentReplayTask != null && currentReplayTask.getStartHeight() != ReplayTask.UNKNOWN_START_HEIGHT) {
+            double denominator = Math.max(blocksToDownloadAtStart, ReplayManager.INSTANCE.getActualLastChainHeight() - currentReplayTask.getStartHeight());
+            pct = (int)(100 * ( 1.0 - (double)blocksSoFar/denominator));
+            //log.debug("blocksSoFar = " + blocksSoFar + ", actualLastChainHeight = " + ReplayManager.INSTANCE.getActualLastChainHeight() +
+            //        ", startHeight = " + currentReplayTask.getStartHeight() + ", percent = " + pct);
+        } else if (blocksToDownloadAtStart > 0) {
+            // Based on the blocks left when the download started, which stays the same if the download peer changes.
+            pct = (int)(100 * ( 1.0 - (double)blocksSoFar/blocksToDownloadAtStart));
+        }
+
+        // When busy occasionally the localiser fails to localise.
+        if (!(downloadStatusText.indexOf("worldcoinWalletDownloadListener") > -1)) {
+            Message message = new Message(downloadStatusText, pct);
+            message.setSource(MESSAGE_SOURCE);
+            MessageManager.INSTANCE.addMessage(message);
+        }
+
+        Date date = progress.getLastBlockDate();
+        for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
+            singleWalletPanelDownloadListener.progress(pct, blocksSoFar, date);
+        }
+        this.worldcoinController.fireBlockDownloaded();
+    }
+
     /**
      * Called when download is initiated.
      * 
@@ -139,7 +184,15 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
             doneDownload();
         } else {
             synchronized (lockObject) {
+                if (downloading) {
+                    // The download peer has changed - carry on with the same download.
+                    log.debug("Download continuing from a new peer with " + blocks + " blocks left");
+                    blocksToDownloadAtStart = Math.max(blocksToDownloadAtStart, blocks);
+                    return;
+                }
+                downloading = true;
                 blocksToDownloadAtStart = blocks;
+                downloadProgressReporter.start();
                 
                 String startDownloadText;
                 if (blocks <= CRITERIA_LARGE_NUMBER_OF_BLOCKS) {
@@ -157,6 +210,7 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
                     Message message = new Message(startDownloadTextForLabel, Message.NOT_RELEVANT_PERCENTAGE_COMPLETE);
                     MessageManager.INSTANCE.addMessage(message);
                     message = new Message(startDownloadTextForLabel, 0);
+                    message.setSource(MESSAGE_SOURCE);
                     MessageManager.INSTANCE.addMessage(message);
                 }
                 
@@ -173,6 +227,10 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
      */
     @Override
     protected void doneDownload() {
+        synchronized (lockObject) {
+            downloading = false;
+        }
+        downloadProgressReporter.stop();
         ReplayManager.INSTANCE.taskHasCompleted(null);
 
         String downloadStatusText = controller.getLocaliser().getString("worldcoinWalletDownloadListener.doneDownloadText");
@@ -181,6 +239,7 @@ public class WorldcoinWalletDownloadListener extends DownloadListener {
         MessageManager.INSTANCE.addMessage(message);
 
         message = new Message(downloadStatusText, 100);
+        message.setSource(MESSAGE_SOURCE);
         MessageManager.INSTANCE.addMessage(message);
 
         for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
@@ -15,43 +15,356 @@
  */
 package org.wallet.network;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
 
+import com.google.worldcoin.core.AbstractPeerEventListener;
 import com.google.worldcoin.core.BlockChain;
 import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerAddress;
 import com.google.worldcoin.core.PeerGroup;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.Wallet;
+import com.google.common.util.concurrent.ListenableFuture;
 
 
 public class WorldcoinWalletPeerGroup extends PeerGroup {
+    private static final Logger log = LoggerFactory.getLogger(WorldcoinWalletPeerGroup.class);
+
     private final Controller controller;
     private final WorldcoinController worldcoinController;
     WorldcoinWalletDownloadListener worldcoinWalletDownloadListener = null;
+    private final PeerHealthMonitor peerHealthMonitor;
+    private final DownloadPeerPolicy downloadPeerPolicy;
+    private final BloomFilterMonitor bloomFilterMonitor;
+    private final BroadcastTracker broadcastTracker;
+    private final List<Wallet> wallets = new CopyOnWriteArrayList<Wallet>();
+    private PeerAddressCache peerAddressCache;
+    private ScheduledTask peerAddressCacheSaveTask;
+    private final NetworkParameters networkParameters;
+    private final BlockChain blockChain;
+    private boolean parallelDownload = false;
+    private ParallelBlockFetcher parallelBlockFetcher;
+
+    /**
+     * While wallets are being added in a batch the filter recalculations are held back and the one asked for with the
+     * most need to send is done at the end.
+     */
+    private final Object walletBatchLock = new Object();
+    private int walletBatchDepth = 0;
+    private FilterRecalculateMode heldBackRecalculation = null;
 
     public static final int MAXIMUM_NUMBER_OF_PEERS = 6;
 
+    /**
+     * How often the peer address cache is written, if peers have been connected to since the last write.
+     */
+    public static final long PEER_ADDRESS_CACHE_SAVE_INTERVAL = 5 * 60 * 1000; // milliseconds
+
+    private static final String PEER_ADDRESS_CACHE_TASK_NAME = "PeerAddressCacheSave";
+
+    /**
+     * The protocol version PeerGroup prefers a download peer to have.
+     */
+    private static final int PREFERRED_PROTOCOL_VERSION = 70000;
+
         
     public WorldcoinWalletPeerGroup(WorldcoinController worldcoinController, NetworkParameters params, BlockChain chain) {
         super(params, chain);
         this.worldcoinController = worldcoinController;
         this.controller = this.worldcoinController;
+        this.networkParameters = params;
+        this.blockChain = chain;
         worldcoinWalletDownloadListener = new WorldcoinWalletDownloadListener(this.worldcoinController);
 
         setMaxConnections(MAXIMUM_NUMBER_OF_PEERS);
+
+        peerHealthMonitor = new PeerHealthMonitor(this);
+        downloadPeerPolicy = new DownloadPeerPolicy(this, peerHealthMonitor);
+        bloomFilterMonitor = new BloomFilterMonitor(this);
+        broadcastTracker = new BroadcastTracker(this);
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        super.startUp();
+        peerHealthMonitor.start();
+        downloadPeerPolicy.start();
+        broadcastTracker.start();
+        synchronized (this) {
+            if (peerAddressCache != null) {
+                peerAddressCacheSaveTask = Scheduler.INSTANCE.scheduleWithFixedDelay(PEER_ADDRESS_CACHE_TASK_NAME, new Runnable() {
+                    @Override
+                    public void run() {
+                        savePeerAddressCache();
+                    }
+                }, PEER_ADDRESS_CACHE_SAVE_INTERVAL, PEER_ADDRESS_CACHE_SAVE_INTERVAL);
+            }
+        }
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        synchronized (this) {
+            if (parallelBlockFetcher != null) {
+                parallelBlockFetcher.stop();
+                parallelBlockFetcher = null;
+            }
+            if (peerAddressCacheSaveTask != null) {
+                peerAddressCacheSaveTask.cancel();
+                peerAddressCacheSaveTask = null;
+            }
+        }
+        if (peerAddressCache != null) {
+            // Keep the latencies of the peers for the next start.
+            for (Peer peer : getConnectedPeers()) {
+                PeerHealthMonitor.PeerStatistics statistics = peerHealthMonitor.getStatistics(peer);
+                if (statistics != null) {
+                    peerAddressCache.recordLatency(peer.getAddress().toSocketAddress(), statistics.getAverageRoundTripTime());
+                }
+            }
+            savePeerAddressCache();
+        }
+        broadcastTracker.stop();
+        downloadPeerPolicy.stop();
+        peerHealthMonitor.stop();
+        super.shutDown();
     }
-    
+
+    /**
+     * Connect to the peers in the cache before any found by peer discovery, and keep the cache up to date with the
+     * peers connected to. Peer discovery is only used when none of the cached peers are ready to be tried.
+     *
+     * The cache is written every PEER_ADDRESS_CACHE_SAVE_INTERVAL while the peer group runs, if it has changed, and
+     * when the peer group stops. Call before the peer group is started.
+     */
+    public void setPeerAddressCache(final PeerAddressCache peerAddressCache) {
+        synchronized (this) {
+            this.peerAddressCache = peerAddressCache;
+        }
+        // Each address added raises the maximum number of connections by one - the cached peers are only to be
+        // tried first, not to make more connections.
+        int maxConnections = getMaxConnections();
+        for (InetSocketAddress address : peerAddressCache.getAddresses()) {
+            addAddress(new PeerAddress(address));
+        }
+        setMaxConnections(maxConnections);
+        addEventListener(new AbstractPeerEventListener() {
+            @Override
+            public void onPeerConnected(Peer peer, int peerCount) {
+                peerAddressCache.recordSuccess(peer.getAddress().toSocketAddress(), System.currentTimeMillis());
+            }
+        });
+    }
+
+    private void savePeerAddressCache() {
+        try {
+            peerAddressCache.saveIfChanged();
+        } catch (IOException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void addWallet(Wallet wallet) {
+        super.addWallet(wallet);
+        wallets.add(wallet);
+    }
+
+    @Override
+    public void removeWallet(Wallet wallet) {
+        super.removeWallet(wallet);
+        wallets.remove(wallet);
+    }
+
+    /**
+     * @return The number of keys and scripts of all the wallets put in the Bloom filter
+     */
+    public int getBloomFilterElementCount() {
+        int count = 0;
+        for (Wallet wallet : wallets) {
+            count += wallet.getBloomFilterElementCount();
+        }
+        return count;
+    }
+
+    /**
+     * Add wallets with one Bloom filter recalculation (and at most one filter sent to each peer) for all of them,
+     * rather than one for each wallet.
+     */
+    public void addWallets(Collection<Wallet> wallets) {
+        beginWalletBatch();
+        try {
+            for (Wallet wallet : wallets) {
+                addWallet(wallet);
+            }
+        } finally {
+            endWalletBatch();
+        }
+    }
+
+    /**
+     * Hold back Bloom filter recalculations until the matching endWalletBatch, for adding wallets one at a time as
+     * they are loaded. Batches may be nested.
+     */
+    public void beginWalletBatch() {
+        synchronized (walletBatchLock) {
+            walletBatchDepth++;
+        }
+    }
+
+    public void endWalletBatch() {
+        FilterRecalculateMode mode;
+        synchronized (walletBatchLock) {
+            if (walletBatchDepth == 0) {
+                return;
+            }
+            walletBatchDepth--;
+            if (walletBatchDepth > 0 || heldBackRecalculation == null) {
+                return;
+            }
+            mode = heldBackRecalculation;
+            heldBackRecalculation = null;
+        }
+        super.recalculateFastCatchupAndFilter(mode);
+    }
+
+    @Override
+    public void recalculateFastCatchupAndFilter(FilterRecalculateMode mode) {
+        synchronized (walletBatchLock) {
+            if (walletBatchDepth > 0) {
+                if (heldBackRecalculation == null || needToSend(mode) > needToSend(heldBackRecalculation)) {
+                    heldBackRecalculation = mode;
+                }
+                return;
+            }
+        }
+        super.recalculateFastCatchupAndFilter(mode);
+    }
+
+    private static int needToSend(FilterRecalculateMode mode) {
+        switch (mode) {
+            case FORCE_SEND:
+                return 2;
+            case SEND_IF_CHANGED:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Broadcast a transaction, waiting for no more peers than are healthy so that a broadcast is not held up by
+     * connections that are not answering. The BroadcastTracker follows the transaction until it has propagated.
+     */
+    @Override
+    public ListenableFuture<Transaction> broadcastTransaction(Transaction tx) {
+        int minConnections = Math.max(1, getMinBroadcastConnections());
+        int numberOfHealthyPeers = peerHealthMonitor.getNumberOfHealthyPeers();
+        if (numberOfHealthyPeers > 0) {
+            minConnections = Math.min(minConnections, numberOfHealthyPeers);
+        }
+        broadcastTracker.track(tx);
+        return broadcastTransaction(tx, minConnections);
+    }
+
+    /**
+     * Choose the download peer from the peers at the most common chain height that speak the preferred protocol version
+     * (as PeerGroup does), using the DownloadPeerPolicy rather than the ping time alone.
+     */
+    @Override
+    protected Peer selectDownloadPeer(List<Peer> peers) {
+        if (peers.isEmpty()) {
+            return null;
+        }
+        int mostCommonChainHeight = getMostCommonChainHeight(peers);
+        int highestVersion = 0;
+        List<Peer> candidates = new ArrayList<Peer>();
+        for (Peer peer : peers) {
+            if (peer.getBestHeight() >= mostCommonChainHeight) {
+                candidates.add(peer);
+                highestVersion = Math.max(highestVersion, peer.getPeerVersionMessage().clientVersion);
+            }
+        }
+        int preferredVersion = Math.min(highestVersion, PREFERRED_PROTOCOL_VERSION);
+        List<Peer> preferredCandidates = new ArrayList<Peer>();
+        for (Peer peer : candidates) {
+            if (peer.getPeerVersionMessage().clientVersion >= preferredVersion) {
+                preferredCandidates.add(peer);
+            }
+        }
+        if (preferredCandidates.isEmpty()) {
+            return super.selectDownloadPeer(peers);
+        }
+        return downloadPeerPolicy.select(preferredCandidates);
+    }
+
     /**
      * Download the blockchain from peers.
      * 
      * <p>This method wait until the download is complete.  "Complete" is defined as downloading
      * from at least one peer all the blocks that are in that peer's inventory.
+     *
+     * <p>In parallel download mode the blocks are first fetched from several peers at once by a
+     * ParallelBlockFetcher, and the rest downloaded from the download peer afterwards.
      */
     @Override
     public void downloadBlockChain() {
-        startBlockChainDownload(worldcoinWalletDownloadListener);
+        if (!parallelDownload) {
+            startBlockChainDownload(worldcoinWalletDownloadListener);
+            return;
+        }
+        synchronized (this) {
+            if (parallelBlockFetcher != null) {
+                parallelBlockFetcher.stop();
+            }
+            parallelBlockFetcher = new ParallelBlockFetcher(this, blockChain, networkParameters, worldcoinWalletDownloadListener,
+                    worldcoinController.getPeerEventListener());
+            parallelBlockFetcher.start(new Runnable() {
+                @Override
+                public void run() {
+                    startBlockChainDownload(worldcoinWalletDownloadListener);
+                }
+            });
+        }
+    }
+
+    /**
+     * Set whether downloadBlockChain fetches blocks from several peers at once.
+     */
+    public void setParallelDownload(boolean parallelDownload) {
+        this.parallelDownload = parallelDownload;
     }
 
     public WorldcoinWalletDownloadListener getWorldcoinWalletDownloadListener() {
         return worldcoinWalletDownloadListener;
     }
+
+    public PeerHealthMonitor getPeerHealthMonitor() {
+        return peerHealthMonitor;
+    }
+
+    public DownloadPeerPolicy getDownloadPeerPolicy() {
+        return downloadPeerPolicy;
+    }
+
+    public BloomFilterMonitor getBloomFilterMonitor() {
+        return bloomFilterMonitor;
+    }
+
+    public BroadcastTracker getBroadcastTracker() {
+        return broadcastTracker;
+    }
 }
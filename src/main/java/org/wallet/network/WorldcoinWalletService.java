@@ -23,10 +23,10 @@ import com.google.worldcoin.net.discovery.IrcDiscovery;
 import com.google.worldcoin.store.BlockStore;
 import com.google.worldcoin.store.BlockStoreException;
 import com.google.worldcoin.store.SPVBlockStore;
-import com.google.common.util.concurrent.ListenableFuture;
 import org.wallet.WorldcoinWallet;
 import org.wallet.controller.worldcoin.WorldcoinController;
 import org.wallet.model.worldcoin.WorldcoinModel;
+import org.wallet.crypto.SessionKeyCache;
 import org.worldcoinj.wallet.Protos.Wallet.EncryptionType;
 import org.wallet.ApplicationDataDirectoryLocator;
 import org.wallet.controller.Controller;
@@ -37,9 +37,11 @@ import org.wallet.message.Message;
 import org.wallet.message.MessageManager;
 import org.wallet.model.worldcoin.WalletData;
 import org.wallet.model.worldcoin.WalletInfoData;
+import org.wallet.model.worldcoin.WalletKeyIndex;
 import org.wallet.model.core.StatusEnum;
 import org.wallet.store.WorldcoinWalletVersion;
 import org.wallet.store.WalletVersionException;
+import org.wallet.viewsystem.ViewSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.params.KeyParameter;
@@ -49,14 +51,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.security.SecureRandom;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -83,6 +81,7 @@ public class WorldcoinWalletService {
   public static final String BLOCKCHAIN_SUFFIX = ".blockchain";
   public static final String SPV_BLOCKCHAIN_SUFFIX = ".spvchain";
   public static final String CHECKPOINTS_SUFFIX = ".checkpoints";
+  public static final String PEERS_SUFFIX = ".peers";
   public static final String WALLET_SUFFIX = ".wallet";
 
   public static final String IRC_CHANNEL_TEST = "#worldcoinTEST";
@@ -92,6 +91,8 @@ public class WorldcoinWalletService {
 
   private WorldcoinWalletPeerGroup peerGroup;
 
+  private final PendingTransactionPool pendingTransactionPool = new PendingTransactionPool();
+
   private String blockchainFilename;
 
   private com.google.worldcoin.core.WorldcoinWalletBlockChain blockChain;
@@ -107,6 +108,7 @@ public class WorldcoinWalletService {
 
   private WorldcoinWalletCheckpointManager checkpointManager;
   private String checkpointsFilename;
+  private String peersFilename;
 
   public static Date genesisBlockCreationDate;
 
@@ -208,11 +210,14 @@ public class WorldcoinWalletService {
     if ("".equals(controller.getApplicationDataDirectoryLocator().getApplicationDataDirectory())) {
       blockchainFilename = filePrefix + SPV_BLOCKCHAIN_SUFFIX;
       checkpointsFilename = filePrefix + CHECKPOINTS_SUFFIX;
+      peersFilename = filePrefix + PEERS_SUFFIX;
     } else {
       blockchainFilename = controller.getApplicationDataDirectoryLocator().getApplicationDataDirectory() + File.separator
               + filePrefix + SPV_BLOCKCHAIN_SUFFIX;
       checkpointsFilename = controller.getApplicationDataDirectoryLocator().getApplicationDataDirectory() + File.separator
               + filePrefix + CHECKPOINTS_SUFFIX;
+      peersFilename = controller.getApplicationDataDirectoryLocator().getApplicationDataDirectory() + File.separator
+              + filePrefix + PEERS_SUFFIX;
     }
 
     File blockStoreFile = new File(blockchainFilename);
@@ -311,63 +316,94 @@ public class WorldcoinWalletService {
     boolean peersSpecified = false;
     String singleNodeConnection = controller.getModel().getUserPreference(WorldcoinModel.SINGLE_NODE_CONNECTION);
     String peers = controller.getModel().getUserPreference(WorldcoinModel.PEERS);
-    if (singleNodeConnection != null && !singleNodeConnection.equals("")) {
-      try {
-        peerGroup.addAddress(new PeerAddress(InetAddress.getByName(singleNodeConnection.trim())));
-        peerGroup.setMaxConnections(1);
-        peersSpecified = true;
-      } catch (UnknownHostException e) {
-        log.error(e.getMessage(), e);
-      }
+    List<String> peerHostnames = new ArrayList<String>();
+    final boolean singleNodeSpecified = singleNodeConnection != null && !singleNodeConnection.equals("");
+    if (singleNodeSpecified) {
+      peerHostnames.add(singleNodeConnection.trim());
     } else if (peers != null && !peers.equals("")) {
       // Split using commas.
       String[] peerList = peers.split(",");
       if (peerList != null) {
-        int numberOfPeersAdded = 0;
-
         for (int i = 0; i < peerList.length; i++) {
-          try {
-            peerGroup.addAddress(new PeerAddress(InetAddress.getByName(peerList[i].trim())));
-            numberOfPeersAdded++;
-          } catch (UnknownHostException e) {
-            log.error(e.getMessage(), e);
-          }
+          peerHostnames.add(peerList[i].trim());
         }
-        peerGroup.setMaxConnections(numberOfPeersAdded);
-        peersSpecified = true;
       }
     }
 
+    if (!peerHostnames.isEmpty()) {
+      // Each peer added raises the maximum number of connections by one, so the maximum ends up as the number of
+      // peers that could be resolved.
+      peerGroup.setMaxConnections(0);
+      final WorldcoinWalletPeerGroup resolvingPeerGroup = peerGroup;
+      PeerAddressResolver.INSTANCE.resolve(peerHostnames, new PeerAddressResolver.Listener() {
+        @Override
+        public void resolved(String hostname, InetAddress address) {
+          resolvingPeerGroup.addAddress(new PeerAddress(address));
+        }
+
+        @Override
+        public void finished(int numberResolved) {
+          if (singleNodeSpecified && numberResolved == 0) {
+            // As when the single node could not be resolved up front - fall back to peer discovery.
+            log.debug("The single node connection could not be resolved so peer discovery is used");
+            resolvingPeerGroup.setMaxConnections(WorldcoinWalletPeerGroup.MAXIMUM_NUMBER_OF_PEERS);
+            addPeerDiscovery(resolvingPeerGroup);
+          }
+        }
+      });
+      peersSpecified = true;
+    }
+
     if (!peersSpecified) {
-      // Use DNS for production, IRC for test.
-      if (TESTNET3_GENESIS_HASH.equals(worldcoinController.getModel().getNetworkParameters().getGenesisBlock().getHashAsString())) {
-        peerGroup.addPeerDiscovery(new IrcDiscovery(IRC_CHANNEL_TESTNET3));
-      } else if (NetworkParameters.testNet().equals(worldcoinController.getModel().getNetworkParameters())) {
-        peerGroup.addPeerDiscovery(new IrcDiscovery(IRC_CHANNEL_TEST));
-      } else {
-        peerGroup.addPeerDiscovery(new DnsDiscovery(networkParameters));
+      // Connect to the peers used last time first.
+      if (peersFilename != null) {
+        PeerAddressCache peerAddressCache = new PeerAddressCache(new File(peersFilename));
+        peerAddressCache.load(System.currentTimeMillis());
+        peerGroup.setPeerAddressCache(peerAddressCache);
+      }
+
+      addPeerDiscovery(peerGroup);
+    }
+    String rebroadcastInterval = controller.getModel().getUserPreference(WorldcoinModel.REBROADCAST_INTERVAL);
+    if (rebroadcastInterval != null && !"".equals(rebroadcastInterval.trim())) {
+      try {
+        peerGroup.getBroadcastTracker().setRebroadcastInterval(Long.parseLong(rebroadcastInterval.trim()) * 1000);
+      } catch (NumberFormatException nfe) {
+        log.error("Cannot parse " + WorldcoinModel.REBROADCAST_INTERVAL + " of '" + rebroadcastInterval + "'");
       }
     }
+
     // Add the controller as a PeerEventListener.
     peerGroup.addEventListener(worldcoinController.getPeerEventListener());
 
-    // Add all existing wallets to the PeerGroup.
+    // Add all existing wallets to the PeerGroup, with one filter for all of them.
     if (controller != null && controller.getModel() != null) {
       List<WalletData> perWalletDataModels = worldcoinController.getModel().getPerWalletModelDataList();
       if (perWalletDataModels != null) {
-        Iterator<WalletData> iterator = perWalletDataModels.iterator();
-        if (iterator != null) {
-          while (iterator.hasNext()) {
-            WalletData perWalletModelData = iterator.next();
-            if (perWalletModelData != null && perWalletModelData.getWallet() != null) {
-              peerGroup.addWallet(perWalletModelData.getWallet());
-            }
+        List<com.google.worldcoin.core.Wallet> wallets = new ArrayList<com.google.worldcoin.core.Wallet>();
+        for (WalletData perWalletModelData : perWalletDataModels) {
+          if (perWalletModelData != null && perWalletModelData.getWallet() != null) {
+            wallets.add(perWalletModelData.getWallet());
           }
         }
+        peerGroup.addWallets(wallets);
       }
     }
   }
 
+  /**
+   * Use DNS for production, IRC for test.
+   */
+  private void addPeerDiscovery(WorldcoinWalletPeerGroup peerGroup) {
+    if (TESTNET3_GENESIS_HASH.equals(worldcoinController.getModel().getNetworkParameters().getGenesisBlock().getHashAsString())) {
+      peerGroup.addPeerDiscovery(new IrcDiscovery(IRC_CHANNEL_TESTNET3));
+    } else if (NetworkParameters.testNet().equals(worldcoinController.getModel().getNetworkParameters())) {
+      peerGroup.addPeerDiscovery(new IrcDiscovery(IRC_CHANNEL_TEST));
+    } else {
+      peerGroup.addPeerDiscovery(new DnsDiscovery(networkParameters));
+    }
+  }
+
   public static String getFilePrefix() {
     WorldcoinController worldcoinController = WorldcoinWallet.getWorldcoinController();
     // testnet3
@@ -471,10 +507,10 @@ public class WorldcoinWalletService {
         if (perWalletModelDataToReturn != null) {
           WalletInfoData walletInfo = perWalletModelDataToReturn.getWalletInfo();
           if (walletInfo != null) {
+            WalletKeyIndex keyIndex = WalletKeyIndex.forWallet(wallet);
             for (ECKey key : keys) {
               if (key != null) {
-                Address address = key.toAddress(networkParameters);
-                walletInfo.addReceivingAddressOfKey(address);
+                walletInfo.addReceivingAddressOfKey(keyIndex.getAddress(key, networkParameters));
               }
             }
           }
@@ -492,7 +528,6 @@ public class WorldcoinWalletService {
       // Add wallet to peergroup.
       if (peerGroup != null) {
         peerGroup.addWallet(wallet);
-        peerGroup.addEventListener(worldcoinController.getPeerEventListener());
       } else {
         log.error("Could not add wallet '" + walletFilename + "' to the peerGroup as the peerGroup is null. This is bad. ");
       }
@@ -502,6 +537,22 @@ public class WorldcoinWalletService {
     return perWalletModelDataToReturn;
   }
 
+  /**
+   * Start adding several wallets with addWalletFromFilename. The Bloom filter for them is worked out and sent to the
+   * peers once, at endAddingWallets, rather than once for each wallet.
+   */
+  public void beginAddingWallets() {
+    if (peerGroup != null) {
+      peerGroup.beginWalletBatch();
+    }
+  }
+
+  public void endAddingWallets() {
+    if (peerGroup != null) {
+      peerGroup.endWalletBatch();
+    }
+  }
+
   /**
    * Create a new block store.
    *
@@ -564,33 +615,11 @@ public class WorldcoinWalletService {
   public Transaction sendCoins(WalletData perWalletModelData, SendRequest sendRequest,
                                CharSequence password) throws java.io.IOException, AddressFormatException, KeyCrypterException {
 
-    // Ping the peers to check the worldcoin network connection
-    List<Peer> connectedPeers = peerGroup.getConnectedPeers();
-    boolean atLeastOnePingWorked = false;
-    if (connectedPeers != null) {
-      for (Peer peer : connectedPeers) {
-
-        log.debug("Ping: {}", peer.getAddress().toString());
-
-        try {
-
-          ListenableFuture<Long> result = peer.ping();
-          result.get(4, TimeUnit.SECONDS);
-          atLeastOnePingWorked = true;
-          break;
-        } catch (ProtocolException e) {
-          log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
-        } catch (InterruptedException e) {
-          log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
-        } catch (ExecutionException e) {
-          log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
-        } catch (TimeoutException e) {
-          log.warn("Peer '" + peer.getAddress().toString() + "' failed ping test. Message was " + e.getMessage());
-        }
-      }
-    }
-
-    if (!atLeastOnePingWorked) {
+    // Check the worldcoin network connection using the background pings of the peers.
+    PeerHealthMonitor peerHealthMonitor = peerGroup.getPeerHealthMonitor();
+    if (!peerHealthMonitor.isNetworkHealthy()) {
+      // Ping again so that the state is fresh for the next attempt.
+      peerHealthMonitor.pingNow();
       throw new IllegalStateException("All peers failed ping test (check network)");
     }
 
@@ -599,7 +628,7 @@ public class WorldcoinWalletService {
     log.debug("WorldcoinWalletService#sendCoins - Just about to send coins");
     KeyParameter aesKey = null;
     if (perWalletModelData.getWallet().getEncryptionType() != EncryptionType.UNENCRYPTED) {
-      aesKey = perWalletModelData.getWallet().getKeyCrypter().deriveKey(password);
+      aesKey = SessionKeyCache.INSTANCE.deriveKey(perWalletModelData.getWallet().getKeyCrypter(), password);
     }
     sendRequest.aesKey = aesKey;
     sendRequest.fee = BigInteger.ZERO;
@@ -638,7 +667,8 @@ public class WorldcoinWalletService {
 
       if (sendTransaction.getConfidence() != null) {
         log.debug("Added worldcoinController " + System.identityHashCode(worldcoinController) + " as listener to tx = " + sendTransaction.getHashAsString());
-        sendTransaction.getConfidence().addEventListener(worldcoinController);
+        // Removed once the transaction is buried so that the listeners do not build up.
+        pendingTransactionPool.addListenerUntilBuried(sendTransaction, worldcoinController);
       } else {
         log.debug("Cannot add worldcoinController as listener to tx = " + sendTransaction.getHashAsString() + " no transactionConfidence");
       }
@@ -692,6 +722,69 @@ public class WorldcoinWalletService {
     return peerGroup;
   }
 
+  public PendingTransactionPool getPendingTransactionPool() {
+    return pendingTransactionPool;
+  }
+
+  /**
+   * @return true if a transaction received from the network may be added to the pending pools of the wallets. Stale
+   *         transactions are removed to make room if needed.
+   */
+  public boolean admitPendingTransaction(Transaction transaction) {
+    if (pendingTransactionPool.hasRoomFor(transaction, getOpenWallets())) {
+      return true;
+    }
+    removeStalePendingTransactions();
+    if (pendingTransactionPool.hasRoomFor(transaction, getOpenWallets())) {
+      return true;
+    }
+    log.debug("Not adding transaction " + transaction.getHashAsString() + " to the pending pools as they are full");
+    return false;
+  }
+
+  /**
+   * Remove the incoming transactions that have been unconfirmed for too long from the pending pools of the wallets.
+   */
+  public void removeStalePendingTransactions() {
+    List<com.google.worldcoin.core.Wallet> changedWallets = pendingTransactionPool.removeStale(getOpenWallets(),
+            System.currentTimeMillis());
+    if (changedWallets.isEmpty()) {
+      return;
+    }
+    for (WalletData perWalletModelData : worldcoinController.getModel().getPerWalletModelDataList()) {
+      com.google.worldcoin.core.Wallet wallet = perWalletModelData.getWallet();
+      if (changedWallets.contains(wallet)) {
+        perWalletModelData.setDirty(true);
+        perWalletModelData.invalidateBalance();
+        perWalletModelData.invalidateBalanceSeries();
+        for (ViewSystem viewSystem : controller.getViewSystem()) {
+          viewSystem.onWalletChanged(wallet);
+        }
+      }
+    }
+    controller.fireDataChangedUpdateLater();
+  }
+
+  private List<com.google.worldcoin.core.Wallet> getOpenWallets() {
+    List<com.google.worldcoin.core.Wallet> wallets = new ArrayList<com.google.worldcoin.core.Wallet>();
+    List<WalletData> perWalletModelDataList = worldcoinController.getModel().getPerWalletModelDataList();
+    if (perWalletModelDataList != null) {
+      for (WalletData perWalletModelData : perWalletModelDataList) {
+        if (perWalletModelData.getWallet() != null) {
+          wallets.add(perWalletModelData.getWallet());
+        }
+      }
+    }
+    return wallets;
+  }
+
+  /**
+   * @return The monitor of the peers of the current peer group, or null if there is no peer group
+   */
+  public PeerHealthMonitor getPeerHealthMonitor() {
+    return peerGroup == null ? null : peerGroup.getPeerHealthMonitor();
+  }
+
   public WorldcoinWalletBlockChain getChain() {
     return blockChain;
   }
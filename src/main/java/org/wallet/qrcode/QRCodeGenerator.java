@@ -31,7 +31,14 @@ package org.wallet.qrcode;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import java.awt.EventQueue;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
 
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
@@ -43,6 +50,7 @@ import com.google.worldcoin.core.Address;
 import com.google.worldcoin.core.AddressFormatException;
 import com.google.worldcoin.uri.WorldcoinURI;
 import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.encoder.Encoder;
@@ -52,6 +60,9 @@ import com.google.zxing.qrcode.encoder.QRCode;
 /**
  * Class to generate QR codes
  * 
+ * The swatches generated are kept in a small least recently used cache shared by all the generators,
+ * so redisplaying or zooming a swatch does not encode it again. The images returned are shared and must not be changed.
+ * 
  * @author jim
  * 
  */
@@ -59,7 +70,22 @@ public class QRCodeGenerator {
     private static final int QUIET_ZONE_SIZE = 4;
     private static int QR_CODE_ELEMENT_MULTIPLE = 2;
 
-    private QRCode code;
+    private static final int WHITE = 0xFFFFFF;
+    private static final int BLACK = 0x000000;
+
+    /**
+     * Maximum number of swatches cached.
+     */
+    public static final int CACHE_SIZE = 32;
+
+    private static final Map<String, BufferedImage> cache = new LinkedHashMap<String, BufferedImage>(CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
     private final Controller controller;
     private final WorldcoinController worldcoinController;
@@ -67,8 +93,6 @@ public class QRCodeGenerator {
     public QRCodeGenerator(WorldcoinController worldcoinController) {
         this.worldcoinController = worldcoinController;
         this.controller = this.worldcoinController;
-
-        code = new QRCode();
     }
 
     public BufferedImage generateQRcode(String address, String amount, String label) {
@@ -87,6 +111,12 @@ public class QRCodeGenerator {
      * @return
      */
     public BufferedImage generateQRcode(String address, String amount, String label, int scaleFactor) {
+        String cacheKey = createCacheKey(address, amount, label, scaleFactor);
+        BufferedImage cachedImage = getCachedQRcode(cacheKey);
+        if (cachedImage != null) {
+            return cachedImage;
+        }
+
         String worldcoinURI = "";
         try {
             Address decodeAddress = null;
@@ -105,7 +135,7 @@ public class QRCodeGenerator {
                     worldcoinURI = WorldcoinURI.convertToWorldcoinURI(decodeAddress, null, label, null);
                 }
             }
-            this.worldcoinController.getModel().setActiveWalletPreference(WorldcoinModel.SEND_PERFORM_PASTE_NOW, "false");
+            clearPerformPasteNow();
         } catch (IllegalArgumentException e) {
             //log.warn("The address '" + address + "' could not be converted to a worldcoin address. (IAE)");
             return null;
@@ -126,24 +156,97 @@ public class QRCodeGenerator {
             return null;
         }
 
-        // generate an image from the byte matrix
+        BufferedImage image = toImage(matrix, scaleFactor);
+        synchronized (cache) {
+            cache.put(cacheKey, image);
+        }
+        return image;
+    }
+
+    /**
+     * Get a QR code from the cache without generating it.
+     * 
+     * @return The cached swatch or null if it has not been generated
+     */
+    public BufferedImage getCachedQRcode(String address, String amount, String label, int scaleFactor) {
+        return getCachedQRcode(createCacheKey(address, amount, label, scaleFactor));
+    }
+
+    private BufferedImage getCachedQRcode(String cacheKey) {
+        BufferedImage image;
+        synchronized (cache) {
+            image = cache.get(cacheKey);
+        }
+        if (image != null) {
+            // As when the swatch is generated.
+            clearPerformPasteNow();
+        }
+        return image;
+    }
+
+    /**
+     * The model is only changed on the Swing thread, and swatches can be generated in the background.
+     */
+    private void clearPerformPasteNow() {
+        if (EventQueue.isDispatchThread()) {
+            this.worldcoinController.getModel().setActiveWalletPreference(WorldcoinModel.SEND_PERFORM_PASTE_NOW, "false");
+        } else {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    worldcoinController.getModel().setActiveWalletPreference(WorldcoinModel.SEND_PERFORM_PASTE_NOW, "false");
+                }
+            });
+        }
+    }
+
+    private static String createCacheKey(String address, String amount, String label, int scaleFactor) {
+        return address + '\0' + amount + '\0' + label + '\0' + scaleFactor;
+    }
+
+    /**
+     * Create an image from a greyscale byte matrix (0 == black), writing straight into the image raster.
+     */
+    static BufferedImage toImage(ByteMatrix matrix, int scaleFactor) {
         int matrixWidth = matrix.getWidth();
         int matrixHeight = matrix.getHeight();
         int swatchWidth = matrixWidth * scaleFactor;
         int swatchHeight = matrixHeight * scaleFactor;
 
-        // create buffered image to draw to
         BufferedImage image = new BufferedImage(swatchWidth, swatchHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
-        // iterate through the matrix and draw the pixels to the image
+        byte[][] matrixArray = matrix.getArray();
         for (int y = 0; y < matrixHeight; y++) {
+            // Write the first row of pixels for this matrix row then copy it for the rest of the scale.
+            int rowStart = y * scaleFactor * swatchWidth;
+            byte[] matrixRow = matrixArray[y];
             for (int x = 0; x < matrixWidth; x++) {
-                byte imageValue = matrix.get(x, y);
-                for (int scaleX = 0; scaleX < scaleFactor; scaleX++) {
-                    for (int scaleY = 0; scaleY < scaleFactor; scaleY++)  {
-                        image.setRGB(x * scaleFactor + scaleX, y * scaleFactor + scaleY, imageValue);                       
-                    }
-                }
+                int start = rowStart + x * scaleFactor;
+                Arrays.fill(pixels, start, start + scaleFactor, matrixRow[x] == 0 ? BLACK : WHITE);
+            }
+            for (int scaleY = 1; scaleY < scaleFactor; scaleY++) {
+                System.arraycopy(pixels, rowStart, pixels, rowStart + scaleY * swatchWidth, swatchWidth);
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Create an image from a bit matrix (true == black), writing straight into the image raster.
+     */
+    static BufferedImage toImage(BitMatrix matrix) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int offset = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[offset++] = matrix.get(x, y) ? BLACK : WHITE;
             }
         }
 
@@ -162,6 +265,7 @@ public class QRCodeGenerator {
             throw new IllegalArgumentException("Found empty contents");
         }
 
+        QRCode code = new QRCode();
         Encoder.encode(contents, ErrorCorrectionLevel.L, null, code);
         return renderResult(code, QR_CODE_ELEMENT_MULTIPLE);
     }
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.qrcode;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.wallet.controller.worldcoin.WorldcoinController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates QR code swatches for a panel off the Swing thread.
+ *
+ * Swatches already in the QRCodeGenerator cache are returned straight away. Otherwise the swatch is generated on a
+ * background thread once the user has stopped typing for DEBOUNCE_DELAY, and only the latest request is displayed.
+ */
+public class QRCodeRenderer {
+    private static final Logger log = LoggerFactory.getLogger(QRCodeRenderer.class);
+
+    /**
+     * Time to wait for further changes before generating a swatch.
+     */
+    public static final int DEBOUNCE_DELAY = 150; // milliseconds
+
+    /**
+     * Shared by all the panels - only one swatch is generated at a time. Not the Scheduler, which skips a run while
+     * the previous run with the same name is going, as the latest request must wait for the swatch being generated.
+     */
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "QRCodeRenderer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public interface Callback {
+        /**
+         * Called on the Swing thread with the swatch, or null if no swatch could be generated.
+         */
+        void qrCodeRendered(BufferedImage image);
+    }
+
+    private final QRCodeGenerator qrCodeGenerator;
+
+    /**
+     * Incremented for each request so that superseded swatches are not displayed.
+     */
+    private long requestNumber = 0;
+
+    private ScheduledFuture<?> pendingRequest;
+
+    public QRCodeRenderer(WorldcoinController worldcoinController) {
+        this.qrCodeGenerator = new QRCodeGenerator(worldcoinController);
+    }
+
+    /**
+     * Ask for a swatch. If the swatch is cached the callback is called before this returns,
+     * otherwise it is called on the Swing thread when the swatch has been generated.
+     */
+    public synchronized void render(final String address, final String amount, final String label, final int scaleFactor,
+            final Callback callback) {
+        final long thisRequestNumber = ++requestNumber;
+        if (pendingRequest != null) {
+            pendingRequest.cancel(false);
+            pendingRequest = null;
+        }
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        if (address == null || "".equals(address)) {
+            // Nothing to encode so this is quick.
+            callback.qrCodeRendered(qrCodeGenerator.generateQRcode(address, amount, label, scaleFactor));
+            return;
+        }
+
+        BufferedImage cachedImage = qrCodeGenerator.getCachedQRcode(address, amount, label, scaleFactor);
+        if (cachedImage != null) {
+            callback.qrCodeRendered(cachedImage);
+            return;
+        }
+
+        pendingRequest = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!isLatestRequest(thisRequestNumber)) {
+                    return;
+                }
+                BufferedImage image = null;
+                try {
+                    image = qrCodeGenerator.generateQRcode(address, amount, label, scaleFactor);
+                } catch (RuntimeException re) {
+                    // QR code generation failed
+                    log.error(re.getMessage(), re);
+                }
+                final BufferedImage finalImage = image;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isLatestRequest(thisRequestNumber)) {
+                            callback.qrCodeRendered(finalImage);
+                        }
+                    }
+                });
+            }
+        }, DEBOUNCE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the thread shared by the renderers. Swatches not yet generated are not displayed.
+     */
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private synchronized boolean isLatestRequest(long thisRequestNumber) {
+        return thisRequestNumber == requestNumber;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.utils;
+
+/**
+ * Reduces a series of (x, y) points to a smaller number of points that keep the visual shape of the series.
+ *
+ * Uses the Largest-Triangle-Three-Buckets algorithm (Sveinn Steinarsson, 2013).
+ */
+public class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Pick the indices of the points to plot.
+     *
+     * @param x The x values, in ascending order
+     * @param y The y values
+     * @param size The number of points in x and y to use
+     * @param threshold The maximum number of points wanted (typically the width of the chart in pixels)
+     * @return The indices of the points to keep, in ascending order. The first and last points are always kept.
+     */
+    public static int[] largestTriangleThreeBuckets(long[] x, double[] y, int size, int threshold) {
+        if (threshold >= size || threshold < 3) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] sampled = new int[threshold];
+        int sampledIndex = 0;
+
+        // Bucket size, leaving room for the first and last points.
+        double every = (double) (size - 2) / (threshold - 2);
+
+        int a = 0;
+        sampled[sampledIndex++] = a;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average point of the next bucket.
+            int averageRangeStart = (int) Math.floor((i + 1) * every) + 1;
+            int averageRangeEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+            int averageRangeLength = averageRangeEnd - averageRangeStart;
+
+            double averageX = 0;
+            double averageY = 0;
+            for (int j = averageRangeStart; j < averageRangeEnd; j++) {
+                averageX += x[j];
+                averageY += y[j];
+            }
+            averageX /= averageRangeLength;
+            averageY /= averageRangeLength;
+
+            // The point in this bucket making the largest triangle with the previously chosen point and the next average.
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+
+            double pointAX = x[a];
+            double pointAY = y[a];
+
+            double maxArea = -1;
+            int nextA = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((pointAX - averageX) * (y[j] - pointAY) - (pointAX - x[j]) * (averageY - pointAY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    nextA = j;
+                }
+            }
+
+            sampled[sampledIndex++] = nextA;
+            a = nextA;
+        }
+
+        sampled[sampledIndex] = size - 1;
+        return sampled;
+    }
+}
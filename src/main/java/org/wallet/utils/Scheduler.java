@@ -0,0 +1,498 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enum singleton running the background tasks of WorldcoinWallet on a fixed number of daemon threads, in place of a
+ * java.util.Timer thread per task.
+ *
+ * Each task has a name. The runs of tasks with the same name never overlap: a run due while another is still going is
+ * skipped and counted. The number of runs, skips and failures and the time the runs took are kept for each name. A
+ * task that throws is logged and keeps its schedule.
+ *
+ * Work that blocks or takes a while - waiting on the network or the disk, or a share of some work done in parallel -
+ * is submitted to run on worker threads instead, so that it does not hold up the scheduled tasks. There are at most
+ * twice as many worker threads as processors (but no fewer than NUMBER_OF_THREADS), made as needed and gone once idle
+ * for a minute, and at most WORK_QUEUE_CAPACITY pieces of work waiting for one. Work submitted beyond that is rejected
+ * and the caller does it some other way. Its statistics are kept by name in the same way.
+ */
+public enum Scheduler {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(Scheduler.class);
+
+    public static final int NUMBER_OF_THREADS = 4;
+
+    /**
+     * Milliseconds an idle worker thread is kept.
+     */
+    private static final long WORKER_KEEP_ALIVE_TIME = 60000;
+
+    public static final int WORK_QUEUE_CAPACITY = 128;
+
+    /**
+     * The runs of the tasks with one name.
+     */
+    public static class TaskStatistics {
+        private final String name;
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private long numberOfRuns = 0;
+        private long numberOfSkippedRuns = 0;
+        private long numberOfFailures = 0;
+        private long totalExecutionTime = 0;
+        private long maximumExecutionTime = 0;
+        private long lastExecutionTime = -1;
+
+        TaskStatistics(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return true if the run may start, false if another run is still going
+         */
+        boolean begin() {
+            if (running.compareAndSet(false, true)) {
+                return true;
+            }
+            synchronized (this) {
+                numberOfSkippedRuns++;
+            }
+            return false;
+        }
+
+        void end(long executionTime, boolean failed) {
+            record(executionTime, failed);
+            synchronized (this) {
+                running.set(false);
+                notifyAll();
+            }
+        }
+
+        synchronized void record(long executionTime, boolean failed) {
+            numberOfRuns++;
+            if (failed) {
+                numberOfFailures++;
+            }
+            totalExecutionTime += executionTime;
+            maximumExecutionTime = Math.max(maximumExecutionTime, executionTime);
+            lastExecutionTime = executionTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isRunning() {
+            return running.get();
+        }
+
+        /**
+         * Wait for the run going, if any, to finish.
+         *
+         * @param timeout
+         *            Most milliseconds to wait
+         * @return true if no run is going
+         */
+        public synchronized boolean awaitNotRunning(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (running.get()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+
+        public synchronized long getNumberOfRuns() {
+            return numberOfRuns;
+        }
+
+        /**
+         * @return The number of runs not started because the previous run had not finished
+         */
+        public synchronized long getNumberOfSkippedRuns() {
+            return numberOfSkippedRuns;
+        }
+
+        public synchronized long getNumberOfFailures() {
+            return numberOfFailures;
+        }
+
+        /**
+         * @return Milliseconds taken by all the runs
+         */
+        public synchronized long getTotalExecutionTime() {
+            return totalExecutionTime;
+        }
+
+        /**
+         * @return Milliseconds taken by the longest run
+         */
+        public synchronized long getMaximumExecutionTime() {
+            return maximumExecutionTime;
+        }
+
+        /**
+         * @return Milliseconds taken by the last run, or -1 if there has not been one
+         */
+        public synchronized long getLastExecutionTime() {
+            return lastExecutionTime;
+        }
+
+        /**
+         * @return Mean milliseconds taken by a run, or -1 if there has not been one
+         */
+        public synchronized long getAverageExecutionTime() {
+            return numberOfRuns == 0 ? -1 : totalExecutionTime / numberOfRuns;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "TaskStatistics [name=" + name + ", numberOfRuns=" + numberOfRuns + ", numberOfSkippedRuns="
+                    + numberOfSkippedRuns + ", numberOfFailures=" + numberOfFailures + ", averageExecutionTime="
+                    + getAverageExecutionTime() + ", maximumExecutionTime=" + maximumExecutionTime + "]";
+        }
+    }
+
+    /**
+     * A task that has been scheduled, to be cancelled when no longer wanted.
+     */
+    public static class ScheduledTask {
+        private final TaskStatistics statistics;
+        private final ScheduledFuture<?> future;
+
+        ScheduledTask(TaskStatistics statistics, ScheduledFuture<?> future) {
+            this.statistics = statistics;
+            this.future = future;
+        }
+
+        /**
+         * Stop any further runs. A run that has started is left to finish.
+         */
+        public void cancel() {
+            if (future != null && future.cancel(false)) {
+                INSTANCE.executor.purge();
+            }
+        }
+
+        public boolean isCancelled() {
+            return future == null || future.isCancelled();
+        }
+
+        public TaskStatistics getStatistics() {
+            return statistics;
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * Twice the processors, as much of the work waits on the network.
+     */
+    private final int maximumNumberOfWorkers = Math.max(NUMBER_OF_THREADS, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLong numberOfRejectedWork = new AtomicLong();
+
+    private final ConcurrentMap<String, TaskStatistics> statistics = new ConcurrentHashMap<String, TaskStatistics>();
+
+    private Scheduler() {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        executor = new ScheduledThreadPoolExecutor(NUMBER_OF_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Scheduler-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        final AtomicInteger workerNumber = new AtomicInteger(1);
+        workers = new ThreadPoolExecutor(maximumNumberOfWorkers, maximumNumberOfWorkers, WORKER_KEEP_ALIVE_TIME,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(WORK_QUEUE_CAPACITY), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Scheduler-worker-" + workerNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        if (!executor.isShutdown()) {
+                            numberOfRejectedWork.incrementAndGet();
+                        }
+                        super.rejectedExecution(runnable, executor);
+                    }
+                });
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run a task once.
+     *
+     * @param delay
+     *            Milliseconds to wait before the run
+     */
+    public ScheduledTask schedule(String name, Runnable task, long delay) {
+        TaskStatistics taskStatistics = statisticsFor(name);
+        try {
+            return new ScheduledTask(taskStatistics, executor.schedule(new Run(taskStatistics, task), delay,
+                    TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            log.debug("Task '" + name + "' not scheduled as the scheduler has shut down");
+            return new ScheduledTask(taskStatistics, null);
+        }
+    }
+
+    /**
+     * Run a task repeatedly, each run starting a fixed time after the previous run finishes.
+     *
+     * @param initialDelay
+     *            Milliseconds to wait before the first run
+     * @param delay
+     *            Milliseconds between the end of one run and the start of the next
+     */
+    public ScheduledTask scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay) {
+        TaskStatistics taskStatistics = statisticsFor(name);
+        try {
+            return new ScheduledTask(taskStatistics, executor.scheduleWithFixedDelay(new Run(taskStatistics, task),
+                    initialDelay, delay, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            log.debug("Task '" + name + "' not scheduled as the scheduler has shut down");
+            return new ScheduledTask(taskStatistics, null);
+        }
+    }
+
+    /**
+     * Run a task repeatedly, the runs starting a fixed time apart. A run that is late because the previous one took
+     * longer than the period starts as soon as the previous one ends.
+     *
+     * @param initialDelay
+     *            Milliseconds to wait before the first run
+     * @param period
+     *            Milliseconds between the starts of the runs
+     */
+    public ScheduledTask scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period) {
+        TaskStatistics taskStatistics = statisticsFor(name);
+        try {
+            return new ScheduledTask(taskStatistics, executor.scheduleAtFixedRate(new Run(taskStatistics, task),
+                    initialDelay, period, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            log.debug("Task '" + name + "' not scheduled as the scheduler has shut down");
+            return new ScheduledTask(taskStatistics, null);
+        }
+    }
+
+    /**
+     * Run some work on a worker thread, as soon as one is free. Unlike the scheduled tasks, any number of runs with the
+     * same name can go at once. An exception thrown by the work is counted as a failure and passed on through the Future.
+     *
+     * @throws RejectedExecutionException
+     *             if the scheduler has shut down, or all the worker threads are busy and the queue is full
+     */
+    public <T> Future<T> submit(String name, Callable<T> work) {
+        return workers.submit(new Work<T>(statisticsFor(name), work));
+    }
+
+    /**
+     * Run some work on a worker thread. See submit(String, Callable).
+     *
+     * @throws RejectedExecutionException
+     *             if the scheduler has shut down, or all the worker threads are busy and the queue is full
+     */
+    public Future<?> submit(String name, Runnable work) {
+        return submit(name, Executors.callable(work));
+    }
+
+    /**
+     * Stop all the tasks and wait for any runs and work in progress to finish. Nothing can be scheduled or submitted
+     * afterwards.
+     *
+     * @param timeout
+     *            Most milliseconds to wait
+     * @return true if no run or work is still going
+     */
+    public boolean shutdown(long timeout) {
+        executor.shutdown();
+        workers.shutdown();
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean terminated = false;
+        try {
+            terminated = executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)
+                    && workers.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (TaskStatistics taskStatistics : getStatistics()) {
+            log.debug(taskStatistics.toString());
+        }
+        log.debug("Scheduler workers: largestNumberOfWorkers=" + getLargestNumberOfWorkers() + ", maximumNumberOfWorkers="
+                + maximumNumberOfWorkers + ", numberOfRejectedWork=" + getNumberOfRejectedWork());
+        if (!terminated) {
+            log.debug("Scheduler still running tasks after waiting " + timeout + " ms");
+        }
+        return terminated;
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public int getMaximumNumberOfWorkers() {
+        return maximumNumberOfWorkers;
+    }
+
+    /**
+     * @return The number of worker threads there are now
+     */
+    public int getNumberOfWorkers() {
+        return workers.getPoolSize();
+    }
+
+    /**
+     * @return The most worker threads there have been at once
+     */
+    public int getLargestNumberOfWorkers() {
+        return workers.getLargestPoolSize();
+    }
+
+    /**
+     * @return The number of pieces of work waiting for a worker thread
+     */
+    public int getNumberOfQueuedWork() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return The number of pieces of work rejected as the worker threads were busy and the queue was full
+     */
+    public long getNumberOfRejectedWork() {
+        return numberOfRejectedWork.get();
+    }
+
+    /**
+     * @return The statistics of each task name scheduled
+     */
+    public List<TaskStatistics> getStatistics() {
+        return new ArrayList<TaskStatistics>(statistics.values());
+    }
+
+    /**
+     * @return The statistics of the tasks with a name, or null if there have not been any
+     */
+    public TaskStatistics getStatistics(String name) {
+        return statistics.get(name);
+    }
+
+    private TaskStatistics statisticsFor(String name) {
+        TaskStatistics taskStatistics = statistics.get(name);
+        if (taskStatistics == null) {
+            TaskStatistics newStatistics = new TaskStatistics(name);
+            taskStatistics = statistics.putIfAbsent(name, newStatistics);
+            if (taskStatistics == null) {
+                taskStatistics = newStatistics;
+            }
+        }
+        return taskStatistics;
+    }
+
+    /**
+     * One run of a task, skipped if another run with the same name is still going.
+     */
+    private static class Run implements Runnable {
+        private final TaskStatistics statistics;
+        private final Runnable task;
+
+        Run(TaskStatistics statistics, Runnable task) {
+            this.statistics = statistics;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!statistics.begin()) {
+                log.debug("Skipped a run of task '" + statistics.getName() + "' as the previous run has not finished");
+                return;
+            }
+            long start = System.currentTimeMillis();
+            boolean failed = false;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failed = true;
+                log.error(e.getClass().getName() + " " + e.getMessage(), e);
+            } finally {
+                statistics.end(System.currentTimeMillis() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * A piece of work on a worker thread, named after its task while it runs.
+     */
+    private static class Work<T> implements Callable<T> {
+        private final TaskStatistics statistics;
+        private final Callable<T> work;
+
+        Work(TaskStatistics statistics, Callable<T> work) {
+            this.statistics = statistics;
+            this.work = work;
+        }
+
+        @Override
+        public T call() throws Exception {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(threadName + " " + statistics.getName());
+            long start = System.currentTimeMillis();
+            boolean failed = true;
+            try {
+                T result = work.call();
+                failed = false;
+                return result;
+            } finally {
+                statistics.record(System.currentTimeMillis() - start, failed);
+                thread.setName(threadName);
+            }
+        }
+    }
+}
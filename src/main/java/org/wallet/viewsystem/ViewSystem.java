@@ -68,7 +68,7 @@ public interface ViewSystem extends WalletEventListener {
    
     /**
      * Notification that a block has been downloaded.
-     * (this is typically called from a peer thread)
+     * (this is called from the ViewUpdateDispatcher thread, at most once every MINIMUM_UPDATE_INTERVAL)
      */
     public void blockDownloaded();
  
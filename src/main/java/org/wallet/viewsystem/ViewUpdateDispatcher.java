@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.viewsystem;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
+
+/**
+ * Single route by which the controllers tell the view systems that something has changed.
+ *
+ * Events coming from Peers and wallets (data changes, blocks downloaded, exchange rate updates) are condensed:
+ * each kind of update is remembered as pending and the view systems are told about it at most once every
+ * MINIMUM_UPDATE_INTERVAL. Updates initiated by the user are not delayed and replace any equivalent pending update.
+ *
+ * This is to prevent the UI thrashing with hundreds of events per second, for instance when syncing.
+ */
+public class ViewUpdateDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewUpdateDispatcher.class);
+
+    /**
+     * The shortest time between two background updates of the view systems.
+     */
+    public static final int MINIMUM_UPDATE_INTERVAL = 1000; // milliseconds
+
+    public static final String TASK_NAME = "ViewUpdateDispatcher";
+
+    private final Collection<ViewSystem> viewSystems;
+
+    private final long minimumUpdateInterval;
+
+    private final EnumSet<DisplayHint> pendingDisplayHints = EnumSet.noneOf(DisplayHint.class);
+
+    private boolean blockDownloadedPending = false;
+
+    /**
+     * Other pending updates by key - only the latest update for each key is run.
+     */
+    private final Map<String, Runnable> pendingUpdates = new LinkedHashMap<String, Runnable>();
+
+    private ScheduledTask scheduledUpdate;
+
+    /**
+     * True from when an update is scheduled until it has been delivered, so that only one run is pending or running.
+     */
+    private boolean updateScheduled = false;
+
+    private long lastUpdateTime = 0;
+
+    private boolean shutdown = false;
+
+    public ViewUpdateDispatcher(Collection<ViewSystem> viewSystems) {
+        this(viewSystems, MINIMUM_UPDATE_INTERVAL);
+    }
+
+    public ViewUpdateDispatcher(Collection<ViewSystem> viewSystems, long minimumUpdateInterval) {
+        this.viewSystems = viewSystems;
+        this.minimumUpdateInterval = minimumUpdateInterval;
+    }
+
+    /**
+     * Publish that the model data has changed.
+     *
+     * @param displayHint
+     *            What has changed
+     * @param userInitiated
+     *            True if the user is waiting for the change, in which case the view systems are told straight away
+     */
+    public void publishDataChanged(DisplayHint displayHint, boolean userInitiated) {
+        if (displayHint == null) {
+            displayHint = DisplayHint.COMPLETE_REDRAW;
+        }
+
+        if (userInitiated) {
+            synchronized (this) {
+                // This update covers any equivalent one waiting to go out.
+                if (displayHint == DisplayHint.COMPLETE_REDRAW) {
+                    pendingDisplayHints.clear();
+                } else {
+                    pendingDisplayHints.remove(displayHint);
+                }
+                lastUpdateTime = System.currentTimeMillis();
+            }
+            for (ViewSystem viewSystem : viewSystems) {
+                viewSystem.fireDataChangedUpdateNow(displayHint);
+            }
+        } else {
+            synchronized (this) {
+                if (!pendingDisplayHints.contains(DisplayHint.COMPLETE_REDRAW)) {
+                    if (displayHint == DisplayHint.COMPLETE_REDRAW) {
+                        pendingDisplayHints.clear();
+                    }
+                    pendingDisplayHints.add(displayHint);
+                }
+                scheduleUpdate();
+            }
+        }
+    }
+
+    /**
+     * Publish that a block has been downloaded.
+     */
+    public synchronized void publishBlockDownloaded() {
+        blockDownloadedPending = true;
+        scheduleUpdate();
+    }
+
+    /**
+     * Publish some other update of the views. If an update with the same key is already pending it is replaced.
+     * The update is run on a Scheduler thread and should pass any Swing work on to the Swing thread itself.
+     */
+    public synchronized void publish(String key, Runnable update) {
+        pendingUpdates.put(key, update);
+        scheduleUpdate();
+    }
+
+    /**
+     * Stop the dispatcher. Pending updates are dropped.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        pendingDisplayHints.clear();
+        blockDownloadedPending = false;
+        pendingUpdates.clear();
+        if (scheduledUpdate != null) {
+            scheduledUpdate.cancel();
+            scheduledUpdate = null;
+        }
+    }
+
+    /**
+     * Only schedule a run when there is something to deliver so that the dispatcher does not wake up when idle.
+     */
+    private void scheduleUpdate() {
+        if (updateScheduled || shutdown) {
+            return;
+        }
+        long delay = Math.max(0, lastUpdateTime + minimumUpdateInterval - System.currentTimeMillis());
+        updateScheduled = true;
+        scheduledUpdate = Scheduler.INSTANCE.schedule(TASK_NAME, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliverPendingUpdates();
+                } finally {
+                    deliveryFinished();
+                }
+            }
+        }, delay);
+    }
+
+    /**
+     * Schedule the updates published while the last ones were being delivered.
+     */
+    private synchronized void deliveryFinished() {
+        updateScheduled = false;
+        scheduledUpdate = null;
+        if (!pendingDisplayHints.isEmpty() || blockDownloadedPending || !pendingUpdates.isEmpty()) {
+            scheduleUpdate();
+        }
+    }
+
+    private void deliverPendingUpdates() {
+        DisplayHint[] displayHints;
+        boolean blockDownloaded;
+        Runnable[] updates;
+        synchronized (this) {
+            lastUpdateTime = System.currentTimeMillis();
+
+            displayHints = pendingDisplayHints.toArray(new DisplayHint[pendingDisplayHints.size()]);
+            pendingDisplayHints.clear();
+            blockDownloaded = blockDownloadedPending;
+            blockDownloadedPending = false;
+            updates = pendingUpdates.values().toArray(new Runnable[pendingUpdates.size()]);
+            pendingUpdates.clear();
+        }
+
+        for (ViewSystem viewSystem : viewSystems) {
+            try {
+                for (DisplayHint displayHint : displayHints) {
+                    viewSystem.fireDataChangedUpdateNow(displayHint);
+                }
+                if (blockDownloaded) {
+                    viewSystem.blockDownloaded();
+                }
+            } catch (RuntimeException e) {
+                log.error(e.getClass().getName() + " " + e.getMessage(), e);
+            }
+        }
+
+        for (Runnable update : updates) {
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                log.error(e.getClass().getName() + " " + e.getMessage(), e);
+            }
+        }
+    }
+}
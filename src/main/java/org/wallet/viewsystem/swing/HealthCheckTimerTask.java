@@ -21,6 +21,7 @@ import org.wallet.file.WalletSaveException;
 import org.wallet.message.Message;
 import org.wallet.message.MessageManager;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.network.PeerHealthMonitor;
 import org.wallet.store.WalletVersionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,14 +29,14 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 
 /**
- * TimerTask to regularly check the 'health' of WorldcoinWallet.
+ * Task run regularly by the Scheduler to check the 'health' of WorldcoinWallet.
  * It detects whether wallet files have been changed by some external process and to save dirty files.
- * It checks the ping times of the peers to see if they are up.
+ * It removes incoming transactions that have been unconfirmed for too long from the pending pools.
+ * It logs when none of the peers have answered the background pings of the PeerHealthMonitor.
  *
- * @see java.util.Timer
- * @see java.util.TimerTask
+ * @see org.wallet.utils.Scheduler
  */
-public class HealthCheckTimerTask extends TimerTask {
+public class HealthCheckTimerTask implements Runnable {
 
   public static final int INITIAL_DELAY = 30000; // milliseconds
   public static final int DEFAULT_REPEAT_RATE = 90000; // milliseconds
@@ -47,8 +48,6 @@ public class HealthCheckTimerTask extends TimerTask {
 
   private boolean isRunning = false;
 
-  //private Map<String, Long> previousPeerToLastPingTime;
-
   //private int counter;
 
   /**
@@ -60,8 +59,6 @@ public class HealthCheckTimerTask extends TimerTask {
     this.worldcoinController = worldcoinController;
     this.controller = worldcoinController;
 
-    //previousPeerToLastPingTime = new HashMap<String, Long>();
-
     //counter = 0;
   }
 
@@ -74,6 +71,11 @@ public class HealthCheckTimerTask extends TimerTask {
     try {
       log.debug("Start of HealthCheckTimerTask");
 
+      // Any wallets changed are saved below.
+      if (worldcoinController.getWorldcoinWalletService() != null) {
+        worldcoinController.getWorldcoinWalletService().removeStalePendingTransactions();
+      }
+
       //if (counter == 0) {
         log.debug("Checking if wallets are dirty . . .");
         List<WalletData> perWalletModelDataList = worldcoinController.getModel().getPerWalletModelDataList();
@@ -121,48 +123,11 @@ public class HealthCheckTimerTask extends TimerTask {
           }
         }
       //}
-      //log.debug("Checking if peers are alive . . .");
-//      if (worldcoinController.getWorldcoinWalletService() != null && worldcoinController.getWorldcoinWalletService().getPeerGroup() != null) {
-//        PeerGroup peerGroup = worldcoinController.getWorldcoinWalletService().getPeerGroup();
-//        Peer downloadPeer = peerGroup.getDownloadPeer();
-//        if (downloadPeer == null) {
-//          //log.debug("There is no downloadPeer");
-//        } else {
-//          //log.debug("The downloadPeer is '" + downloadPeer.toString());
-//        }
-//
-//        // Work out if all the last ping times are exactly the same as the last times the health check ran.
-//        // The ping time says the same if the network is lost so if all the ping times are the same as the previous time
-//        // the health check ran then this is a good indicator that the network has been lost.
-//        List<Peer> connectedPeers = peerGroup.getConnectedPeers();
-//        if (connectedPeers != null) {
-//          boolean allPingTimesWereIdenticalToPreviousHealthCheck = true;
-//          for (Peer connectedPeer : connectedPeers) {
-//            long thePingTimeThisHealthCheck = connectedPeer.getLastPingTime();
-//            Long thePreviousPingTime = previousPeerToLastPingTime.get(connectedPeer.toString());
-//            if (thePingTimeThisHealthCheck != (thePreviousPingTime == null ? 0 : thePreviousPingTime.longValue())) {
-//              allPingTimesWereIdenticalToPreviousHealthCheck = false;
-//              break;
-//            }
-//          }
-//          if (allPingTimesWereIdenticalToPreviousHealthCheck) {
-//            log.debug("SUSPECTED LOSS OF NETWORK - all ping times were identical to the last time the health check was run.");
-//          }
-//          // Clear out previous ping times and then refill.
-//          previousPeerToLastPingTime.clear();
-//
-//          for (Peer connectedPeer : connectedPeers) {
-//            if (downloadPeer == null) {
-//              //log.debug("There is a null connectedPeer");
-//            } else {
-//              //log.debug("There is a connectedPeer : '" + connectedPeer.toString() + "', with a last ping time of " + connectedPeer.getLastPingTime());
-//              previousPeerToLastPingTime.put(connectedPeer.toString(), connectedPeer.getLastPingTime());
-//            }
-//          }
-//        }
-//      } else {
-//        //log.debug("Cannot perform peer check due to missing peerGroup");
-//      }
+      PeerHealthMonitor peerHealthMonitor = worldcoinController.getWorldcoinWalletService() == null ? null
+              : worldcoinController.getWorldcoinWalletService().getPeerHealthMonitor();
+      if (peerHealthMonitor != null && !peerHealthMonitor.isNetworkHealthy()) {
+        log.debug("SUSPECTED LOSS OF NETWORK - none of the connected peers have answered recently.");
+      }
 
       log.debug("End of HealthCheckTimerTask");
     } catch (java.util.ConcurrentModificationException cme) {
@@ -39,6 +39,8 @@ import org.wallet.controller.worldcoin.WorldcoinController;
 import org.wallet.message.Message;
 import org.wallet.message.MessageListener;
 import org.wallet.model.core.StatusEnum;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
 import org.wallet.viewsystem.swing.action.WorldcoinWalletAction;
 import org.wallet.viewsystem.swing.view.components.BlinkLabel;
 import org.wallet.viewsystem.swing.view.components.FontSizer;
@@ -58,7 +60,6 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.Timer;
 
 /**
  * StatusBar. <BR>
@@ -92,7 +93,10 @@ public class StatusBar extends JPanel implements MessageListener {
   public static final long TIMER_REPEAT_TIME = 5000; // millisecond
   public static final int NUMBER_OF_REPEATS = 12;
 
-  private Timer statusClearTimer;
+  /**
+   * Shared by the status bars so that a status bar made when the views are recreated replaces the task of the last.
+   */
+  private static ScheduledTask statusClearTask;
   static boolean clearAutomatically = true;
 
   private HashMap<String, Component> idToZones;
@@ -219,8 +223,11 @@ public class StatusBar extends JPanel implements MessageListener {
     addZone("network", statusLabel, "*", "");
     addZone("filler2", filler, "0", "right");
 
-    statusClearTimer = new java.util.Timer();
-    statusClearTimer.schedule(new StatusClearTask(statusLabel), TIMER_REPEAT_TIME, TIMER_REPEAT_TIME);
+    if (statusClearTask != null) {
+      statusClearTask.cancel();
+    }
+    statusClearTask = Scheduler.INSTANCE.scheduleWithFixedDelay("StatusClear", new StatusClearTask(statusLabel),
+            TIMER_REPEAT_TIME, TIMER_REPEAT_TIME);
   }
 
   /**
@@ -767,7 +774,7 @@ class PercentLayout implements LayoutManager2 {
 
 }
 
-class StatusClearTask extends TimerTask {
+class StatusClearTask implements Runnable {
   JButton statusLabel;
   private String previousStatusLabelText = null;
   private int previousLabelRepeats = 0;
@@ -43,6 +43,8 @@ import org.wallet.platform.listener.GenericQuitEventListener;
 import org.wallet.platform.listener.GenericQuitResponse;
 import org.wallet.store.WorldcoinWalletVersion;
 import org.wallet.utils.ImageLoader;
+import org.wallet.utils.Scheduler;
+import org.wallet.utils.Scheduler.ScheduledTask;
 import org.wallet.viewsystem.DisplayHint;
 import org.wallet.viewsystem.View;
 import org.wallet.viewsystem.ViewSystem;
@@ -52,7 +54,6 @@ import org.wallet.viewsystem.swing.view.ViewFactory;
 import org.wallet.viewsystem.swing.view.components.*;
 import org.wallet.viewsystem.swing.view.panels.HelpContentsPanel;
 import org.wallet.viewsystem.swing.view.panels.SendWorldcoinConfirmPanel;
-import org.wallet.viewsystem.swing.view.panels.ShowTransactionsPanel;
 import org.wallet.viewsystem.swing.view.ticker.TickerTablePanel;
 import org.wallet.viewsystem.swing.view.walletlist.SingleWalletPanel;
 import org.wallet.viewsystem.swing.view.walletlist.WalletListPanel;
@@ -68,7 +69,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.math.BigInteger;
 import java.util.List;
-import java.util.Timer;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /*
@@ -175,11 +176,21 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
 
     private ViewFactory viewFactory;
 
-    private Timer fileChangeTimer;
+    private static final String HEALTH_CHECK_TASK_NAME = "HealthCheck";
+    private static final String TICKER_TASK_NAME_1 = "Ticker1";
+    private static final String TICKER_TASK_NAME_2 = "Ticker2";
+    private static final String TICKER_RESTART_TASK_NAME = "TickerRestart";
+
+    /**
+     * Most time to wait for a run of the old tickers to finish when restarting them.
+     */
+    private static final long TICKER_RESTART_TIMEOUT = 60000; // milliseconds
+
     private HealthCheckTimerTask healthCheckTimerTask;
 
-    private Timer tickerTimer1;
-    private Timer tickerTimer2;
+    private ScheduledTask tickerTask1;
+    private ScheduledTask tickerTask2;
+    private long tickerRestartNumber = 0;
     private TickerTimerTask tickerTimerTask1;
     private TickerTimerTask tickerTimerTask2;
 
@@ -197,19 +208,6 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
     private WorldcoinWalletBusyAction showExportPrivateKeysAction;
     private WorldcoinWalletBusyAction resetTransactionsAction;
  
-    /**
-     * For events coming from Peers condense the events into regular updates.
-     * This is to prevent the UI thrashing with hundreds of events per second.
-     */
-    public static final int FIRE_DATA_CHANGED_UPDATE_LATER_DELAY_TIME = 1000; // milliseconds
- 
-    /**
-     * Timer used to condense multiple updates
-     */
-    private static Timer fireDataChangedTimer;
-
-    private static FireDataChangedTimerTask fireDataChangedTimerTask;
-
     @SuppressWarnings("deprecation")
     public WorldcoinWalletFrame(CoreController coreController, WorldcoinController worldcoinController, ExchangeController exchangeController, GenericApplication application, View initialView) {
         this.coreController = coreController;
@@ -264,19 +262,14 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
 
         this.worldcoinController.registerWalletBusyListener(this);
 
-         // Initialise the file change timer.
-        fileChangeTimer = new Timer();
+         // Initialise the file change task.
         healthCheckTimerTask = new HealthCheckTimerTask(this.worldcoinController);
-        fileChangeTimer.schedule(healthCheckTimerTask, HealthCheckTimerTask.INITIAL_DELAY, HealthCheckTimerTask.DEFAULT_REPEAT_RATE);
+        Scheduler.INSTANCE.scheduleWithFixedDelay(HEALTH_CHECK_TASK_NAME, healthCheckTimerTask,
+                HealthCheckTimerTask.INITIAL_DELAY, HealthCheckTimerTask.DEFAULT_REPEAT_RATE);
 
          // Initialise the tickers.
-        tickerTimer1 = new Timer();
-        tickerTimerTask1 = new TickerTimerTask(this.exchangeController, this, true);
-        tickerTimer1.schedule(tickerTimerTask1, TickerTimerTask.INITIAL_DELAY, TickerTimerTask.DEFAULT_REPEAT_RATE);
-        
-        tickerTimer2 = new Timer();
-        tickerTimerTask2 = new TickerTimerTask(this.exchangeController, this, false);
-        tickerTimer2.schedule(tickerTimerTask2, TickerTimerTask.INITIAL_DELAY + TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
+        restartTickers(new TickerTimerTask(this.exchangeController, this, true), new TickerTimerTask(this.exchangeController,
+                this, false), TickerTimerTask.INITIAL_DELAY);
 
         // Initialise status bar.
         statusBar.initialise();
@@ -302,10 +295,6 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
         pack();
 
         setVisible(true);
-        
-        fireDataChangedTimerTask = new FireDataChangedTimerTask(this);
-        fireDataChangedTimer = new Timer();
-        fireDataChangedTimer.scheduleAtFixedRate(fireDataChangedTimerTask, FIRE_DATA_CHANGED_UPDATE_LATER_DELAY_TIME, FIRE_DATA_CHANGED_UPDATE_LATER_DELAY_TIME);
     }
 
     public GenericApplication getApplication() {
@@ -983,24 +972,12 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
                         tickerTablePanel.setVisible(true);
                         controller.getModel().setUserPreference(ExchangeModel.TICKER_SHOW, Boolean.TRUE.toString());
                         showTicker.setText(controller.getLocaliser().getString("worldcoinWalletFrame.ticker.hide.text"));
-                        // Cancel any existing timer.
-                        if (tickerTimer1 != null) {
-                            tickerTimer1.cancel();
-                        }                        
-                        if (tickerTimer2 != null) {
-                            tickerTimer2.cancel();
-                        }
-                        // Start ticker timer.
-                        tickerTimer1 = new Timer();
-                        tickerTimer1.schedule(new TickerTimerTask(exchangeController, thisFrame, true), 0, TickerTimerTask.DEFAULT_REPEAT_RATE);
-                        
+                        // Replace any existing ticker tasks.
                         boolean showSecondRow = Boolean.TRUE.toString().equals(
                                 controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW_SECOND_ROW));
                         
-                        if (showSecondRow) {
-                            tickerTimer2 = new Timer();
-                            tickerTimer2.schedule(new TickerTimerTask(exchangeController, thisFrame, false), TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
-                        }
+                        restartTickers(new TickerTimerTask(exchangeController, thisFrame, true),
+                                showSecondRow ? new TickerTimerTask(exchangeController, thisFrame, false) : null, 0);
                     }
                 }
             }
@@ -1357,8 +1334,9 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
      */
     public void blockDownloaded() {
         // Update transaction screen in case status icons have changed.
+        // This is already called at the pace of the view update dispatcher so it is not passed back through it.
         if (View.TRANSACTIONS_VIEW == controller.getCurrentView()) {
-            ShowTransactionsPanel.updateTransactions();
+            fireDataChangedUpdateNow(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED);
         }
     }
 
@@ -1384,7 +1362,7 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
     @Override
     public void onTransactionConfidenceChanged(Wallet wallet, Transaction transaction) {
         if (controller.getCurrentView() == View.TRANSACTIONS_VIEW) {
-            ShowTransactionsPanel.updateTransactions(); 
+            fireDataChangedUpdateLater(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED);
         } else if (controller.getCurrentView() == View.SEND_WORLDCOIN_VIEW) {
             final int numberOfPeers = (transaction == null || transaction.getConfidence() == null) ? 0 : transaction.getConfidence().getBroadcastByCount();
             //log.debug("numberOfPeers = " + numberOfPeers);
@@ -1423,18 +1401,15 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
     }  
 
     /**
-     * Mark that the UI needs updating the next time the fireDataChangedTimer fires.
+     * Mark that the UI needs updating the next time the view update dispatcher runs.
      */
     @Override
     public void fireDataChangedUpdateLater(DisplayHint displayHint) {
-        if (fireDataChangedTimerTask != null) {
-            fireDataChangedTimerTask.setFireDataChanged(true);
-        }    
+        controller.getViewUpdateDispatcher().publishDataChanged(displayHint, false);
     }
     
     /**
      * Actually update the UI.
-     * (Called back from the FireDataChangedTimerTask).
      */
     private void fireDataChangedOnSwingThread(DisplayHint displayHint) {
         updateHeader();
@@ -1714,22 +1689,82 @@ public class WorldcoinWalletFrame extends JFrame implements ViewSystem, Applicat
         updateHeader();
     }
 
-    public Timer getTickerTimer1() {
-        return tickerTimer1;
+    /**
+     * Cancel the ticker tasks and run the ones given in their place. If a run of the old tasks is still going the new
+     * ones are scheduled once it has finished, as the Scheduler would otherwise skip their first run.
+     *
+     * @param tickerTimerTask2
+     *            The task for the second row, or null if it is not shown
+     * @param initialDelay
+     *            Milliseconds to wait before the first ticker task runs
+     */
+    public synchronized void restartTickers(final TickerTimerTask tickerTimerTask1, final TickerTimerTask tickerTimerTask2,
+            final long initialDelay) {
+        final ScheduledTask oldTickerTask1 = tickerTask1;
+        final ScheduledTask oldTickerTask2 = tickerTask2;
+        if (tickerTask1 != null) {
+            tickerTask1.cancel();
+            tickerTask1 = null;
+        }
+        if (tickerTask2 != null) {
+            tickerTask2.cancel();
+            tickerTask2 = null;
+        }
+
+        this.tickerTimerTask1 = tickerTimerTask1;
+        if (tickerTimerTask2 != null) {
+            this.tickerTimerTask2 = tickerTimerTask2;
+        }
+        final long thisRestartNumber = ++tickerRestartNumber;
+
+        if (!isRunning(oldTickerTask1) && !isRunning(oldTickerTask2)) {
+            scheduleTickers(tickerTimerTask1, tickerTimerTask2, initialDelay);
+            return;
+        }
+        try {
+            Scheduler.INSTANCE.submit(TICKER_RESTART_TASK_NAME, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        awaitNotRunning(oldTickerTask1);
+                        awaitNotRunning(oldTickerTask2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    synchronized (WorldcoinWalletFrame.this) {
+                        // A later restart replaces this one.
+                        if (thisRestartNumber == tickerRestartNumber) {
+                            scheduleTickers(tickerTimerTask1, tickerTimerTask2, initialDelay);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            scheduleTickers(tickerTimerTask1, tickerTimerTask2, initialDelay);
+        }
     }
 
-    public void setTickerTimer1(Timer tickerTimer1) {
-        this.tickerTimer1 = tickerTimer1;
+    private void scheduleTickers(TickerTimerTask tickerTimerTask1, TickerTimerTask tickerTimerTask2, long initialDelay) {
+        tickerTask1 = Scheduler.INSTANCE.scheduleWithFixedDelay(TICKER_TASK_NAME_1, tickerTimerTask1, initialDelay,
+                TickerTimerTask.DEFAULT_REPEAT_RATE);
+        if (tickerTimerTask2 != null) {
+            tickerTask2 = Scheduler.INSTANCE.scheduleWithFixedDelay(TICKER_TASK_NAME_2, tickerTimerTask2, initialDelay
+                    + TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
+        }
     }
-    
-    public Timer getTickerTimer2() {
-        return tickerTimer2;
+
+    private static boolean isRunning(ScheduledTask tickerTask) {
+        return tickerTask != null && tickerTask.getStatistics().isRunning();
     }
 
-    public void setTickerTimer2(Timer tickerTimer2) {
-        this.tickerTimer2 = tickerTimer2;
+    private static void awaitNotRunning(ScheduledTask tickerTask) throws InterruptedException {
+        if (tickerTask != null && !tickerTask.getStatistics().awaitNotRunning(TICKER_RESTART_TIMEOUT)) {
+            log.debug("Restarting the tickers while a run of task '" + tickerTask.getStatistics().getName()
+                    + "' is still going");
+        }
     }
-    
+
     public TickerTimerTask getTickerTimerTask1() {
         return tickerTimerTask1;
     }
@@ -19,6 +19,9 @@ import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
 import java.nio.CharBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.swing.Action;
 import javax.swing.ImageIcon;
@@ -28,12 +31,16 @@ import javax.swing.SwingUtilities;
 import org.worldcoinj.wallet.Protos;
 import org.worldcoinj.wallet.Protos.ScryptParameters;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.KeychainCrypter;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.file.BackupManager;
 import org.wallet.file.FileHandler;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.model.worldcoin.WalletKeyIndex;
 import org.wallet.model.worldcoin.WalletBusyListener;
 import org.wallet.model.worldcoin.WalletInfoData;
 import org.wallet.store.WorldcoinWalletVersion;
+import org.wallet.utils.Scheduler;
 import org.wallet.viewsystem.swing.view.panels.AddPasswordPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -142,20 +149,26 @@ public class AddPasswordSubmitAction extends WorldcoinWalletSubmitAction impleme
                         keyCrypterToUse = wallet.getKeyCrypter();
                     }
 
-                    wallet.encrypt(keyCrypterToUse, keyCrypterToUse.deriveKey(CharBuffer.wrap(passwordToUse)));
+                    new KeychainCrypter().encrypt(wallet, keyCrypterToUse, keyCrypterToUse.deriveKey(CharBuffer.wrap(passwordToUse)));
+                    SessionKeyCache.INSTANCE.forget(keyCrypterToUse);
+                    WalletKeyIndex.forWallet(wallet).invalidateKeys();
                     walletInfoData.setWalletVersion(WorldcoinWalletVersion.PROTOBUF_ENCRYPTED);
                     perWalletModelData.setDirty(true);
                     FileHandler fileHandler = new FileHandler(super.worldcoinController);
                     fileHandler.savePerWalletModelData(perWalletModelData, true);
 
-                    // Backup the private keys.
-                    privateKeysBackupFile = fileHandler.backupPrivateKeys(CharBuffer.wrap(passwordToUse));
-
-                    // Backup the wallet and wallet info.
-                    BackupManager.INSTANCE.backupPerWalletModelData(fileHandler,perWalletModelData);
-                    
                     // Ensure that any unencrypted wallet backups are file encrypted with the wallet password.
-                    BackupManager.INSTANCE.fileLevelEncryptUnencryptedWalletBackups(perWalletModelData, CharBuffer.wrap(passwordToUse));
+                    // These are in their own directory so this is done while the new backups are written.
+                    Future<?> backupEncrypter = fileLevelEncryptUnencryptedWalletBackupsInBackground(perWalletModelData, passwordToUse);
+                    try {
+                        // Backup the private keys.
+                        privateKeysBackupFile = fileHandler.backupPrivateKeys(CharBuffer.wrap(passwordToUse));
+
+                        // Backup the wallet and wallet info.
+                        BackupManager.INSTANCE.backupPerWalletModelData(fileHandler,perWalletModelData);
+                    } finally {
+                        waitFor(backupEncrypter);
+                    }
                 }
             } catch (KeyCrypterException ede) {
                 ede.printStackTrace();
@@ -196,6 +209,37 @@ public class AddPasswordSubmitAction extends WorldcoinWalletSubmitAction impleme
              }});
     }
 
+    /**
+     * @return The background work, or null if the Scheduler is busy or has shut down and the backups were encrypted here
+     */
+    private Future<?> fileLevelEncryptUnencryptedWalletBackupsInBackground(final WalletData perWalletModelData, final char[] passwordToUse) {
+        Runnable backupEncrypter = new Runnable() {
+            @Override
+            public void run() {
+                BackupManager.INSTANCE.fileLevelEncryptUnencryptedWalletBackups(perWalletModelData, CharBuffer.wrap(passwordToUse));
+            }
+        };
+        try {
+            return Scheduler.INSTANCE.submit("AddPasswordBackupEncrypter", backupEncrypter);
+        } catch (RejectedExecutionException ree) {
+            backupEncrypter.run();
+            return null;
+        }
+    }
+
+    private void waitFor(Future<?> backupEncrypter) {
+        if (backupEncrypter == null) {
+            return;
+        }
+        try {
+            backupEncrypter.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            log.error(ee.getCause().getClass().getName() + " " + ee.getCause().getMessage(), ee.getCause());
+        }
+    }
+
     @Override
     public void walletBusyChange(boolean newWalletIsBusy) {
         // Update the enable status of the action to match the wallet busy status.
@@ -26,10 +26,13 @@ import javax.swing.JPasswordField;
 import javax.swing.SwingUtilities;
 
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.KeychainCrypter;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.file.BackupManager;
 import org.wallet.file.FileHandler;
 import org.wallet.model.worldcoin.WalletBusyListener;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.model.worldcoin.WalletKeyIndex;
 import org.wallet.viewsystem.swing.view.panels.ChangePasswordPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -121,27 +124,17 @@ public class ChangePasswordSubmitAction extends WorldcoinWalletSubmitAction impl
 
                 super.worldcoinController.fireWalletBusyChange(true);
 
-                boolean decryptSuccess = false;
                 KeyCrypter keyCrypterToUse = wallet.getKeyCrypter();
-                try {
-                    wallet.decrypt(keyCrypterToUse.deriveKey(CharBuffer.wrap(currentPasswordToUse)));
-                    decryptSuccess = true;
-                } catch (KeyCrypterException kce) {
-                    // Notify the user that the decrypt failed.
-                    changePasswordPanel.setMessage1(controller.getLocaliser().getString("changePasswordPanel.changePasswordFailed",
-                            new String[] { kce.getMessage() }));
-
-                    // Declare that wallet is no longer busy with the task.
-                    perWalletModelData.setBusyTaskKey(null);
-                    perWalletModelData.setBusy(false);
-                    super.worldcoinController.fireWalletBusyChange(false);
-                    
-                    return;
-                }
-
-                if (decryptSuccess) {
+                if (keyCrypterToUse != null) {
                     try {
-                        wallet.encrypt(keyCrypterToUse, keyCrypterToUse.deriveKey(CharBuffer.wrap(newPasswordToUse)));
+                        // Decrypt with the current password and encrypt with the new one in one go - the wallet keeps
+                        // its keys if the current password is wrong.
+                        new KeychainCrypter().changePassword(wallet,
+                                SessionKeyCache.INSTANCE.deriveKey(keyCrypterToUse, CharBuffer.wrap(currentPasswordToUse)),
+                                keyCrypterToUse.deriveKey(CharBuffer.wrap(newPasswordToUse)));
+                        // The AES key of the old password is no use now.
+                        SessionKeyCache.INSTANCE.forget(keyCrypterToUse);
+                        WalletKeyIndex.forWallet(wallet).invalidateKeys();
                         FileHandler fileHandler = new FileHandler(super.worldcoinController);
                         fileHandler.savePerWalletModelData(super.worldcoinController.getModel().getActivePerWalletModelData(), true);
                         
@@ -151,7 +144,7 @@ public class ChangePasswordSubmitAction extends WorldcoinWalletSubmitAction impl
                         // Backup the wallet and wallet info
                         BackupManager.INSTANCE.backupPerWalletModelData(fileHandler, perWalletModelData);                        
                     } catch (KeyCrypterException kce) {
-                        // Notify the user that the encrypt failed.
+                        // Notify the user that the change of password failed.
                         changePasswordPanel.setMessage1(controller.getLocaliser().getString(
                                 "changePasswordPanel.changePasswordFailed", new String[] { kce.getMessage() }));
                         return;
@@ -171,6 +164,11 @@ public class ChangePasswordSubmitAction extends WorldcoinWalletSubmitAction impl
                     perWalletModelData.setBusyTaskKey(null);
                     perWalletModelData.setBusy(false);
                     super.worldcoinController.fireWalletBusyChange(false);
+
+                    // Only an encrypted wallet has a password to change.
+                    changePasswordPanel.setMessage1(controller.getLocaliser().getString(
+                            "changePasswordPanel.walletNotEncrypted"));
+                    return;
                 }
             }
         }
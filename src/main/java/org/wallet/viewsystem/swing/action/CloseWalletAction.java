@@ -16,6 +16,7 @@
 package org.wallet.viewsystem.swing.action;
 
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.file.FileHandler;
 import org.wallet.message.Message;
 import org.wallet.message.MessageManager;
@@ -84,6 +85,9 @@ public class CloseWalletAction extends WorldcoinWalletSubmitAction {
       // Unhook it from the PeerGroup.
       super.worldcoinController.getWorldcoinWalletService().getPeerGroup().removeWallet(perWalletModelData.getWallet());
 
+      // Lock it.
+      SessionKeyCache.INSTANCE.forget(perWalletModelData.getWallet().getKeyCrypter());
+
       // Save it.
       FileHandler fileHandler = new FileHandler(super.worldcoinController);
       fileHandler.savePerWalletModelData(perWalletModelData, true);
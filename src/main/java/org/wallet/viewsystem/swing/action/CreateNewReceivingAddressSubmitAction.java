@@ -19,6 +19,8 @@ import com.google.worldcoin.core.ECKey;
 import com.google.worldcoin.crypto.KeyCrypter;
 import com.google.worldcoin.crypto.KeyCrypterException;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.BulkKeyGenerator;
+import org.wallet.crypto.SessionKeyCache;
 import org.worldcoinj.wallet.Protos.Wallet.EncryptionType;
 import org.wallet.file.BackupManager;
 import org.wallet.file.FileHandler;
@@ -39,7 +41,6 @@ import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
 import java.nio.CharBuffer;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -175,19 +176,11 @@ public class CreateNewReceivingAddressSubmitAction extends WorldcoinWalletSubmit
                         // Derive AES key to use outside of loop - it is the same for all keys in a single wallet.
                         KeyParameter aesKey = null;
                         if (encryptNewKeys) {
-                            aesKey = walletKeyCrypter.deriveKey(walletPassword);
-                        }
-                        List<ECKey> newKeys = new ArrayList<ECKey>();
-                        for (int i = 0; i < numberOfAddressesToCreate; i++) {
-                            ECKey newKey;
-                            if (encryptNewKeys) {
-                                // Use the wallet KeyCrypter.
-                                newKey = (new ECKey()).encrypt(walletKeyCrypter, aesKey);
-                            } else {
-                                newKey = new ECKey();
-                            }
-                            newKeys.add(newKey);
+                            aesKey = SessionKeyCache.INSTANCE.deriveKey(walletKeyCrypter, walletPassword);
                         }
+                        // Generate the keys on all the processors, using the wallet KeyCrypter if they need encrypting.
+                        List<ECKey> newKeys = new BulkKeyGenerator().generateKeys(numberOfAddressesToCreate,
+                                encryptNewKeys ? walletKeyCrypter : null, aesKey);
                         
                         FileHandler fileHandler = finalController.getFileHandler();
                         
@@ -195,11 +188,12 @@ public class CreateNewReceivingAddressSubmitAction extends WorldcoinWalletSubmit
                             finalPerWalletModelData.getWallet().addKeys(newKeys);
                         }
                         
-                        // Add keys to address book.
+                        // Add keys to address book - they are known to be in the wallet so are added directly.
+                        WalletKeyIndex keyIndex = WalletKeyIndex.forWallet(finalPerWalletModelData.getWallet());
+                        WalletInfoData walletInfo = finalPerWalletModelData.getWalletInfo();
                         for (ECKey newKey : newKeys) {
-                            lastAddressString = newKey.toAddress(finalController.getModel().getNetworkParameters()).toString();
-                            finalPerWalletModelData.getWalletInfo().addReceivingAddress(new WalletAddressBookData("", lastAddressString),
-                                false);
+                            lastAddressString = keyIndex.getAddress(newKey, finalController.getModel().getNetworkParameters());
+                            walletInfo.addReceivingAddressOfKey(lastAddressString);
                         }
                         
                         // Backup the private keys.
@@ -20,6 +20,7 @@ import com.google.worldcoin.store.BlockStoreException;
 import org.wallet.ApplicationInstanceManager;
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.controller.core.CoreController;
 import org.wallet.file.BackupManager;
 import org.wallet.file.FileHandler;
@@ -27,8 +28,9 @@ import org.wallet.file.WalletSaveException;
 import org.wallet.message.Message;
 import org.wallet.message.MessageManager;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.qrcode.QRCodeRenderer;
 import org.wallet.store.WalletVersionException;
-import org.wallet.viewsystem.swing.HealthCheckTimerTask;
+import org.wallet.utils.Scheduler;
 import org.wallet.viewsystem.swing.WorldcoinWalletFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,8 +47,7 @@ public class ExitAction extends AbstractExitAction {
 
     private static final long serialVersionUID = 8784284740245520863L;
     
-    private static final int MAXIMUM_TIME_TO_WAIT_FOR_HEALTH_CHECK_TASK = 10000; // ms
-    private static final int TIME_TO_WAIT = 200; // ms
+    private static final int MAXIMUM_TIME_TO_WAIT_FOR_SCHEDULED_TASKS = 10000; // ms
 
     private final WorldcoinWalletFrame mainFrame;
     private static final Logger log = LoggerFactory.getLogger(ExitAction.class);
@@ -78,6 +79,9 @@ public class ExitAction extends AbstractExitAction {
     public void actionPerformed(ActionEvent arg0) {
         String shuttingDownTitle = worldcoinController.getLocaliser().getString("worldcoinWalletFrame.title.shuttingDown");
 
+        // Wipe the AES keys of any unlocked session.
+        SessionKeyCache.INSTANCE.lock();
+
         if (mainFrame != null) {
             mainFrame.setTitle(shuttingDownTitle);
                
@@ -91,25 +95,17 @@ public class ExitAction extends AbstractExitAction {
                     }
                 });
             }
-               
-            // If the HealthCheckTimerTask is running wait until it completes.
-            HealthCheckTimerTask healthCheckTimerTask = mainFrame.getHealthCheckTimerTask();
-            if (healthCheckTimerTask != null) {
-                boolean breakout = false;
-                int timeWaited = 0;
-                
-                while(healthCheckTimerTask.isRunning() && !breakout && timeWaited < MAXIMUM_TIME_TO_WAIT_FOR_HEALTH_CHECK_TASK) {
-                    try {
-                        log.debug("Waiting for healthCheckTimerTask to complete (waited so far = " + timeWaited + "). . .");
-                        Thread.sleep(TIME_TO_WAIT);
-                        timeWaited = timeWaited + TIME_TO_WAIT;
-                    } catch (InterruptedException e) {
-                        breakout = true;
-                        e.printStackTrace();
-                    }
-                }
-            }
         }
+
+        // Stop the background tasks. If one is running (such as the HealthCheckTimerTask saving wallets) wait until it completes.
+        log.debug("Stopping the scheduled tasks. . .");
+        Scheduler.INSTANCE.shutdown(MAXIMUM_TIME_TO_WAIT_FOR_SCHEDULED_TASKS);
+
+        // The views are not updated any more.
+        if (worldcoinController != null) {
+            worldcoinController.getViewUpdateDispatcher().shutdown();
+        }
+        QRCodeRenderer.shutdown();
         
         if (worldcoinController != null && worldcoinController.getWorldcoinWalletService() != null) {
             // Stop the peer group so that blocks are notified to wallets correctly.
@@ -196,6 +192,8 @@ public class ExitAction extends AbstractExitAction {
             mainFrame.dispose();
         }
 
+        MessageManager.INSTANCE.shutdown();
+
         System.exit(0);
     }
 }
@@ -15,18 +15,13 @@
  */
 package org.wallet.viewsystem.swing.action;
 
-import com.googlecode.jcsv.CSVStrategy;
-import com.googlecode.jcsv.writer.CSVWriter;
-import com.googlecode.jcsv.writer.internal.CSVWriterBuilder;
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
-import org.wallet.file.WalletTableDataEntryConverter;
-import org.wallet.file.WalletTableDataHeaderEntryConverter;
+import org.wallet.file.TransactionsExporter;
 import org.wallet.message.Message;
 import org.wallet.message.MessageManager;
 import org.wallet.model.worldcoin.WorldcoinModel;
 import org.wallet.model.worldcoin.WalletData;
-import org.wallet.model.worldcoin.WalletTableData;
 import org.wallet.utils.ImageLoader;
 import org.wallet.viewsystem.swing.WorldcoinWalletFrame;
 import org.wallet.viewsystem.swing.view.CsvFileFilter;
@@ -38,14 +33,9 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.List;
 
 /**
  * This {@link Action} exports transactions from a wallet.
@@ -56,6 +46,11 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
 
     private static final long serialVersionUID = 1923492460523457765L;
 
+    /**
+     * Milliseconds between checks for Cancel on the progress monitor.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 200;
+
     private final Controller controller;
     private final WorldcoinController worldcoinController;
     
@@ -63,6 +58,8 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
 
     private Font adjustedFont;
 
+    private boolean exportInProgress = false;
+
     /**
      * Creates a new {@link ExportTransactionsSubmitAction}.
      */
@@ -133,7 +130,8 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
                 }
             }
         } finally {
-            setEnabled(true);
+            // A background export enables the action again when it is done.
+            setEnabled(!exportInProgress);
             if (mainFrame != null) {
                 mainFrame.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
             }
@@ -184,7 +182,7 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
         
         // Now actually perform the export.
         // (This is separated out to make it easier to test.)
-        exportTransactionsDoIt(worldcoinController.getModel().getActivePerWalletModelData(), exportTransactionsFilename);
+        exportTransactionsInBackground(worldcoinController.getModel().getActivePerWalletModelData(), exportTransactionsFilename);
     }
     
     private void setFileChooserFont(Component[] comp) {
@@ -198,78 +196,86 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
         }
     }
     
-    public void exportTransactionsDoIt(WalletData walletData, String exportTransactionsFilename) {        
-        List<WalletTableData> walletTableDataList = worldcoinController.getModel().createWalletTableData(worldcoinController, walletData);
-        
-        // Sort by date descending.
-        Comparator<WalletTableData> comparator = new Comparator<WalletTableData>() {
+    public void exportTransactionsDoIt(WalletData walletData, String exportTransactionsFilename) {
+        exportTransactionsDoIt(walletData, exportTransactionsFilename, new TransactionsExporter(worldcoinController), null);
+    }
+
+    /**
+     * Export the transactions on a background thread, showing the progress with the option to cancel.
+     */
+    private void exportTransactionsInBackground(final WalletData walletData, final String exportTransactionsFilename) {
+        final TransactionsExporter exporter = new TransactionsExporter(worldcoinController);
+        final ProgressMonitor progressMonitor = new ProgressMonitor(mainFrame, controller.getLocaliser().getString(
+                "exportTransactionsSubmitAction.exporting", new Object[] { exportTransactionsFilename }), null, 0, 1);
+
+        exportInProgress = true;
+        setEnabled(false);
+
+        // Progress only comes every PROGRESS_INTERVAL rows so check for Cancel between times too.
+        final Timer cancelChecker = new Timer(CANCEL_CHECK_INTERVAL, new ActionListener() {
             @Override
-            public int compare(WalletTableData o1, WalletTableData o2) {
-                if (o1 == null) {
-                    if (o2 == null) {
-                        return 0;
-                    } else {
-                        return 1;
-                    }
-                } else {
-                    if (o2 == null) {
-                        return -1;
-                    }
-                }
-                Date d1 = o1.getDate();
-                Date d2 = o2.getDate();
-                if (d1 == null) {
-                    // Object 1 has missing date.
-                    return 1;
+            public void actionPerformed(ActionEvent e) {
+                if (progressMonitor.isCanceled()) {
+                    exporter.cancel();
                 }
-                if (d2 == null) {
-                    // Object 2 has missing date.
-                    return -1;
-                }
-                long n1 = d1.getTime();
-                long n2 = d2.getTime();
-                if (n1 == 0) {
-                    // Object 1 has missing date.
-                    return 1;
-                }
-                if (n2 == 0) {
-                    // Object 2 has missing date.
-                    return -1;
-                }
-                if (n1 < n2) {
-                    return -1;
-                } else if (n1 > n2) {
-                    return 1;
-                } else {
-                    return 0;
+            }
+        });
+        cancelChecker.start();
+
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                exportTransactionsDoIt(walletData, exportTransactionsFilename, exporter, new TransactionsExporter.ProgressListener() {
+                    @Override
+                    public void progress(final int rowsWritten, final int totalRows) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (progressMonitor.isCanceled()) {
+                                    exporter.cancel();
+                                    return;
+                                }
+                                progressMonitor.setMaximum(totalRows);
+                                progressMonitor.setProgress(rowsWritten);
+                                progressMonitor.setNote(controller.getLocaliser().getString("exportTransactionsSubmitAction.progress",
+                                        new Object[] { rowsWritten, totalRows }));
+                            }
+                        });
+                    }
+                });
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (Exception e) {
+                    // Not really used but caught so that SwingWorker shuts down cleanly.
+                    log.error(e.getClass() + " " + e.getMessage());
+                } finally {
+                    cancelChecker.stop();
+                    progressMonitor.close();
+                    exportInProgress = false;
+                    setEnabled(true);
                 }
             }
         };
-        Collections.sort(walletTableDataList, Collections.reverseOrder(comparator));
-        
-        //Writer out = null;
-        OutputStreamWriter outputStreamWriter = null;
+        log.debug("Exporting transactions in background SwingWorker thread");
+        worker.execute();
+    }
+
+    private void exportTransactionsDoIt(WalletData walletData, String exportTransactionsFilename, TransactionsExporter exporter,
+            TransactionsExporter.ProgressListener progressListener) {
         try {
-            //out = new FileWriter(exportTransactionsFilename);
-            outputStreamWriter = new OutputStreamWriter ( new FileOutputStream(exportTransactionsFilename, true ), "UTF-8" ); 
-            
-            // Write the header row.
-            WalletTableDataHeaderEntryConverter headerConverter = new WalletTableDataHeaderEntryConverter();
-            headerConverter.setWorldcoinController(worldcoinController);
-            CSVWriter<WalletTableData> csvHeaderWriter = new CSVWriterBuilder<WalletTableData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
-                    .entryConverter(headerConverter).build();
-            
-            csvHeaderWriter.write(new WalletTableData(null));
-            
-            // Write the body of the CSV file.
-            WalletTableDataEntryConverter converter = new WalletTableDataEntryConverter();
-            converter.setWorldcoinController(worldcoinController);
-            CSVWriter<WalletTableData> csvWriter = new CSVWriterBuilder<WalletTableData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
-                    .entryConverter(converter).build();
-            
-            csvWriter.writeAll(walletTableDataList);
-            String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.success",
-                    new Object[] { exportTransactionsFilename });
+            String message;
+            if (exporter.export(walletData, new File(exportTransactionsFilename), progressListener)) {
+                message = controller.getLocaliser().getString("exportTransactionsSubmitAction.success",
+                        new Object[] { exportTransactionsFilename });
+            } else {
+                message = controller.getLocaliser().getString("exportTransactionsSubmitAction.cancelled",
+                        new Object[] { exportTransactionsFilename });
+            }
             MessageManager.INSTANCE.addMessage(new Message(message));
         } catch (NullPointerException e) {
             String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.failure",
@@ -281,18 +287,6 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
                     new Object[] { exportTransactionsFilename, e.getMessage() });
             log.error(message);
             MessageManager.INSTANCE.addMessage(new Message(message));
-        } finally {
-            if (outputStreamWriter != null) {
-                try {
-                    outputStreamWriter.flush();
-                    outputStreamWriter.close();
-                } catch (IOException ioe) {
-                    String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.failure",
-                            new Object[] { exportTransactionsFilename, ioe.getMessage() });
-                    log.error(message);
-                    MessageManager.INSTANCE.addMessage(new Message(message));
-                }
-            }
         }
     }
 }
\ No newline at end of file
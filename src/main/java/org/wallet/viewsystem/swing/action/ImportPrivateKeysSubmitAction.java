@@ -19,12 +19,16 @@ import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.Action;
 import javax.swing.ImageIcon;
@@ -32,6 +36,7 @@ import javax.swing.JPasswordField;
 import javax.swing.SwingWorker;
 
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.SessionKeyCache;
 import org.worldcoinj.wallet.Protos.Wallet.EncryptionType;
 import org.wallet.file.BackupManager;
 import org.wallet.file.PrivateKeyAndDate;
@@ -288,6 +293,8 @@ public class ImportPrivateKeysSubmitAction extends WorldcoinWalletSubmitAction i
                     Wallet walletToAddKeysTo = finalPerWalletModelData.getWallet();
 
                     Collection<byte[]> unencryptedWalletPrivateKeys = new ArrayList<byte[]>();
+                    // The same private keys, for checking whether a key is already in the wallet.
+                    Set<ByteBuffer> walletPrivateKeys = new HashSet<ByteBuffer>();
                     Date earliestTransactionDate = new Date(DateUtils.nowUtc().getMillis());
 
                     if (walletToAddKeysTo.getEncryptionType() != EncryptionType.UNENCRYPTED) {
@@ -304,8 +311,15 @@ public class ImportPrivateKeysSubmitAction extends WorldcoinWalletSubmitAction i
                                     if (walletKeyCrypter == null) {
                                         log.error("Missing KeyCrypter. Could not decrypt private keys.");
                                     }
-                                    aesKey = walletKeyCrypter.deriveKey(CharBuffer.wrap(walletPassword));
+                                    aesKey = SessionKeyCache.INSTANCE.deriveKey(walletKeyCrypter, CharBuffer.wrap(walletPassword));
                                 }
+
+                                // AES keys derived for decrypting keys - each is only derived once.
+                                Map<KeyCrypter, KeyParameter> aesKeys = new HashMap<KeyCrypter, KeyParameter>();
+                                if (aesKey != null) {
+                                    aesKeys.put(walletKeyCrypter, aesKey);
+                                }
+
                                 for (ECKey ecKey : walletToAddKeysTo.getKeychain()) {
                                     if (keyEncryptionRequired) {
                                         if (ecKey.getEncryptedPrivateKey() == null
@@ -319,11 +333,14 @@ public class ImportPrivateKeysSubmitAction extends WorldcoinWalletSubmitAction i
                                             byte[] decryptedPrivateKey = ecKey.getKeyCrypter().decrypt(
                                                     ecKey.getEncryptedPrivateKey(), aesKey);
                                             unencryptedWalletPrivateKeys.add(decryptedPrivateKey);
+                                            walletPrivateKeys.add(ByteBuffer.wrap(decryptedPrivateKey));
                                         }
 
                                     } else {
                                         // WorldcoinWallet is not encrypted.
-                                        unencryptedWalletPrivateKeys.add(ecKey.getPrivKeyBytes());
+                                        byte[] privateKey = ecKey.getPrivKeyBytes();
+                                        unencryptedWalletPrivateKeys.add(privateKey);
+                                        walletPrivateKeys.add(ByteBuffer.wrap(privateKey));
                                     }
                                 }
 
@@ -337,7 +354,8 @@ public class ImportPrivateKeysSubmitAction extends WorldcoinWalletSubmitAction i
                                                         / NUMBER_OF_MILLISECONDS_IN_A_SECOND);
                                             }
 
-                                            if (!keyChainContainsPrivateKey(unencryptedWalletPrivateKeys, keyToAdd, walletPassword)) {
+                                            if (!keyChainContainsPrivateKey(walletPrivateKeys, unencryptedWalletPrivateKeys, keyToAdd,
+                                                    walletPassword, aesKeys)) {
                                                 if (keyEncryptionRequired) {
                                                     ECKey encryptedKey = new ECKey(walletKeyCrypter.encrypt(
                                                             keyToAdd.getPrivKeyBytes(), aesKey), keyToAdd.getPubKey(),
@@ -464,24 +482,41 @@ public class ImportPrivateKeysSubmitAction extends WorldcoinWalletSubmitAction i
     }
 
     /**
-     * Determine whether the key is already in the wallet.
+     * Determine whether the key is already in the wallet, or earlier in the import.
+     * If it is not, its private key is added to the private keys checked against.
+     * 
+     * @param privateKeys
+     *            The unencrypted private keys already in the wallet
+     * @param privateKeysToWipe
+     *            The unencrypted private keys to wipe when the import is finished
+     * @param aesKeys
+     *            The AES key for each KeyCrypter, so that the password is run through each KeyCrypter only once
      * @throws KeyCrypterException
      */
-    private boolean keyChainContainsPrivateKey(Collection<byte[]> unencryptedPrivateKeys, ECKey keyToAdd, CharSequence walletPassword) throws KeyCrypterException {
-        if (unencryptedPrivateKeys == null || keyToAdd == null) {
+    private boolean keyChainContainsPrivateKey(Set<ByteBuffer> privateKeys, Collection<byte[]> privateKeysToWipe, ECKey keyToAdd,
+            CharSequence walletPassword, Map<KeyCrypter, KeyParameter> aesKeys) throws KeyCrypterException {
+        if (privateKeys == null || keyToAdd == null) {
             return false;
-        } else {
-            byte[] unencryptedKeyToAdd = new byte[0];
-            if (keyToAdd.isEncrypted()) {
-                unencryptedKeyToAdd = keyToAdd.getKeyCrypter().decrypt(keyToAdd.getEncryptedPrivateKey(), keyToAdd.getKeyCrypter().deriveKey(walletPassword));
-            }
-            for (byte[] loopEncryptedPrivateKey : unencryptedPrivateKeys) { 
-                if (Arrays.equals(unencryptedKeyToAdd, loopEncryptedPrivateKey)) {
-                    return true;
-                }
+        }
+
+        byte[] unencryptedKeyToAdd;
+        if (keyToAdd.isEncrypted()) {
+            KeyCrypter keyCrypter = keyToAdd.getKeyCrypter();
+            KeyParameter aesKey = aesKeys.get(keyCrypter);
+            if (aesKey == null) {
+                aesKey = SessionKeyCache.INSTANCE.deriveKey(keyCrypter, walletPassword);
+                aesKeys.put(keyCrypter, aesKey);
             }
+            unencryptedKeyToAdd = keyCrypter.decrypt(keyToAdd.getEncryptedPrivateKey(), aesKey);
+        } else if (keyToAdd.isPubKeyOnly()) {
+            // No private key to compare.
             return false;
+        } else {
+            unencryptedKeyToAdd = keyToAdd.getPrivKeyBytes();
         }
+
+        privateKeysToWipe.add(unencryptedKeyToAdd);
+        return !privateKeys.add(ByteBuffer.wrap(unencryptedKeyToAdd));
     }
 
     // Used in testing.
@@ -24,9 +24,12 @@ import javax.swing.JPasswordField;
 import javax.swing.SwingUtilities;
 
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.KeychainCrypter;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.file.BackupManager;
 import org.wallet.file.FileHandler;
 import org.wallet.model.worldcoin.WalletData;
+import org.wallet.model.worldcoin.WalletKeyIndex;
 import org.wallet.model.worldcoin.WalletBusyListener;
 import org.wallet.model.worldcoin.WalletInfoData;
 import org.wallet.store.WorldcoinWalletVersion;
@@ -36,6 +39,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.crypto.KeyCrypter;
 import com.google.worldcoin.crypto.KeyCrypterException;
 
 /**
@@ -98,7 +102,10 @@ public class RemovePasswordSubmitAction extends WorldcoinWalletSubmitAction impl
 
                             super.worldcoinController.fireWalletBusyChange(true);
 
-                            wallet.decrypt(wallet.getKeyCrypter().deriveKey(CharBuffer.wrap(passwordToUse)));
+                            KeyCrypter keyCrypter = wallet.getKeyCrypter();
+                            new KeychainCrypter().decrypt(wallet, SessionKeyCache.INSTANCE.deriveKey(keyCrypter, CharBuffer.wrap(passwordToUse)));
+                            SessionKeyCache.INSTANCE.forget(keyCrypter);
+                            WalletKeyIndex.forWallet(wallet).invalidateKeys();
                             walletInfoData.setWalletVersion(WorldcoinWalletVersion.PROTOBUF);
                             perWalletModelData.setDirty(true);
                             FileHandler fileHandler = new FileHandler(super.worldcoinController);
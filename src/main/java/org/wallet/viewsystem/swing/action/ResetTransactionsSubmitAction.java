@@ -102,6 +102,8 @@ public class ResetTransactionsSubmitAction extends WorldcoinWalletSubmitAction {
 
         // Remove the transactions from the wallet.
         activePerWalletModelData.getWallet().clearTransactions(actualResetDate);
+        activePerWalletModelData.invalidateBalanceSeries();
+        activePerWalletModelData.invalidateBalance();
 
         // Save the wallet without the transactions.
         try {
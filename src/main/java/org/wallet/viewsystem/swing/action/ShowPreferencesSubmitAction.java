@@ -38,7 +38,6 @@ import javax.swing.*;
 import javax.swing.UIManager.LookAndFeelInfo;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.util.Timer;
 
 /**
  * This {@link Action} applies changes to the preferences panel.
@@ -367,36 +366,21 @@ public class ShowPreferencesSubmitAction extends AbstractAction {
                 // Reinitialise the currency converter.
                 CurrencyConverter.INSTANCE.initialise(controller);
 
-                // Cancel any existing timer.
-                if (mainFrame.getTickerTimer1() != null) {
-                    mainFrame.getTickerTimer1().cancel();
-                }
-                if (mainFrame.getTickerTimer2() != null) {
-                    mainFrame.getTickerTimer2().cancel();
-                }                // Start ticker timer.
-                Timer tickerTimer1 = new Timer();
-                mainFrame.setTickerTimer1(tickerTimer1);
-                
+                // Replace any existing ticker tasks.
                 TickerTimerTask tickerTimerTask1 = new TickerTimerTask(this.exchangeController, mainFrame, true);
                 tickerTimerTask1.createExchangeObjects(controller.getModel().getUserPreference(ExchangeModel.TICKER_FIRST_ROW_EXCHANGE));
-                mainFrame.setTickerTimerTask1(tickerTimerTask1);
 
-                tickerTimer1.schedule(tickerTimerTask1, 0, TickerTimerTask.DEFAULT_REPEAT_RATE);
-                
+                TickerTimerTask tickerTimerTask2 = null;
                 boolean showSecondRow = Boolean.TRUE.toString().equals(
                         controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW_SECOND_ROW));
                 
                 if (showSecondRow) {
-                    Timer tickerTimer2 = new Timer();
-                    mainFrame.setTickerTimer2(tickerTimer2);
-
-                    TickerTimerTask tickerTimerTask2 = new TickerTimerTask(this.exchangeController, mainFrame, false);
+                    tickerTimerTask2 = new TickerTimerTask(this.exchangeController, mainFrame, false);
                     tickerTimerTask2.createExchangeObjects(controller.getModel().getUserPreference(
                             ExchangeModel.TICKER_SECOND_ROW_EXCHANGE));
-                    mainFrame.setTickerTimerTask2(tickerTimerTask2);
-
-                    tickerTimer2.schedule(tickerTimerTask2, TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
                 }
+
+                mainFrame.restartTickers(tickerTimerTask1, tickerTimerTask2, 0);
             }
 
             if (fontHasChanged) {
@@ -18,7 +18,9 @@ package org.wallet.viewsystem.swing.action;
 import com.google.worldcoin.core.*;
 import com.google.worldcoin.crypto.KeyCrypterException;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.crypto.SessionKeyCache;
 import org.wallet.model.worldcoin.WalletBusyListener;
+import org.wallet.model.worldcoin.WalletKeyIndex;
 import org.wallet.utils.WhitespaceTrimmer;
 import org.wallet.viewsystem.swing.WorldcoinWalletFrame;
 import org.wallet.viewsystem.swing.view.panels.SignMessagePanel;
@@ -29,7 +31,6 @@ import org.spongycastle.crypto.params.KeyParameter;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.nio.CharBuffer;
-import java.util.Iterator;
 
 /**
  * This {@link Action} signs a message
@@ -127,16 +128,8 @@ public class SignMessageSubmitAction extends WorldcoinWalletSubmitAction impleme
             
             // Find the ECKey corresponding to the signing address.
             Wallet activeWallet = worldcoinController.getModel().getActiveWallet();
-            Iterable<ECKey> keychain = activeWallet.getKeys();
-            Iterator<ECKey> iterator = keychain.iterator();
-            ECKey signingKey = null;
-            while (iterator.hasNext()) {
-                ECKey ecKey = iterator.next();
-                if (ecKey.toAddress(worldcoinController.getModel().getNetworkParameters()).equals(signingAddress)) {
-                    signingKey = ecKey;
-                    break;
-                }
-            }
+            ECKey signingKey = WalletKeyIndex.forWallet(activeWallet).getKey(activeWallet, signingAddress.toString(),
+                    worldcoinController.getModel().getNetworkParameters());
             if (signingKey == null) {
                 // No signing key found.
                 signMessagePanel.setMessageText1(controller.getLocaliser().getString("signMessageAction.noSigningKey", new String[]{addressText}));
@@ -144,7 +137,7 @@ public class SignMessageSubmitAction extends WorldcoinWalletSubmitAction impleme
             } else {
                 KeyParameter aesKey = null;
                 if (signingKey.isEncrypted()) {
-                    aesKey = signingKey.getKeyCrypter().deriveKey(walletPassword);
+                    aesKey = SessionKeyCache.INSTANCE.deriveKey(signingKey.getKeyCrypter(), walletPassword);
                     signingKey = signingKey.decrypt(signingKey.getKeyCrypter(), aesKey);
                 }
 
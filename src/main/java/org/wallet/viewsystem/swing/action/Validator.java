@@ -18,7 +18,6 @@ package org.wallet.viewsystem.swing.action;
 import com.google.worldcoin.core.Address;
 import com.google.worldcoin.core.AddressFormatException;
 import com.google.worldcoin.core.Transaction;
-import com.google.worldcoin.core.Wallet.BalanceType;
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
 import org.wallet.exchange.CurrencyConverter;
@@ -110,8 +109,8 @@ public class Validator {
                   } else {
                     // The fee is worked out in detail later, but we know it will be at least the minimum reference amount.
                     BigInteger totalSpend = amountBigInteger.add(Transaction.REFERENCE_DEFAULT_MIN_TX_FEE);
-                    BigInteger availableBalance = this.worldcoinController.getModel().getActiveWallet().getBalance(BalanceType.AVAILABLE);
-                    BigInteger estimatedBalance = this.worldcoinController.getModel().getActiveWallet().getBalance(BalanceType.ESTIMATED);
+                    BigInteger availableBalance = this.worldcoinController.getModel().getActiveWalletAvailableBalance();
+                    BigInteger estimatedBalance = this.worldcoinController.getModel().getActiveWalletEstimatedBalance();
 
                     log.debug("Amount = " + amountBigInteger.toString() + ", fee of at least " + Transaction.REFERENCE_DEFAULT_MIN_TX_FEE.toString()
                             + ", totalSpend = " + totalSpend.toString() + ", availableBalance = " + availableBalance.toString() + ", estimatedBalance = " + estimatedBalance.toString());
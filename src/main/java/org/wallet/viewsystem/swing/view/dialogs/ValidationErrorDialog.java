@@ -18,7 +18,6 @@ package org.wallet.viewsystem.swing.view.dialogs;
 
 
 import com.google.worldcoin.core.Transaction;
-import com.google.worldcoin.core.Wallet.BalanceType;
 import com.google.worldcoin.core.Wallet.SendRequest;
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
@@ -189,7 +188,7 @@ public class ValidationErrorDialog extends WorldcoinWalletDialog {
 
             String textToAdd = controller.getLocaliser().getString("validationErrorView.notEnoughFundsMessage",
                     new String[] { amountPlusConversionToFiat});
-            if (this.worldcoinController.getModel().getActiveWallet().getBalance(BalanceType.AVAILABLE).compareTo(this.worldcoinController.getModel().getActiveWallet().getBalance(BalanceType.ESTIMATED)) != 0) {
+            if (this.worldcoinController.getModel().getActiveWalletAvailableBalance().compareTo(this.worldcoinController.getModel().getActiveWalletEstimatedBalance()) != 0) {
                 textToAdd = controller.getLocaliser().getString("validationErrorView.notEnoughFundsMessage2",
                         new String[] { amountPlusConversionToFiat});
             }
@@ -233,7 +232,7 @@ public class ValidationErrorDialog extends WorldcoinWalletDialog {
         okButton.setBackground(ColorAndFontConstants.BACKGROUND_COLOR);
 
         Object[] options = {okButton};
-        if (this.worldcoinController.getModel().getActiveWallet().getBalance(BalanceType.AVAILABLE).compareTo(this.worldcoinController.getModel().getActiveWallet().getBalance(BalanceType.ESTIMATED)) != 0) {
+        if (this.worldcoinController.getModel().getActiveWalletAvailableBalance().compareTo(this.worldcoinController.getModel().getActiveWalletEstimatedBalance()) != 0) {
             options = new Object[] { okButton, availableToSpendHelpButton};
         }
         WorldcoinWalletTextArea completeMessageTextArea = new WorldcoinWalletTextArea("\n" + completeMessage.toString() + "\n", rows, 20, controller);
@@ -16,11 +16,13 @@
 package org.wallet.viewsystem.swing.view.models;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.table.DefaultTableModel;
 
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.model.worldcoin.WalletAddressBook;
 import org.wallet.model.worldcoin.WalletAddressBookData;
 import org.wallet.model.worldcoin.WalletInfoData;
 
@@ -38,6 +40,18 @@ public class AddressBookTableModel extends DefaultTableModel {
     private final Controller controller;
     private final WorldcoinController worldcoinController;
 
+    /**
+     * Only rows whose label or address starts with the filter are shown. Null shows all rows.
+     */
+    private String filter = null;
+
+    /**
+     * The rows matching the filter, reused until the address book changes.
+     */
+    private List<WalletAddressBookData> filteredRows = null;
+    private WalletAddressBook filteredAddressBook = null;
+    private int filteredChangeCount;
+
     public AddressBookTableModel(WorldcoinController worldcoinController, boolean isReceiving) {
         this.worldcoinController = worldcoinController;
         this.controller = this.worldcoinController;
@@ -59,20 +73,63 @@ public class AddressBookTableModel extends DefaultTableModel {
         if (controller == null) {
             return 0;
         }
+        List<WalletAddressBookData> rows = getRows(isReceiving);
+        if (rows == null) {
+            return 0;
+        }
+        return rows.size();
+    }
+
+    /**
+     * Show only the rows whose label or address starts with the filter, ignoring case.
+     *
+     * @param filter
+     *            The start of the label or address, or null or empty to show all rows
+     */
+    public void setFilter(String filter) {
+        if (filter != null && filter.length() == 0) {
+            filter = null;
+        }
+        this.filter = filter;
+        filteredRows = null;
+        filteredAddressBook = null;
+
+        fireTableDataChanged();
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return The rows of the table - the addresses of the active wallet that match any filter
+     */
+    private List<WalletAddressBookData> getRows(boolean isReceiving) {
+        if (this.worldcoinController == null) {
+            return null;
+        }
         WalletInfoData walletInfo = this.worldcoinController.getModel().getActiveWalletInfo();
+        if (walletInfo == null) {
+            return null;
+        }
+
+        WalletAddressBook addresses;
         if (isReceiving) {
-            if (walletInfo != null && walletInfo.getReceivingAddresses() != null) {
-                return walletInfo.getReceivingAddresses().size();
-            } else {
-                return 0;
-            }
+            addresses = walletInfo.getReceivingAddresses();
         } else {
-            if (walletInfo != null && walletInfo.getSendingAddresses() != null) {
-                return walletInfo.getSendingAddresses().size();
-            } else {
-                return 0;
-            }
+            addresses = walletInfo.getSendingAddresses();
         }
+
+        if (addresses == null || filter == null || isReceiving != this.isReceiving) {
+            return addresses;
+        }
+
+        if (filteredRows == null || filteredAddressBook != addresses || filteredChangeCount != addresses.getChangeCount()) {
+            filteredRows = addresses.search(filter);
+            filteredAddressBook = addresses;
+            filteredChangeCount = addresses.getChangeCount();
+        }
+        return filteredRows;
     }
 
     @Override
@@ -82,23 +139,15 @@ public class AddressBookTableModel extends DefaultTableModel {
 
     @Override
     public Object getValueAt(int row, int column) {
-        WalletInfoData walletInfo = this.worldcoinController.getModel().getActiveWalletInfo();
+        List<WalletAddressBookData> rows = getRows(isReceiving);
 
-        if (walletInfo == null) {
+        if (rows == null) {
             return null;
         }
 
-        ArrayList<WalletAddressBookData> addresses;
-        if (isReceiving) {
-            addresses = walletInfo.getReceivingAddresses();
-        } else {
-            addresses = walletInfo.getSendingAddresses();
-        }
-
-        WalletAddressBookData[] addressesArray = addresses.toArray(new WalletAddressBookData[addresses.size()]);
         WalletAddressBookData addressBookData = null;
-        if (row >= 0 && row < addresses.size()) {
-            addressBookData = addressesArray[row];
+        if (row >= 0 && row < rows.size()) {
+            addressBookData = rows.get(row);
         }
 
         if (addressBookData == null) {
@@ -136,29 +185,25 @@ public class AddressBookTableModel extends DefaultTableModel {
         if (address == null) {
             return -1;
         }
-        WalletInfoData walletInfo = this.worldcoinController.getModel().getActiveWalletInfo();
-        if (walletInfo == null) {
+        List<WalletAddressBookData> rows = getRows(isReceiving);
+        if (rows == null) {
             return -1;
         }
 
-        ArrayList<WalletAddressBookData> addresses;
-        if (isReceiving) {
-            addresses = walletInfo.getReceivingAddresses();
-        } else {
-            addresses = walletInfo.getSendingAddresses();
+        if (rows instanceof WalletAddressBook) {
+            return ((WalletAddressBook) rows).indexOfAddress(address);
         }
 
+        // Filtered - only the matching rows are searched.
         int row = 0;
-        if (addresses != null) {
-            for (WalletAddressBookData loopAddress : addresses) {
-                if (loopAddress != null) {
-                    if (address.equals(loopAddress.getAddress())) {
-                        // select this row in the table
-                        return row;
-                    }
+        for (WalletAddressBookData loopAddress : rows) {
+            if (loopAddress != null) {
+                if (address.equals(loopAddress.getAddress())) {
+                    // select this row in the table
+                    return row;
                 }
-                row++;
             }
+            row++;
         }
         return -1;
     }
@@ -167,20 +212,10 @@ public class AddressBookTableModel extends DefaultTableModel {
      * given a row, return the WalletAddressBookData on this row
      */
     public WalletAddressBookData getAddressBookDataByRow(int row, boolean isReceiving) {
-        WalletInfoData walletInfo = this.worldcoinController.getModel().getActiveWalletInfo();
-        if (walletInfo == null) {
-            return null;
-        }
+        List<WalletAddressBookData> rows = getRows(isReceiving);
 
-        ArrayList<WalletAddressBookData> addresses;
-        if (isReceiving) {
-            addresses = walletInfo.getReceivingAddresses();
-        } else {
-            addresses = walletInfo.getSendingAddresses();
-        }
-
-        if (addresses != null && addresses.size() > row) {
-            return addresses.get(row);
+        if (rows != null && row >= 0 && rows.size() > row) {
+            return rows.get(row);
         }
         return null;
     }
@@ -194,17 +229,25 @@ public class AddressBookTableModel extends DefaultTableModel {
             return;
         }
 
-        ArrayList<WalletAddressBookData> addresses;
+        WalletAddressBook addresses;
         if (isReceiving) {
             addresses = walletInfo.getReceivingAddresses();
         } else {
             addresses = walletInfo.getSendingAddresses();
         }
+        if (addresses == null) {
+            return;
+        }
 
-        if (addresses != null && addresses.size() > row) {
-            addresses.set(row, addressBookData);
+        List<WalletAddressBookData> rows = getRows(isReceiving);
+        if (rows != null && row >= 0 && rows.size() > row) {
+            // Rows of a filtered table are not the same as positions in the address book.
+            int position = rows == addresses ? row : addresses.indexOf(rows.get(row));
+            if (position >= 0) {
+                addresses.set(position, addressBookData);
 
-            fireTableDataChanged();
+                fireTableDataChanged();
+            }
         }
     }
 
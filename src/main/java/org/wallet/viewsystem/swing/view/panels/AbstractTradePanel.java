@@ -30,7 +30,7 @@ import org.wallet.model.worldcoin.WalletData;
 import org.wallet.model.worldcoin.WalletInfoData;
 import org.wallet.model.core.CoreModel;
 import org.wallet.qrcode.QRCodeEncoderDecoder;
-import org.wallet.qrcode.QRCodeGenerator;
+import org.wallet.qrcode.QRCodeRenderer;
 import org.wallet.store.WorldcoinWalletVersion;
 import org.wallet.utils.ImageLoader;
 import org.wallet.utils.WhitespaceTrimmer;
@@ -161,7 +161,7 @@ public abstract class AbstractTradePanel extends JPanel implements Viewable, Cop
 
     private final AbstractTradePanel thisAbstractTradePanel;
 
-    private QRCodeGenerator qrCodeGenerator;
+    private QRCodeRenderer qrCodeRenderer;
     
     private JScrollPane addressesScrollPane;
 
@@ -1530,24 +1530,29 @@ public abstract class AbstractTradePanel extends JPanel implements Viewable, Cop
     }
 
     /**
-     * Display the address, amount and label as a QR code.
+     * Display the QR code swatch. Swatches that are not cached are generated in the background and
+     * displayed when ready so that typing in the address, amount or label fields is not held up.
      */
     public void displayQRCode(String address, String amount, String label) {
-        if (qrCodeGenerator == null) {
-            qrCodeGenerator = new QRCodeGenerator(this.worldcoinController);
+        if (qrCodeRenderer == null) {
+            qrCodeRenderer = new QRCodeRenderer(this.worldcoinController);
         }
         try {
-            BufferedImage image = qrCodeGenerator.generateQRcode(address, amount, label);
-            ImageIcon icon;
-            if (image != null) {
-                icon = new ImageIcon(image);
-            } else {
-                icon = new ImageIcon();
-            }
-            if (qrCodeLabel != null) {
-                qrCodeLabel.setIcon(icon);
-                setDragLabelTextAndTooltip();
-            }
+            qrCodeRenderer.render(address, amount, label, 1, new QRCodeRenderer.Callback() {
+                @Override
+                public void qrCodeRendered(BufferedImage image) {
+                    ImageIcon icon;
+                    if (image != null) {
+                        icon = new ImageIcon(image);
+                    } else {
+                        icon = new ImageIcon();
+                    }
+                    if (qrCodeLabel != null) {
+                        qrCodeLabel.setIcon(icon);
+                        setDragLabelTextAndTooltip();
+                    }
+                }
+            });
         } catch (RuntimeException re) {
             // QR code generation failed
             log.error(re.getMessage(), re);
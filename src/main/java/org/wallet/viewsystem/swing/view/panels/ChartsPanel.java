@@ -16,11 +16,11 @@
 package org.wallet.viewsystem.swing.view.panels;
 
 
-import com.google.worldcoin.core.Transaction;
 import com.xeiam.xchart.*;
 import org.wallet.controller.Controller;
 import org.wallet.controller.worldcoin.WorldcoinController;
 import org.wallet.model.core.CoreModel;
+import org.wallet.model.worldcoin.WalletBalanceSeries;
 import org.wallet.utils.DateUtils;
 import org.wallet.utils.ImageLoader;
 import org.wallet.viewsystem.DisplayHint;
@@ -147,7 +147,7 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
       Collection<Number> yData = new ArrayList<Number>();
 
       // Get the last month's transaction data.
-      Collection<ChartData> chartDataCollection = getChartData();
+      Collection<ChartData> chartDataCollection = getChartData(chartWidth);
 
       if (generateRandomChart) {
         DateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
@@ -252,110 +252,30 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
   }
 
   /**
-   * Get the transaction data for the chart
+   * Get the transaction data for the chart, reduced to at most one point per pixel of chart width.
    */
-  private Collection<ChartData> getChartData() {
+  private Collection<ChartData> getChartData(int chartWidth) {
 
     if (controller.getModel() == null || this.worldcoinController.getModel().getActiveWallet() == null) {
       return new ArrayList<ChartData>();
     }
 
-    ArrayList<Transaction> allTransactions = new ArrayList<Transaction>(this.worldcoinController.getModel().getActiveWallet().getTransactions(false));
-
-    // Order by date.
-    Collections.sort(allTransactions, new Comparator<Transaction>() {
-
-      @Override
-      public int compare(Transaction t1, Transaction t2) {
-
-        Date date1 = t1.getUpdateTime();
-        Date date2 = t2.getUpdateTime();
-        if (date1 == null) {
-          if (date2 == null) {
-            return 0;
-          } else {
-            return -1;
-          }
-        } else {
-          if (date2 == null) {
-            return 1;
-          } else {
-            return date1.compareTo(date2);
-          }
-        }
-
-      }
-    });
-
-    // Work out balance as running total and filter to just last
-    // NUMBER_OF_DAYS_TO_LOOK_BACKs data.
-    BigInteger balance = BigInteger.ZERO;
-
-    // The previous datums balance.
-    BigInteger previousBalance = BigInteger.ZERO;
-
-    // The previous datums timepoint.
-    Date previousDate = null;
+    // The running balance is maintained incrementally from the wallet events.
+    WalletBalanceSeries balanceSeries = this.worldcoinController.getModel().getActivePerWalletModelData().getBalanceSeries();
 
+    // Filter to just last NUMBER_OF_DAYS_TO_LOOK_BACKs data.
+    long nowInMillis = DateUtils.nowUtc().getMillis();
     long pastInMillis = DateUtils.nowUtc().plusDays(-1 * NUMBER_OF_DAYS_TO_LOOK_BACK).getMillis();
+    // Each step is two points.
+    WalletBalanceSeries.Points points = balanceSeries.getPoints(pastInMillis, nowInMillis, chartWidth / 2);
 
-    // Create ChartData collection.
-    Collection<ChartData> chartData = new ArrayList<ChartData>();
+    long[] times = points.getTimes();
+    double[] balances = points.getBalances();
 
-    try {
-      boolean leftEdgeDataPointAdded = false;
-
-      if (allTransactions == null || allTransactions.size() == 0) {
-        // At beginning of time window balance was zero
-        chartData.add(new ChartData(new Date(pastInMillis), BigInteger.ZERO));
-      } else {
-        for (Transaction loop : allTransactions) {
-          balance = balance.add(loop.getValue(this.worldcoinController.getModel().getActiveWallet()));
-
-          Date loopUpdateTime = loop.getUpdateTime();
-          if (loopUpdateTime != null) {
-            long loopTimeInMillis = loopUpdateTime.getTime();
-
-            if (loopTimeInMillis > pastInMillis) {
-              if (!leftEdgeDataPointAdded) {
-                // If the previous transaction was BEFORE the
-                // NUMBER_OF_DAYS_TO_LOOK_BACK cutoff, include a
-                // datapoint at the beginning of the timewindow
-                // with the balance
-                // at that time.
-                if ((previousDate != null) && (previousDate.getTime() <= pastInMillis)) {
-                  // The balance was non-zero.
-                  chartData.add(new ChartData(new Date(pastInMillis), previousBalance));
-                } else {
-                  // At beginning of time window balance was
-                  // zero
-                  chartData.add(new ChartData(new Date(pastInMillis), BigInteger.ZERO));
-                }
-                leftEdgeDataPointAdded = true;
-              }
-
-              // Include this transaction as it is in the last
-              // NUMBER_OF_DAYS_TO_LOOK_BACK days.
-              chartData.add(new ChartData(loop.getUpdateTime(), previousBalance));
-              chartData.add(new ChartData(loop.getUpdateTime(), balance));
-            }
-
-            previousBalance = balance;
-            previousDate = loop.getUpdateTime();
-          }
-        }
-      }
-
-      // If all the datapoints are before the left hand edge, ensure the balance is also added at the left hand edge.
-      if (!leftEdgeDataPointAdded) {
-        chartData.add(new ChartData(new Date(pastInMillis), balance));
-      }
-
-      // Add in the balance at the end of the time window.
-      chartData.add(new ChartData(new Date(DateUtils.nowUtc().getMillis()), balance));
-      // log.debug("Last transaction date = " + previousDate + ", chart balance = " + balance + ", wallet balance = " + controller.getModel().getActiveWallet().getBalance());
-    } catch (com.google.worldcoin.core.ScriptException e1) {
-      e1.printStackTrace();
+    // Create ChartData collection.
+    Collection<ChartData> chartData = new ArrayList<ChartData>(points.size());
+    for (int i = 0; i < points.size(); i++) {
+      chartData.add(new ChartData(new Date(times[i]), BigInteger.valueOf((long) balances[i])));
     }
 
     return chartData;
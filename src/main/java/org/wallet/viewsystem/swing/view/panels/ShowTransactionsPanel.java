@@ -33,7 +33,6 @@ import org.wallet.viewsystem.View;
 import org.wallet.viewsystem.Viewable;
 import org.wallet.viewsystem.swing.ColorAndFontConstants;
 import org.wallet.viewsystem.swing.WorldcoinWalletFrame;
-import org.wallet.viewsystem.swing.UpdateTransactionsTimerTask;
 import org.wallet.viewsystem.swing.WalletTableModel;
 import org.wallet.viewsystem.swing.action.ExportTransactionsSubmitAction;
 import org.wallet.viewsystem.swing.action.HelpContextAction;
@@ -57,7 +56,6 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
-import java.util.Timer;
 
 public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyConverterListener {
     private static final long serialVersionUID = 1235108897887842662L;
@@ -106,26 +104,13 @@ public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyC
     private Action exportTransactionsSubmitAction;
     private WorldcoinWalletButton exportTransactionsButton;
     
-    public static final int UPDATE_TRANSACTIONS_DELAY_TIME = 1000; // milliseconds
-    
     private JScrollPane scrollPane;
     
-    /**
-     * Timer used to condense multiple updates
-     */
-    private static Timer updateTransactionsTimer;
-
-    private static UpdateTransactionsTimerTask updateTransactionsTimerTask;
-    
     public ShowTransactionsPanel(WorldcoinController worldcoinController, WorldcoinWalletFrame mainFrame) {
         this.worldcoinController = worldcoinController;
         this.controller = this.worldcoinController;
         this.mainFrame = mainFrame;
 
-        updateTransactionsTimerTask = new UpdateTransactionsTimerTask(controller, this, mainFrame);
-        updateTransactionsTimer = new Timer();
-        updateTransactionsTimer.scheduleAtFixedRate(updateTransactionsTimerTask, UPDATE_TRANSACTIONS_DELAY_TIME, UPDATE_TRANSACTIONS_DELAY_TIME);
-               
         initUI();
 
         applyComponentOrientation(ComponentOrientation.getOrientation(controller.getLocaliser().getLocale()));
@@ -144,12 +129,6 @@ public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyC
         add(buttonPanel, BorderLayout.SOUTH);
     }
     
-    public static void updateTransactions() {
-        if (updateTransactionsTimerTask != null) {
-                updateTransactionsTimerTask.setUpdateTransactions(true);                
-        }
-    }
-
     private JPanel createTransactionsPanel() {
         JPanel transactionsPanel = new JPanel();
         transactionsPanel.setMinimumSize(new Dimension(550, 160));
@@ -1142,6 +1121,6 @@ public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyC
 
     @Override
     public void updatedExchangeRate(ExchangeRate exchangeRate) {
-        ShowTransactionsPanel.updateTransactions();
+        controller.fireDataChangedUpdateLater();
     }
 }
\ No newline at end of file
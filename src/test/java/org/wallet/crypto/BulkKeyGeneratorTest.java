@@ -0,0 +1,74 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.crypto.KeyCrypter;
+import com.google.worldcoin.crypto.KeyCrypterScrypt;
+
+public class BulkKeyGeneratorTest extends TestCase {
+
+    @Test
+    public void testGenerateUnencryptedKeys() throws Exception {
+        int numberOfKeys = 3 * BulkKeyGenerator.KEYS_PER_TASK + 7;
+        List<ECKey> keys = new BulkKeyGenerator(4).generateKeys(numberOfKeys, null, null);
+
+        assertEquals(numberOfKeys, keys.size());
+        Set<ByteBuffer> publicKeys = new HashSet<ByteBuffer>();
+        for (ECKey key : keys) {
+            assertFalse(key.isEncrypted());
+            assertNotNull(key.getPrivKeyBytes());
+            publicKeys.add(ByteBuffer.wrap(key.getPubKey()));
+        }
+        // All different.
+        assertEquals(numberOfKeys, publicKeys.size());
+    }
+
+    @Test
+    public void testGenerateEncryptedKeys() throws Exception {
+        KeyCrypter keyCrypter = new KeyCrypterScrypt();
+        KeyParameter aesKey = keyCrypter.deriveKey("password");
+
+        int numberOfKeys = 2 * BulkKeyGenerator.KEYS_PER_TASK + 1;
+        List<ECKey> keys = new BulkKeyGenerator(3).generateKeys(numberOfKeys, keyCrypter, aesKey);
+
+        assertEquals(numberOfKeys, keys.size());
+        for (ECKey key : keys) {
+            assertTrue(key.isEncrypted());
+            ECKey decryptedKey = key.decrypt(keyCrypter, aesKey);
+            assertTrue(Arrays.equals(key.getPubKey(), decryptedKey.getPubKey()));
+        }
+    }
+
+    @Test
+    public void testSmallBatchOnOneThread() throws Exception {
+        List<ECKey> keys = new BulkKeyGenerator().generateKeys(3, null, null);
+        assertEquals(3, keys.size());
+
+        assertEquals(0, new BulkKeyGenerator().generateKeys(0, null, null).size());
+    }
+}
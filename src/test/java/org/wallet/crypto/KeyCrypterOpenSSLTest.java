@@ -105,6 +105,27 @@ public class KeyCrypterOpenSSLTest extends TestCase {
         System.out.println(" Done.");
     }
 
+    public void testEncryptStreamDecryptGood() throws Exception {
+        KeyCrypterOpenSSL encrypterDecrypter = new KeyCrypterOpenSSL();
+
+        // Create a longer encryption string, written a bit at a time.
+        StringBuffer stringBuffer = new StringBuffer();
+        ByteArrayOutputStream cipherTextStream = new ByteArrayOutputStream();
+        OutputStream plainTextStream = encrypterDecrypter.encrypt(cipherTextStream, PASSWORD3);
+        for (int i = 0; i < 100; i++) {
+            String text = i + " " + TEST_STRING2;
+            stringBuffer.append(text);
+            plainTextStream.write(text.getBytes(KeyCrypterOpenSSL.STRING_ENCODING));
+        }
+        plainTextStream.close();
+
+        String cipherText = cipherTextStream.toString(KeyCrypterOpenSSL.STRING_ENCODING);
+        assertTrue(cipherText.startsWith(encrypterDecrypter.getOpenSSLMagicText()));
+
+        String reconstructedPlainText = encrypterDecrypter.decrypt(cipherText, PASSWORD3);
+        assertEquals(stringBuffer.toString(), reconstructedPlainText);
+    }
+
     public void testEncryptDecryptWrongPassword() throws Exception {
         KeyCrypterOpenSSL encrypterDecrypter = new KeyCrypterOpenSSL();
 
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.crypto.KeyCrypter;
+import com.google.worldcoin.crypto.KeyCrypterException;
+import com.google.worldcoin.crypto.KeyCrypterScrypt;
+
+public class KeychainCrypterTest extends TestCase {
+
+    private static final int NUMBER_OF_KEYS = 3 * ParallelKeyTasks.KEYS_PER_TASK + 7;
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        Wallet wallet = new Wallet(NetworkParameters.prodNet());
+        List<ECKey> originalKeys = addKeys(wallet);
+        List<byte[]> privateKeys = privateKeysOf(originalKeys);
+
+        KeyCrypter keyCrypter = new KeyCrypterScrypt();
+        KeyParameter aesKey = keyCrypter.deriveKey("password");
+        KeychainCrypter keychainCrypter = new KeychainCrypter(4);
+
+        keychainCrypter.encrypt(wallet, keyCrypter, aesKey);
+        assertTrue(wallet.isEncrypted());
+        assertSame(keyCrypter, wallet.getKeyCrypter());
+        List<ECKey> encryptedKeys = wallet.getKeys();
+        assertEquals(NUMBER_OF_KEYS, encryptedKeys.size());
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            assertTrue(encryptedKeys.get(i).isEncrypted());
+            assertTrue(Arrays.equals(originalKeys.get(i).getPubKey(), encryptedKeys.get(i).getPubKey()));
+        }
+
+        keychainCrypter.decrypt(wallet, aesKey);
+        assertFalse(wallet.isEncrypted());
+        assertNull(wallet.getKeyCrypter());
+        List<ECKey> decryptedKeys = wallet.getKeys();
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            assertFalse(decryptedKeys.get(i).isEncrypted());
+            assertTrue(Arrays.equals(privateKeys.get(i), decryptedKeys.get(i).getPrivKeyBytes()));
+        }
+    }
+
+    @Test
+    public void testChangePassword() throws Exception {
+        Wallet wallet = new Wallet(NetworkParameters.prodNet());
+        List<byte[]> privateKeys = privateKeysOf(addKeys(wallet));
+
+        KeyCrypter keyCrypter = new KeyCrypterScrypt();
+        KeyParameter currentAesKey = keyCrypter.deriveKey("password");
+        KeyParameter newAesKey = keyCrypter.deriveKey("new password");
+        KeychainCrypter keychainCrypter = new KeychainCrypter(4);
+
+        keychainCrypter.encrypt(wallet, keyCrypter, currentAesKey);
+        keychainCrypter.changePassword(wallet, currentAesKey, newAesKey);
+        assertSame(keyCrypter, wallet.getKeyCrypter());
+
+        List<ECKey> keys = wallet.getKeys();
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            assertTrue(keys.get(i).isEncrypted());
+            ECKey decryptedKey = keys.get(i).decrypt(keyCrypter, newAesKey);
+            assertTrue(Arrays.equals(privateKeys.get(i), decryptedKey.getPrivKeyBytes()));
+        }
+    }
+
+    @Test
+    public void testWrongPasswordLeavesWalletUnchanged() throws Exception {
+        Wallet wallet = new Wallet(NetworkParameters.prodNet());
+        addKeys(wallet);
+
+        KeyCrypter keyCrypter = new KeyCrypterScrypt();
+        KeyParameter aesKey = keyCrypter.deriveKey("password");
+        KeychainCrypter keychainCrypter = new KeychainCrypter(4);
+        keychainCrypter.encrypt(wallet, keyCrypter, aesKey);
+        List<ECKey> encryptedKeys = wallet.getKeys();
+
+        try {
+            keychainCrypter.changePassword(wallet, keyCrypter.deriveKey("wrong password"), keyCrypter.deriveKey("new password"));
+            fail("The password was changed with the wrong current password");
+        } catch (KeyCrypterException kce) {
+            // Expected.
+        }
+
+        try {
+            keychainCrypter.decrypt(wallet, keyCrypter.deriveKey("wrong password"));
+            fail("The wallet was decrypted with the wrong password");
+        } catch (KeyCrypterException kce) {
+            // Expected.
+        }
+
+        assertTrue(wallet.isEncrypted());
+        assertEquals(encryptedKeys, wallet.getKeys());
+        assertTrue(wallet.checkAESKey(aesKey));
+    }
+
+    private List<ECKey> addKeys(Wallet wallet) {
+        List<ECKey> keys = new ArrayList<ECKey>();
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            keys.add(new ECKey());
+        }
+        wallet.addKeys(keys);
+        return keys;
+    }
+
+    private List<byte[]> privateKeysOf(List<ECKey> keys) {
+        // Copied, as the unencrypted keys are wiped when the wallet is encrypted.
+        List<byte[]> privateKeys = new ArrayList<byte[]>();
+        for (ECKey key : keys) {
+            privateKeys.add(key.getPrivKeyBytes().clone());
+        }
+        return privateKeys;
+    }
+}
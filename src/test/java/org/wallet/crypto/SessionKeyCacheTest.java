@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.crypto;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.worldcoinj.wallet.Protos.Wallet.EncryptionType;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import com.google.worldcoin.crypto.EncryptedPrivateKey;
+import com.google.worldcoin.crypto.KeyCrypter;
+import com.google.worldcoin.crypto.KeyCrypterException;
+
+public class SessionKeyCacheTest extends TestCase {
+
+    private static final long IDLE_TIMEOUT = 60000;
+
+    /**
+     * Counts the keys derived. The key is the password's bytes.
+     */
+    private static class CountingKeyCrypter implements KeyCrypter {
+        private static final long serialVersionUID = 1L;
+
+        int numberOfKeysDerived = 0;
+
+        @Override
+        public KeyParameter deriveKey(CharSequence password) throws KeyCrypterException {
+            numberOfKeysDerived++;
+            return new KeyParameter(password.toString().getBytes());
+        }
+
+        @Override
+        public EncryptionType getUnderstoodEncryptionType() {
+            return EncryptionType.ENCRYPTED_SCRYPT_AES;
+        }
+
+        @Override
+        public byte[] decrypt(EncryptedPrivateKey encryptedPrivateKey, KeyParameter aesKey) throws KeyCrypterException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EncryptedPrivateKey encrypt(byte[] plainBytes, KeyParameter aesKey) throws KeyCrypterException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SessionKeyCache.INSTANCE.setIdleTimeout(0);
+    }
+
+    @Test
+    public void testNoSessionDerivesEveryTime() throws Exception {
+        SessionKeyCache.INSTANCE.setIdleTimeout(0);
+        CountingKeyCrypter keyCrypter = new CountingKeyCrypter();
+
+        SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        assertEquals(2, keyCrypter.numberOfKeysDerived);
+        assertFalse(SessionKeyCache.INSTANCE.isUnlocked(keyCrypter));
+    }
+
+    @Test
+    public void testSessionKeepsKeyForSamePassword() throws Exception {
+        SessionKeyCache.INSTANCE.setIdleTimeout(IDLE_TIMEOUT);
+        CountingKeyCrypter keyCrypter = new CountingKeyCrypter();
+
+        KeyParameter first = SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        KeyParameter second = SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        assertEquals(1, keyCrypter.numberOfKeysDerived);
+        assertTrue(SessionKeyCache.INSTANCE.isUnlocked(keyCrypter));
+        assertTrue(Arrays.equals(first.getKey(), second.getKey()));
+        assertNotSame(first.getKey(), second.getKey());
+
+        // Another password is derived and replaces the kept key.
+        KeyParameter other = SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "other password");
+        assertEquals(2, keyCrypter.numberOfKeysDerived);
+        assertTrue(Arrays.equals("other password".getBytes(), other.getKey()));
+        SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        assertEquals(3, keyCrypter.numberOfKeysDerived);
+
+        // Each KeyCrypter has its own key.
+        CountingKeyCrypter otherKeyCrypter = new CountingKeyCrypter();
+        SessionKeyCache.INSTANCE.deriveKey(otherKeyCrypter, "password");
+        assertEquals(1, otherKeyCrypter.numberOfKeysDerived);
+        assertEquals(3, keyCrypter.numberOfKeysDerived);
+    }
+
+    @Test
+    public void testForgetAndLock() throws Exception {
+        SessionKeyCache.INSTANCE.setIdleTimeout(IDLE_TIMEOUT);
+        CountingKeyCrypter keyCrypter = new CountingKeyCrypter();
+        CountingKeyCrypter otherKeyCrypter = new CountingKeyCrypter();
+
+        KeyParameter aesKey = SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        SessionKeyCache.INSTANCE.deriveKey(otherKeyCrypter, "password");
+
+        SessionKeyCache.INSTANCE.forget(keyCrypter);
+        assertFalse(SessionKeyCache.INSTANCE.isUnlocked(keyCrypter));
+        assertTrue(SessionKeyCache.INSTANCE.isUnlocked(otherKeyCrypter));
+        // The caller's copy is not wiped.
+        assertTrue(Arrays.equals("password".getBytes(), aesKey.getKey()));
+
+        SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+        assertEquals(2, keyCrypter.numberOfKeysDerived);
+
+        SessionKeyCache.INSTANCE.lock();
+        assertFalse(SessionKeyCache.INSTANCE.isUnlocked(keyCrypter));
+        assertFalse(SessionKeyCache.INSTANCE.isUnlocked(otherKeyCrypter));
+    }
+
+    @Test
+    public void testIdleKeysAreWiped() throws Exception {
+        SessionKeyCache.INSTANCE.setIdleTimeout(IDLE_TIMEOUT);
+        CountingKeyCrypter keyCrypter = new CountingKeyCrypter();
+        SessionKeyCache.INSTANCE.deriveKey(keyCrypter, "password");
+
+        long now = System.currentTimeMillis();
+        SessionKeyCache.INSTANCE.wipeIdleKeys(now + IDLE_TIMEOUT / 2);
+        assertTrue(SessionKeyCache.INSTANCE.isUnlocked(keyCrypter));
+
+        SessionKeyCache.INSTANCE.wipeIdleKeys(now + IDLE_TIMEOUT + 1);
+        assertFalse(SessionKeyCache.INSTANCE.isUnlocked(keyCrypter));
+    }
+}
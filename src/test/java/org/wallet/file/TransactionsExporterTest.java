@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.file;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.Constants;
+import org.wallet.CreateControllers;
+import org.wallet.controller.worldcoin.WorldcoinController;
+import org.wallet.model.worldcoin.WalletData;
+
+public class TransactionsExporterTest extends TestCase {
+
+    public static final String WALLETS_TESTDATA_DIRECTORY = "wallets";
+
+    public static final String PROTOBUF1_WALLET_FILE = "protobuf1.wallet";
+
+    @Test
+    public void testSortByDateDescending() throws Exception {
+        long[] times = new long[] { 1000, 0, 3000, 2000, 0, 3000 };
+        int[] order = TransactionsExporter.sortByDateDescending(times);
+
+        // Missing dates first, then newest first, equal times in their original order.
+        assertTrue(Arrays.equals(new int[] { 1, 4, 2, 5, 3, 0 }, order));
+    }
+
+    @Test
+    public void testSortManyTransactions() throws Exception {
+        int numberOfTransactions = 100000;
+        Random random = new Random(1);
+        long[] times = new long[numberOfTransactions];
+        for (int i = 0; i < numberOfTransactions; i++) {
+            times[i] = random.nextInt(10) == 0 ? 0 : 1231006505000L + random.nextInt(Integer.MAX_VALUE) * 1000L;
+        }
+
+        int[] order = TransactionsExporter.sortByDateDescending(times);
+        assertEquals(numberOfTransactions, order.length);
+
+        boolean[] seen = new boolean[numberOfTransactions];
+        boolean reachedDates = false;
+        for (int i = 0; i < numberOfTransactions; i++) {
+            assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+            if (times[order[i]] == 0) {
+                assertFalse("A transaction with a missing date is after a dated one", reachedDates);
+            } else {
+                if (reachedDates) {
+                    assertTrue(times[order[i - 1]] >= times[order[i]]);
+                }
+                reachedDates = true;
+            }
+        }
+    }
+
+    @Test
+    public void testExportWritesEveryTransaction() throws Exception {
+        WorldcoinController worldcoinController = CreateControllers.createControllers().worldcoinController;
+        WalletData walletData = loadTestWallet(worldcoinController);
+        int numberOfTransactions = walletData.getWallet().getTransactions(false).size();
+        File exportFile = newExportFile();
+
+        final int[] lastProgress = new int[] { -1, -1 };
+        boolean finished = new TransactionsExporter(worldcoinController).export(walletData, exportFile,
+                new TransactionsExporter.ProgressListener() {
+                    @Override
+                    public void progress(int rowsWritten, int totalRows) {
+                        lastProgress[0] = rowsWritten;
+                        lastProgress[1] = totalRows;
+                    }
+                });
+
+        assertTrue(finished);
+        assertEquals(numberOfTransactions, lastProgress[0]);
+        assertEquals(numberOfTransactions, lastProgress[1]);
+        // The header row and a row for each transaction.
+        assertEquals(numberOfTransactions + 1, countLines(exportFile));
+    }
+
+    @Test
+    public void testCancelledExportDeletesNewFile() throws Exception {
+        WorldcoinController worldcoinController = CreateControllers.createControllers().worldcoinController;
+        WalletData walletData = loadTestWallet(worldcoinController);
+        File exportFile = newExportFile();
+
+        TransactionsExporter exporter = new TransactionsExporter(worldcoinController);
+        exporter.cancel();
+        assertTrue(exporter.isCancelled());
+        assertFalse(exporter.export(walletData, exportFile, null));
+        assertFalse("A cancelled export left a new file", exportFile.exists());
+    }
+
+    @Test
+    public void testCancelledExportKeepsExistingFile() throws Exception {
+        WorldcoinController worldcoinController = CreateControllers.createControllers().worldcoinController;
+        WalletData walletData = loadTestWallet(worldcoinController);
+        File exportFile = newExportFile();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(exportFile), "UTF-8");
+        try {
+            writer.write("An earlier export\n");
+        } finally {
+            writer.close();
+        }
+
+        TransactionsExporter exporter = new TransactionsExporter(worldcoinController);
+        exporter.cancel();
+        assertFalse(exporter.export(walletData, exportFile, null));
+        assertTrue("A cancelled export deleted an existing file", exportFile.exists());
+        assertEquals(1, countLines(exportFile));
+    }
+
+    private WalletData loadTestWallet(WorldcoinController worldcoinController) throws Exception {
+        String testWalletFile = new File(".").getAbsolutePath() + File.separator + Constants.TESTDATA_DIRECTORY + File.separator
+                + WALLETS_TESTDATA_DIRECTORY + File.separator + PROTOBUF1_WALLET_FILE;
+        WalletData walletData = new WalletData();
+        walletData.setWallet(new FileHandler(worldcoinController).loadFromFile(new File(testWalletFile)).getWallet());
+        walletData.setWalletFilename(testWalletFile);
+        assertTrue("Wrong number of transactions in wallet", walletData.getWallet().getTransactions(false).size() >= 2);
+        return walletData;
+    }
+
+    private File newExportFile() throws IOException {
+        File exportFile = File.createTempFile("testExporter", ".csv");
+        exportFile.delete();
+        exportFile.deleteOnExit();
+        return exportFile;
+    }
+
+    private int countLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MessageManagerTest extends TestCase {
+
+    @Test
+    public void testAddMessageDoesNotWaitForListeners() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(1);
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void newMessageReceived(Message newMessage) {
+                if ("testAddMessageDoesNotWaitForListeners".equals(newMessage.getText())) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    received.countDown();
+                }
+            }
+        };
+        MessageManager.INSTANCE.addMessageListener(listener);
+        try {
+            long start = System.currentTimeMillis();
+            MessageManager.INSTANCE.addMessage(new Message("testAddMessageDoesNotWaitForListeners"));
+            assertTrue("addMessage waited for the listener", System.currentTimeMillis() - start < 5000);
+
+            // Stored straight away.
+            Object[] messages = MessageManager.INSTANCE.getMessages().toArray();
+            assertEquals("testAddMessageDoesNotWaitForListeners", ((Message) messages[messages.length - 1]).getText());
+
+            release.countDown();
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+        } finally {
+            MessageManager.INSTANCE.removeMessageListener(listener);
+        }
+    }
+
+    @Test
+    public void testProgressMessagesAreCollapsed() throws Exception {
+        final List<Message> receivedMessages = new ArrayList<Message>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        MessageListener listener = new MessageListener() {
+            @Override
+            public void newMessageReceived(Message newMessage) {
+                if (newMessage.getText().startsWith("testProgressMessagesAreCollapsed")) {
+                    synchronized (receivedMessages) {
+                        receivedMessages.add(newMessage);
+                    }
+                    if (newMessage.getPercentComplete() == 100) {
+                        finished.countDown();
+                    }
+                }
+            }
+        };
+        MessageManager.INSTANCE.addMessageListener(listener);
+
+        int numberOfMessagesBefore = MessageManager.INSTANCE.getMessages().size();
+        try {
+            MessageManager.INSTANCE.addMessage(progress("testProgressMessagesAreCollapsed start", 0));
+            for (int i = 1; i < 100; i++) {
+                MessageManager.INSTANCE.addMessage(progress("testProgressMessagesAreCollapsed " + i, i));
+            }
+            MessageManager.INSTANCE.addMessage(progress("testProgressMessagesAreCollapsed done", 100));
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+        } finally {
+            MessageManager.INSTANCE.removeMessageListener(listener);
+        }
+
+        // Only the start, the latest progress and the end are stored.
+        assertEquals(Math.min(numberOfMessagesBefore + 3, MessageManager.MAXIMUM_NUMBER_OF_MESSAGES_STORED),
+                MessageManager.INSTANCE.getMessages().size());
+
+        synchronized (receivedMessages) {
+            // The start and end are always delivered, in order.
+            assertEquals("testProgressMessagesAreCollapsed start", receivedMessages.get(0).getText());
+            assertEquals("testProgressMessagesAreCollapsed done", receivedMessages.get(receivedMessages.size() - 1).getText());
+            assertTrue(receivedMessages.size() <= 101);
+            double lastPercentComplete = -1;
+            for (Message message : receivedMessages) {
+                assertTrue(message.getPercentComplete() > lastPercentComplete);
+                lastPercentComplete = message.getPercentComplete();
+            }
+        }
+    }
+
+    @Test
+    public void testCanCollapse() throws Exception {
+        Message text = new Message("text");
+        Message start = new Message("start", 0);
+        Message progress = new Message("progress", 50);
+        Message done = new Message("done", 100);
+
+        assertFalse(MessageManager.canCollapse(null, progress));
+        assertFalse(MessageManager.canCollapse(text, progress));
+        assertFalse(MessageManager.canCollapse(progress, text));
+        assertFalse(MessageManager.canCollapse(start, progress));
+        assertFalse(MessageManager.canCollapse(done, progress));
+        assertTrue(MessageManager.canCollapse(progress, progress));
+        assertFalse(MessageManager.canCollapse(progress, done));
+
+        // Progress messages with different text are only collapsed if they come from the same source.
+        Message sourceProgress = progress("progress 50", 50);
+        Message sourceDone = progress("done", 100);
+        assertTrue(MessageManager.canCollapse(sourceProgress, sourceDone));
+        Message otherSourceDone = progress("done", 100);
+        otherSourceDone.setSource("other");
+        assertFalse(MessageManager.canCollapse(sourceProgress, otherSourceDone));
+
+        Message notInStatusBar = progress("progress 60", 60);
+        notInStatusBar.setShowInStatusBar(false);
+        assertFalse(MessageManager.canCollapse(sourceProgress, notInStatusBar));
+    }
+
+    private static Message progress(String text, double percentComplete) {
+        Message message = new Message(text, percentComplete);
+        message.setSource(MessageManagerTest.class.getName());
+        return message;
+    }
+
+    @Test
+    public void testRingBufferKeepsTheLatestMessages() throws Exception {
+        for (int i = 0; i < MessageManager.MAXIMUM_NUMBER_OF_MESSAGES_STORED + 10; i++) {
+            MessageManager.INSTANCE.addMessage(new Message("testRingBufferKeepsTheLatestMessages " + i));
+        }
+        Object[] messages = MessageManager.INSTANCE.getMessages().toArray();
+        assertEquals(MessageManager.MAXIMUM_NUMBER_OF_MESSAGES_STORED, messages.length);
+        assertEquals("testRingBufferKeepsTheLatestMessages 10", ((Message) messages[0]).getText());
+        assertEquals("testRingBufferKeepsTheLatestMessages " + (MessageManager.MAXIMUM_NUMBER_OF_MESSAGES_STORED + 9),
+                ((Message) messages[messages.length - 1]).getText());
+    }
+}
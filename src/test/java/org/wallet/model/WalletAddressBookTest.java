@@ -0,0 +1,143 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.model.worldcoin.WalletAddressBook;
+import org.wallet.model.worldcoin.WalletAddressBookData;
+
+public class WalletAddressBookTest extends TestCase {
+
+    @Test
+    public void testLookupAndPosition() throws Exception {
+        WalletAddressBook addressBook = new WalletAddressBook();
+        WalletAddressBookData first = new WalletAddressBookData("Alice", "WaAddress1");
+        WalletAddressBookData second = new WalletAddressBookData("Bob", "WbAddress2");
+        WalletAddressBookData third = new WalletAddressBookData("Carol", "WcAddress3");
+        addressBook.add(first);
+        addressBook.add(second);
+        addressBook.add(third);
+
+        assertSame(second, addressBook.lookup("WbAddress2"));
+        assertTrue(addressBook.containsAddress("WcAddress3"));
+        assertFalse(addressBook.containsAddress("WdAddress4"));
+        assertNull(addressBook.lookup(null));
+        assertEquals(2, addressBook.indexOfAddress("WcAddress3"));
+
+        addressBook.remove(0);
+        assertFalse(addressBook.containsAddress("WaAddress1"));
+        assertEquals(0, addressBook.indexOfAddress("WbAddress2"));
+        assertEquals(1, addressBook.indexOfAddress("WcAddress3"));
+
+        addressBook.add(0, first);
+        assertEquals(0, addressBook.indexOfAddress("WaAddress1"));
+        assertEquals(2, addressBook.indexOfAddress("WcAddress3"));
+
+        WalletAddressBookData replacement = new WalletAddressBookData("Dave", "WdAddress4");
+        addressBook.set(1, replacement);
+        assertFalse(addressBook.containsAddress("WbAddress2"));
+        assertEquals(1, addressBook.indexOfAddress("WdAddress4"));
+
+        addressBook.removeAll(Arrays.asList(first));
+        assertFalse(addressBook.containsAddress("WaAddress1"));
+        assertEquals(0, addressBook.indexOfAddress("WdAddress4"));
+
+        Iterator<WalletAddressBookData> iterator = addressBook.iterator();
+        iterator.next();
+        iterator.remove();
+        assertFalse(addressBook.containsAddress("WdAddress4"));
+        assertEquals(0, addressBook.indexOfAddress("WcAddress3"));
+
+        addressBook.clear();
+        assertFalse(addressBook.containsAddress("WcAddress3"));
+        assertEquals(-1, addressBook.indexOfAddress("WcAddress3"));
+    }
+
+    @Test
+    public void testDuplicateAddressesFindFirst() throws Exception {
+        WalletAddressBook addressBook = new WalletAddressBook();
+        WalletAddressBookData first = new WalletAddressBookData("First", "WaAddress1");
+        WalletAddressBookData duplicate = new WalletAddressBookData("Duplicate", "WaAddress1");
+        addressBook.add(new WalletAddressBookData("Other", "WbAddress2"));
+        addressBook.add(first);
+        addressBook.add(duplicate);
+
+        assertSame(first, addressBook.lookup("WaAddress1"));
+        assertEquals(1, addressBook.indexOfAddress("WaAddress1"));
+
+        addressBook.remove(1);
+        assertSame(duplicate, addressBook.lookup("WaAddress1"));
+        assertEquals(1, addressBook.indexOfAddress("WaAddress1"));
+    }
+
+    @Test
+    public void testSearchByPrefix() throws Exception {
+        WalletAddressBook addressBook = new WalletAddressBook();
+        WalletAddressBookData savings = new WalletAddressBookData("Savings", "WzAddress1");
+        WalletAddressBookData salary = new WalletAddressBookData("salary", "WsAddress2");
+        WalletAddressBookData shop = new WalletAddressBookData("Shop", "WyAddress3");
+        WalletAddressBookData unlabelled = new WalletAddressBookData("", "WsAddress4");
+        addressBook.add(savings);
+        addressBook.add(salary);
+        addressBook.add(shop);
+        addressBook.add(unlabelled);
+
+        // Labels ignoring case, in address book order.
+        assertEquals(Arrays.asList(savings, salary), addressBook.search("SA"));
+        assertEquals(Arrays.asList(shop), addressBook.search("sh"));
+
+        // Addresses.
+        assertEquals(Arrays.asList(salary, unlabelled), addressBook.search("Ws"));
+
+        // An entry matching on label and address appears once.
+        addressBook.updateLabel(shop, "wy shop");
+        assertEquals(Arrays.asList(shop), addressBook.search("wy"));
+        assertEquals(0, addressBook.search("Shop").size());
+
+        assertEquals(4, addressBook.search("").size());
+        assertEquals(4, addressBook.search(null).size());
+        assertEquals(0, addressBook.search("nothing").size());
+
+        int changeCount = addressBook.getChangeCount();
+        addressBook.remove(salary);
+        assertTrue(changeCount != addressBook.getChangeCount());
+        assertEquals(Arrays.asList(savings), addressBook.search("sa"));
+    }
+
+    @Test
+    public void testLargeAddressBook() throws Exception {
+        WalletAddressBook addressBook = new WalletAddressBook();
+        int numberOfAddresses = 50000;
+        for (int i = 0; i < numberOfAddresses; i++) {
+            addressBook.add(new WalletAddressBookData("Label " + i, "WAddress" + i));
+        }
+
+        for (int i = 0; i < numberOfAddresses; i++) {
+            assertEquals(i, addressBook.indexOfAddress("WAddress" + i));
+        }
+
+        List<WalletAddressBookData> found = addressBook.search("label 4999");
+        // 4999 and 49990 to 49999
+        assertEquals(11, found.size());
+        assertEquals("WAddress4999", found.get(0).getAddress());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.model.worldcoin.WalletBalanceCache;
+
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.core.Wallet.BalanceType;
+
+public class WalletBalanceCacheTest extends TestCase {
+
+    @Test
+    public void testBalanceIsCachedUntilInvalidated() throws Exception {
+        CountingWallet wallet = new CountingWallet();
+        WalletBalanceCache balanceCache = new WalletBalanceCache();
+
+        assertEquals(BigInteger.valueOf(1), balanceCache.getBalance(wallet, BalanceType.ESTIMATED));
+        assertEquals(BigInteger.valueOf(1), balanceCache.getBalance(wallet, BalanceType.ESTIMATED));
+        assertEquals(1, wallet.numberOfCalls);
+
+        // The balance types are cached separately.
+        assertEquals(BigInteger.valueOf(2), balanceCache.getBalance(wallet, BalanceType.AVAILABLE));
+        assertEquals(2, wallet.numberOfCalls);
+
+        // A wallet event invalidates both.
+        balanceCache.invalidate();
+        assertEquals(BigInteger.valueOf(3), balanceCache.getBalance(wallet, BalanceType.ESTIMATED));
+        assertEquals(BigInteger.valueOf(4), balanceCache.getBalance(wallet, BalanceType.AVAILABLE));
+        assertEquals(BigInteger.valueOf(3), balanceCache.getBalance(wallet, BalanceType.ESTIMATED));
+        assertEquals(4, wallet.numberOfCalls);
+
+        assertEquals(BigInteger.ZERO, balanceCache.getBalance(null, BalanceType.ESTIMATED));
+    }
+
+    /**
+     * Wallet whose balance is the number of times it has been asked for it.
+     */
+    private static class CountingWallet extends Wallet {
+        private static final long serialVersionUID = 1L;
+
+        int numberOfCalls = 0;
+
+        CountingWallet() {
+            super(NetworkParameters.prodNet());
+        }
+
+        @Override
+        public BigInteger getBalance(BalanceType balanceType) {
+            numberOfCalls++;
+            return BigInteger.valueOf(numberOfCalls);
+        }
+    }
+}
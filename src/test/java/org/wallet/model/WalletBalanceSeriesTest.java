@@ -0,0 +1,116 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.model.worldcoin.WalletBalanceSeries;
+import org.wallet.utils.Downsampler;
+
+import com.google.worldcoin.core.Sha256Hash;
+
+public class WalletBalanceSeriesTest extends TestCase {
+
+    private static final Sha256Hash HASH1 = Sha256Hash.create(new byte[] { 1 });
+    private static final Sha256Hash HASH2 = Sha256Hash.create(new byte[] { 2 });
+    private static final Sha256Hash HASH3 = Sha256Hash.create(new byte[] { 3 });
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        WalletBalanceSeries series = new WalletBalanceSeries();
+        series.rebuild(null);
+        assertFalse(series.isStale());
+
+        series.put(HASH1, new Date(1000), BigInteger.valueOf(100));
+        series.put(HASH2, new Date(3000), BigInteger.valueOf(-30));
+        assertEquals(2, series.size());
+        assertEquals(70, series.getBalance());
+
+        // Arrives out of order - the balances after it are recalculated.
+        series.put(HASH3, new Date(2000), BigInteger.valueOf(5));
+        assertEquals(75, series.getBalance());
+
+        WalletBalanceSeries.Points points = series.getPoints(1500, 4000);
+        // Start, two per transaction in the window, end.
+        assertEquals(6, points.size());
+        assertEquals(100.0, points.getBalances()[0]);
+        assertEquals(105.0, points.getBalances()[2]);
+        assertEquals(75.0, points.getBalances()[4]);
+        assertEquals(4000, points.getTimes()[5]);
+        assertEquals(75.0, points.getBalances()[5]);
+
+        // Putting the same transaction again does not double count it.
+        series.put(HASH3, new Date(2000), BigInteger.valueOf(5));
+        assertEquals(3, series.size());
+        assertEquals(75, series.getBalance());
+
+        series.remove(HASH1);
+        assertEquals(2, series.size());
+        assertEquals(-25, series.getBalance());
+
+        series.invalidate();
+        assertTrue(series.isStale());
+    }
+
+    @Test
+    public void testDownsample() throws Exception {
+        int size = 50000;
+        long[] x = new long[size];
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 1000.0);
+        }
+
+        int[] indices = Downsampler.largestTriangleThreeBuckets(x, y, size, 800);
+        assertEquals(800, indices.length);
+        assertEquals(0, indices[0]);
+        assertEquals(size - 1, indices[indices.length - 1]);
+        for (int i = 1; i < indices.length; i++) {
+            assertTrue(indices[i] > indices[i - 1]);
+        }
+
+        // Nothing to do for small series.
+        assertEquals(10, Downsampler.largestTriangleThreeBuckets(x, y, 10, 800).length);
+    }
+
+    @Test
+    public void testDownsampledStepsStayVertical() throws Exception {
+        WalletBalanceSeries series = new WalletBalanceSeries();
+        series.rebuild(null);
+        for (int i = 0; i < 1000; i++) {
+            series.put(Sha256Hash.create(new byte[] { (byte) i, (byte) (i >> 8) }), new Date(1000 + i * 10),
+                    BigInteger.valueOf(i % 3 == 0 ? -50 : 100));
+        }
+
+        WalletBalanceSeries.Points points = series.getPoints(0, 20000, 100);
+        assertEquals(2 * 100, points.size());
+        assertEquals(0.0, points.getBalances()[0]);
+        assertEquals((double) series.getBalance(), points.getBalances()[points.size() - 1]);
+
+        // Each step is a pair of points at the same time, starting from the balance the previous step ended at.
+        double previousBalance = points.getBalances()[0];
+        for (int i = 1; i < points.size() - 1; i += 2) {
+            assertEquals(points.getTimes()[i], points.getTimes()[i + 1]);
+            assertEquals(previousBalance, points.getBalances()[i]);
+            previousBalance = points.getBalances()[i + 1];
+        }
+    }
+}
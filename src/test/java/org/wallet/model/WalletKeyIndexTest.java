@@ -0,0 +1,113 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.model.worldcoin.WalletKeyIndex;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Wallet;
+
+public class WalletKeyIndexTest extends TestCase {
+
+    @Test
+    public void testLookupKeyByAddress() throws Exception {
+        NetworkParameters networkParameters = NetworkParameters.prodNet();
+        Wallet wallet = new Wallet(networkParameters);
+        List<CountingKey> keys = new ArrayList<CountingKey>();
+        for (int i = 0; i < 10; i++) {
+            CountingKey key = new CountingKey();
+            keys.add(key);
+            wallet.addKey(key);
+        }
+
+        WalletKeyIndex keyIndex = WalletKeyIndex.forWallet(wallet);
+        assertSame(keyIndex, WalletKeyIndex.forWallet(wallet));
+
+        for (CountingKey key : keys) {
+            String address = key.toAddress(networkParameters).toString();
+            assertSame(key, keyIndex.getKey(wallet, address, networkParameters));
+            assertEquals(address, keyIndex.getAddress(key, networkParameters));
+        }
+        assertNull(keyIndex.getKey(wallet, new ECKey().toAddress(networkParameters).toString(), networkParameters));
+        assertEquals(10, keyIndex.getAddresses(wallet, networkParameters).size());
+
+        // Each key was hashed once by the index.
+        for (CountingKey key : keys) {
+            assertEquals(1, key.numberOfHashes);
+        }
+    }
+
+    @Test
+    public void testKeysAdded() throws Exception {
+        NetworkParameters networkParameters = NetworkParameters.prodNet();
+        Wallet wallet = new Wallet(networkParameters);
+        wallet.addKey(new ECKey());
+
+        WalletKeyIndex keyIndex = WalletKeyIndex.forWallet(wallet);
+        assertEquals(1, keyIndex.getAddresses(wallet, networkParameters).size());
+
+        CountingKey newKey = new CountingKey();
+        wallet.addKey(newKey);
+        List<ECKey> newKeys = new ArrayList<ECKey>();
+        newKeys.add(newKey);
+        keyIndex.keysAdded(wallet, newKeys, networkParameters);
+        assertEquals(1, newKey.numberOfHashes);
+
+        String address = keyIndex.getAddress(newKey, networkParameters);
+        assertSame(newKey, keyIndex.getKey(wallet, address, networkParameters));
+        assertEquals(2, keyIndex.getAddresses(wallet, networkParameters).size());
+        assertEquals(1, newKey.numberOfHashes);
+    }
+
+    @Test
+    public void testKeysReplacedByEncryption() throws Exception {
+        NetworkParameters networkParameters = NetworkParameters.prodNet();
+        Wallet wallet = new Wallet(networkParameters);
+        CountingKey key = new CountingKey();
+        wallet.addKey(key);
+
+        WalletKeyIndex keyIndex = WalletKeyIndex.forWallet(wallet);
+        String address = keyIndex.getAddress(key, networkParameters);
+        assertFalse(keyIndex.getKey(wallet, address, networkParameters).isEncrypted());
+
+        wallet.encrypt("password");
+
+        // The encrypted key is found, and the address was not worked out again.
+        ECKey encryptedKey = keyIndex.getKey(wallet, address, networkParameters);
+        assertNotNull(encryptedKey);
+        assertTrue(encryptedKey.isEncrypted());
+        assertEquals(1, key.numberOfHashes);
+    }
+
+    private static class CountingKey extends ECKey {
+        private static final long serialVersionUID = 1L;
+
+        int numberOfHashes = 0;
+
+        @Override
+        public byte[] getPubKeyHash() {
+            numberOfHashes++;
+            return super.getPubKeyHash();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.PeerGroup;
+
+public class BloomFilterMonitorTest extends TestCase {
+
+    private static final double DEFAULT_RATE = PeerGroup.DEFAULT_BLOOM_FILTER_FP_RATE;
+
+    @Test
+    public void testFilterMadeLargerWhenOverBudget() throws Exception {
+        assertEquals(DEFAULT_RATE / 4, BloomFilterMonitor.nextFilterFalsePositiveRate(DEFAULT_RATE, 0.9, 1000));
+
+        // Not below the lowest rate, and not once the filter is as large as peers accept.
+        assertEquals(BloomFilterMonitor.LOWEST_FILTER_FALSE_POSITIVE_RATE, BloomFilterMonitor.nextFilterFalsePositiveRate(
+                BloomFilterMonitor.LOWEST_FILTER_FALSE_POSITIVE_RATE * 2, 0.9, 1000));
+        assertEquals(DEFAULT_RATE, BloomFilterMonitor.nextFilterFalsePositiveRate(DEFAULT_RATE, 0.9,
+                BloomFilterMonitor.MAXIMUM_FILTER_SIZE));
+    }
+
+    @Test
+    public void testFilterMadeSmallerWhenWellUnderBudget() throws Exception {
+        assertEquals(DEFAULT_RATE / 2, BloomFilterMonitor.nextFilterFalsePositiveRate(DEFAULT_RATE / 4, 0.01, 1000));
+        assertEquals(DEFAULT_RATE, BloomFilterMonitor.nextFilterFalsePositiveRate(DEFAULT_RATE, 0.01, 1000));
+
+        // Within budget - left alone.
+        assertEquals(DEFAULT_RATE / 4, BloomFilterMonitor.nextFilterFalsePositiveRate(DEFAULT_RATE / 4, 0.2, 1000));
+    }
+
+    @Test
+    public void testMeasuredOverASample() throws Exception {
+        WorldcoinWalletPeerGroup peerGroup = new WorldcoinWalletPeerGroup(null, NetworkParameters.prodNet(), null);
+        BloomFilterMonitor monitor = peerGroup.getBloomFilterMonitor();
+        assertEquals(-1.0, monitor.getMeasuredFalsePositiveRate());
+
+        for (int i = 0; i < BloomFilterMonitor.SAMPLE_SIZE - 1; i++) {
+            monitor.transactionReceived(i % 4 == 0);
+        }
+        assertEquals(-1.0, monitor.getMeasuredFalsePositiveRate());
+
+        monitor.transactionReceived(true);
+        assertEquals(0.74, monitor.getMeasuredFalsePositiveRate(), 0.000001);
+        assertEquals(DEFAULT_RATE / 4, monitor.getFilterFalsePositiveRate());
+        assertEquals(1, monitor.getNumberOfAdjustments());
+        assertEquals(0, monitor.getFilterElementCount());
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.network.BroadcastTracker.Propagation;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.PeerGroup;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.TransactionConfidence;
+
+public class BroadcastTrackerTest extends TestCase {
+
+    private static final long START = 1000000;
+
+    private static Transaction transaction(int value) {
+        NetworkParameters params = NetworkParameters.prodNet();
+        Transaction transaction = new Transaction(params);
+        transaction.addOutput(BigInteger.valueOf(value), new ECKey());
+        return transaction;
+    }
+
+    @Test
+    public void testPropagationTimes() throws Exception {
+        Propagation propagation = new Propagation(transaction(1), START);
+        assertEquals(-1, propagation.getTimeToFirstPeer());
+
+        propagation.peersChanged(1, START + 300);
+        propagation.peersChanged(2, START + 700);
+        assertEquals(300, propagation.getTimeToFirstPeer());
+        assertEquals(-1, propagation.getTimeToTargetPeers());
+        assertTrue(propagation.isPropagating());
+
+        propagation.peersChanged(BroadcastTracker.TARGET_NUMBER_OF_PEERS, START + 1200);
+        assertEquals(300, propagation.getTimeToFirstPeer());
+        assertEquals(1200, propagation.getTimeToTargetPeers());
+        assertEquals(BroadcastTracker.TARGET_NUMBER_OF_PEERS, propagation.getNumberOfPeers());
+        assertFalse(propagation.isPropagating());
+    }
+
+    @Test
+    public void testRebroadcastOnlyWhenNotPropagated() throws Exception {
+        long interval = BroadcastTracker.DEFAULT_REBROADCAST_INTERVAL;
+        Propagation propagation = new Propagation(transaction(1), START);
+        assertFalse(propagation.isRebroadcastDue(interval, START + interval - 1));
+        assertTrue(propagation.isRebroadcastDue(interval, START + interval));
+
+        // The interval starts again from each broadcast.
+        propagation.rebroadcast(START + interval);
+        assertEquals(2, propagation.getNumberOfBroadcasts());
+        assertFalse(propagation.isRebroadcastDue(interval, START + interval + 1));
+
+        propagation.peersChanged(BroadcastTracker.TARGET_NUMBER_OF_PEERS, START + interval + 1);
+        assertFalse(propagation.isRebroadcastDue(interval, START + 10 * interval));
+
+        Propagation confirmed = new Propagation(transaction(2), START);
+        confirmed.finish();
+        assertFalse(confirmed.isRebroadcastDue(interval, START + 10 * interval));
+    }
+
+    @Test
+    public void testNumberOfTransactionsBounded() throws Exception {
+        BroadcastTracker tracker = new BroadcastTracker(new PeerGroup(NetworkParameters.prodNet()));
+        Transaction first = transaction(1);
+        tracker.track(first, START);
+        Propagation firstPropagation = tracker.getPropagation(first.getHash());
+        TransactionConfidence.Listener firstListener = firstPropagation.getConfidenceListener();
+        assertNotNull(firstListener);
+        for (int i = 0; i < BroadcastTracker.MAXIMUM_NUMBER_OF_TRANSACTIONS; i++) {
+            tracker.track(transaction(i + 2), START);
+        }
+        assertEquals(BroadcastTracker.MAXIMUM_NUMBER_OF_TRANSACTIONS, tracker.getPropagations().size());
+        assertNull(tracker.getPropagation(first.getHash()));
+
+        // The dropped transaction, still propagating, is no longer listened to.
+        assertNull(firstPropagation.getConfidenceListener());
+        assertFalse(first.getConfidence().removeEventListener(firstListener));
+
+        // No peers - nothing broadcast, to be sent as peers connect.
+        assertTrue(tracker.rebroadcast(START + 10 * BroadcastTracker.DEFAULT_REBROADCAST_INTERVAL).isEmpty());
+    }
+}
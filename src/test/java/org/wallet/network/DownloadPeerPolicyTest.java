@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.network.DownloadPeerPolicy.Candidate;
+import org.wallet.network.DownloadPeerPolicy.DownloadRate;
+
+public class DownloadPeerPolicyTest extends TestCase {
+
+    private static final long START = 1000000;
+
+    @Test
+    public void testCandidateOrder() throws Exception {
+        Candidate fast = new Candidate(200, 300);
+        Candidate faster = new Candidate(400, 500);
+        Candidate untriedQuickPing = new Candidate(-1, 50);
+        Candidate untriedSlowPing = new Candidate(-1, 150);
+        Candidate untriedNoPing = new Candidate(-1, -1);
+        Candidate slow = new Candidate(DownloadPeerPolicy.MINIMUM_BLOCKS_PER_SECOND - 1, 10);
+
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        candidates.add(slow);
+        candidates.add(untriedNoPing);
+        candidates.add(untriedSlowPing);
+        candidates.add(fast);
+        candidates.add(untriedQuickPing);
+        candidates.add(faster);
+        Collections.sort(candidates);
+
+        // Known quick first, then untried by ping time, then known slow.
+        assertSame(faster, candidates.get(0));
+        assertSame(fast, candidates.get(1));
+        assertSame(untriedQuickPing, candidates.get(2));
+        assertSame(untriedSlowPing, candidates.get(3));
+        assertSame(untriedNoPing, candidates.get(4));
+        assertSame(slow, candidates.get(5));
+    }
+
+    @Test
+    public void testDownloadRate() throws Exception {
+        DownloadRate rate = new DownloadRate(START);
+        for (int i = 0; i < 50; i++) {
+            rate.blockDownloaded(10000 - i);
+        }
+        double blocksPerSecond = rate.check(START + 10000);
+        assertEquals(5.0, blocksPerSecond, 0.001);
+
+        // Not judged, or kept for choosing peers, in the grace period.
+        assertFalse(rate.isPastGracePeriod(START + 10000));
+        assertFalse(rate.isTooSlow(blocksPerSecond, START + 10000));
+        assertTrue(rate.isPastGracePeriod(START + DownloadPeerPolicy.GRACE_PERIOD));
+        assertTrue(rate.isTooSlow(blocksPerSecond, START + DownloadPeerPolicy.GRACE_PERIOD));
+
+        // Each check is of the blocks since the last one.
+        for (int i = 0; i < 200; i++) {
+            rate.blockDownloaded(9950 - i);
+        }
+        blocksPerSecond = rate.check(START + 20000);
+        assertEquals(20.0, blocksPerSecond, 0.001);
+        assertFalse(rate.isTooSlow(blocksPerSecond, START + 20000));
+    }
+
+    @Test
+    public void testNotJudgedNearTheEnd() throws Exception {
+        DownloadRate rate = new DownloadRate(START);
+        rate.blockDownloaded(DownloadPeerPolicy.MINIMUM_BLOCKS_LEFT);
+        long now = START + DownloadPeerPolicy.GRACE_PERIOD;
+        assertFalse(rate.isTooSlow(rate.check(now), now));
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class DownloadProgressReporterTest extends TestCase {
+
+    /**
+     * Long enough that the sampler does not run by itself during the tests.
+     */
+    private static final long LONG_SAMPLE_INTERVAL = 60000;
+
+    @Test
+    public void testOneSnapshotPerSample() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        DownloadProgressReporter reporter = new DownloadProgressReporter(listener, LONG_SAMPLE_INTERVAL);
+        reporter.start();
+        try {
+            for (int blocksLeft = 1000; blocksLeft > 900; blocksLeft--) {
+                reporter.blockDownloaded(100 - blocksLeft / 10.0, blocksLeft, 1000L * blocksLeft);
+            }
+            reporter.sample();
+
+            assertEquals(1, listener.progresses.size());
+            DownloadProgress progress = listener.progresses.get(0);
+            assertEquals(901, progress.getBlocksLeft());
+            assertEquals(100 - 90.1, progress.getPercentComplete(), 0.0001);
+            assertEquals(901000L, progress.getLastBlockDate().getTime());
+            assertSame(progress, reporter.getLatestProgress());
+
+            // No progress, no snapshot.
+            reporter.sample();
+            assertEquals(1, listener.progresses.size());
+        } finally {
+            reporter.stop();
+        }
+    }
+
+    @Test
+    public void testRateAndTimeRemaining() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        DownloadProgressReporter reporter = new DownloadProgressReporter(listener, LONG_SAMPLE_INTERVAL);
+        reporter.start();
+        try {
+            reporter.blockDownloaded(0, 1000, 0);
+            reporter.sample();
+            assertEquals(DownloadProgress.UNKNOWN_TIME_REMAINING, listener.progresses.get(0).getSecondsRemaining());
+
+            Thread.sleep(100);
+            reporter.blockDownloaded(50, 500, 0);
+            reporter.sample();
+
+            DownloadProgress progress = listener.progresses.get(1);
+            assertTrue("Wrong rate : " + progress.getBlocksPerSecond(), progress.getBlocksPerSecond() > 0);
+            assertTrue(progress.getSecondsRemaining() >= 0);
+            assertEquals((long) Math.ceil(500 / progress.getBlocksPerSecond()), progress.getSecondsRemaining());
+        } finally {
+            reporter.stop();
+        }
+    }
+
+    @Test
+    public void testNothingReportedAfterStop() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        DownloadProgressReporter reporter = new DownloadProgressReporter(listener, LONG_SAMPLE_INTERVAL);
+        reporter.start();
+        reporter.blockDownloaded(10, 90, 0);
+        reporter.stop();
+        reporter.sample();
+        assertEquals(0, listener.progresses.size());
+    }
+
+    @Test
+    public void testSamplesAtFixedRate() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        DownloadProgressReporter reporter = new DownloadProgressReporter(listener, 50);
+        reporter.start();
+        try {
+            reporter.blockDownloaded(10, 90, 0);
+            Thread.sleep(500);
+            // Reported once even though the sampler has run several times.
+            assertEquals(1, listener.progresses.size());
+        } finally {
+            reporter.stop();
+        }
+    }
+
+    private static class RecordingListener implements DownloadProgressReporter.Listener {
+        final List<DownloadProgress> progresses = Collections.synchronizedList(new ArrayList<DownloadProgress>());
+
+        @Override
+        public void progressSampled(DownloadProgress progress) {
+            progresses.add(progress);
+        }
+    }
+}
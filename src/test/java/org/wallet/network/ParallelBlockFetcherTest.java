@@ -0,0 +1,265 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.network.ParallelBlockFetcher.Batch;
+import org.wallet.network.ParallelBlockFetcher.FetchSchedule;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.FilteredBlock;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Peer;
+import com.google.worldcoin.core.PeerAddress;
+import com.google.worldcoin.core.Ping;
+import com.google.worldcoin.core.Sha256Hash;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.Utils;
+import com.google.worldcoin.core.VersionMessage;
+
+public class ParallelBlockFetcherTest extends TestCase {
+
+    private static final NetworkParameters PARAMS = NetworkParameters.prodNet();
+
+    private static final long NOW = 1380000000000L;
+
+    private static List<Sha256Hash> hashes(int from, int to) {
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+        for (int i = from; i < to; i++) {
+            hashes.add(Sha256Hash.create(Integer.toString(i).getBytes()));
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testBlocksAddedInOrder() throws Exception {
+        List<Sha256Hash> hashes = hashes(0, 6);
+        FetchSchedule<String> schedule = new FetchSchedule<String>();
+        schedule.addHashes(hashes);
+
+        List<Sha256Hash> first = schedule.nextBatch(3);
+        List<Sha256Hash> second = schedule.nextBatch(3);
+        assertEquals(hashes.subList(0, 3), first);
+        assertEquals(hashes.subList(3, 6), second);
+        assertTrue(schedule.nextBatch(3).isEmpty());
+
+        // The second batch arrives first.
+        for (int i = 3; i < 6; i++) {
+            assertTrue(schedule.fetched(hashes.get(i), "block" + i));
+        }
+        assertNull(schedule.takeNextToAdd());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(schedule.fetched(hashes.get(i), "block" + i));
+        }
+        for (int i = 0; i < 6; i++) {
+            assertEquals("block" + i, schedule.takeNextToAdd());
+        }
+        assertNull(schedule.takeNextToAdd());
+        assertTrue(schedule.isAllAdded());
+    }
+
+    @Test
+    public void testMissingBlocksFetchedAgain() throws Exception {
+        List<Sha256Hash> hashes = hashes(0, 4);
+        FetchSchedule<String> schedule = new FetchSchedule<String>();
+        schedule.addHashes(hashes);
+
+        List<Sha256Hash> batch = schedule.nextBatch(4);
+        schedule.fetched(hashes.get(0), "block0");
+        schedule.fetched(hashes.get(2), "block2");
+        schedule.fetchAgain(batch);
+
+        // Only the ones that did not arrive, once each.
+        schedule.fetchAgain(batch);
+        List<Sha256Hash> again = schedule.nextBatch(4);
+        assertEquals(2, again.size());
+        assertEquals(hashes.get(1), again.get(0));
+        assertEquals(hashes.get(3), again.get(1));
+
+        // Blocks already added are not wanted.
+        assertEquals("block0", schedule.takeNextToAdd());
+        assertFalse(schedule.fetched(hashes.get(0), "block0"));
+        assertFalse(schedule.fetched(hashes(10, 11).get(0), "unknown"));
+    }
+
+    @Test
+    public void testFetchingLimitedToBufferedBlocks() throws Exception {
+        List<Sha256Hash> hashes = hashes(0, ParallelBlockFetcher.MAXIMUM_BUFFERED_BLOCKS + 10);
+        FetchSchedule<String> schedule = new FetchSchedule<String>();
+        schedule.addHashes(hashes);
+
+        assertEquals(ParallelBlockFetcher.MAXIMUM_BUFFERED_BLOCKS, schedule.nextBatch(Integer.MAX_VALUE).size());
+        assertTrue(schedule.nextBatch(10).isEmpty());
+        assertEquals(10, schedule.getNumberNotFetched());
+
+        // Adding a block to the chain lets one more be fetched.
+        schedule.fetched(hashes.get(0), "block0");
+        schedule.takeNextToAdd();
+        assertEquals(1, schedule.nextBatch(10).size());
+    }
+
+    @Test
+    public void testBlocksArrivingOutOfOrderKeepTheirTransactions() throws Exception {
+        Transaction transaction1 = transaction(1);
+        Transaction transaction2 = transaction(2);
+        FilteredBlock block1 = filteredBlock(1, transaction1);
+        FilteredBlock block2 = filteredBlock(2, transaction2);
+        Peer peer = peer(1);
+
+        ParallelBlockFetcher fetcher = new ParallelBlockFetcher(null, null, PARAMS);
+        fetcher.schedule.addHashes(Arrays.asList(block1.getHash(), block2.getHash()));
+        Batch batch = fetcher.assignBatch(peer, NOW);
+        assertEquals(2, batch.hashes.size());
+
+        // The second block and its transaction come before the first.
+        assertNull(fetcher.filterMessage(peer, block2));
+        assertNull(fetcher.filterMessage(peer, transaction2));
+        assertNull(fetcher.filterMessage(peer, block1));
+        // A transaction not in the block is passed on.
+        Transaction other = transaction(3);
+        assertSame(other, fetcher.filterMessage(peer, other));
+        assertNull(fetcher.filterMessage(peer, transaction1));
+        Ping ping = new Ping(1);
+        assertSame(ping, fetcher.filterMessage(peer, ping));
+        fetcher.batchEnded(peer, batch);
+
+        FilteredBlock first = fetcher.schedule.takeNextToAdd();
+        assertSame(block1, first);
+        assertEquals(1, first.getAssociatedTransactions().size());
+        assertSame(transaction1, first.getAssociatedTransactions().get(transaction1.getHash()));
+        FilteredBlock second = fetcher.schedule.takeNextToAdd();
+        assertSame(block2, second);
+        assertSame(transaction2, second.getAssociatedTransactions().get(transaction2.getHash()));
+        assertTrue(fetcher.schedule.isAllAdded());
+        assertNull(fetcher.assignBatch(peer, NOW));
+    }
+
+    @Test
+    public void testUnrequestedBlockDroppedWithItsTransactions() throws Exception {
+        Transaction transaction = transaction(1);
+        FilteredBlock block = filteredBlock(1, transaction);
+        Peer peer = peer(1);
+        ParallelBlockFetcher fetcher = new ParallelBlockFetcher(null, null, PARAMS);
+
+        assertNull(fetcher.filterMessage(peer, block));
+        assertNull(fetcher.filterMessage(peer, transaction));
+        Transaction other = transaction(2);
+        assertSame(other, fetcher.filterMessage(peer, other));
+
+        // Once the block is over the transaction is not taken.
+        Ping ping = new Ping(1);
+        assertSame(ping, fetcher.filterMessage(peer, ping));
+        assertSame(transaction, fetcher.filterMessage(peer, transaction));
+    }
+
+    @Test
+    public void testBlocksOfLostPeerFetchedAgain() throws Exception {
+        Transaction transaction1 = transaction(1);
+        FilteredBlock block1 = filteredBlock(1, transaction1);
+        FilteredBlock block2 = filteredBlock(2, transaction(2));
+        Peer lostPeer = peer(1);
+        Peer otherPeer = peer(2);
+
+        ParallelBlockFetcher fetcher = new ParallelBlockFetcher(null, null, PARAMS);
+        fetcher.schedule.addHashes(Arrays.asList(block1.getHash(), block2.getHash()));
+        fetcher.assignBatch(lostPeer, NOW);
+        assertNull(fetcher.assignBatch(otherPeer, NOW));
+
+        // The peer goes part way through the first block.
+        assertNull(fetcher.filterMessage(lostPeer, block1));
+        fetcher.peerDisconnected(lostPeer);
+        assertNull(fetcher.schedule.takeNextToAdd());
+
+        Batch again = fetcher.assignBatch(otherPeer, NOW);
+        assertEquals(2, again.hashes.size());
+        assertTrue(again.hashes.contains(block1.getHash()));
+        assertTrue(again.hashes.contains(block2.getHash()));
+
+        // The rest of the lost peer's block is not taken.
+        assertSame(transaction1, fetcher.filterMessage(lostPeer, transaction1));
+    }
+
+    @Test
+    public void testTimedOutBatchFetchedAgain() throws Exception {
+        FilteredBlock block = filteredBlock(1, transaction(1));
+        Peer slowPeer = peer(1);
+        Peer otherPeer = peer(2);
+
+        ParallelBlockFetcher fetcher = new ParallelBlockFetcher(null, null, PARAMS);
+        fetcher.schedule.addHashes(Arrays.asList(block.getHash()));
+        fetcher.assignBatch(slowPeer, NOW);
+
+        fetcher.timeOutBatches(NOW + ParallelBlockFetcher.BATCH_TIMEOUT);
+        assertNull(fetcher.assignBatch(otherPeer, NOW + ParallelBlockFetcher.BATCH_TIMEOUT));
+
+        fetcher.timeOutBatches(NOW + ParallelBlockFetcher.BATCH_TIMEOUT + 1);
+        Batch again = fetcher.assignBatch(otherPeer, NOW + ParallelBlockFetcher.BATCH_TIMEOUT + 1);
+        assertEquals(1, again.hashes.size());
+
+        // A late block from the slow peer is no longer asked for, so it is dropped.
+        assertNull(fetcher.filterMessage(slowPeer, block));
+        fetcher.filterMessage(slowPeer, new Ping(1));
+        assertNull(fetcher.schedule.takeNextToAdd());
+    }
+
+    @Test
+    public void testStalledWithoutProgress() throws Exception {
+        ParallelBlockFetcher fetcher = new ParallelBlockFetcher(null, null, PARAMS);
+        assertFalse(fetcher.isStalled(ParallelBlockFetcher.STALL_TIMEOUT));
+        assertTrue(fetcher.isStalled(ParallelBlockFetcher.STALL_TIMEOUT + 1));
+    }
+
+    private static Peer peer(int number) throws Exception {
+        PeerAddress address = new PeerAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) number }), PARAMS.getPort());
+        return new Peer(PARAMS, new VersionMessage(PARAMS, 0), null, address);
+    }
+
+    private static Transaction transaction(int number) {
+        Transaction transaction = new Transaction(PARAMS);
+        transaction.addOutput(BigInteger.valueOf(number), new ECKey());
+        return transaction;
+    }
+
+    /**
+     * A filtered block of one matching transaction, so that the merkle root is the hash of the transaction.
+     */
+    private static FilteredBlock filteredBlock(int nonce, Transaction transaction) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utils.uint32ToByteStreamLE(1, bytes);
+        bytes.write(new byte[32]);
+        bytes.write(Utils.reverseBytes(transaction.getHash().getBytes()));
+        Utils.uint32ToByteStreamLE(NOW / 1000, bytes);
+        Utils.uint32ToByteStreamLE(0x1d00ffffL, bytes);
+        Utils.uint32ToByteStreamLE(nonce, bytes);
+        // The partial merkle tree.
+        Utils.uint32ToByteStreamLE(1, bytes);
+        bytes.write(1);
+        bytes.write(Utils.reverseBytes(transaction.getHash().getBytes()));
+        bytes.write(1);
+        bytes.write(1);
+        return new FilteredBlock(PARAMS, bytes.toByteArray());
+    }
+}
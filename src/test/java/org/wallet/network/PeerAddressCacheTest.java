@@ -0,0 +1,133 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PeerAddressCacheTest extends TestCase {
+
+    private static final long NOW = 1380000000000L;
+
+    private File peersFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        peersFile = File.createTempFile("peerAddressCacheTest", WorldcoinWalletService.PEERS_SUFFIX);
+        peersFile.delete();
+        peersFile.deleteOnExit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        peersFile.delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        InetSocketAddress slow = address(1);
+        InetSocketAddress fast = address(2);
+        InetSocketAddress unknownOld = address(3);
+        InetSocketAddress unknownNew = address(4);
+
+        PeerAddressCache cache = new PeerAddressCache(peersFile);
+        cache.load(NOW);
+        assertTrue(cache.isEmpty());
+
+        cache.recordSuccess(slow, NOW - 4000);
+        cache.recordLatency(slow, 500);
+        cache.recordSuccess(fast, NOW - 3000);
+        cache.recordLatency(fast, 50);
+        cache.recordSuccess(unknownOld, NOW - 2000);
+        cache.recordSuccess(unknownNew, NOW - 1000);
+        cache.save();
+
+        PeerAddressCache reloaded = new PeerAddressCache(peersFile);
+        reloaded.load(NOW);
+        List<InetSocketAddress> addresses = reloaded.getAddresses();
+        assertEquals(4, addresses.size());
+        // Quickest first, then the most recent of those without a latency.
+        assertEquals(fast, addresses.get(0));
+        assertEquals(slow, addresses.get(1));
+        assertEquals(unknownNew, addresses.get(2));
+        assertEquals(unknownOld, addresses.get(3));
+    }
+
+    @Test
+    public void testOnlyWrittenWhenChanged() throws Exception {
+        PeerAddressCache cache = new PeerAddressCache(peersFile);
+        cache.load(NOW);
+        assertFalse(cache.saveIfChanged());
+        assertFalse(peersFile.exists());
+
+        cache.recordSuccess(address(1), NOW);
+        assertTrue(cache.saveIfChanged());
+        assertTrue(peersFile.exists());
+        assertFalse(cache.saveIfChanged());
+
+        // The same latency again is not a change.
+        cache.recordLatency(address(1), 100);
+        assertTrue(cache.saveIfChanged());
+        cache.recordLatency(address(1), 100);
+        assertFalse(cache.saveIfChanged());
+    }
+
+    @Test
+    public void testOldAndUnreadableAddressesAreSkipped() throws Exception {
+        FileOutputStream outputStream = new FileOutputStream(peersFile);
+        outputStream.write(("# address port lastSuccess latency\n"
+                + "10.0.0.1 11081 " + NOW + " 100\n"
+                + "10.0.0.2 11081 " + (NOW - PeerAddressCache.MAXIMUM_AGE - 1) + " 100\n"
+                + "10.0.0.3 notAPort " + NOW + " 100\n"
+                + "10.0.0.4 11081\n"
+                + "\n").getBytes("UTF-8"));
+        outputStream.close();
+
+        PeerAddressCache cache = new PeerAddressCache(peersFile);
+        cache.load(NOW);
+        List<InetSocketAddress> addresses = cache.getAddresses();
+        assertEquals(1, addresses.size());
+        assertEquals(new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 11081), addresses.get(0));
+    }
+
+    @Test
+    public void testOnlyMostRecentAreKept() throws Exception {
+        PeerAddressCache cache = new PeerAddressCache(peersFile);
+        int numberOfAddresses = PeerAddressCache.MAXIMUM_NUMBER_OF_ADDRESSES + 10;
+        for (int i = 0; i < numberOfAddresses; i++) {
+            cache.recordSuccess(address(i), NOW - numberOfAddresses + i);
+        }
+        cache.save();
+
+        PeerAddressCache reloaded = new PeerAddressCache(peersFile);
+        reloaded.load(NOW);
+        List<InetSocketAddress> addresses = reloaded.getAddresses();
+        assertEquals(PeerAddressCache.MAXIMUM_NUMBER_OF_ADDRESSES, addresses.size());
+        assertFalse(addresses.contains(address(0)));
+        assertEquals(address(numberOfAddresses - 1), addresses.get(0));
+    }
+
+    private InetSocketAddress address(int i) throws Exception {
+        return new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 1, (byte) (i >> 8), (byte) i }), 11081);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PeerAddressResolverTest extends TestCase {
+
+    private static final long WAIT = 10; // seconds
+
+    /**
+     * Looks up names in a map. The name "slow" waits until released.
+     */
+    private static class MapLookup implements PeerAddressResolver.Lookup {
+        final Map<String, InetAddress> addresses = new HashMap<String, InetAddress>();
+        final CountDownLatch releaseSlow = new CountDownLatch(1);
+        final CountDownLatch slowReleased = new CountDownLatch(1);
+        final AtomicInteger numberOfLookUps = new AtomicInteger();
+
+        @Override
+        public InetAddress lookUp(String hostname) throws UnknownHostException {
+            numberOfLookUps.incrementAndGet();
+            if ("slow".equals(hostname)) {
+                try {
+                    releaseSlow.await();
+                } catch (InterruptedException e) {
+                    throw new UnknownHostException(hostname);
+                } finally {
+                    slowReleased.countDown();
+                }
+            }
+            InetAddress address = addresses.get(hostname);
+            if (address == null) {
+                throw new UnknownHostException(hostname);
+            }
+            return address;
+        }
+    }
+
+    private static class QueueListener implements PeerAddressResolver.Listener {
+        final BlockingQueue<String> resolved = new LinkedBlockingQueue<String>();
+        final BlockingQueue<Integer> finished = new LinkedBlockingQueue<Integer>();
+
+        @Override
+        public void resolved(String hostname, InetAddress address) {
+            resolved.add(hostname + "=" + address.getHostAddress());
+        }
+
+        @Override
+        public void finished(int numberResolved) {
+            finished.add(numberResolved);
+        }
+    }
+
+    private MapLookup lookup;
+
+    @Override
+    protected void setUp() throws Exception {
+        lookup = new MapLookup();
+        lookup.addresses.put("fast", InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }));
+        lookup.addresses.put("slow", InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 }));
+        PeerAddressResolver.INSTANCE.clear();
+        PeerAddressResolver.INSTANCE.setLookup(lookup);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        lookup.releaseSlow.countDown();
+        PeerAddressResolver.INSTANCE.setLookup(null);
+        PeerAddressResolver.INSTANCE.setResolveTimeout(PeerAddressResolver.RESOLVE_TIMEOUT);
+        PeerAddressResolver.INSTANCE.clear();
+    }
+
+    @Test
+    public void testSlowNameDoesNotHoldUpOthers() throws Exception {
+        QueueListener listener = new QueueListener();
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("slow", "unknown", "fast"), listener);
+
+        assertEquals("fast=10.0.0.1", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+
+        lookup.releaseSlow.countDown();
+        assertEquals("slow=10.0.0.2", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), listener.finished.poll(WAIT, TimeUnit.SECONDS));
+        assertNull(listener.resolved.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testResolvedAddressesAreKept() throws Exception {
+        QueueListener listener = new QueueListener();
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("fast"), listener);
+        assertEquals("fast=10.0.0.1", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+        assertEquals(1, lookup.numberOfLookUps.get());
+
+        // Still live - passed on straight away without a look up.
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("fast"), listener);
+        assertEquals("fast=10.0.0.1", listener.resolved.poll());
+        assertEquals(1, lookup.numberOfLookUps.get());
+
+        // Expired - looked up again.
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("fast"), listener,
+                System.currentTimeMillis() + PeerAddressResolver.TIME_TO_LIVE + 1);
+        assertEquals("fast=10.0.0.1", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+        assertEquals(2, lookup.numberOfLookUps.get());
+    }
+
+    @Test
+    public void testLastKnownAddressUsedWhenLookUpFails() throws Exception {
+        QueueListener listener = new QueueListener();
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("fast"), listener);
+        assertEquals("fast=10.0.0.1", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+
+        lookup.addresses.remove("fast");
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("fast"), listener,
+                System.currentTimeMillis() + PeerAddressResolver.TIME_TO_LIVE + 1);
+        assertEquals("fast=10.0.0.1", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+        assertNull(listener.resolved.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFirstLookUpTimesOut() throws Exception {
+        PeerAddressResolver.INSTANCE.setResolveTimeout(100);
+        QueueListener listener = new QueueListener();
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("slow", "fast"), listener);
+
+        assertEquals("fast=10.0.0.1", listener.resolved.poll(WAIT, TimeUnit.SECONDS));
+        // Nothing is known for the slow name so it is given up on.
+        assertEquals(Integer.valueOf(1), listener.finished.poll(WAIT, TimeUnit.SECONDS));
+        assertNull(listener.resolved.poll());
+
+        // The look up carries on and its address is kept for next time.
+        lookup.releaseSlow.countDown();
+        assertTrue(lookup.slowReleased.await(WAIT, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("slow"), listener);
+        assertEquals("slow=10.0.0.2", listener.resolved.poll());
+        assertEquals(2, lookup.numberOfLookUps.get());
+        assertEquals(Integer.valueOf(1), listener.finished.poll());
+    }
+
+    @Test
+    public void testFinishedWhenNothingResolves() throws Exception {
+        QueueListener listener = new QueueListener();
+        PeerAddressResolver.INSTANCE.resolve(Arrays.asList("unknown"), listener);
+        assertEquals(Integer.valueOf(0), listener.finished.poll(WAIT, TimeUnit.SECONDS));
+        assertTrue(listener.resolved.isEmpty());
+
+        PeerAddressResolver.INSTANCE.resolve(Arrays.<String> asList(), listener);
+        assertEquals(Integer.valueOf(0), listener.finished.poll());
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.network.PeerHealthMonitor.PeerStatistics;
+
+public class PeerHealthMonitorTest extends TestCase {
+
+    private static final long START = 1000000;
+
+    @Test
+    public void testNewPeerIsHealthyUntilStale() throws Exception {
+        PeerStatistics statistics = new PeerStatistics(START);
+        assertTrue(statistics.isHealthy(START));
+        assertEquals(-1, statistics.getAverageRoundTripTime());
+
+        assertTrue(statistics.isHealthy(START + PeerHealthMonitor.STALE_TIME));
+        assertFalse(statistics.isHealthy(START + PeerHealthMonitor.STALE_TIME + 1));
+
+        // Any message from the peer counts.
+        statistics.seen(START + PeerHealthMonitor.STALE_TIME);
+        assertTrue(statistics.isHealthy(START + PeerHealthMonitor.STALE_TIME + 1));
+    }
+
+    @Test
+    public void testRoundTripTimes() throws Exception {
+        PeerStatistics statistics = new PeerStatistics(START);
+
+        statistics.pingSent(START);
+        statistics.pingAnswered(100, START + 100);
+        assertEquals(100, statistics.getLastRoundTripTime());
+        assertEquals(100, statistics.getAverageRoundTripTime());
+        assertEquals(START + 100, statistics.getLastSeen());
+
+        statistics.pingSent(START + 200);
+        statistics.pingAnswered(200, START + 400);
+        assertEquals(200, statistics.getLastRoundTripTime());
+        assertEquals(130, statistics.getAverageRoundTripTime());
+        assertEquals(2, statistics.getPingsSent());
+        assertEquals(2, statistics.getPingsAnswered());
+    }
+
+    @Test
+    public void testMissedPingsMakePeerUnhealthy() throws Exception {
+        PeerStatistics statistics = new PeerStatistics(START);
+        long now = START;
+        for (int i = 0; i < PeerHealthMonitor.MAXIMUM_MISSED_PINGS; i++) {
+            assertTrue(statistics.isHealthy(now));
+            statistics.pingSent(now);
+            assertTrue(statistics.isPingOutstanding(now + PeerHealthMonitor.PING_TIMEOUT));
+            now += PeerHealthMonitor.PING_TIMEOUT + 1;
+            // Unanswered for too long - counted as missed.
+            assertFalse(statistics.isPingOutstanding(now));
+            statistics.seen(now);
+        }
+        assertEquals(PeerHealthMonitor.MAXIMUM_MISSED_PINGS, statistics.getMissedPings());
+        assertFalse(statistics.isHealthy(now));
+
+        // An answer clears the missed pings.
+        statistics.pingSent(now);
+        statistics.pingAnswered(50, now + 50);
+        assertEquals(0, statistics.getMissedPings());
+        assertTrue(statistics.isHealthy(now + 50));
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Sha256Hash;
+import com.google.worldcoin.core.Transaction;
+import com.google.worldcoin.core.TransactionConfidence;
+import com.google.worldcoin.core.TransactionConfidence.ConfidenceType;
+import com.google.worldcoin.core.TransactionInput;
+import com.google.worldcoin.core.TransactionOutPoint;
+import com.google.worldcoin.core.Wallet;
+import com.google.worldcoin.wallet.WalletTransaction;
+
+public class PendingTransactionPoolTest extends TestCase {
+
+    private static final long START = 1000000000000L;
+
+    private NetworkParameters params;
+    private Wallet wallet;
+    private ECKey key;
+
+    @Override
+    protected void setUp() throws Exception {
+        params = NetworkParameters.prodNet();
+        wallet = new Wallet(params);
+        key = new ECKey();
+        wallet.addKey(key);
+    }
+
+    private Transaction incomingTransaction(int value) {
+        Transaction transaction = new Transaction(params);
+        TransactionOutPoint outPoint = new TransactionOutPoint(params, 0, Sha256Hash.create(new byte[] { (byte) value }));
+        transaction.addInput(new TransactionInput(params, transaction, new byte[0], outPoint));
+        transaction.addOutput(BigInteger.valueOf(1000000 + value), key);
+        return transaction;
+    }
+
+    @Test
+    public void testStaleIncomingTransactionsRemoved() throws Exception {
+        Transaction transaction = incomingTransaction(1);
+        wallet.receivePending(transaction, null);
+        assertEquals(1, wallet.getPendingTransactions().size());
+
+        PendingTransactionPool pool = new PendingTransactionPool();
+        List<Wallet> wallets = Arrays.asList(wallet);
+        assertTrue(pool.removeStale(wallets, START).isEmpty());
+        assertTrue(pool.removeStale(wallets, START + PendingTransactionPool.MAXIMUM_AGE).isEmpty());
+        assertEquals(1, wallet.getPendingTransactions().size());
+
+        List<Wallet> changedWallets = pool.removeStale(wallets, START + PendingTransactionPool.MAXIMUM_AGE + 1);
+        assertEquals(wallets, changedWallets);
+        assertTrue(wallet.getPendingTransactions().isEmpty());
+        assertNull(wallet.getTransaction(transaction.getHash()));
+    }
+
+    @Test
+    public void testOtherTransactionsKeptWhenStaleRemoved() throws Exception {
+        Transaction stale = incomingTransaction(1);
+        Transaction recent = incomingTransaction(2);
+        wallet.receivePending(stale, null);
+        wallet.receivePending(recent, null);
+        stale.setUpdateTime(new Date(START - PendingTransactionPool.MAXIMUM_AGE - 1));
+
+        PendingTransactionPool pool = new PendingTransactionPool();
+        List<Wallet> wallets = Arrays.asList(wallet);
+        assertEquals(wallets, pool.removeStale(wallets, START));
+        assertNull(wallet.getTransaction(stale.getHash()));
+        assertEquals(1, wallet.getPendingTransactions().size());
+        assertSame(recent, wallet.getTransaction(recent.getHash()));
+        assertTrue(wallet.isConsistent());
+    }
+
+    @Test
+    public void testWalletRestoredWhenRemovalFails() throws Exception {
+        final AtomicBoolean failNextAdd = new AtomicBoolean(false);
+        wallet = new Wallet(params) {
+            @Override
+            public void addWalletTransaction(WalletTransaction walletTransaction) {
+                if (failNextAdd.getAndSet(false)) {
+                    throw new IllegalStateException("Deliberate failure");
+                }
+                super.addWalletTransaction(walletTransaction);
+            }
+        };
+        wallet.addKey(key);
+        Transaction stale = incomingTransaction(1);
+        Transaction recent = incomingTransaction(2);
+        wallet.receivePending(stale, null);
+        wallet.receivePending(recent, null);
+        stale.setUpdateTime(new Date(START - PendingTransactionPool.MAXIMUM_AGE - 1));
+
+        failNextAdd.set(true);
+        PendingTransactionPool pool = new PendingTransactionPool();
+        List<Wallet> wallets = Arrays.asList(wallet);
+        assertTrue(pool.removeStale(wallets, START).isEmpty());
+
+        assertEquals(2, wallet.getPendingTransactions().size());
+        assertSame(stale, wallet.getTransaction(stale.getHash()));
+        assertSame(recent, wallet.getTransaction(recent.getHash()));
+        assertTrue(wallet.isConsistent());
+    }
+
+    @Test
+    public void testRoomInPendingPools() throws Exception {
+        PendingTransactionPool pool = new PendingTransactionPool();
+        List<Wallet> wallets = Arrays.asList(wallet);
+        for (int i = 0; i < PendingTransactionPool.MAXIMUM_NUMBER_OF_TRANSACTIONS - 1; i++) {
+            wallet.receivePending(incomingTransaction(i + 1), null);
+        }
+        assertTrue(pool.hasRoomFor(incomingTransaction(0), wallets));
+
+        wallet.receivePending(incomingTransaction(PendingTransactionPool.MAXIMUM_NUMBER_OF_TRANSACTIONS), null);
+        assertFalse(pool.hasRoomFor(incomingTransaction(0), wallets));
+
+        PendingTransactionPool.Usage usage = PendingTransactionPool.usageOf(wallets);
+        assertEquals(PendingTransactionPool.MAXIMUM_NUMBER_OF_TRANSACTIONS, usage.numberOfTransactions);
+        assertTrue(usage.size > 0);
+    }
+
+    @Test
+    public void testBuried() throws Exception {
+        TransactionConfidence confidence = incomingTransaction(1).getConfidence();
+        assertFalse(PendingTransactionPool.isBuried(confidence));
+
+        confidence.setConfidenceType(ConfidenceType.BUILDING);
+        confidence.setDepthInBlocks(PendingTransactionPool.BURIED_DEPTH - 1);
+        assertFalse(PendingTransactionPool.isBuried(confidence));
+        confidence.setDepthInBlocks(PendingTransactionPool.BURIED_DEPTH);
+        assertTrue(PendingTransactionPool.isBuried(confidence));
+
+        confidence.setConfidenceType(ConfidenceType.DEAD);
+        assertTrue(PendingTransactionPool.isBuried(confidence));
+    }
+}
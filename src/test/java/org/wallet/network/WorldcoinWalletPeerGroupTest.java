@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.network;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.worldcoin.core.ECKey;
+import com.google.worldcoin.core.NetworkParameters;
+import com.google.worldcoin.core.Wallet;
+
+public class WorldcoinWalletPeerGroupTest extends TestCase {
+
+    private static final long KEY_CREATION_TIME = 1300000000; // seconds
+
+    private static Wallet walletWithKeyCreatedAt(long creationTimeSeconds) {
+        Wallet wallet = new Wallet(NetworkParameters.prodNet());
+        ECKey key = new ECKey();
+        key.setCreationTimeSeconds(creationTimeSeconds);
+        wallet.addKey(key);
+        return wallet;
+    }
+
+    @Test
+    public void testFilterRecalculatedOnceAtTheEndOfABatch() throws Exception {
+        WorldcoinWalletPeerGroup peerGroup = new WorldcoinWalletPeerGroup(null, NetworkParameters.prodNet(), null);
+        long fastCatchupTimeSecs = peerGroup.getFastCatchupTimeSecs();
+
+        // The fast catch up time is set by each recalculation.
+        peerGroup.beginWalletBatch();
+        peerGroup.beginWalletBatch();
+        peerGroup.addWallet(walletWithKeyCreatedAt(KEY_CREATION_TIME + 1000));
+        peerGroup.addWallet(walletWithKeyCreatedAt(KEY_CREATION_TIME));
+        peerGroup.endWalletBatch();
+        assertEquals(fastCatchupTimeSecs, peerGroup.getFastCatchupTimeSecs());
+
+        peerGroup.endWalletBatch();
+        assertTrue(peerGroup.getFastCatchupTimeSecs() != fastCatchupTimeSecs);
+        assertTrue(peerGroup.getFastCatchupTimeSecs() <= KEY_CREATION_TIME);
+
+        // Not in a batch - recalculated straight away.
+        peerGroup.endWalletBatch();
+        fastCatchupTimeSecs = peerGroup.getFastCatchupTimeSecs();
+        peerGroup.addWallet(walletWithKeyCreatedAt(KEY_CREATION_TIME - 100000));
+        assertTrue(peerGroup.getFastCatchupTimeSecs() < fastCatchupTimeSecs);
+    }
+
+    @Test
+    public void testCachedPeersDoNotRaiseMaxConnections() throws Exception {
+        File peersFile = File.createTempFile("worldcoinWalletPeerGroupTest", WorldcoinWalletService.PEERS_SUFFIX);
+        peersFile.deleteOnExit();
+        try {
+            PeerAddressCache peerAddressCache = new PeerAddressCache(peersFile);
+            for (int i = 1; i <= 20; i++) {
+                peerAddressCache.recordSuccess(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) i }),
+                        NetworkParameters.prodNet().getPort()), System.currentTimeMillis());
+            }
+
+            WorldcoinWalletPeerGroup peerGroup = new WorldcoinWalletPeerGroup(null, NetworkParameters.prodNet(), null);
+            peerGroup.setPeerAddressCache(peerAddressCache);
+            assertEquals(WorldcoinWalletPeerGroup.MAXIMUM_NUMBER_OF_PEERS, peerGroup.getMaxConnections());
+        } finally {
+            peersFile.delete();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.qrcode;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+public class QRCodeGeneratorTest extends TestCase {
+
+    private static final int WHITE = 0xFFFFFF;
+    private static final int BLACK = 0x000000;
+
+    @Test
+    public void testScaledImageMatchesMatrix() throws Exception {
+        ByteMatrix matrix = new ByteMatrix(5, 3);
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                matrix.set(x, y, (x + y) % 2 == 0 ? 0 : 255);
+            }
+        }
+
+        for (int scaleFactor = 1; scaleFactor <= 4; scaleFactor++) {
+            BufferedImage image = QRCodeGenerator.toImage(matrix, scaleFactor);
+            assertEquals(5 * scaleFactor, image.getWidth());
+            assertEquals(3 * scaleFactor, image.getHeight());
+
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int expected = matrix.get(x / scaleFactor, y / scaleFactor) == 0 ? BLACK : WHITE;
+                    assertEquals("Wrong pixel at " + x + ", " + y + " for scale " + scaleFactor, expected, image.getRGB(x, y) & 0xFFFFFF);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeRoundTrip() throws Exception {
+        String data = "worldcoin:WdcAddressForTesting?amount=1.5&label=Test";
+        QRCodeEncoderDecoder qrCodeEncoderDecoder = new QRCodeEncoderDecoder(200, 200);
+        BufferedImage image = qrCodeEncoderDecoder.encode(data);
+        assertNotNull(image);
+        assertEquals(data, qrCodeEncoderDecoder.decode(image));
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.utils.Scheduler.ScheduledTask;
+import org.wallet.utils.Scheduler.TaskStatistics;
+
+public class SchedulerTest extends TestCase {
+
+    @Test
+    public void testRunsWithTheSameNameDoNotOverlap() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ScheduledTask first = Scheduler.INSTANCE.schedule("testOverlap", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(first.getStatistics().isRunning());
+
+        final AtomicInteger secondRuns = new AtomicInteger();
+        Scheduler.INSTANCE.schedule("testOverlap", new Runnable() {
+            @Override
+            public void run() {
+                secondRuns.incrementAndGet();
+            }
+        }, 0);
+        TaskStatistics statistics = Scheduler.INSTANCE.getStatistics("testOverlap");
+        waitFor(statistics, 0, 1);
+        assertEquals(0, secondRuns.get());
+
+        release.countDown();
+        waitFor(statistics, 1, 1);
+        assertFalse(statistics.isRunning());
+    }
+
+    @Test
+    public void testFailingTaskKeepsItsSchedule() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledTask task = Scheduler.INSTANCE.scheduleWithFixedDelay("testFailing", new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                throw new IllegalStateException("Deliberate failure");
+            }
+        }, 0, 10);
+        try {
+            waitFor(task.getStatistics(), 3, 0);
+            assertTrue(runs.get() >= 3);
+            assertEquals(task.getStatistics().getNumberOfRuns(), task.getStatistics().getNumberOfFailures());
+        } finally {
+            task.cancel();
+        }
+        assertTrue(task.isCancelled());
+    }
+
+    @Test
+    public void testExecutionTimesRecorded() throws Exception {
+        TaskStatistics statistics = Scheduler.INSTANCE.schedule("testTimes", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0).getStatistics();
+        assertEquals(-1, statistics.getLastExecutionTime());
+        assertEquals(-1, statistics.getAverageExecutionTime());
+
+        waitFor(statistics, 1, 0);
+        assertTrue(statistics.getLastExecutionTime() >= 40);
+        assertEquals(statistics.getLastExecutionTime(), statistics.getMaximumExecutionTime());
+        assertEquals(statistics.getLastExecutionTime(), statistics.getTotalExecutionTime());
+        assertEquals(0, statistics.getNumberOfFailures());
+        assertTrue(Scheduler.INSTANCE.getStatistics().contains(statistics));
+    }
+
+    @Test
+    public void testSubmittedWorkWithTheSameNameRunsAtOnce() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        Callable<Boolean> work = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                bothStarted.countDown();
+                return bothStarted.await(5, TimeUnit.SECONDS);
+            }
+        };
+        Future<Boolean> first = Scheduler.INSTANCE.submit("testWork", work);
+        Future<Boolean> second = Scheduler.INSTANCE.submit("testWork", work);
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+
+        TaskStatistics statistics = Scheduler.INSTANCE.getStatistics("testWork");
+        assertEquals(2, statistics.getNumberOfRuns());
+        assertEquals(0, statistics.getNumberOfSkippedRuns());
+    }
+
+    @Test
+    public void testSubmittedWorkFailurePassedOn() throws Exception {
+        Future<?> future = Scheduler.INSTANCE.submit("testWorkFailing", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Deliberate failure");
+            }
+        });
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The failure was not passed on");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof IllegalStateException);
+        }
+        TaskStatistics statistics = Scheduler.INSTANCE.getStatistics("testWorkFailing");
+        assertEquals(1, statistics.getNumberOfRuns());
+        assertEquals(1, statistics.getNumberOfFailures());
+    }
+
+    @Test
+    public void testWorkBeyondTheWorkersAndQueueRejected() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        long numberOfRejectedWork = Scheduler.INSTANCE.getNumberOfRejectedWork();
+        try {
+            for (int i = 0; i < Scheduler.INSTANCE.getMaximumNumberOfWorkers() + Scheduler.WORK_QUEUE_CAPACITY; i++) {
+                futures.add(Scheduler.INSTANCE.submit("testBusy", blocked));
+            }
+            assertEquals(Scheduler.INSTANCE.getMaximumNumberOfWorkers(), Scheduler.INSTANCE.getNumberOfWorkers());
+            assertEquals(Scheduler.WORK_QUEUE_CAPACITY, Scheduler.INSTANCE.getNumberOfQueuedWork());
+            try {
+                Scheduler.INSTANCE.submit("testBusy", blocked);
+                fail("Work beyond the workers and the queue was accepted");
+            } catch (RejectedExecutionException ree) {
+                assertEquals(numberOfRejectedWork + 1, Scheduler.INSTANCE.getNumberOfRejectedWork());
+            }
+        } finally {
+            release.countDown();
+        }
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Scheduler.INSTANCE.getMaximumNumberOfWorkers(), Scheduler.INSTANCE.getLargestNumberOfWorkers());
+    }
+
+    @Test
+    public void testAwaitNotRunning() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ScheduledTask task = Scheduler.INSTANCE.schedule("testAwait", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        TaskStatistics statistics = task.getStatistics();
+        assertFalse(statistics.awaitNotRunning(20));
+
+        release.countDown();
+        assertTrue(statistics.awaitNotRunning(5000));
+        assertFalse(statistics.isRunning());
+        assertEquals(1, statistics.getNumberOfRuns());
+    }
+
+    private static void waitFor(TaskStatistics statistics, long numberOfRuns, long numberOfSkippedRuns) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (statistics.getNumberOfRuns() >= numberOfRuns && statistics.getNumberOfSkippedRuns() >= numberOfSkippedRuns) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Timed out waiting for " + statistics);
+    }
+}
@@ -218,6 +218,48 @@ public class LocaliserTest extends TestCase {
        assertEquals(SUBSTITUTE_TWO_EXPECTED_TURKISH, localiser.getString(SUBSTITUTE_TWO_KEY, new Object[]{SUBSTITUTE_ONE_DATA, SUBSTITUTE_TWO_DATA}));                    
    }
     
+    @Test
+    public void testSetLocaleRebuildsFormatters() {
+        Localiser localiser = new Localiser(new Locale("en"));
+
+        assertEquals(SUBSTITUTE_TWO_EXPECTED_ENGLISH, localiser.getString(SUBSTITUTE_TWO_KEY, new Object[]{SUBSTITUTE_ONE_DATA, SUBSTITUTE_TWO_DATA}));
+
+        localiser.setLocale(new Locale("es"));
+        assertEquals(SUBSTITUTE_TWO_EXPECTED_SPANISH, localiser.getString(SUBSTITUTE_TWO_KEY, new Object[]{SUBSTITUTE_ONE_DATA, SUBSTITUTE_TWO_DATA}));
+
+        localiser.setLocale(new Locale("en"));
+        assertEquals(SUBSTITUTE_TWO_EXPECTED_ENGLISH, localiser.getString(SUBSTITUTE_TWO_KEY, new Object[]{SUBSTITUTE_ONE_DATA, SUBSTITUTE_TWO_DATA}));
+    }
+
+    @Test
+    public void testConcurrentFormatting() throws Exception {
+        final Localiser localiser = new Localiser(new Locale("en"));
+        final int numberOfThreads = 8;
+        final int numberOfIterations = 1000;
+        final java.util.concurrent.atomic.AtomicInteger failures = new java.util.concurrent.atomic.AtomicInteger();
+
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            final String data = "thread" + i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numberOfIterations; j++) {
+                        if (!("first = " + data + ", second = " + j).equals(localiser.getString(SUBSTITUTE_TWO_KEY, new Object[]{data, String.valueOf(j)}))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < numberOfThreads; i++) {
+            threads[i].join();
+        }
+
+        assertEquals(0, failures.get());
+    }
+
     @Test
     public void testVersionNumber() {
         Localiser localiser = new Localiser(new Locale("en"));
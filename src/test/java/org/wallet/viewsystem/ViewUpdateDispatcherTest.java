@@ -0,0 +1,189 @@
+/**
+ * Copyright 2013 wallet.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wallet.viewsystem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.wallet.viewsystem.simple.SimpleViewSystem;
+
+public class ViewUpdateDispatcherTest extends TestCase {
+
+    private static final int UPDATE_INTERVAL = 200; // milliseconds
+
+    @Test
+    public void testUserInitiatedUpdateIsImmediate() throws Exception {
+        RecordingViewSystem viewSystem = new RecordingViewSystem();
+        ViewUpdateDispatcher dispatcher = createDispatcher(viewSystem);
+        try {
+            dispatcher.publishDataChanged(DisplayHint.COMPLETE_REDRAW, true);
+
+            // Delivered on the calling thread.
+            assertEquals(1, viewSystem.getDisplayHints().size());
+            assertEquals(DisplayHint.COMPLETE_REDRAW, viewSystem.getDisplayHints().get(0));
+
+            // Held back as there has just been an update.
+            dispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, false);
+            assertEquals(1, viewSystem.getDisplayHints().size());
+
+            dispatcher.publishDataChanged(DisplayHint.COMPLETE_REDRAW, true);
+            assertEquals(2, viewSystem.getDisplayHints().size());
+            assertEquals(DisplayHint.COMPLETE_REDRAW, viewSystem.getDisplayHints().get(1));
+
+            // The pending background update was covered by the complete redraw.
+            Thread.sleep(3 * UPDATE_INTERVAL);
+            assertEquals(2, viewSystem.getDisplayHints().size());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testBackgroundUpdatesAreCondensed() throws Exception {
+        RecordingViewSystem viewSystem = new RecordingViewSystem();
+        ViewUpdateDispatcher dispatcher = createDispatcher(viewSystem);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                dispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, false);
+                dispatcher.publishBlockDownloaded();
+            }
+            Thread.sleep(3 * UPDATE_INTERVAL);
+
+            // The first update goes out straight away, the rest are condensed into one.
+            int numberOfUpdates = viewSystem.getDisplayHints().size();
+            assertTrue("Wrong number of updates : " + numberOfUpdates, numberOfUpdates >= 1 && numberOfUpdates <= 2);
+            assertEquals(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, viewSystem.getDisplayHints().get(0));
+            assertTrue(viewSystem.getNumberOfBlocksDownloaded() >= 1 && viewSystem.getNumberOfBlocksDownloaded() <= 2);
+
+            // A complete redraw subsumes a transactions update (both held back by a user initiated update).
+            dispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, true);
+            dispatcher.publishDataChanged(DisplayHint.COMPLETE_REDRAW, false);
+            dispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, false);
+            Thread.sleep(3 * UPDATE_INTERVAL);
+
+            assertEquals(numberOfUpdates + 2, viewSystem.getDisplayHints().size());
+            assertEquals(DisplayHint.COMPLETE_REDRAW, viewSystem.getDisplayHints().get(numberOfUpdates + 1));
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testBackgroundUpdatesAreRateLimited() throws Exception {
+        RecordingViewSystem viewSystem = new RecordingViewSystem();
+        ViewUpdateDispatcher dispatcher = createDispatcher(viewSystem);
+        try {
+            // Publish continuously for a little over two update intervals.
+            long end = System.currentTimeMillis() + 2 * UPDATE_INTERVAL + UPDATE_INTERVAL / 2;
+            while (System.currentTimeMillis() < end) {
+                dispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, false);
+                Thread.sleep(1);
+            }
+            Thread.sleep(2 * UPDATE_INTERVAL);
+
+            int numberOfUpdates = viewSystem.getDisplayHints().size();
+            assertTrue("Too many updates : " + numberOfUpdates, numberOfUpdates <= 4);
+            assertTrue("Too few updates : " + numberOfUpdates, numberOfUpdates >= 2);
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeyedUpdatesKeepTheLatest() throws Exception {
+        RecordingViewSystem viewSystem = new RecordingViewSystem();
+        ViewUpdateDispatcher dispatcher = createDispatcher(viewSystem);
+        try {
+            final AtomicInteger lastValue = new AtomicInteger();
+            final AtomicInteger numberOfRuns = new AtomicInteger();
+            for (int i = 1; i <= 100; i++) {
+                final int value = i;
+                dispatcher.publish("rate", new Runnable() {
+                    @Override
+                    public void run() {
+                        lastValue.set(value);
+                        numberOfRuns.incrementAndGet();
+                    }
+                });
+            }
+            Thread.sleep(3 * UPDATE_INTERVAL);
+
+            assertTrue(numberOfRuns.get() <= 2);
+            assertEquals(100, lastValue.get());
+            assertEquals(0, viewSystem.getDisplayHints().size());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testUpdatePublishedDuringSlowDeliveryIsDelivered() throws Exception {
+        RecordingViewSystem viewSystem = new RecordingViewSystem();
+        ViewUpdateDispatcher dispatcher = createDispatcher(viewSystem);
+        try {
+            final AtomicInteger numberOfRuns = new AtomicInteger();
+            dispatcher.publish("slow", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(2 * UPDATE_INTERVAL);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    numberOfRuns.incrementAndGet();
+                }
+            });
+            Thread.sleep(UPDATE_INTERVAL / 2);
+
+            // Published while the slow update is being delivered, and due before it finishes.
+            dispatcher.publishDataChanged(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED, false);
+            Thread.sleep(4 * UPDATE_INTERVAL);
+
+            assertEquals(1, numberOfRuns.get());
+            assertEquals(1, viewSystem.getDisplayHints().size());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    private ViewUpdateDispatcher createDispatcher(ViewSystem viewSystem) {
+        Collection<ViewSystem> viewSystems = new CopyOnWriteArrayList<ViewSystem>();
+        viewSystems.add(viewSystem);
+        return new ViewUpdateDispatcher(viewSystems, UPDATE_INTERVAL);
+    }
+
+    /**
+     * View system that remembers the data changed updates it is sent.
+     */
+    private static class RecordingViewSystem extends SimpleViewSystem {
+        private final List<DisplayHint> displayHints = new ArrayList<DisplayHint>();
+
+        @Override
+        public synchronized void fireDataChangedUpdateNow(DisplayHint displayHint) {
+            displayHints.add(displayHint);
+        }
+
+        public synchronized List<DisplayHint> getDisplayHints() {
+            return new ArrayList<DisplayHint>(displayHints);
+        }
+    }
+}